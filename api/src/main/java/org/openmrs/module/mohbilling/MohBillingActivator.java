@@ -15,7 +15,16 @@ package org.openmrs.module.mohbilling;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.openmrs.api.context.Context;
 import org.openmrs.module.Activator;
+import org.openmrs.module.mohbilling.businesslogic.BeneficiarySearchIndex;
+import org.openmrs.module.mohbilling.businesslogic.InvoiceAggregationUtil;
+import org.openmrs.module.mohbilling.businesslogic.InvoiceCategoryClassifier;
+import org.openmrs.module.mohbilling.businesslogic.RenderingResourceCache;
+import org.openmrs.module.mohbilling.businesslogic.ReportJobUtil;
+import org.openmrs.module.mohbilling.metrics.ServiceMetrics;
+import org.openmrs.module.mohbilling.metrics.SqlDiagnostics;
+import org.openmrs.module.mohbilling.task.CheckPatientBillBalancesTask;
 
 /**
  * This class contains the logic that is run every time this module is either
@@ -25,11 +34,30 @@ public class MohBillingActivator implements Activator {
 
 	private Log log = LogFactory.getLog(this.getClass());
 
+	private InvoiceCategoryClassifier.PropertyListener invoiceCategoriesListener = new InvoiceCategoryClassifier.PropertyListener();
+
+	private RenderingResourceCache.PropertyListener healthFacilityListener = new RenderingResourceCache.PropertyListener();
+
+	private SqlDiagnostics.PropertyListener sqlDiagnosticsListener = new SqlDiagnostics.PropertyListener();
+
 	/**
 	 * @see org.openmrs.module.Activator#startup()
 	 */
 	public void startup() {
 		log.info("Starting MoH-Billing Module");
+		BeneficiarySearchIndex.build();
+		Context.getAdministrationService().addGlobalPropertyListener(
+				invoiceCategoriesListener);
+		Context.getAdministrationService().addGlobalPropertyListener(
+				healthFacilityListener);
+		Context.getAdministrationService().addGlobalPropertyListener(
+				sqlDiagnosticsListener);
+		ServiceMetrics.registerMBean();
+		try {
+			CheckPatientBillBalancesTask.register();
+		} catch (Exception e) {
+			log.error("Unable to register the task checking the bill balances", e);
+		}
 	}
 
 	/**
@@ -37,6 +65,20 @@ public class MohBillingActivator implements Activator {
 	 */
 	public void shutdown() {
 		log.info("Shutting down MoH-Billing Module");
+		ReportJobUtil.shutdown();
+		InvoiceAggregationUtil.shutdown();
+		BeneficiarySearchIndex.clear();
+		Context.getAdministrationService().removeGlobalPropertyListener(
+				invoiceCategoriesListener);
+		InvoiceCategoryClassifier.invalidate();
+		Context.getAdministrationService().removeGlobalPropertyListener(
+				healthFacilityListener);
+		RenderingResourceCache.invalidate();
+		Context.getAdministrationService().removeGlobalPropertyListener(
+				sqlDiagnosticsListener);
+		SqlDiagnostics.invalidate();
+		SqlDiagnostics.clearLog();
+		ServiceMetrics.unregisterMBean();
 	}
 
 }
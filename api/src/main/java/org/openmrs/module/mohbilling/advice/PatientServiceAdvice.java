@@ -22,6 +22,7 @@ import org.directwebremoting.guice.RequestScoped;
 import org.openmrs.Patient;
 import org.openmrs.PatientIdentifier;
 import org.openmrs.api.context.Context;
+import org.openmrs.module.mohbilling.businesslogic.BeneficiarySearchIndex;
 import org.openmrs.module.mohbilling.businesslogic.BillingConstants;
 import org.openmrs.module.mohbilling.businesslogic.InsurancePolicyUtil;
 import org.openmrs.module.mohbilling.businesslogic.InsuranceUtil;
@@ -50,6 +51,17 @@ public class PatientServiceAdvice implements AfterReturningAdvice {
 	public void afterReturning(Object returnVal, Method method, Object[] args,
 			Object target) throws Throwable {
 
+		/** the names of the patient are searched by the beneficiary index */
+		if (method.getName().equals("savePatient")
+				&& returnVal instanceof Patient) {
+			try {
+				BeneficiarySearchIndex.update((Patient) returnVal);
+			} catch (Exception e) {
+				log.error("Unable to index the beneficiaries of the patient "
+						+ ((Patient) returnVal).getPatientId(), e);
+			}
+		}
+
 //		if (method.getName().equals("savePatient")) {
 //			String[] splits = returnVal.toString().split("#");
 //
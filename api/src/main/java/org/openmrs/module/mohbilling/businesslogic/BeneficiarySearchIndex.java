@@ -0,0 +1,302 @@
+package org.openmrs.module.mohbilling.businesslogic;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.Patient;
+import org.openmrs.PersonName;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.mohbilling.model.Beneficiary;
+import org.openmrs.module.mohbilling.model.InsurancePolicy;
+import org.openmrs.module.mohbilling.service.BillingService;
+
+/**
+ * In-memory prefix index of the beneficiaries that are not retired, on their
+ * policy id number, their insurance card number and their names (given then
+ * family name, and family then given name).
+ * <p>
+ * The terms are kept in {@link BeneficiaryTerms}, searched by a binary search.
+ * The beneficiaries changed since the index was built, by a save of their
+ * policy or of their patient, are kept aside and searched in full, and the
+ * index is built again in the background once there are too many of them.
+ * The terms and the changes are replaced as a whole on each change, so that
+ * the searches run side by side without a lock.
+ */
+public class BeneficiarySearchIndex {
+
+	private static Log log = LogFactory.getLog(BeneficiarySearchIndex.class);
+
+	/** Number of beneficiaries read from the database at a time */
+	private static final int LOAD_PAGE_SIZE = 1000;
+
+	/** Number of changed beneficiaries after which the index is built again */
+	private static final int MAX_CHANGES = 10000;
+
+	private static volatile Snapshot snapshot = new Snapshot(null,
+			new HashMap<Integer, String[]>());
+
+	/** Changes made while the index is being built, kept once it is done */
+	private static Map<Integer, String[]> changesWhileBuilding;
+
+	private static boolean building = false;
+
+	/**
+	 * Builds the index in the background, the beneficiaries being read in
+	 * pages. The searches keep using the current index until it is done.
+	 */
+	public static synchronized void build() {
+
+		if (building)
+			return;
+
+		building = true;
+		changesWhileBuilding = new HashMap<Integer, String[]>();
+
+		Thread thread = new Thread(new Runnable() {
+			public void run() {
+				load();
+			}
+		}, "mohbilling-beneficiary-index");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Forgets the index, called when the module is stopped
+	 */
+	public static synchronized void clear() {
+		snapshot = new Snapshot(null, new HashMap<Integer, String[]>());
+	}
+
+	/**
+	 * Indexes again the beneficiaries of the policy once it is saved, the
+	 * retired ones being removed
+	 *
+	 * @param card
+	 *            the saved insurance policy
+	 */
+	public static void update(InsurancePolicy card) {
+
+		if (card == null || card.getBeneficiaries() == null)
+			return;
+
+		Map<Integer, String[]> beneficiaryTerms = new HashMap<Integer, String[]>();
+		for (Beneficiary ben : card.getBeneficiaries())
+			if (ben.getBeneficiaryId() != null)
+				beneficiaryTerms.put(ben.getBeneficiaryId(), getTerms(ben, card));
+
+		changed(beneficiaryTerms);
+	}
+
+	/**
+	 * Indexes again the beneficiaries of the patient once it is saved, their
+	 * names being those of the patient
+	 *
+	 * @param patient
+	 *            the saved patient
+	 */
+	public static void update(Patient patient) {
+
+		if (patient == null || patient.getPatientId() == null)
+			return;
+
+		Map<Integer, String[]> beneficiaryTerms = new HashMap<Integer, String[]>();
+		for (Beneficiary ben : getService().getBeneficiariesByPatient(patient))
+			beneficiaryTerms.put(ben.getBeneficiaryId(),
+					getTerms(ben, ben.getInsurancePolicy()));
+
+		if (!beneficiaryTerms.isEmpty())
+			changed(beneficiaryTerms);
+	}
+
+	/**
+	 * Finds the beneficiaries having a term starting with the given text,
+	 * ignoring the case. The index is built on the first search if it was not
+	 * at startup, nothing being found until it is done.
+	 *
+	 * @param text
+	 *            the beginning of a policy id number, a card number or a name
+	 * @param maxResults
+	 *            the maximum number of beneficiaries returned
+	 * @return the ids of the matching beneficiaries, in the order of their
+	 *         terms
+	 */
+	public static List<Integer> search(String text, int maxResults) {
+
+		Set<Integer> beneficiaryIds = new LinkedHashSet<Integer>();
+		String prefix = BeneficiaryTerms.normalize(text);
+		if (prefix == null)
+			return new ArrayList<Integer>(beneficiaryIds);
+
+		Snapshot current = snapshot;
+		if (current.terms == null)
+			build();
+		else
+			current.terms.addMatches(prefix, current.changes.keySet(),
+					beneficiaryIds, maxResults);
+
+		for (Map.Entry<Integer, String[]> change : current.changes.entrySet()) {
+			if (beneficiaryIds.size() >= maxResults)
+				break;
+			if (change.getValue() != null)
+				for (String term : change.getValue())
+					if (term.startsWith(prefix)) {
+						beneficiaryIds.add(change.getKey());
+						break;
+					}
+		}
+
+		return new ArrayList<Integer>(beneficiaryIds);
+	}
+
+	/**
+	 * Builds the index from the beneficiaries of the current session, in the
+	 * calling thread
+	 */
+	static void rebuild() {
+		loaded(read());
+	}
+
+	private static synchronized void changed(
+			Map<Integer, String[]> beneficiaryTerms) {
+
+		Map<Integer, String[]> changes = new HashMap<Integer, String[]>(
+				snapshot.changes);
+		changes.putAll(beneficiaryTerms);
+		snapshot = new Snapshot(snapshot.terms, changes);
+
+		if (changesWhileBuilding != null)
+			changesWhileBuilding.putAll(beneficiaryTerms);
+
+		if (changes.size() > MAX_CHANGES)
+			build();
+	}
+
+	private static void load() {
+
+		BeneficiaryTerms loaded = null;
+		try {
+			Context.openSession();
+			long start = System.currentTimeMillis();
+			loaded = read();
+			log.info("Indexed " + loaded.size() + " beneficiary terms in "
+					+ (System.currentTimeMillis() - start) + " ms");
+		} catch (Throwable t) {
+			log.error("Error while building the beneficiary search index", t);
+		} finally {
+			Context.closeSession();
+			loaded(loaded);
+		}
+	}
+
+	/**
+	 * @return the terms of the beneficiaries that are not retired, read in
+	 *         pages
+	 */
+	private static BeneficiaryTerms read() {
+
+		List<String> loadedTerms = new ArrayList<String>();
+		List<Integer> loadedIds = new ArrayList<Integer>();
+		Integer afterId = 0;
+		List<Object[]> rows = getService().getBeneficiarySearchFields(afterId,
+				LOAD_PAGE_SIZE);
+
+		while (!rows.isEmpty()) {
+			for (Object[] row : rows) {
+				afterId = (Integer) row[0];
+				for (String term : getTerms((String) row[1], (String) row[2],
+						(String) row[3], (String) row[4])) {
+					loadedTerms.add(term);
+					loadedIds.add(afterId);
+				}
+			}
+			Context.clearSession();
+
+			rows = getService().getBeneficiarySearchFields(afterId,
+					LOAD_PAGE_SIZE);
+		}
+
+		return new BeneficiaryTerms(loadedTerms, loadedIds);
+	}
+
+	private static synchronized void loaded(BeneficiaryTerms loaded) {
+
+		if (loaded != null)
+			snapshot = new Snapshot(loaded,
+					(changesWhileBuilding != null) ? changesWhileBuilding
+							: new HashMap<Integer, String[]>());
+		changesWhileBuilding = null;
+		building = false;
+	}
+
+	/**
+	 * @return the terms of the beneficiary of the policy, null if either is
+	 *         retired
+	 */
+	private static String[] getTerms(Beneficiary ben, InsurancePolicy card) {
+
+		if (Boolean.TRUE.equals(ben.isRetired()) || card == null
+				|| Boolean.TRUE.equals(card.isRetired()))
+			return null;
+
+		PersonName name = (ben.getPatient() != null) ? ben.getPatient()
+				.getPersonName() : null;
+		return getTerms(ben.getPolicyIdNumber(), card.getInsuranceCardNo(),
+				(name != null) ? name.getGivenName() : null,
+				(name != null) ? name.getFamilyName() : null);
+	}
+
+	/**
+	 * @return the distinct terms of a beneficiary
+	 */
+	private static String[] getTerms(String policyIdNumber,
+			String insuranceCardNo, String givenName, String familyName) {
+
+		Set<String> beneficiaryTerms = new LinkedHashSet<String>();
+		addTerm(beneficiaryTerms, policyIdNumber);
+		addTerm(beneficiaryTerms, insuranceCardNo);
+
+		if (givenName != null && familyName != null) {
+			addTerm(beneficiaryTerms, givenName + " " + familyName);
+			addTerm(beneficiaryTerms, familyName + " " + givenName);
+		} else {
+			addTerm(beneficiaryTerms, givenName);
+			addTerm(beneficiaryTerms, familyName);
+		}
+
+		return beneficiaryTerms.toArray(new String[beneficiaryTerms.size()]);
+	}
+
+	private static void addTerm(Set<String> beneficiaryTerms, String text) {
+		String term = BeneficiaryTerms.normalize(text);
+		if (term != null)
+			beneficiaryTerms.add(term);
+	}
+
+	private static BillingService getService() {
+		return Context.getService(BillingService.class);
+	}
+
+	/**
+	 * The terms and the changes since they were read, never changed once
+	 * searched
+	 */
+	private static class Snapshot {
+
+		private final BeneficiaryTerms terms;
+
+		/** Terms of the beneficiaries changed since, null if retired */
+		private final Map<Integer, String[]> changes;
+
+		public Snapshot(BeneficiaryTerms terms, Map<Integer, String[]> changes) {
+			this.terms = terms;
+			this.changes = changes;
+		}
+	}
+}
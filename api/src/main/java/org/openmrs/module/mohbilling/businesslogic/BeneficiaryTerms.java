@@ -0,0 +1,136 @@
+package org.openmrs.module.mohbilling.businesslogic;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The sorted search terms of the beneficiaries, packed in one array of
+ * characters with the offset and the beneficiary of each term, so that a
+ * prefix is found by a binary search without an object per term. It is not
+ * changed once built, and may be searched by several threads.
+ */
+public class BeneficiaryTerms {
+
+	private final char[] chars;
+	private final int[] offsets;
+	private final int[] beneficiaryIds;
+
+	/**
+	 * @param terms
+	 *            the terms, normalized by {@link #normalize(String)}
+	 * @param ids
+	 *            the beneficiary of each term
+	 */
+	public BeneficiaryTerms(final List<String> terms, List<Integer> ids) {
+
+		Integer[] order = new Integer[terms.size()];
+		int length = 0;
+		for (int i = 0; i < order.length; i++) {
+			order[i] = i;
+			length += terms.get(i).length();
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer i1, Integer i2) {
+				return terms.get(i1).compareTo(terms.get(i2));
+			}
+		});
+
+		chars = new char[length];
+		offsets = new int[order.length + 1];
+		beneficiaryIds = new int[order.length];
+		for (int i = 0; i < order.length; i++) {
+			String term = terms.get(order[i]);
+			term.getChars(0, term.length(), chars, offsets[i]);
+			offsets[i + 1] = offsets[i] + term.length();
+			beneficiaryIds[i] = ids.get(order[i]);
+		}
+	}
+
+	/**
+	 * @return the text in upper case with single spaces, null if it is blank
+	 */
+	public static String normalize(String text) {
+
+		if (text == null || text.trim().length() == 0)
+			return null;
+
+		return text.trim().replaceAll("\\s+", " ").toUpperCase();
+	}
+
+	public int size() {
+		return beneficiaryIds.length;
+	}
+
+	/**
+	 * @return the term at the given index, in the sorted order
+	 */
+	public String getTerm(int index) {
+		return new String(chars, offsets[index], offsets[index + 1]
+				- offsets[index]);
+	}
+
+	public int getBeneficiaryId(int index) {
+		return beneficiaryIds[index];
+	}
+
+	/**
+	 * Adds the beneficiaries of the terms starting with the prefix, in the
+	 * order of their terms, until there are maxResults of them
+	 *
+	 * @param prefix
+	 *            the normalized beginning of the terms
+	 * @param excludedIds
+	 *            the beneficiaries not to add
+	 */
+	public void addMatches(String prefix, Collection<Integer> excludedIds,
+			Set<Integer> matches, int maxResults) {
+
+		for (int i = lowerBound(prefix); i < size()
+				&& matches.size() < maxResults && startsWith(i, prefix); i++)
+			if (!excludedIds.contains(beneficiaryIds[i]))
+				matches.add(beneficiaryIds[i]);
+	}
+
+	/**
+	 * @return the index of the first term not lower than the prefix, the size
+	 *         if there is none
+	 */
+	public int lowerBound(String prefix) {
+
+		int low = 0;
+		int high = size();
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (compare(middle, prefix) < 0)
+				low = middle + 1;
+			else
+				high = middle;
+		}
+		return low;
+	}
+
+	public boolean startsWith(int index, String prefix) {
+
+		if (offsets[index + 1] - offsets[index] < prefix.length())
+			return false;
+		for (int i = 0; i < prefix.length(); i++)
+			if (chars[offsets[index] + i] != prefix.charAt(i))
+				return false;
+		return true;
+	}
+
+	private int compare(int index, String text) {
+
+		int length = offsets[index + 1] - offsets[index];
+		int common = Math.min(length, text.length());
+		for (int i = 0; i < common; i++) {
+			char c = chars[offsets[index] + i];
+			if (c != text.charAt(i))
+				return c - text.charAt(i);
+		}
+		return length - text.length();
+	}
+}
@@ -27,6 +27,8 @@ public class BillingConstants {
 	public static final String GLOBAL_PROPERTY_HEALTH_FACILITY_SHORT_CODE = "billing.healthFacilityShortCode";
 	public static final String GLOBAL_PROPERTY_HEALTH_FACILITY_EMAIL = "billing.healthFacilityEmail";
 	public static final String GLOBAL_PROPERTY_REGISTRATION_ENCOUNTER_TYPE = "billing.registrationEncounterType";
+	public static final String GLOBAL_PROPERTY_INVOICE_CATEGORIES = "billing.invoiceCategories";
+	public static final String GLOBAL_PROPERTY_SQL_DIAGNOSTICS = "billing.sqlDiagnostics";
 	// //TODO: the location code architecture is wrong -- all location codes
 	// come from module
 	// //TODO: this needs to correspond to a single default location
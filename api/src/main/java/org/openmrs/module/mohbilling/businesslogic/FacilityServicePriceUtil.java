@@ -8,7 +8,6 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.List;
-import java.util.Set;
 
 import javax.servlet.http.HttpServletRequest;
 
@@ -38,6 +37,12 @@ public class FacilityServicePriceUtil {
 	
 	private static Log log = LogFactory.getLog(FacilityServicePriceUtil.class);
 
+	private static final BigDecimal QUARTER = new BigDecimal(25)
+			.divide(new BigDecimal(100));
+
+	private static final BigDecimal FIFTH = new BigDecimal(20)
+			.divide(new BigDecimal(100));
+
 	/**
 	 * Offers the BillingService to be use to talk to the DB
 	 * 
@@ -504,23 +509,69 @@ public class FacilityServicePriceUtil {
 		return false;
 	}
 	
+	/**
+	 * Gets the maximum an insurance pays for a facility service: the full price
+	 * for the drugs, consumables and other items, and for the acts the full
+	 * price for the base insurances, half of it for the mutuelles, 25% more
+	 * for the private insurances and 25% then 20% more for the non insured.
+	 * 
+	 * @param fsp
+	 *            the facility service
+	 * @param insurance
+	 *            the insurance
+	 * @return the maxima to pay
+	 */
+	public static BigDecimal getMaximaToPay(FacilityServicePrice fsp,
+			Insurance insurance) {
+
+		BigDecimal fullPrice = fsp.getFullPrice();
+		String category = (fsp.getCategory() != null) ? fsp.getCategory()
+				.toLowerCase() : "";
+
+		if (category.equals("medicaments") || category.equals("consommables")
+				|| category.equals("autres"))
+			return fullPrice;
+
+		String insuranceCategory = insurance.getCategory().toLowerCase();
+		if (insuranceCategory.equals("mutuelle")) {
+			return fullPrice.divide(new BigDecimal(2));
+		} else if (insuranceCategory.equals("private")) {
+			return fullPrice.add(fullPrice.multiply(QUARTER));
+		} else if (insuranceCategory.equals("none")) {
+			BigDecimal initial = fullPrice.add(fullPrice.multiply(QUARTER));
+			return initial.add(initial.multiply(FIFTH));
+		}
+
+		return fullPrice;
+	}
+
+	/**
+	 * Sets the tariff of many facility services at once for every insurance,
+	 * e.g. for a yearly tariff revision, creating the missing billable
+	 * services
+	 * 
+	 * @param facilityServices
+	 *            the facility services whose price changed
+	 * @param startDate
+	 *            the start date of the new tariff
+	 * @return the number of billable services saved
+	 */
+	public static int propagateTariffs(
+			List<FacilityServicePrice> facilityServices, Date startDate) {
+
+		return getService().propagateTariffs(facilityServices, startDate, true);
+	}
+
 	public static String saveBillableServiceByInsurance(HttpServletRequest request) {
-		List<Insurance> insurances = getService().getAllInsurances();
-		
 		SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd");
 		
 		FacilityServicePrice fsp = null;
-		BillableService bs = new BillableService();
-		
-		BillableService bscopy = new BillableService();
 		
 		String startDateStr = null, msg = null;
 		Date startDate = null;
 		
 		if(request.getParameter("startDate") != null && !request.getParameter("startDate").equals("")
 				&& request.getParameter("facilityServiceId") != null && !request.getParameter("facilityServiceId").equals("")) {
-			System.out.println("Facility Service Id: " + request.getParameter("facilityServiceId"));
-			
 			startDateStr = request.getParameter("startDate");
 			
 			try {
@@ -531,147 +582,39 @@ public class FacilityServicePriceUtil {
 			
 			fsp = getService().getFacilityServicePrice(Integer.valueOf(request.getParameter("facilityServiceId")));
 		}
-		
-		BigDecimal quarter = new BigDecimal(25).divide(new BigDecimal(100));
-		BigDecimal fifth = new BigDecimal(20).divide(new BigDecimal(100));
-		
-	
-		
-		for(Insurance insurance : insurances) {
-			if(!insurance.isVoided())			
-				try {
-					if(!fsp.getCategory().toLowerCase().equals("medicaments") && !fsp.getCategory().toLowerCase().equals("consommables")&&!fsp.getCategory().equals("AUTRES")) {
-									
-						if(FacilityServicePriceUtil.isBillableCreated(fsp, insurance)) {
-							System.out.println("The bill exist already");
-							
-							bs = getService().getBillableServiceByConcept(fsp, insurance);
-							bs.setStartDate(startDate);
-							bs.setInsurance(insurance);
-							bs.setServiceCategory(getService().getServiceCategoryByName(fsp.getCategory(), insurance));
-							bs.setCreatedDate(new Date());
-							bs.setRetired(false);
-							bs.setCreator(Context.getAuthenticatedUser());
-							bs.setFacilityServicePrice(fsp);
-							
-							if(insurance.getCategory().toLowerCase().equals("base")) {
-								bs.setMaximaToPay(fsp.getFullPrice());
-							} else if(insurance.getCategory().toLowerCase().equals("mutuelle")) {
-								bs.setMaximaToPay(fsp.getFullPrice().divide(new BigDecimal(2)));
-							} else if(insurance.getCategory().toLowerCase().equals("private")) {
-								bs.setMaximaToPay(fsp.getFullPrice().add(fsp.getFullPrice().multiply(quarter)));
-							} else if(insurance.getCategory().toLowerCase().equals("none")) {
-								BigDecimal initial = fsp.getFullPrice().add(fsp.getFullPrice().multiply(quarter));
-								bs.setMaximaToPay(initial.add(initial.multiply(fifth)));
-							}
-
-						} else {
-							bs = new BillableService();
-							bs.setStartDate(startDate);
-							bs.setInsurance(insurance);
-							bs.setServiceCategory(getService().getServiceCategoryByName(fsp.getCategory(), insurance));
-							bs.setCreatedDate(new Date());
-							bs.setRetired(false);
-							bs.setCreator(Context.getAuthenticatedUser());
-							bs.setFacilityServicePrice(fsp);
-							if(insurance.getCategory().toLowerCase().equals("base")) {
-								bs.setMaximaToPay(fsp.getFullPrice());
-							} else if(insurance.getCategory().toLowerCase().equals("mutuelle")) {
-								bs.setMaximaToPay(fsp.getFullPrice().divide(new BigDecimal(2)));
-							} else if(insurance.getCategory().toLowerCase().equals("private")) {
-								bs.setMaximaToPay(fsp.getFullPrice().add(fsp.getFullPrice().multiply(quarter)));
-							} else if(insurance.getCategory().toLowerCase().equals("none")) {
-								BigDecimal initial = fsp.getFullPrice().add(fsp.getFullPrice().multiply(quarter));
-								bs.setMaximaToPay(initial.add(initial.multiply(fifth)));
-							}
-						}
-					} 
-					else {
-						if(FacilityServicePriceUtil.isBillableCreated(fsp, insurance)) {
-							System.out.println("Existing tarrif item");
-							bs = getService().getBillableServiceByConcept(fsp, insurance);
-							bs.setStartDate(startDate);
-							bs.setInsurance(insurance);
-							bs.setServiceCategory(getService().getServiceCategoryByName(fsp.getCategory(), insurance));
-							bs.setCreatedDate(new Date());
-							bs.setRetired(false);
-							bs.setCreator(Context.getAuthenticatedUser());
-							bs.setFacilityServicePrice(fsp);
-							bs.setMaximaToPay(fsp.getFullPrice());
-						} else {
-							System.out.println("New Tarrif item");
-							bs = new BillableService();
-							bs.setStartDate(startDate);
-							bs.setInsurance(insurance);
-							bs.setServiceCategory(getService().getServiceCategoryByName(fsp.getCategory(), insurance));
-							bs.setCreatedDate(new Date());
-							bs.setRetired(false);
-							bs.setCreator(Context.getAuthenticatedUser());
-							bs.setFacilityServicePrice(fsp);
-							bs.setMaximaToPay(fsp.getFullPrice());
-						}
-					}
-					
-					fsp.addBillableService(bs);
-					getService().saveFacilityServicePrice(fsp);
 
-					msg = "Updated Successfully";
-				} catch(Exception e) {
-					log.error(">>>MOH>>BILLING>>BULK UPDATE>> " + e.getMessage());
-					e.printStackTrace();
+		if (fsp != null)
+			try {
+				List<FacilityServicePrice> facilityServices = new ArrayList<FacilityServicePrice>();
+				facilityServices.add(fsp);
+				propagateTariffs(facilityServices, startDate);
+
+				msg = "Updated Successfully";
+			} catch(Exception e) {
+				log.error(">>>MOH>>BILLING>>BULK UPDATE>> " + e.getMessage());
+				e.printStackTrace();
 			}
-		}
+
 		return msg;
 	}
 
+	/**
+	 * Updates the existing billable services of an edited facility service to
+	 * its new price, starting today
+	 * 
+	 * @param fsp
+	 *            the edited facility service
+	 */
 	public static void cascadeUpdateFacilityService(FacilityServicePrice fsp) {
-		
-		List<Insurance> insurances = getService().getAllInsurances();
-		Set<BillableService> billableServices = fsp.getBillableServices();
-		
-		BigDecimal quarter = new BigDecimal(25).divide(new BigDecimal(100));
-		BigDecimal fifth = new BigDecimal(20).divide(new BigDecimal(100));
-		
-		for(Insurance insurance : insurances) {
-		 if(!insurance.isVoided())	
-			 try{
-			  
-			for(BillableService bs:billableServices) {	
-				bs = getService().getBillableServiceByConcept(fsp, insurance);
-				bs.setStartDate(new Date());
-				bs.setInsurance(insurance);
-				bs.setServiceCategory(getService().getServiceCategoryByName(fsp.getCategory(), insurance));
-				bs.setCreatedDate(new Date());
-				bs.setRetired(false);
-				bs.setCreator(Context.getAuthenticatedUser());
-				bs.setFacilityServicePrice(fsp);
-				
-				if(!fsp.getCategory().toLowerCase().equals("medicaments") && !fsp.getCategory().toLowerCase().equals("consommables")) {
-				if(insurance.getCategory().toLowerCase().equals("base")) {
-					bs.setMaximaToPay(fsp.getFullPrice());
-				} else if(insurance.getCategory().toLowerCase().equals("mutuelle")) {
-					bs.setMaximaToPay(fsp.getFullPrice().divide(new BigDecimal(2)));
-				} else if(insurance.getCategory().toLowerCase().equals("private")) {
-					bs.setMaximaToPay(fsp.getFullPrice().add(fsp.getFullPrice().multiply(quarter)));
-				} else if(insurance.getCategory().toLowerCase().equals("none")) {
-					BigDecimal initial = fsp.getFullPrice().add(fsp.getFullPrice().multiply(quarter));
-					bs.setMaximaToPay(initial.add(initial.multiply(fifth)));
-				}
-				fsp.addBillableService(bs);
-			} 
-				else
-					bs.setMaximaToPay(fsp.getFullPrice());  
-				  
-		}
-		  
-		}
-		 catch (Exception e) {
-			// TODO: handle exception
-		}
-	
-			getService().saveFacilityServicePrice(fsp);
-			log.info("wouuuuuuuuuuuuuuuuuuuuuuu Updated Successfully");
-		}
 
+		List<FacilityServicePrice> facilityServices = new ArrayList<FacilityServicePrice>();
+		facilityServices.add(fsp);
+
+		try {
+			getService().propagateTariffs(facilityServices, new Date(), false);
+		} catch (Exception e) {
+			log.error(">>>MOH>>BILLING>>CASCADE UPDATE>> " + e.getMessage());
+			e.printStackTrace();
+		}
 	}
 }
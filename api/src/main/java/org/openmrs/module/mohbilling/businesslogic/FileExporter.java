@@ -22,14 +22,18 @@ import org.openmrs.Patient;
 import org.openmrs.api.context.Context;
 import org.openmrs.module.mohbilling.businesslogic.ReportsUtil.HeaderFooter;
 import org.openmrs.module.mohbilling.model.BillPayment;
+import org.openmrs.module.mohbilling.model.CohortQuery;
 import org.openmrs.module.mohbilling.model.Consommation;
+import org.openmrs.module.mohbilling.model.Insurance;
 import org.openmrs.module.mohbilling.model.PatientBill;
 import org.openmrs.module.mohbilling.model.PatientInvoice;
 import org.openmrs.module.mohbilling.model.PatientServiceBill;
+import org.openmrs.module.mohbilling.service.BillingService;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
@@ -44,6 +48,14 @@ public class FileExporter {
 
 	private static Log log = LogFactory.getLog(FileExporter.class);
 
+	/** Number of bills loaded at a time by the streamed csv export */
+	private static final int CSV_PAGE_SIZE = 100;
+
+	/** Number of rows of a large pdf table kept in memory before being written */
+	private static final int PDF_ROWS_PER_FLUSH = 50;
+
+	private HashMap<String, FontSelector> fontsMap;
+
 	/**
 	 * gets a list and export it in csv/pdf
 	 * 
@@ -66,6 +78,95 @@ public class FileExporter {
 		Double insuranceRate = null;
 		SimpleDateFormat df = new SimpleDateFormat("dd-MM-yyyy");
 
+		for (PatientBill pb : map.keySet()) {
+			serviceCategories=(Set<String>) map.get(pb).getInvoiceMap().keySet();
+			insuranceRate = TariffMatrixUtil.getCurrentRate(pb.getBeneficiary().getInsurancePolicy().getInsurance()).doubleValue();
+	    }
+		printCSVHeader(op, serviceCategories, insuranceRate);
+		
+		//display content
+		Map<String, Double> totals = new LinkedHashMap<String, Double>();
+		for (PatientBill pb : map.keySet())
+			printCSVRow(op, df, pb, map.get(pb), insuranceRate, totals);
+
+		printCSVTotals(op, totals, insuranceRate);
+		
+		op.flush();
+		op.close();
+	}
+
+	/**
+	 * Exports in csv the invoices of the bills matching the cohort query and
+	 * whose beneficiary is insured by the insurance of the query. The rows are
+	 * streamed to the response: the bills are loaded by pages of
+	 * <code>CSV_PAGE_SIZE</code> ordered by id, each row is flushed as soon as
+	 * it is built and the session is cleared after every page, so that the
+	 * memory used does not grow with the number of bills exported.
+	 * 
+	 * @param request
+	 * @param response
+	 * @param cohortQuery the bill cohort, its insurance is required
+	 * @param filename
+	 * @param title
+	 * @throws Exception
+	 */
+	public void exportToCSVFile(HttpServletRequest request,
+			HttpServletResponse response, CohortQuery cohortQuery, String filename, String title) throws Exception {
+
+		response.setContentType("text/plain");
+		response.setHeader("Content-Disposition", "attachment; filename=\"releve.csv\"");
+
+		writeInvoicesCSV(response.getWriter(), cohortQuery);
+	}
+
+	/**
+	 * Writes in csv the invoices of the bills matching the cohort query, see
+	 * {@link #exportToCSVFile(HttpServletRequest, HttpServletResponse, CohortQuery, String, String)}
+	 * 
+	 * @param op the writer, closed once the invoices are written
+	 * @param cohortQuery the bill cohort, its insurance is required
+	 * @throws Exception
+	 */
+	public void writeInvoicesCSV(PrintWriter op, CohortQuery cohortQuery) throws Exception {
+
+		BillingService service = Context.getService(BillingService.class);
+		Integer insuranceId = cohortQuery.getInsurance().getInsuranceId();
+		Double insuranceRate = cohortQuery.getInsurance().getCurrentRate().getRate().doubleValue();
+		SimpleDateFormat df = new SimpleDateFormat("dd-MM-yyyy");
+
+		printCSVHeader(op, PatientBillUtil.getRecoveryCategiesMap().keySet(), insuranceRate);
+		op.flush();
+
+		Map<String, Double> totals = new LinkedHashMap<String, Double>();
+		cohortQuery.setAfterId(null);
+		cohortQuery.setMaxResults(CSV_PAGE_SIZE);
+		List<PatientBill> page = service.getBillCohort(cohortQuery);
+
+		while (!page.isEmpty()) {
+			for (PatientBill pb : page) {
+				Insurance insurance = pb.getBeneficiary().getInsurancePolicy().getInsurance();
+				if (insurance.getInsuranceId().equals(insuranceId)) {
+					printCSVRow(op, df, pb, PatientBillUtil.getPatientInvoice(pb, insurance), insuranceRate, totals);
+					op.flush();
+				}
+				cohortQuery.setAfterId(pb.getPatientBillId());
+			}
+			// the exported bills are not needed anymore
+			Context.clearSession();
+			page = service.getBillCohort(cohortQuery);
+		}
+
+		printCSVTotals(op, totals, insuranceRate);
+
+		op.flush();
+		op.close();
+	}
+
+	/**
+	 * Prints the facility details and the column names of the invoices csv
+	 */
+	private void printCSVHeader(PrintWriter op, Set<String> serviceCategories, Double insuranceRate) {
+
         String facilityName = getGlobalProperty(BillingConstants.GLOBAL_PROPERTY_HEALTH_FACILITY_NAME, null);
         String facilityAddress = getGlobalProperty(BillingConstants.GLOBAL_PROPERTY_HEALTH_FACILITY_PHYSICAL_ADDRESS, null);
         String facilityShortCode = getGlobalProperty(BillingConstants.GLOBAL_PROPERTY_HEALTH_FACILITY_SHORT_CODE, null);
@@ -91,76 +192,52 @@ public class FileExporter {
 		
 		// display report column names
 		op.print("Date,Card Number,Names");
-		for (PatientBill pb : map.keySet()) {
-			serviceCategories=(Set<String>) map.get(pb).getInvoiceMap().keySet();
-			insuranceRate = pb.getBeneficiary().getInsurancePolicy().getInsurance().getCurrentRate().getRate().doubleValue();
-	    }
-//		String totalCateg_="";
 		for (String cat : serviceCategories) {
 			op.print(","+cat);
-//			totalCateg_=totalCateg_+cat;
-//			log.info("dynamicccccccccccccccccccccccc "+totalCateg_);
 		}
 		op.print(",100%");
 		op.print(","+(100-insuranceRate)+"%");
 		op.print(","+insuranceRate+"%");
 		op.println();
+	}
+
+	/**
+	 * Prints the invoice of a bill and adds its sub totals to the totals by
+	 * service category
+	 */
+	private void printCSVRow(PrintWriter op, SimpleDateFormat df, PatientBill pb,
+			PatientInvoice invoice, Double insuranceRate, Map<String, Double> totals) {
+
+		Double totalBill=0.0;
 		
-		//display content
-		Double totalConsult = 0.0;
-		Double totalLabo = 0.0;
-		Double totalImagery = 0.0;
-		Double totalActs = 0.0;
-		Double totalMedica = 0.0;
-		Double totalConsomm = 0.0;
-		Double totalAmbul = 0.0;
-		Double totalAutres = 0.0;
-		Double totalHosp = 0.0;
-		Double total100 = 0.0;
-		Double totalTickMod = 0.0;
-		Double totalRate = 0.0;
-		
-		for (PatientBill pb : map.keySet()) {
-			Double totalBill=0.0;
-			
-			op.print(df.format(pb.getCreatedDate())+","+pb.getBeneficiary().getInsurancePolicy().getInsuranceCardNo()+","+pb.getBeneficiary().getPatient().getFamilyName()+" "+pb.getBeneficiary().getPatient().getGivenName());
-			for (String st : map.get(pb).getInvoiceMap().keySet()) {
-			op.print(","+map.get(pb).getInvoiceMap().get(st).getSubTotal());
-			totalBill+=map.get(pb).getInvoiceMap().get(st).getSubTotal();
-//			String total="total"+"_"+st;
-//			log.info("dynamicccccccccccccccccccccccc "+total);
-			
-			total100+=map.get(pb).getInvoiceMap().get(st).getSubTotal();;
-			
-			if(st.equals("CONSULTATION"))
-			totalConsult+=map.get(pb).getInvoiceMap().get(st).getSubTotal();
-			if(st.equals("LABORATOIRE"))
-			totalLabo+=map.get(pb).getInvoiceMap().get(st).getSubTotal();
-			if(st.equals("IMAGERIE"))
-			totalImagery+=map.get(pb).getInvoiceMap().get(st).getSubTotal();
-			if(st.equals("ACTS"))
-			totalActs+=map.get(pb).getInvoiceMap().get(st).getSubTotal();
-			if(st.equals("MEDICAMENTS"))
-			totalMedica+=map.get(pb).getInvoiceMap().get(st).getSubTotal();
-			if(st.equals("CONSOMMABLES"))
-			totalConsomm+=map.get(pb).getInvoiceMap().get(st).getSubTotal();
-			if(st.equals("AMBULANCE"))
-			totalAmbul+=map.get(pb).getInvoiceMap().get(st).getSubTotal();
-			if(st.equals("AUTRES"))
-			totalAutres+=map.get(pb).getInvoiceMap().get(st).getSubTotal();
-			if(st.equals("HOSPITALISATION"))
-			totalHosp+=map.get(pb).getInvoiceMap().get(st).getSubTotal();
+		op.print(df.format(pb.getCreatedDate())+","+pb.getBeneficiary().getInsurancePolicy().getInsuranceCardNo()+","+pb.getBeneficiary().getPatient().getFamilyName()+" "+pb.getBeneficiary().getPatient().getGivenName());
+		for (String st : invoice.getInvoiceMap().keySet()) {
+			Double subTotal = invoice.getInvoiceMap().get(st).getSubTotal();
+			op.print(","+subTotal);
+			totalBill+=subTotal;
+			totals.put(st, (totals.containsKey(st) ? totals.get(st) : 0.0) + subTotal);
 		}
-			op.print(","+ ReportsUtil.roundTwoDecimals(totalBill)+","+ ReportsUtil.roundTwoDecimals(totalBill*(100-insuranceRate)/100)+","+ ReportsUtil.roundTwoDecimals(totalBill*insuranceRate)/100);
-			op.println();
+		op.print(","+ ReportsUtil.roundTwoDecimals(totalBill)+","+ ReportsUtil.roundTwoDecimals(totalBill*(100-insuranceRate)/100)+","+ ReportsUtil.roundTwoDecimals(totalBill*insuranceRate)/100);
+		op.println();
+	}
+
+	/**
+	 * Prints the totals by service category, the grand total and its patient
+	 * and insurance shares
+	 */
+	private void printCSVTotals(PrintWriter op, Map<String, Double> totals, Double insuranceRate) {
+
+		Double total100 = 0.0;
+		op.print("TOTAL"+","+",");
+		for (String category : PatientBillUtil.getRecoveryCategiesMap().keySet()) {
+			Double total = totals.containsKey(category) ? totals.get(category) : 0.0;
+			op.print(","+ReportsUtil.roundTwoDecimals(total));
+			total100+=total;
 		}
-		totalTickMod = ReportsUtil.roundTwoDecimals(total100*(100-insuranceRate)/100);
-		totalRate = ReportsUtil.roundTwoDecimals(total100*(insuranceRate/100));
-		
-		op.print("TOTAL"+","+","+","+totalConsult+","+totalLabo+","+totalImagery+","+totalActs+","+ReportsUtil.roundTwoDecimals(totalMedica)+","+ReportsUtil.roundTwoDecimals(totalConsomm)+","+totalAmbul+","+totalAutres+","+totalHosp+","+ReportsUtil.roundTwoDecimals(total100)+","+totalTickMod+","+totalRate);
-		
-		op.flush();
-		op.close();
+		Double totalTickMod = ReportsUtil.roundTwoDecimals(total100*(100-insuranceRate)/100);
+		Double totalRate = ReportsUtil.roundTwoDecimals(total100*(insuranceRate/100));
+
+		op.print(","+ReportsUtil.roundTwoDecimals(total100)+","+totalTickMod+","+totalRate);
 	}
 
 	/**
@@ -177,7 +254,7 @@ public class FileExporter {
 		
 		Font headingFont = new Font(Font.FontFamily.COURIER, 8,Font.NORMAL);
 		FontSelector fontSelector = (FontSelector) getFonts().get("NORMAL");
-		FileExporter fexp = new FileExporter();
+		FileExporter fexp = this;
 		
 		//create/open a document
 		Document document = fexp.makeReportHeader(request, response, pb);
@@ -209,8 +286,23 @@ public class FileExporter {
 	}
 	public void printCashierReport(HttpServletRequest request,	HttpServletResponse response,LinkedHashMap<String, Map<String, Double>> basedDateReport, String filename, String title) throws Exception {
 
-		
-		Document document =creadPdfHeader(request, response, basedDateReport, filename, title);
+		response.setContentType("application/pdf");
+		response.setHeader("Content-Disposition", "attachment; filename=\""	+ filename + "\""); // file name
+		writeCashierReport(response.getOutputStream(), basedDateReport);
+	}
+
+	/**
+	 * Writes the pdf of the daily cashier report, the due of each service
+	 * category by date
+	 *
+	 * @param out the stream the pdf is written to
+	 * @param basedDateReport the dues of each date, as computed by
+	 *            {@link ReportsUtil#getAllBillsByCollector}
+	 * @throws Exception
+	 */
+	public void writeCashierReport(OutputStream out, LinkedHashMap<String, Map<String, Double>> basedDateReport) throws Exception {
+
+		Document document = createCashierReportDocument(out);
 		// title row
 		FontSelector fontTitleSelector = new FontSelector();
 		fontTitleSelector.addFont(new Font(FontFamily.COURIER, 7, Font.BOLD));
@@ -323,8 +415,7 @@ public class FileExporter {
 
 		// Define my Table;
 		float[] colsWidth = { 0.5f, 2f, 2f, 3f, 2f, 2f};
-		PdfPTable table = new PdfPTable(colsWidth);
-		table.setWidthPercentage(100f);
+		PdfPTable table = createLargeTable(colsWidth);
 		BaseColor bckGroundTitle = new BaseColor(255, 255, 255);
 		
 		// normal row
@@ -423,6 +514,7 @@ public class FileExporter {
 
 			cell = new PdfPCell(fontselector.process("" + pay.getAmountPaid()));
 			table.addCell(cell);	
+			flushRows(document, table, number);
 			
 			} 			
 //		document.add(table);
@@ -452,7 +544,7 @@ public class FileExporter {
 		
 		cell = new PdfPCell(boldFont.process(""+ total));
 		table.addCell(cell);
-		document.add(table);
+		completeTable(document, table);
 		
 		document.add(new Paragraph("\n\n"));	
 		
@@ -482,15 +574,19 @@ public class FileExporter {
 	}
 
 	public static Document creadPdfHeader(HttpServletRequest request,	HttpServletResponse response,LinkedHashMap<String, Map<String, Double>> basedDateReport, String filename, String title) throws Exception {
+
+		response.setContentType("application/pdf");
+		response.setHeader("Content-Disposition", "attachment; filename=\""	+ filename + "\""); // file name
+		return createCashierReportDocument(response.getOutputStream());
+	}
+
+	private static Document createCashierReportDocument(OutputStream out) throws Exception {
 		Rectangle pagesize = new Rectangle(360f, 720f);
 		Document document = new Document(pagesize, 36f, 72f, 109f, 180f);
 
 		document.setPageSize(PageSize.A4.rotate());
 
-		response.setContentType("application/pdf");
-		response.setHeader("Content-Disposition", "attachment; filename=\""	+ filename + "\""); // file name
-
-		PdfWriter writer = PdfWriter.getInstance(document,response.getOutputStream());
+		PdfWriter writer = PdfWriter.getInstance(document,out);
 		writer.setBoxSize("art", PageSize.A4.rotate());
 
 		HeaderFooter event = new HeaderFooter();
@@ -702,7 +798,7 @@ public class FileExporter {
 			cell = new PdfPCell(font.process("TICKET MODERATEUR"));
 			table.addCell(cell);
 			
-			float insuranceRate = patientInvoice.getPatientBill().getBeneficiary().getInsurancePolicy().getInsurance().getCurrentRate().getRate();
+			float insuranceRate = TariffMatrixUtil.getCurrentRate(patientInvoice.getPatientBill().getBeneficiary().getInsurancePolicy().getInsurance());
 			float ticketModer = 100-insuranceRate;
 			
 			cell = new PdfPCell(font.process(""+(100-insuranceRate)));
@@ -721,20 +817,72 @@ public class FileExporter {
 			table.addCell(cell);
 			return table;
 		}
+		/**
+		 * Gets the NORMAL and BOLD font selectors of this exporter. They are
+		 * created once and reused by every table and row the exporter prints.
+		 * 
+		 * @return the font selectors by name
+		 */
 		public HashMap getFonts(){
-			HashMap<String, FontSelector> fontsMap = new HashMap<String, FontSelector>();
-			
-			FontSelector normal = new FontSelector();
-			normal.addFont(new Font(FontFamily.COURIER, 9.0f, Font.NORMAL));
-			
-			FontSelector boldFont = new FontSelector();
-			boldFont.addFont(new Font(FontFamily.COURIER, 9, Font.BOLD));
-			
-			fontsMap.put("NORMAL", normal);
-			fontsMap.put("BOLD",boldFont);
+			if (fontsMap == null) {
+				fontsMap = new HashMap<String, FontSelector>();
+				
+				FontSelector normal = new FontSelector();
+				normal.addFont(RenderingResourceCache.NORMAL_FONT);
+				
+				FontSelector boldFont = new FontSelector();
+				boldFont.addFont(RenderingResourceCache.BOLD_FONT);
+				
+				fontsMap.put("NORMAL", normal);
+				fontsMap.put("BOLD",boldFont);
+			}
 			return fontsMap;
 		}
 
+		/**
+		 * Creates a table whose rows are written to the document by parts, as
+		 * they are added, rather than all at once when the table is complete.
+		 * Its first row is the header, repeated on every page.
+		 * 
+		 * @param colsWidth the relative widths of the columns
+		 * @return the incomplete table
+		 * @see #flushRows(Document, PdfPTable, int)
+		 * @see #completeTable(Document, PdfPTable)
+		 */
+		public static PdfPTable createLargeTable(float[] colsWidth) {
+			PdfPTable table = new PdfPTable(colsWidth);
+			table.setWidthPercentage(100f);
+			table.setHeaderRows(1);
+			table.setComplete(false);
+			return table;
+		}
+
+		/**
+		 * Writes the rows added so far to the document and releases them, every
+		 * <code>PDF_ROWS_PER_FLUSH</code> rows
+		 * 
+		 * @param document the opened document
+		 * @param table a table created by {@link #createLargeTable(float[])}
+		 * @param rowNumber the number of body rows added so far
+		 * @throws DocumentException
+		 */
+		public static void flushRows(Document document, PdfPTable table, int rowNumber) throws DocumentException {
+			if (rowNumber % PDF_ROWS_PER_FLUSH == 0)
+				document.add(table);
+		}
+
+		/**
+		 * Writes the remaining rows of a large table to the document
+		 * 
+		 * @param document the opened document
+		 * @param table a table created by {@link #createLargeTable(float[])}
+		 * @throws DocumentException
+		 */
+		public static void completeTable(Document document, PdfPTable table) throws DocumentException {
+			table.setComplete(true);
+			document.add(table);
+		}
+
 		public Document makeReportHeader(HttpServletRequest request,
 				HttpServletResponse response,PatientBill pb) throws DocumentException, IOException{
 			Document document = new Document();
@@ -778,8 +926,8 @@ public class FileExporter {
 			return table;
 		}
 		public float getPatientRate(PatientBill pb){
-			return 100 - (pb.getBeneficiary().getInsurancePolicy().getInsurance()
-					.getCurrentRate().getRate());
+			return 100 - TariffMatrixUtil.getCurrentRate(pb.getBeneficiary()
+					.getInsurancePolicy().getInsurance());
 		}
 		public void pdfPrintRefundReport(HttpServletRequest request, HttpServletResponse response,Set<PatientBill> patientBill, String filename, String title) throws Exception {
 
@@ -815,8 +963,7 @@ public class FileExporter {
 			document.add(pa);
 			document.add(new Paragraph("\n"));	
 			float[] colsWidth = { 5f,5f, 10f, 10f, 10f, 60f};
-			PdfPTable table = new PdfPTable(colsWidth);
-			table.setWidthPercentage(100f);
+			PdfPTable table = createLargeTable(colsWidth);
 			
 			
 			PdfPCell cell = new PdfPCell(font.process("#"));
@@ -896,6 +1043,7 @@ public class FileExporter {
 					payTable.addCell(c);
 				}
 				table.addCell(payTable);
+				flushRows(document, table, number);
 			} 			
 			
 //			float[] colsWidth2 = { 6}; 
@@ -921,7 +1069,7 @@ public class FileExporter {
 //			tableTotal.setHorizontalAlignment(Element.ALIGN_RIGHT);
 			
 			
-			document.add(table);
+			completeTable(document, table);
 			document.add(tableTotal);
 			document.close();
 			
@@ -945,34 +1093,27 @@ public class FileExporter {
         return false;
    }
 
+    /**
+     * @return the health facility logo scaled to fit 40 by 40 points, decoded once by the {@link RenderingResourceCache}
+     */
     public static Image getImage() {
-        String imagePath = getGlobalProperty(BillingConstants.GLOBAL_PROPERTY_HEALTH_FACILITY_LOGO, null);
-        try {
-            Image image = Image.getInstance(imagePath);
-            image.scaleToFit(40, 40);
-            return image;
-        }
-        catch (Exception e) {
-            log.warn("WARNING: Unable to get health facility image logo.  Please check that '" + imagePath + "' is valid");
-        }
-        return null;
+        return RenderingResourceCache.getResources().getLogo();
     }
 
     /**
      * @return the name, address, and email of the facility as configured in the global properties, on three lines
      */
     public static String getAddress(){
-        String facilityName = getGlobalProperty(BillingConstants.GLOBAL_PROPERTY_HEALTH_FACILITY_NAME, "");
-        String facilityPhysicAddress = getGlobalProperty(BillingConstants.GLOBAL_PROPERTY_HEALTH_FACILITY_PHYSICAL_ADDRESS, "");
-        String facilityEmail = getGlobalProperty(BillingConstants.GLOBAL_PROPERTY_HEALTH_FACILITY_EMAIL, "");
-        String fullAddress =facilityName +"\n"+facilityPhysicAddress+"\n"+facilityEmail;
-        return fullAddress;
+        return RenderingResourceCache.getResources().getAddress();
     }
 
     /**
-     * @return the global property value with the configured name
+     * @return the global property value with the configured name, the health facility ones being cached
      */
     protected static String getGlobalProperty(String propertyName, String defaultValue) {
+        if (RenderingResourceCache.isHealthFacilityProperty(propertyName))
+            return RenderingResourceCache.getResources().getProperty(propertyName, defaultValue);
+
         String value = Context.getAdministrationService().getGlobalProperty(propertyName);
         return StringUtils.isNotBlank(value) ? value : defaultValue;
     }
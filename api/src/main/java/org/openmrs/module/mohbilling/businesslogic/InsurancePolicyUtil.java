@@ -49,22 +49,8 @@ public class InsurancePolicyUtil {
 	public static List<InsurancePolicy> getValidInsurancePolicyOnDate(
 			Beneficiary beneficiary, Date date) {
 
-		List<InsurancePolicy> insurancePolicies = new ArrayList<InsurancePolicy>();
-		for (InsurancePolicy insurancePolicy : getService()
-				.getAllInsurancePolicies()) {
-			for (Beneficiary ben : insurancePolicy.getBeneficiaries()) {
-
-				if (ben.equals(beneficiary)
-						&& (insurancePolicy.getCoverageStartDate().compareTo(
-								date) < 0)
-						&& (insurancePolicy.getExpirationDate().compareTo(date) > 0)) {
-					insurancePolicies.add(insurancePolicy);
-				}
-			}
-
-		}
-		return insurancePolicies;
-
+		return getService().getInsurancePoliciesByBeneficiaryOnDate(
+				beneficiary, date);
 	}
 
 	/**
@@ -77,21 +63,7 @@ public class InsurancePolicyUtil {
 	public static List<InsurancePolicy> getValidInsurancePolicyOnDate(
 			Person owner, Date date) {
 
-		List<InsurancePolicy> insurancePolicies = new ArrayList<InsurancePolicy>();
-		for (InsurancePolicy insurancePolicy : getService()
-				.getAllInsurancePolicies()) {
-			for (Beneficiary ben : insurancePolicy.getBeneficiaries()) {
-
-				if (ben.equals(owner)
-						&& (insurancePolicy.getCoverageStartDate().compareTo(
-								date) < 0)
-						&& (insurancePolicy.getExpirationDate().compareTo(date) > 0)) {
-					insurancePolicies.add(insurancePolicy);
-				}
-			}
-
-		}
-		return insurancePolicies;
+		return getService().getInsurancePoliciesByOwnerOnDate(owner, date);
 	}
 
 	/**
@@ -110,7 +82,8 @@ public class InsurancePolicyUtil {
 			beneficiary.setCreator(Context.getAuthenticatedUser());
 
 			beneficiary.getInsurancePolicy().addBeneficiary(beneficiary);
-			getService().saveInsurancePolicy(beneficiary.getInsurancePolicy());			
+			getService().saveInsurancePolicy(beneficiary.getInsurancePolicy());
+			BeneficiarySearchIndex.update(beneficiary.getInsurancePolicy());
 			return beneficiary;
 		}
 		return null;
@@ -128,8 +101,10 @@ public class InsurancePolicyUtil {
 
 		if (card != null) {
 
-			if (card.getInsurancePolicyId() != null)
+			if (card.getInsurancePolicyId() != null) {
 				getService().saveInsurancePolicy(card);
+				BeneficiarySearchIndex.update(card);
+			}
 
 			else {
 
@@ -184,6 +159,7 @@ public class InsurancePolicyUtil {
 				card.addBeneficiary(beneficiary);
 
 				getService().saveInsurancePolicy(card);
+				BeneficiarySearchIndex.update(card);
 			}
 
 			return card;
@@ -218,6 +194,7 @@ public class InsurancePolicyUtil {
 					beneficiary.setRetiredDate(card.getRetiredDate());
 					beneficiary.setRetireReason(card.getRetireReason());
 				}
+			BeneficiarySearchIndex.update(card);
 
 			return card;
 		}
@@ -252,6 +229,7 @@ public class InsurancePolicyUtil {
 			}
 
 		getService().saveInsurancePolicy(card);
+		BeneficiarySearchIndex.update(card);
 
 	}
 
@@ -287,6 +265,8 @@ public class InsurancePolicyUtil {
 
 					getService().saveInsurancePolicy(
 							beneficiary.getInsurancePolicy());
+					BeneficiarySearchIndex.update(beneficiary
+							.getInsurancePolicy());
 				}
 			return beneficiary;
 		}
@@ -315,11 +295,12 @@ public class InsurancePolicyUtil {
 	 */
 	public static InsurancePolicy getInsurancePolicyByOwner(Patient patient) {
 
-		if (patient != null)
-			for (InsurancePolicy card : getService().getAllInsurancePolicies())
-
-				if (card.getOwner().equals(patient))
-					return card;
+		if (patient != null) {
+			List<InsurancePolicy> cards = getService()
+					.getInsurancePoliciesByOwner(patient);
+			if (!cards.isEmpty())
+				return cards.get(0);
+		}
 
 		return null;
 	}
@@ -332,18 +313,8 @@ public class InsurancePolicyUtil {
 	 */
 	public static List<InsurancePolicy> getInsurancePoliciesByInsurance(
 			Insurance insurance) {
-		List<InsurancePolicy> CardsList = new ArrayList<InsurancePolicy>();
-
-		List<InsurancePolicy> allCards = getService().getAllInsurancePolicies();
-		for (InsurancePolicy oneCard : allCards) {
-			if (oneCard.getInsurance().equals(insurance)) {
-				CardsList.add(oneCard);
 
-			}
-
-		}
-
-		return CardsList;
+		return getService().getInsurancePoliciesByInsurance(insurance);
 	}
 
 	public static Set<Beneficiary> getInsurancyPolicyBeneficiary(
@@ -363,18 +334,7 @@ public class InsurancePolicyUtil {
 		// or more
 		// than 1
 		// (InsurancePolicy), then after it returns the InsurancePolicy or NULL
-		List<InsurancePolicy> patientCards = new ArrayList<InsurancePolicy>();
-
-		List<InsurancePolicy> insurancePolicies = getService()
-				.getAllInsurancePolicies();
-		for (InsurancePolicy insurancePolicy : insurancePolicies) {
-			if (insurancePolicy.getOwner().equals(patient)) {
-				patientCards.add(insurancePolicy);
-
-			}
-
-		}
-		return patientCards;
+		return getService().getInsurancePoliciesByOwner(patient);
 	}
 
 	/**
@@ -388,19 +348,7 @@ public class InsurancePolicyUtil {
 		// given Insurance, it may be valid or not depending on the entered
 		// condition: valid.
 
-		List<InsurancePolicy> CardsList = new ArrayList<InsurancePolicy>();
-
-		List<InsurancePolicy> allCards = getService().getAllInsurancePolicies();
-		for (InsurancePolicy oneCard : allCards) {
-			if (oneCard.getInsurance().equals(insurance)) {
-				CardsList.add(oneCard);
-
-			}
-
-		}
-
-		return CardsList;
-
+		return getService().getInsurancePoliciesByInsurance(insurance);
 	}
 
 	/**
@@ -414,14 +362,7 @@ public class InsurancePolicyUtil {
 	public static InsurancePolicy getInsurancePolicyByCardNo(
 			String insuranceCardNo) {
 
-		InsurancePolicy card = null;
-		List<InsurancePolicy> allCards = getService().getAllInsurancePolicies();
-		for (InsurancePolicy insurancePolicy : allCards) {
-			if (insurancePolicy.getInsuranceCardNo().equals(insuranceCardNo)) {
-				return card;
-			}
-		}
-		return null;
+		return getService().getInsurancePolicyByCardNo(null, insuranceCardNo);
 	}
 
 	/**
@@ -434,13 +375,8 @@ public class InsurancePolicyUtil {
 	public static InsurancePolicy getInsurancePolicyByPolicyIdNo(
 			String policyIdNumber, Boolean isRetired) {
 
-		for (InsurancePolicy card : getService().getAllInsurancePolicies())
-			if (card.isRetired() == isRetired)
-				for (Beneficiary ben : card.getBeneficiaries())
-					if (ben.getPolicyIdNumber().equals(policyIdNumber))
-						return card;
-
-		return null;
+		return getService().getInsurancePolicyByPolicyIdNumber(policyIdNumber,
+				Boolean.TRUE.equals(isRetired));
 	}
 
 	/**
@@ -453,11 +389,8 @@ public class InsurancePolicyUtil {
 	public static InsurancePolicy getBeneficiaryByCardNo(Insurance insurance,
 			String insuranceCardNo) {
 
-		for (InsurancePolicy card : getService().getAllInsurancePolicies()) {
-			if (card.getInsuranceCardNo().equals(insuranceCardNo))
-				return card;
-		}
-		return null;
+		return getService().getInsurancePolicyByCardNo(insurance,
+				insuranceCardNo);
 	}
 
 	/**
@@ -503,15 +436,10 @@ public class InsurancePolicyUtil {
 	 */
 	public static List<Beneficiary> getBeneficiaryByPatient(Patient patient) {
 
-		List<Beneficiary> beneficiaries = new ArrayList<Beneficiary>();
-
 		if (patient != null)
-			for (InsurancePolicy ip : getService().getAllInsurancePolicies())
-				for (Beneficiary ben : ip.getBeneficiaries())
-					if (!ben.isRetired() && ben.getPatient() == patient)
-						beneficiaries.add(ben);
+			return getService().getBeneficiariesByPatient(patient);
 
-		return beneficiaries;
+		return new ArrayList<Beneficiary>();
 	}
 
 	/**
@@ -523,16 +451,10 @@ public class InsurancePolicyUtil {
 	 */
 	public static List<Beneficiary> getBeneficiaryByOwner(Patient owner) {
 
-		List<Beneficiary> beneficiaries = new ArrayList<Beneficiary>();
-
 		if (owner != null)
-			for (InsurancePolicy ip : getService().getAllInsurancePolicies())
-				if (ip.getOwner() == owner)
-					for (Beneficiary ben : ip.getBeneficiaries())
-						if (!ben.isRetired())
-							beneficiaries.add(ben);
+			return getService().getBeneficiariesByOwner(owner);
 
-		return beneficiaries;
+		return new ArrayList<Beneficiary>();
 	}
 
 	/**
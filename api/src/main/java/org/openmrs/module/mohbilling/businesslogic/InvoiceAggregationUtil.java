@@ -0,0 +1,234 @@
+package org.openmrs.module.mohbilling.businesslogic;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.openmrs.api.APIException;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.mohbilling.model.Insurance;
+import org.openmrs.module.mohbilling.model.InvoiceAggregation;
+import org.openmrs.module.mohbilling.model.InvoiceLine;
+import org.openmrs.module.mohbilling.model.PatientBill;
+import org.openmrs.module.mohbilling.model.PatientInvoice;
+import org.openmrs.module.mohbilling.service.BillingService;
+
+/**
+ * Builds the invoices of many bills at once, as the recovery and insurance
+ * invoice screens show them. The bill items are read in one query as detached
+ * {@link InvoiceLine}s and the insurance rates looked up beforehand, then the
+ * bills are split in partitions whose invoices are built on a bounded pool of
+ * threads, away from the Hibernate session. The bills are ordered by id, as
+ * the bill cohort query returns them, and the partitions merged in their
+ * order, so that the invoices and totals do not depend on the threads or on
+ * the order the bills are given in.
+ */
+public class InvoiceAggregationUtil {
+
+	/** Number of bills whose invoices are built by a task */
+	private static final int PARTITION_SIZE = 250;
+
+	/** Number of partitions waiting for a thread, the caller runs the others */
+	private static final int QUEUE_SIZE = 50;
+
+	private static ThreadPoolExecutor executor;
+
+	/** The order of the bill cohort query */
+	private static final Comparator<PatientBill> BILL_ORDER = new Comparator<PatientBill>() {
+
+		public int compare(PatientBill pb1, PatientBill pb2) {
+			return pb1.getPatientBillId().compareTo(pb2.getPatientBillId());
+		}
+	};
+
+	/**
+	 * Builds the invoices of the bills, with the insurance rate of each bill,
+	 * see {@link PatientBillUtil#getPatientInvoice(PatientBill, Insurance)}
+	 *
+	 * @param bills
+	 *            the bills, loaded in the current session
+	 * @return the invoices ordered by the id of their bill, with their totals
+	 *         by invoice group
+	 * @throws APIException
+	 *             if an invoice could not be built
+	 */
+	public static InvoiceAggregation aggregate(List<PatientBill> bills) {
+
+		bills = new ArrayList<PatientBill>(bills);
+		Collections.sort(bills, BILL_ORDER);
+
+		// everything the session is needed for is read on this thread
+		List<Integer> billIds = new ArrayList<Integer>();
+		double[] rates = new double[bills.size()];
+		Map<Integer, Double> insuranceRates = new HashMap<Integer, Double>();
+		for (int i = 0; i < bills.size(); i++) {
+			PatientBill pb = bills.get(i);
+			billIds.add(pb.getPatientBillId());
+			// initializes a proxied bill, the workers reading its created date
+			pb.getCreatedDate();
+
+			Insurance insurance = pb.getBeneficiary().getInsurancePolicy()
+					.getInsurance();
+			Double rate = insuranceRates.get(insurance.getInsuranceId());
+			if (rate == null) {
+				rate = TariffMatrixUtil.getCurrentRate(insurance).doubleValue();
+				insuranceRates.put(insurance.getInsuranceId(), rate);
+			}
+			rates[i] = rate;
+		}
+		Map<Integer, List<InvoiceLine>> lines = Context.getService(
+				BillingService.class).getInvoiceLines(billIds);
+		InvoiceCategoryClassifier classifier = InvoiceCategoryClassifier
+				.getClassifier();
+
+		List<Partition> partitions = new ArrayList<Partition>();
+		for (int from = 0; from < bills.size(); from += PARTITION_SIZE)
+			partitions.add(new Partition(classifier, bills, lines, rates, from,
+					Math.min(from + PARTITION_SIZE, bills.size())));
+
+		List<PatientInvoice> invoices = new ArrayList<PatientInvoice>(
+				bills.size());
+		LinkedHashMap<String, Double> totals = new LinkedHashMap<String, Double>();
+		double total = 0.0;
+		for (Partition partition : run(partitions)) {
+			invoices.addAll(partition.invoices);
+			for (Map.Entry<String, Double> groupTotal : partition.totals
+					.entrySet()) {
+				Double current = totals.get(groupTotal.getKey());
+				totals.put(groupTotal.getKey(),
+						(current != null ? current : 0.0) + groupTotal.getValue());
+			}
+			total += partition.total;
+		}
+
+		return new InvoiceAggregation(invoices, totals, total);
+	}
+
+	/**
+	 * Stops the threads building the invoices
+	 */
+	public static synchronized void shutdown() {
+		if (executor != null) {
+			executor.shutdownNow();
+			executor = null;
+		}
+	}
+
+	/**
+	 * @return the partitions once they are all built, in the given order
+	 */
+	private static List<Partition> run(List<Partition> partitions) {
+
+		// a single partition is not worth a thread
+		if (partitions.size() <= 1) {
+			for (Partition partition : partitions)
+				partition.call();
+			return partitions;
+		}
+
+		List<Future<Partition>> futures = new ArrayList<Future<Partition>>();
+		ThreadPoolExecutor pool = getExecutor();
+		for (Partition partition : partitions)
+			futures.add(pool.submit(partition));
+
+		List<Partition> built = new ArrayList<Partition>();
+		try {
+			for (Future<Partition> future : futures)
+				built.add(future.get());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new APIException("Interrupted while building the invoices", e);
+		} catch (ExecutionException e) {
+			throw new APIException("Unable to build the invoices", e.getCause());
+		} finally {
+			for (Future<Partition> future : futures)
+				future.cancel(true);
+		}
+
+		return built;
+	}
+
+	private static synchronized ThreadPoolExecutor getExecutor() {
+		if (executor == null) {
+			int threads = Runtime.getRuntime().availableProcessors();
+			executor = new ThreadPoolExecutor(threads, threads, 0L,
+					TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(
+							QUEUE_SIZE), new ThreadFactory() {
+						private int count = 0;
+
+						public synchronized Thread newThread(Runnable r) {
+							Thread thread = new Thread(r, "mohbilling-invoice-"
+									+ (++count));
+							thread.setDaemon(true);
+							return thread;
+						}
+					}, new ThreadPoolExecutor.CallerRunsPolicy());
+		}
+		return executor;
+	}
+
+	/**
+	 * The invoices of a range of the bills, with the sums of their sub totals
+	 */
+	private static class Partition implements Callable<Partition> {
+
+		private final InvoiceCategoryClassifier classifier;
+		private final List<PatientBill> bills;
+		private final Map<Integer, List<InvoiceLine>> lines;
+		private final double[] rates;
+		private final int from;
+		private final int to;
+
+		private List<PatientInvoice> invoices;
+		private LinkedHashMap<String, Double> totals;
+		private double total;
+
+		public Partition(InvoiceCategoryClassifier classifier,
+				List<PatientBill> bills, Map<Integer, List<InvoiceLine>> lines,
+				double[] rates, int from, int to) {
+			this.classifier = classifier;
+			this.bills = bills;
+			this.lines = lines;
+			this.rates = rates;
+			this.from = from;
+			this.to = to;
+		}
+
+		public Partition call() {
+
+			invoices = new ArrayList<PatientInvoice>(to - from);
+			totals = new LinkedHashMap<String, Double>();
+			total = 0.0;
+			for (int i = from; i < to; i++) {
+				PatientBill pb = bills.get(i);
+				List<InvoiceLine> billLines = lines.get(pb.getPatientBillId());
+				PatientInvoice invoice = classifier.classify(pb,
+						billLines != null ? billLines
+								: new ArrayList<InvoiceLine>(), rates[i]);
+				invoices.add(invoice);
+
+				for (String group : invoice.getInvoiceMap().keySet()) {
+					double subTotal = invoice.getInvoiceMap().get(group)
+							.getSubTotal();
+					Double current = totals.get(group);
+					totals.put(group, (current != null ? current : 0.0)
+							+ subTotal);
+					total += subTotal;
+				}
+			}
+
+			return this;
+		}
+	}
+}
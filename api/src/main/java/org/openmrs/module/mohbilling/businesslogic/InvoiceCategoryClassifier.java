@@ -0,0 +1,334 @@
+package org.openmrs.module.mohbilling.businesslogic;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.GlobalProperty;
+import org.openmrs.api.GlobalPropertyListener;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.mohbilling.model.Consommation;
+import org.openmrs.module.mohbilling.model.Invoice;
+import org.openmrs.module.mohbilling.model.InvoiceLine;
+import org.openmrs.module.mohbilling.model.PatientBill;
+import org.openmrs.module.mohbilling.model.PatientInvoice;
+import org.openmrs.module.mohbilling.model.PatientServiceBill;
+
+/**
+ * Sorts the items of a bill into the invoice groups (consultation, laboratory,
+ * imagery...) in a single pass. The groups and the service category prefixes
+ * they are made of are compiled once, each prefix getting a slot, and the
+ * slots matching a service category are remembered the first time it is seen.
+ * <p>
+ * The groups are read from the global property
+ * {@link BillingConstants#GLOBAL_PROPERTY_INVOICE_CATEGORIES}, as
+ * <code>GROUP:PREFIX,PREFIX;GROUP:PREFIX</code>, the
+ * {@link #getDefaultGroups() default groups} being used when it is blank. The
+ * lines of the "AUTRES" group named after an ambulance are put in the
+ * "AMBULANCE" invoice.
+ */
+public class InvoiceCategoryClassifier {
+
+	private static Log log = LogFactory.getLog(InvoiceCategoryClassifier.class);
+
+	private static final String OTHERS_GROUP = "AUTRES";
+	private static final String AMBULANCE_GROUP = "AMBULANCE";
+	private static final String AMBULANCE_PREFIX = "Ambul";
+
+	private static volatile InvoiceCategoryClassifier classifier;
+
+	private final LinkedHashMap<String, List<String>> groups;
+
+	private final String[] groupNames;
+
+	/** First slot of each group, the last one ending the slots */
+	private final int[] groupSlots;
+
+	/** Service category prefix of each slot */
+	private final String[] prefixes;
+
+	/** Slots matching each service category seen */
+	private final Map<String, int[]> categorySlots = new ConcurrentHashMap<String, int[]>();
+
+	/**
+	 * @param groups
+	 *            the service category prefixes of each invoice group, in the
+	 *            order of the invoice
+	 */
+	public InvoiceCategoryClassifier(LinkedHashMap<String, List<String>> groups) {
+
+		this.groups = new LinkedHashMap<String, List<String>>();
+		groupNames = new String[groups.size()];
+		groupSlots = new int[groups.size() + 1];
+		List<String> slotPrefixes = new ArrayList<String>();
+
+		int g = 0;
+		for (Map.Entry<String, List<String>> group : groups.entrySet()) {
+			this.groups.put(group.getKey(), Collections
+					.unmodifiableList(new ArrayList<String>(group.getValue())));
+			groupNames[g] = group.getKey();
+			groupSlots[g++] = slotPrefixes.size();
+			slotPrefixes.addAll(group.getValue());
+		}
+		groupSlots[g] = slotPrefixes.size();
+		prefixes = slotPrefixes.toArray(new String[slotPrefixes.size()]);
+	}
+
+	/**
+	 * @return the classifier of the configured invoice groups
+	 */
+	public static InvoiceCategoryClassifier getClassifier() {
+
+		InvoiceCategoryClassifier current = classifier;
+		if (current == null) {
+			current = new InvoiceCategoryClassifier(parseGroups(Context
+					.getAdministrationService().getGlobalProperty(
+							BillingConstants.GLOBAL_PROPERTY_INVOICE_CATEGORIES)));
+			classifier = current;
+		}
+
+		return current;
+	}
+
+	/**
+	 * Forgets the compiled groups, they are read again on the next invoice
+	 */
+	public static void invalidate() {
+		classifier = null;
+	}
+
+	/**
+	 * @return the service category prefixes of each invoice group
+	 */
+	public LinkedHashMap<String, List<String>> getGroups() {
+		return new LinkedHashMap<String, List<String>>(groups);
+	}
+
+	/**
+	 * Builds the invoice of a bill, a line being put in every group having a
+	 * prefix of its service category, once by prefix. The "AUTRES" group is
+	 * split into the "AMBULANCE" and "AUTRES" invoices.
+	 *
+	 * @param pb
+	 *            the bill
+	 * @param currentRate
+	 *            the rate of the insurance, in percent
+	 * @return the invoice of the bill, with an invoice by group
+	 */
+	public PatientInvoice classify(PatientBill pb, double currentRate) {
+
+		List<InvoiceLine> lines = new ArrayList<InvoiceLine>();
+		for (PatientServiceBill item : pb.getBillItems())
+			lines.add(new InvoiceLine(item));
+
+		return classify(pb, lines, currentRate);
+	}
+
+	/**
+	 * Builds the invoice of a bill from its detached lines, see
+	 * {@link #classify(PatientBill, double)}. Only the created date of the
+	 * bill is read, so that it may be called away from its session.
+	 *
+	 * @param pb
+	 *            the bill
+	 * @param lines
+	 *            the lines of the bill, in the order of its items
+	 * @param currentRate
+	 *            the rate of the insurance, in percent
+	 * @return the invoice of the bill, with an invoice by group
+	 */
+	public PatientInvoice classify(PatientBill pb, List<InvoiceLine> lines,
+			double currentRate) {
+
+		@SuppressWarnings("unchecked")
+		List<Consommation>[] slotConsommations = new List[prefixes.length];
+		double[] slotTotals = new double[prefixes.length];
+
+		for (InvoiceLine line : lines) {
+			int[] slots = getSlots(line.getCategory());
+			if (slots.length == 0)
+				continue;
+
+			double unitPrice = line.getUnitPrice().doubleValue();
+			double cost = line.getQuantity().doubleValue() * unitPrice;
+			for (int slot : slots) {
+				Consommation consomm = new Consommation();
+				consomm.setRecordDate(line.getServiceDate());
+				consomm.setLibelle(line.getName());
+				consomm.setUnitCost(unitPrice);
+				consomm.setQuantity(line.getQuantity());
+				consomm.setCost(cost);
+				consomm.setInsuranceCost(cost * currentRate / 100);
+				consomm.setPatientCost(cost * (100 - currentRate) / 100);
+
+				if (slotConsommations[slot] == null)
+					slotConsommations[slot] = new ArrayList<Consommation>();
+				slotConsommations[slot].add(consomm);
+				slotTotals[slot] += cost;
+			}
+		}
+
+		LinkedHashMap<String, Invoice> invoiceMap = new LinkedHashMap<String, Invoice>();
+		double gdTotal = 0.0;
+		for (int g = 0; g < groupNames.length; g++) {
+			List<Consommation> consommations = new ArrayList<Consommation>();
+			double total = 0.0;
+			for (int slot = groupSlots[g]; slot < groupSlots[g + 1]; slot++) {
+				if (slotConsommations[slot] != null)
+					consommations.addAll(slotConsommations[slot]);
+				total += slotTotals[slot];
+			}
+			gdTotal += total;
+
+			if (!groupNames[g].equals(OTHERS_GROUP)) {
+				invoiceMap.put(groupNames[g], createInvoice(pb, consommations,
+						ReportsUtil.roundTwoDecimals(total)));
+				continue;
+			}
+
+			// the ambulance lines are filed under the other services
+			List<Consommation> ambulanceConsom = new ArrayList<Consommation>();
+			List<Consommation> formaliteConsom = new ArrayList<Consommation>();
+			double subTotAmbul = 0.0, subTotalFormalites = 0.0;
+			for (Consommation c : consommations) {
+				if (c.getLibelle().startsWith(AMBULANCE_PREFIX)) {
+					ambulanceConsom.add(c);
+					subTotAmbul += c.getCost();
+				} else {
+					formaliteConsom.add(c);
+					subTotalFormalites += c.getCost();
+				}
+			}
+			invoiceMap.put(AMBULANCE_GROUP, createInvoice(pb, ambulanceConsom,
+					subTotAmbul));
+			invoiceMap.put(OTHERS_GROUP, createInvoice(pb, formaliteConsom,
+					subTotalFormalites));
+		}
+
+		PatientInvoice patientInvoice = new PatientInvoice();
+		patientInvoice.setPatientBill(pb);
+		patientInvoice.setInvoiceMap(invoiceMap);
+		patientInvoice.setTotalAmount(ReportsUtil.roundTwoDecimals(gdTotal));
+		patientInvoice.setPatientCost(ReportsUtil.roundTwoDecimals(gdTotal
+				* (100 - currentRate) / 100));
+		patientInvoice.setInsuranceCost(ReportsUtil.roundTwoDecimals(gdTotal
+				* currentRate / 100));
+
+		return patientInvoice;
+	}
+
+	/**
+	 * @return the slots whose prefix starts the service category, none if it
+	 *         is null
+	 */
+	private int[] getSlots(String category) {
+
+		if (category == null)
+			return new int[0];
+
+		int[] slots = categorySlots.get(category);
+		if (slots == null) {
+			int[] matching = new int[prefixes.length];
+			int count = 0;
+			for (int slot = 0; slot < prefixes.length; slot++)
+				if (category.startsWith(prefixes[slot]))
+					matching[count++] = slot;
+
+			slots = Arrays.copyOf(matching, count);
+			categorySlots.put(category, slots);
+		}
+
+		return slots;
+	}
+
+	private Invoice createInvoice(PatientBill pb,
+			List<Consommation> consommations, double subTotal) {
+
+		Invoice invoice = new Invoice();
+		invoice.setCreatedDate(pb.getCreatedDate());
+		invoice.setConsommationList(consommations);
+		invoice.setSubTotal(subTotal);
+		return invoice;
+	}
+
+	/**
+	 * @param value
+	 *            the groups, as <code>GROUP:PREFIX,PREFIX;GROUP:PREFIX</code>
+	 * @return the groups, the default ones if the value is blank or malformed
+	 */
+	static LinkedHashMap<String, List<String>> parseGroups(String value) {
+
+		if (value == null || value.trim().length() == 0)
+			return getDefaultGroups();
+
+		LinkedHashMap<String, List<String>> groups = new LinkedHashMap<String, List<String>>();
+		for (String group : value.split(";")) {
+			if (group.trim().length() == 0)
+				continue;
+
+			int colon = group.indexOf(':');
+			if (colon <= 0) {
+				log.warn("Malformed invoice group '" + group + "' in "
+						+ BillingConstants.GLOBAL_PROPERTY_INVOICE_CATEGORIES
+						+ ", using the default groups");
+				return getDefaultGroups();
+			}
+
+			List<String> prefixes = new ArrayList<String>();
+			for (String prefix : group.substring(colon + 1).split(","))
+				if (prefix.trim().length() > 0)
+					prefixes.add(prefix.trim());
+			groups.put(group.substring(0, colon).trim(), prefixes);
+		}
+
+		return groups;
+	}
+
+	/**
+	 * @return the invoice groups used when none are configured
+	 */
+	public static LinkedHashMap<String, List<String>> getDefaultGroups() {
+
+		LinkedHashMap<String, List<String>> map = new LinkedHashMap<String, List<String>>();
+		map.put("CONSULTATION", Arrays.asList("CONSULTATION"));
+		map.put("LABORATOIRE", Arrays.asList("LABORATOIRE"));
+		map.put("IMAGERIE", Arrays.asList("ECHOGRAPHIE", "RADIOLOGIE"));
+		map.put("ACTS", Arrays.asList("STOMATOLOGIE", "CHIRURGIE",
+				"SOINS INTENSIFS", "GYNECO - OBSTETRIQUE", "ORL",
+				"DERMATOLOGIE", "SOINS INFIRMIERS", "MATERNITE",
+				"OPHTALMOLOGIE", "KINESITHERAPIE", "MEDECINE INTERNE",
+				"NEUROLOGIE"));
+		map.put("MEDICAMENTS", Arrays.asList("MEDICAMENTS"));
+		map.put("CONSOMMABLES", Arrays.asList("CONSOMMABLES"));
+		map.put("AMBULANCE", Arrays.asList("AMBULANCE"));
+		map.put("AUTRES", Arrays.asList("FORMALITES ADMINISTRATIVES",
+				"OXYGENOTHERAPIE"));
+		map.put("HOSPITALISATION", Arrays.asList("HOSPITALISATION"));
+		return map;
+	}
+
+	/**
+	 * Compiles the groups again when their global property changes
+	 */
+	public static class PropertyListener implements GlobalPropertyListener {
+
+		public boolean supportsPropertyName(String propertyName) {
+			return BillingConstants.GLOBAL_PROPERTY_INVOICE_CATEGORIES
+					.equals(propertyName);
+		}
+
+		public void globalPropertyChanged(GlobalProperty newValue) {
+			invalidate();
+		}
+
+		public void globalPropertyDeleted(String propertyName) {
+			invalidate();
+		}
+	}
+}
@@ -6,41 +6,85 @@ package org.openmrs.module.mohbilling.businesslogic;
 import java.math.BigDecimal;
 import java.math.MathContext;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.openmrs.api.context.Context;
 import org.openmrs.module.mohbilling.model.BillPayment;
 import org.openmrs.module.mohbilling.model.PatientBill;
-import org.openmrs.module.mohbilling.model.PatientServiceBill;
+import org.openmrs.module.mohbilling.model.PatientBillBalance;
 import org.openmrs.module.mohbilling.service.BillingService;
 
 /**
+ * The tag functions are called for each row of the bill lists. They only read
+ * the bills, and reuse the balances loaded for the current request by
+ * {@link #loadBalances(Collection)} rather than fetching each bill.
+ * 
  * @author Yves GAKUBA
  * 
  */
 public class MohBillingTagUtil {
 
+	private static Log log = LogFactory.getLog(MohBillingTagUtil.class);
+
+	/** Balances loaded for the request being processed by the thread */
+	private static final ThreadLocal<Map<Integer, PatientBillBalance>> balances = new ThreadLocal<Map<Integer, PatientBillBalance>>();
+
+	/**
+	 * Loads the balances of the given bills in one batch, for the tag
+	 * functions called while rendering the current request
+	 * 
+	 * @param bills
+	 *            the bills of the page
+	 */
+	public static void loadBalances(Collection<PatientBill> bills) {
+
+		if (bills == null || bills.isEmpty())
+			return;
+
+		List<Integer> billIds = new ArrayList<Integer>();
+		for (PatientBill pb : bills)
+			if (pb.getPatientBillId() != null
+					&& !getBalances().containsKey(pb.getPatientBillId()))
+				billIds.add(pb.getPatientBillId());
+
+		if (!billIds.isEmpty())
+			getBalances().putAll(
+					Context.getService(BillingService.class)
+							.getPatientBillBalances(billIds));
+	}
+
+	/**
+	 * Forgets the balances loaded for the current request, called once it is
+	 * processed
+	 */
+	public static void clearBalances() {
+		balances.remove();
+	}
+
 	public static String getTotalAmountPaidByPatientBill(Integer patientBillId) {
 
 		Long amountPaid = 0l;
-//		MathContext mc = new MathContext(BigDecimal.ROUND_HALF_DOWN);
 
 		if (null == patientBillId)
 			return "";
 		else {
 			try {
-				PatientBill pb = Context.getService(BillingService.class)
-						.getPatientBill(patientBillId);
+				PatientBillBalance balance = getBalance(patientBillId);
+				if (balance == null)
+					return "";
 
-				if(pb.getAmountPaid() != null)
-					amountPaid = pb.getAmountPaid().longValue();
-//				for (BillPayment bp : pb.getPayments()) {
-//					amountPaid = amountPaid + bp.getAmountPaid().longValue();
-//				}
+				if (balance.getAmountPaid() != null)
+					amountPaid = balance.getAmountPaid().longValue();
 
 			} catch (Exception e) {
-				e.printStackTrace();
+				log.error("Unable to get the amount paid of the bill "
+						+ patientBillId, e);
 				return "";
 			}
 		}
@@ -59,68 +103,20 @@ public class MohBillingTagUtil {
 			Integer patientBillId) {
 
 		double amountNotPaid = 0d;
-//		MathContext mc = new MathContext(BigDecimal.ROUND_HALF_DOWN);
 
 		if (null == patientBillId)
 			return "";
 		else {
 			try {
-				double amountPaid = 0d;
-				PatientBill pb = Context.getService(BillingService.class)
-						.getPatientBill(patientBillId);
-				Float insuranceRate = pb.getBeneficiary().getInsurancePolicy()
-						.getInsurance().getCurrentRate().getRate();
-				Float patientRate = (100f - insuranceRate) / 100f;
-				
-				// mariam codes to make one print out (one bill with 1.Ticket Moderateur applied on services and 2.private things)
-				// in order to reduce number of papers and users switching pages
-				double amountDueByPatient = 0.0;
-				for (PatientServiceBill psb : pb.getBillItems()) {
-					Double cost = psb.getUnitPrice().doubleValue()*psb.getQuantity().doubleValue();
-					amountDueByPatient+=psb.getService().getFacilityServicePrice().getCategory().equals("AUTRES")?cost:cost*patientRate.doubleValue();
-				}
-//				double amountDueByPatient = (pb.getAmount().doubleValue() * patientRate
-//						.doubleValue());
-
-				for (BillPayment bp : pb.getPayments()) {
-					amountPaid = amountPaid + bp.getAmountPaid().doubleValue();
-				}
-
-				if (pb.getBeneficiary().getInsurancePolicy().getThirdParty() == null) {
-					amountNotPaid = amountDueByPatient - amountPaid;
-
-					/** Marking the BILL as PAID */
-					if (amountNotPaid <= 0) {
-						pb.setIsPaid(true);
-						Context.getService(BillingService.class)
-								.savePatientBill(pb);
-					}
-
-					/** END of PAID part... */
-				} else {
-
-					double thirdPartRate = pb.getBeneficiary()
-							.getInsurancePolicy().getThirdParty().getRate()
-							.doubleValue();
-
-					double amountPaidByThirdPart = pb.getAmount().doubleValue()
-							* (thirdPartRate / 100);
-
-					amountNotPaid = amountDueByPatient - (amountPaidByThirdPart + amountPaid);
-
-					/** Marking the BILL as PAID */
-					if (amountNotPaid <= 0) {
-						pb.setIsPaid(true);
-						
-						Context.getService(BillingService.class)
-								.savePatientBill(pb);
-					}
-
-					/** END of PAID part... */
-				}
+				PatientBillBalance balance = getBalance(patientBillId);
+				if (balance == null || balance.getAmountNotPaid() == null)
+					return "";
+
+				amountNotPaid = balance.getAmountNotPaid().doubleValue();
 
 			} catch (Exception e) {
-				e.printStackTrace();
+				log.error("Unable to get the rest of the bill "
+						+ patientBillId, e);
 				return "";
 			}
 		}
@@ -141,20 +137,17 @@ public class MohBillingTagUtil {
 			return "";
 		else {
 			try {
-				PatientBill pb = Context.getService(BillingService.class)
-						.getPatientBill(patientBillId);
+				PatientBillBalance balance = getBalance(patientBillId);
 
-				Float thirdPartRate = pb.getBeneficiary().getInsurancePolicy()
-						.getThirdParty().getRate();
+				if (balance == null || balance.getThirdPartyAmount() == null)
+					return "";
 
-				if (thirdPartRate != null)
-					amountPaidByThirdPart = (pb.getAmount().doubleValue()
-							* thirdPartRate / 100);
-				else
-					;
+				amountPaidByThirdPart = balance.getThirdPartyAmount()
+						.doubleValue();
 
 			} catch (Exception e) {
-				e.printStackTrace();
+				log.error("Unable to get the third party amount of the bill "
+						+ patientBillId, e);
 				return "";
 			}
 		}
@@ -168,68 +161,50 @@ public class MohBillingTagUtil {
 	public static List<Double> getDetailsPaymentsByPatientBill(
 			Integer patientBillId) {
 
-		double amountNotPaid = 0d;
 		List<Double> payments = new ArrayList<Double>();
 
 			try {
-				double totalAmountPaid = 0d;
-				
 				PatientBill pb = Context.getService(BillingService.class)
 						.getPatientBill(patientBillId);
-				Float insuranceRate = pb.getBeneficiary().getInsurancePolicy()
-						.getInsurance().getCurrentRate().getRate();
-				Float patientRate = (100f - insuranceRate) / 100f;
-				
-				double amountDueByPatient = (pb.getAmount().doubleValue() * patientRate
-						.doubleValue());
-
-				for (BillPayment bp : pb.getPayments()) {
-					totalAmountPaid = totalAmountPaid + bp.getAmountPaid().doubleValue();
-					payments.add(bp.getAmountPaid().doubleValue());
-				}
 
-				if (pb.getBeneficiary().getInsurancePolicy().getThirdParty() == null) {
-					amountNotPaid = amountDueByPatient - totalAmountPaid;
-
-					/** Marking the BILL as PAID */
-					if (amountNotPaid <= 0) {
-						pb.setIsPaid(true);
-						Context.getService(BillingService.class)
-								.savePatientBill(pb);
-					}
-
-					/** END of PAID part... */
-				} else {
+				for (BillPayment bp : pb.getPayments())
+					payments.add(bp.getAmountPaid().doubleValue());
 
-					double thirdPartRate = pb.getBeneficiary()
-							.getInsurancePolicy().getThirdParty().getRate()
-							.doubleValue();
+			} catch (Exception e) {
+				log.error("Unable to get the payments of the bill "
+						+ patientBillId, e);
+			}
 
-					double amountPaidByThirdPart = pb.getAmount().doubleValue()
-							* (thirdPartRate / 100);
+		return payments;
+	}
 
-					amountNotPaid = amountDueByPatient - (amountPaidByThirdPart + totalAmountPaid);
+	/**
+	 * Gets the balance loaded for the current request, loading it alone if the
+	 * page did not load the balances of its bills
+	 * 
+	 * @return the balance, null if the bill does not exist or its balance
+	 *         cannot be computed
+	 */
+	private static PatientBillBalance getBalance(Integer patientBillId) {
+
+		PatientBillBalance balance = getBalances().get(patientBillId);
+		if (balance == null && !getBalances().containsKey(patientBillId)) {
+			balance = Context.getService(BillingService.class)
+					.getPatientBillBalances(
+							Collections.singletonList(patientBillId)).get(
+							patientBillId);
+			getBalances().put(patientBillId, balance);
+		}
 
-					/** Marking the BILL as PAID */
-					if (amountNotPaid <= 0) {
-						pb.setIsPaid(true);
-						
-						Context.getService(BillingService.class)
-								.savePatientBill(pb);
-					}
+		return balance;
+	}
 
-					/** END of PAID part... */
-				}
+	private static Map<Integer, PatientBillBalance> getBalances() {
 
-			} catch (Exception e) {
-				e.printStackTrace();
-			}
-			
-		/** Rounding the value to 2 decimals */
-		double roundedAmountNotPaid = Math.round(amountNotPaid * 100);
-		roundedAmountNotPaid = roundedAmountNotPaid / 100;
+		if (balances.get() == null)
+			balances.set(new HashMap<Integer, PatientBillBalance>());
 
-		return payments;
+		return balances.get();
 	}
 
 }
@@ -3,7 +3,6 @@ package org.openmrs.module.mohbilling.businesslogic;
 import java.math.BigDecimal;
 import java.math.MathContext;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Date;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -14,12 +13,10 @@ import org.openmrs.Patient;
 import org.openmrs.User;
 import org.openmrs.api.context.Context;
 import org.openmrs.module.mohbilling.model.Beneficiary;
+import org.openmrs.module.mohbilling.model.BillCaptureLine;
 import org.openmrs.module.mohbilling.model.BillPayment;
 import org.openmrs.module.mohbilling.model.BillStatus;
-import org.openmrs.module.mohbilling.model.Consommation;
 import org.openmrs.module.mohbilling.model.Insurance;
-import org.openmrs.module.mohbilling.model.InsuranceRate;
-import org.openmrs.module.mohbilling.model.Invoice;
 import org.openmrs.module.mohbilling.model.PatientBill;
 import org.openmrs.module.mohbilling.model.PatientInvoice;
 import org.openmrs.module.mohbilling.model.PatientServiceBill;
@@ -60,14 +57,16 @@ public class PatientBillUtil {
 			BigDecimal unitPrice, BigDecimal quantity) {
 
 		MathContext mc = new MathContext(BigDecimal.ROUND_DOWN);
-		BigDecimal rate = BigDecimal.valueOf(insurance.getRateOnDate(date)
-				.getRate());
 
 //		BigDecimal qty = (BigDecimal.valueOf(quantity));
 		BigDecimal totalAmount = unitPrice.multiply(quantity, mc);
+		if (insurance == null)
+			return totalAmount;
 
-		return (insurance == null) ? totalAmount : totalAmount.multiply(rate,
-				mc);
+		BigDecimal rate = BigDecimal.valueOf(TariffMatrixUtil.getMatrix()
+				.getRate(insurance.getInsuranceId(), date));
+
+		return totalAmount.multiply(rate, mc);
 	}
 
 	/**
@@ -81,20 +80,7 @@ public class PatientBillUtil {
 	public static List<PatientBill> getBillsByPatientOnDate(Patient patient,
 			Date date) {
 
-		List<PatientBill> bills = new ArrayList<PatientBill>();
-
-		for (PatientBill pb : getService().getAllPatientBills()) {
-			if (pb.getBeneficiary().getPatient().getPatientId().intValue() == patient
-					.getPatientId().intValue()) {
-				for (PatientServiceBill psb : pb.getBillItems()) {
-					if (psb.getServiceDate().compareTo(date) == 0) {
-						bills.add(pb);
-						break;
-					}
-				}
-			}
-		}
-		return bills;
+		return getService().getBillsByPatientOnDate(patient, date);
 	}
 
 	/**
@@ -111,16 +97,11 @@ public class PatientBillUtil {
 
 		List<PatientBill> bills = new ArrayList<PatientBill>();
 
-		for (PatientBill pb : getService().getAllPatientBills()) {
-			if (pb.getBeneficiary().getBeneficiaryId().intValue() == beneficiary
-					.getBeneficiaryId().intValue()) {
-				for (PatientServiceBill psb : pb.getBillItems()) {
-					if (psb.getServiceDate().compareTo(date) == 0) {
-						bills.add(pb);
-					}
-				}
-			}
-		}
+		// the bill is listed once per item served on that date
+		for (PatientServiceBill psb : getService()
+				.getBillItemsByBeneficiaryOnDate(beneficiary, date))
+			bills.add(psb.getPatientBill());
+
 		return bills;
 	}
 
@@ -132,14 +113,7 @@ public class PatientBillUtil {
 	 */
 	public static List<PatientBill> getBillsByPatient(Patient patient) {
 
-		List<PatientBill> bills = new ArrayList<PatientBill>();
-
-		for (PatientBill pb : getService().getAllPatientBills()) {
-			if (pb.getBeneficiary().getPatient() == patient) {
-				bills.add(pb);
-			}
-		}
-		return bills;
+		return getService().getBillsByPatient(patient);
 	}
 
 	/**
@@ -163,15 +137,7 @@ public class PatientBillUtil {
 	 */
 	public static List<PatientBill> getPaidBills(Boolean isPaid, Date date) {
 
-		List<PatientBill> bills = new ArrayList<PatientBill>();
-
-		for (PatientBill pb : getService().getAllPatientBills()) {
-			if (pb.getIsPaid() == true
-					&& pb.getCreatedDate().compareTo(date) == 0) {
-				bills.add(pb);
-			}
-		}
-		return bills;
+		return getService().getBillsByCreatedDate(date, date, true);
 	}
 
 	/**
@@ -187,21 +153,10 @@ public class PatientBillUtil {
 	public static List<PatientBill> getPatientBillsInDates(Date startDate,
 			Date endDate) {
 
-		List<PatientBill> bills = new ArrayList<PatientBill>();
+		if (startDate == null && endDate == null)
+			return new ArrayList<PatientBill>();
 
-		for (PatientBill pb : getService().getAllPatientBills()) {
-			if (startDate != null && endDate == null)
-				if (pb.getCreatedDate().compareTo(startDate) >= 0)
-					bills.add(pb);
-			if (startDate == null && endDate != null)
-				if (pb.getCreatedDate().compareTo(endDate) <= 0)
-					bills.add(pb);
-			if (startDate != null && endDate != null)
-				if (pb.getCreatedDate().compareTo(startDate) >= 0
-						&& pb.getCreatedDate().compareTo(endDate) <= 0)
-					bills.add(pb);
-		}
-		return bills;
+		return getService().getBillsByCreatedDate(startDate, endDate, null);
 	}
 
 	/**
@@ -215,15 +170,10 @@ public class PatientBillUtil {
 	public static List<PatientBill> getPaidBillsByBeneficiary(
 			Beneficiary beneficiary, Boolean isPaid) {
 
-		List<PatientBill> bills = new ArrayList<PatientBill>();
+		if (isPaid == null)
+			return new ArrayList<PatientBill>();
 
-		for (PatientBill pb : getService().getAllPatientBills()) {
-			if (pb.getIsPaid() == isPaid
-					&& pb.getBeneficiary().equals(beneficiary)) {
-				bills.add(pb);
-			}
-		}
-		return bills;
+		return getService().getPaidBillsByBeneficiary(beneficiary, isPaid);
 	}
 
 	/**
@@ -266,7 +216,7 @@ public class PatientBillUtil {
 		MathContext mc = new MathContext(BigDecimal.ROUND_DOWN);
 
 		// The valid Rate for the entered Insurance company
-		InsuranceRate validRate = insurance.getRateOnDate(new Date());
+		Float validRate = TariffMatrixUtil.getCurrentRate(insurance);
 
 		for (PatientServiceBill psb : bill.getBillItems()) {
 
@@ -276,7 +226,7 @@ public class PatientBillUtil {
 
 		// This returned amount is the one the patient pays (It may change to
 		// the total amount without applying the Insurance rate)
-		return amount.multiply(BigDecimal.valueOf(validRate.getRate()), mc);
+		return amount.multiply(BigDecimal.valueOf(validRate), mc);
 	}
 
 	/**
@@ -296,6 +246,35 @@ public class PatientBillUtil {
 		return null;
 	}
 
+	/**
+	 * Captures a new bill, the billable services of its lines being resolved
+	 * at once and its items inserted in batch
+	 * 
+	 * @param beneficiary
+	 *            the beneficiary of the bill
+	 * @param lines
+	 *            the lines of the bill
+	 * @param captureKey
+	 *            the key of the form, a form submitted twice giving the bill
+	 *            saved the first time
+	 * @return the captured bill
+	 */
+	public static PatientBill capturePatientBill(Beneficiary beneficiary,
+			List<BillCaptureLine> lines, String captureKey) {
+
+		return getService().capturePatientBill(beneficiary, lines, captureKey);
+	}
+
+	/**
+	 * @param captureKey
+	 *            the key of the bill capture form
+	 * @return the bill captured with this key, null if there is none
+	 */
+	public static PatientBill getPatientBillByCaptureKey(String captureKey) {
+
+		return getService().getPatientBillByCaptureKey(captureKey);
+	}
+
 	/**
 	 * Creates a PatientServiceBill object and saves it in the DB through
 	 * PatientBill which is its parent
@@ -365,34 +344,12 @@ public class PatientBillUtil {
 
 		List<PatientBill> bills = new ArrayList<PatientBill>();
 
-		if (getService().getAllPatientBills() != null)
-			for (PatientBill pb : getService().getAllPatientBills())
-				if (!pb.isVoided())
-					if (pb.getBeneficiary().getPatient().getPatientId()
-							.intValue() == patient.getPatientId().intValue()
-							&& pb != null && pb.getIsPaid() == isPaid) {
-
-						for (PatientServiceBill psb : pb.getBillItems())
-							if (!psb.isVoided()
-									&& psb.getServiceDate()
-											.compareTo(startDate) >= 0
-									&& psb.getServiceDate().compareTo(endDate) <= 0)
-								bills.add(pb);
-					} else if (pb.getBeneficiary().getPatient().getPatientId()
-							.intValue() == patient.getPatientId().intValue()
-							&& pb != null) {
-						for (PatientServiceBill psb : pb.getBillItems())
-							if (!psb.isVoided()
-									&& psb.getServiceDate()
-											.compareTo(startDate) >= 0
-									&& psb.getServiceDate().compareTo(endDate) <= 0) {
-								System.out
-										.println(" i m getting here rwertwertewrt wertwert ewrtwert wertwert");
-								bills.add(pb);
-							}
-
-					} else
-						bills = null;
+		// both the paid and the unpaid branches used to collect the same
+		// items, so isPaid does not narrow the result; the bill is listed
+		// once per matching item
+		for (PatientServiceBill psb : getService()
+				.getBillItemsByPatientAndPeriod(patient, startDate, endDate))
+			bills.add(psb.getPatientBill());
 
 		return bills;
 	}
@@ -403,7 +360,8 @@ public class PatientBillUtil {
 	 * that s/he comes back to the billing desk and ask for refund. This will be
 	 * processed by removing those Billable Service from the list of the
 	 * services s/he got, and the corresponding amount will be deducted from the
-	 * general Total Bill.
+	 * general Total Bill. The bill is saved and each removed service is
+	 * recorded in the refund event log.
 	 * 
 	 * @param bill
 	 *            the one to be refunded
@@ -414,11 +372,7 @@ public class PatientBillUtil {
 	public static PatientBill refundPatientBill(PatientBill bill,
 			List<PatientServiceBill> services) {
 
-		for (PatientServiceBill psb : services) {
-			bill.removeBillItem(psb);
-		}
-
-		return bill;
+		return getService().refundPatientBill(bill, services);
 	}
 
 	/**
@@ -445,21 +399,10 @@ public class PatientBillUtil {
 	public static List<PatientBill> getBillsByPeriod(Date startDate,
 			Date endDate) {
 
-		List<PatientBill> bills = null;
-
-		if (startDate != null && endDate != null) {
-
-			bills = new ArrayList<PatientBill>();
-
-			for (PatientBill bill : getService().getAllPatientBills()) {
-				if (bill.getCreatedDate().compareTo(startDate) >= 0
-						&& bill.getCreatedDate().compareTo(endDate) <= 0) {
-					bills.add(bill);
-				}
-			}
-		}
+		if (startDate != null && endDate != null)
+			return getService().getBillsByCreatedDate(startDate, endDate, null);
 
-		return bills;
+		return null;
 	}
 	
 	public static PatientBill getPatientBill(Patient patient,Date startDate,
@@ -481,32 +424,14 @@ public class PatientBillUtil {
 	public static void markBillAsPaid(PatientBill bill) {
 
 		PatientBill pb = getService().getPatientBill(bill.getPatientBillId());
-		double amountNotPaid = 0d;
-		double amountPaid = pb.getAmountPaid().doubleValue();
-		double insuranceRate = pb.getBeneficiary().getInsurancePolicy()
-				.getInsurance().getCurrentRate().getRate();
-		double patientRate = (100f - insuranceRate) / 100f;
-		double amountDueByPatient = (pb.getAmount().doubleValue() * patientRate);
-
-		if (pb.getBeneficiary().getInsurancePolicy().getThirdParty() == null)
-			
-			amountNotPaid = amountDueByPatient - amountPaid;
-		else {
-
-			double thirdPartRate = pb.getBeneficiary().getInsurancePolicy()
-					.getThirdParty().getRate().doubleValue();
-
-			double amountPaidByThirdPart = pb.getAmount().doubleValue()
-					* (thirdPartRate / 100);
 
-			amountNotPaid = amountDueByPatient
-					- (amountPaidByThirdPart + amountPaid);
-			amountDueByPatient -= amountPaidByThirdPart;
-
-		}
+		// the patient due is net of the third party share
+		pb.updateBalances();
+		double amountPaid = pb.getPaidAmount().doubleValue();
+		double amountDueByPatient = pb.getPatientDue().doubleValue();
+		double amountNotPaid = pb.getOutstandingAmount().doubleValue();
 
 		double rest = amountPaid-amountDueByPatient;
-		System.out.println("mmmmmmmmmmmmmmmmmmmmmmmmmmmmrest "+rest);
 		/** Marking the BILL as FULLY PAID */
 		if (amountPaid >= amountDueByPatient || rest <=1) {
 			pb.setIsPaid(true);
@@ -525,146 +450,42 @@ public class PatientBillUtil {
 		getService().savePatientBill(pb);
 	}
 	
+	/**
+	 * Builds the invoice of a bill, its items being sorted into the invoice
+	 * groups by {@link InvoiceCategoryClassifier}
+	 * 
+	 * @param pb the bill
+	 * @param insurance not used, the rate is the one of the insurance of the bill
+	 * @return the invoice of the bill
+	 */
 	public static PatientInvoice getPatientInvoice(PatientBill pb,Insurance insurance ){
 		
-		Set<PatientServiceBill> billItems =pb.getBillItems(); 
-		
-		LinkedHashMap< String, Invoice> invoiceMap = new LinkedHashMap<String,Invoice>();
-		Double currentRate = pb.getBeneficiary().getInsurancePolicy().getInsurance().getCurrentRate().getRate().doubleValue();	
-		LinkedHashMap< String, Double> categGroupedMap = new LinkedHashMap<String,Double>();
-		
-		LinkedHashMap<String,List<String>> map =getRecoveryCategiesMap();
-		Double gdTotal =0.0;	
-	for (String categGrouped : map.keySet()) {
-		List<String > serviceCategories =map.get(categGrouped);
-		
-		Double total =0.0;	
-		List<Consommation> consommations =new ArrayList<Consommation>();
-		Invoice invoice = new Invoice();
-		for (String sviceCatgory : serviceCategories) {			
-			
-			
-			Double subTotal =0.0;
-			
-			for (PatientServiceBill item : billItems) {		
-				String category =item.getService().getFacilityServicePrice().getCategory();
-				
-				if (category.startsWith(sviceCatgory)) {					
-					Consommation consomm = new Consommation();
-					// Double  quantity = (Double)item.getQuantity();
-					
-					String libelle = item.getService().getFacilityServicePrice().getName();	
-					consomm.setRecordDate(item.getServiceDate());
-					consomm.setLibelle(libelle);
-					consomm.setUnitCost(item.getUnitPrice().doubleValue());
-					consomm.setQuantity(item.getQuantity());
-					consomm.setCost(item.getQuantity().doubleValue()*item.getUnitPrice().doubleValue());
-					consomm.setInsuranceCost(item.getQuantity().doubleValue()*item.getUnitPrice().doubleValue()*currentRate/100);
-					consomm.setPatientCost(item.getQuantity().doubleValue()*item.getUnitPrice().doubleValue()*(100-currentRate)/100);						
-					consommations.add(consomm);					
-					//Double unitPrice=item.getUnitPrice().doubleValue();
-					//Double cost =item.getQuantity()*item.getUnitPrice().doubleValue()*currentRate/100;	
-					Double cost =item.getQuantity().doubleValue()*item.getUnitPrice().doubleValue();
-					subTotal+=cost;	
-					
-				}	
-			}
-			
-			invoice.setCreatedDate(pb.getCreatedDate());
-			invoice.setConsommationList(consommations);			
-			total+=subTotal;            
-			}
-		invoice.setSubTotal(ReportsUtil.roundTwoDecimals(total));
-		//if(invoice.getSubTotal()!=0)
-
-		//get all service categories
-		if(!categGrouped.equals("AUTRES"))
-		invoiceMap.put(categGrouped, invoice);
-		
-		//filter ambulance amounts from formalite
-		else{
-			List<Consommation> autresConso = invoice.getConsommationList();
-			List<Consommation> ambulanceConsom = new ArrayList<Consommation>();
-			List<Consommation> formaliteConsom=new ArrayList<Consommation>();
-			Invoice ambulanceInvoice  = new Invoice();
-			Invoice formaliteInvoice = new Invoice();
-			Double subTotAmbul = 0.0,subTotalFormalites=0.0;
-			for (Consommation c : autresConso) {
-				if(c.getLibelle().startsWith("Ambul")){
-					ambulanceConsom.add(c);
-					subTotAmbul+=c.getCost();
-				}
-				else{
-					formaliteConsom.add(c);
-					subTotalFormalites+=c.getCost();
-				}
-			}
-			ambulanceInvoice.setConsommationList(ambulanceConsom);
-			ambulanceInvoice.setCreatedDate(pb.getCreatedDate());
-			ambulanceInvoice.setSubTotal(subTotAmbul);
-			
-			formaliteInvoice.setConsommationList(formaliteConsom);
-			formaliteInvoice.setCreatedDate(pb.getCreatedDate());
-			formaliteInvoice.setSubTotal(subTotalFormalites);
-			
-			invoiceMap.put("AMBULANCE", ambulanceInvoice);
-			invoiceMap.put("AUTRES", formaliteInvoice);
-		}
-	
-		
-		
-		gdTotal+=total;		
-		
-		//categGroupedMap.put(categGrouped, ReportsUtil.roundTwoDecimals(total));		
-	
-	}
-	//create patient invoice  to  be displayed on the interface
-
-	PatientInvoice patientInvoice = new PatientInvoice();
-	
-	patientInvoice.setPatientBill(pb);
-	patientInvoice.setInvoiceMap(invoiceMap);
-	patientInvoice.setTotalAmount( ReportsUtil.roundTwoDecimals(gdTotal));
-	patientInvoice.setPatientCost(ReportsUtil.roundTwoDecimals(gdTotal*(100-currentRate)/100));
-	patientInvoice.setInsuranceCost( ReportsUtil.roundTwoDecimals(gdTotal*currentRate/100));
-	
-	//add each invoice linked to catehory service to list of invoice		
-	/*categGroupedMap.put("Montant100%", ReportsUtil.roundTwoDecimals(gdTotal));
-	categGroupedMap.put("T.M10%", ReportsUtil.roundTwoDecimals(gdTotal*(100-currentRate)/100));
-	categGroupedMap.put("totalMS", ReportsUtil.roundTwoDecimals(gdTotal*currentRate/100));*/
-	
-	return  patientInvoice;
+		double currentRate = TariffMatrixUtil.getCurrentRate(
+				pb.getBeneficiary().getInsurancePolicy().getInsurance()).doubleValue();
 		
+		return InvoiceCategoryClassifier.getClassifier().classify(pb, currentRate);
 	}
 	
+	/**
+	 * @return the service category prefixes of each invoice group, see
+	 *         {@link InvoiceCategoryClassifier}
+	 */
  public static LinkedHashMap<String,List<String>> getRecoveryCategiesMap(){
-	LinkedHashMap<String,List<String>> map = new LinkedHashMap<String, List<String>>();
-	List<String> consult = Arrays.asList("CONSULTATION");
-	List<String> labo = Arrays.asList("LABORATOIRE");
-	List<String> imagery = Arrays.asList("ECHOGRAPHIE", "RADIOLOGIE");
-	List<String> medicActs = Arrays.asList("STOMATOLOGIE", "CHIRURGIE","SOINS INTENSIFS","GYNECO - OBSTETRIQUE","ORL","DERMATOLOGIE", "SOINS INFIRMIERS","MATERNITE","OPHTALMOLOGIE","KINESITHERAPIE","MEDECINE INTERNE","NEUROLOGIE");
-	List<String> medic = Arrays.asList("MEDICAMENTS");
-	List<String> consommables = Arrays.asList("CONSOMMABLES");
-	List<String> ambul = Arrays.asList("AMBULANCE");
-	List<String> autres = Arrays.asList("FORMALITES ADMINISTRATIVES","OXYGENOTHERAPIE");
-	List<String> hosp = Arrays.asList("HOSPITALISATION");
-	
-	map.put("CONSULTATION", consult);
-	map.put("LABORATOIRE", labo);
-	map.put("IMAGERIE", imagery);
-	map.put("ACTS", medicActs);
-	map.put("MEDICAMENTS", medic);
-	map.put("CONSOMMABLES", consommables);
-	map.put("AMBULANCE", ambul);
-	map.put("AUTRES", autres);
-	map.put("HOSPITALISATION", hosp);
-	return map;
+	return InvoiceCategoryClassifier.getClassifier().getGroups();
 }
  
  public static Set<PatientBill> getRefundedBill(Date startDate, Date endDate, User collector){
 	
 	return  getService().getRefundedBills(startDate, endDate, collector);
 }
+
+ /**
+  * @return the amount refunded in the period, by the collector if not null
+  */
+ public static BigDecimal getTotalRefundedAmount(Date startDate, Date endDate, User collector){
+
+	return getService().getTotalRefundedAmount(startDate, endDate, collector);
+}
  
 // public static PatientInvoice getRevenueFromOtherService(PatientBill pb,String other){
 //	 List<Consommation> consommations = new ArrayList<Consommation>();
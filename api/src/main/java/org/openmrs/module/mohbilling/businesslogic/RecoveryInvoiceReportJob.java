@@ -0,0 +1,47 @@
+package org.openmrs.module.mohbilling.businesslogic;
+
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.Date;
+
+import org.openmrs.module.mohbilling.model.CohortQuery;
+
+/**
+ * Generates in the background the csv of the invoices of an insurance over a
+ * period, as exported from the insurance facture page
+ */
+public class RecoveryInvoiceReportJob extends ReportJob {
+
+	private Integer insuranceId;
+	private Date startDate;
+	private Date endDate;
+
+	public RecoveryInvoiceReportJob(Integer insuranceId, Date startDate,
+			Date endDate) {
+		super("releve", "csv", "text/plain");
+		this.insuranceId = insuranceId;
+		this.startDate = startDate;
+		this.endDate = endDate;
+
+		addParameter("insuranceId", insuranceId);
+		addParameter("startDate", startDate);
+		addParameter("endDate", endDate);
+		setPeriodEndDate(endDate);
+	}
+
+	/**
+	 * @see org.openmrs.module.mohbilling.businesslogic.ReportJob#write(java.io.OutputStream)
+	 */
+	@Override
+	protected void write(OutputStream out) throws Exception {
+
+		CohortQuery cohortQuery = new CohortQuery();
+		cohortQuery.setInsurance(InsuranceUtil.getInsurance(insuranceId));
+		cohortQuery.setStartDate(startDate);
+		cohortQuery.setEndDate(endDate);
+
+		new FileExporter().writeInvoicesCSV(new PrintWriter(
+				new OutputStreamWriter(out, "UTF-8")), cohortQuery);
+	}
+}
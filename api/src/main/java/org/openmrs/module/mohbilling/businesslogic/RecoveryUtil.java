@@ -4,11 +4,13 @@ import java.math.BigDecimal;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.openmrs.api.context.Context;
 import org.openmrs.module.mohbilling.model.Insurance;
-import org.openmrs.module.mohbilling.model.PatientBill;
+import org.openmrs.module.mohbilling.model.InsuranceRate;
 import org.openmrs.module.mohbilling.model.Recovery;
 import org.openmrs.module.mohbilling.model.RecoveryStatus;
 import org.openmrs.module.mohbilling.model.ThirdParty;
@@ -101,40 +103,17 @@ public class RecoveryUtil {
 	 *            ending period of recovery
 	 * @param thirdParty
 	 *            third party to be matched
-	 * @return null if nothing to pay, the amount otherwise
+	 * @return 0 if nothing to pay, the amount otherwise
 	 */
 	public static BigDecimal getThirdPartyDueAmount(Date startPeriod,
 			Date endPeriod, ThirdParty thirdParty) {
 
-		BigDecimal allDueAmount = null;
-		BigDecimal thirdPartyDueAmount = new BigDecimal(0);
+		if (startPeriod != null && endPeriod != null && thirdParty != null)
+			return getDueAmount(thirdParty.getRate(), getService()
+					.getBillAmountsByThirdParty(startPeriod, endPeriod)
+					.get(thirdParty.getThirdPartyId()));
 
-		if (startPeriod != null && endPeriod != null && thirdParty != null) {
-
-			Float thirdPartyRate = thirdParty.getRate().floatValue();
-			allDueAmount = new BigDecimal(0);
-
-			for (PatientBill bill : PatientBillUtil.getBillsByPeriod(
-					startPeriod, endPeriod)) {
-
-				if (bill.getBeneficiary().getInsurancePolicy().getThirdParty() != null) {
-					if (bill.getBeneficiary().getInsurancePolicy()
-							.getThirdParty().getThirdPartyId().intValue() == thirdParty
-							.getThirdPartyId().intValue())
-
-						allDueAmount = allDueAmount.add(bill.getAmount());
-				}
-			}
-
-			if (thirdPartyRate != null && thirdPartyRate > 0f
-					&& allDueAmount.compareTo(new BigDecimal(0)) > 0)
-
-				thirdPartyDueAmount = new BigDecimal(thirdPartyRate).multiply(
-						allDueAmount).divide(new BigDecimal(100));
-
-		}
-
-		return thirdPartyDueAmount;
+		return new BigDecimal(0);
 	}
 
 	/**
@@ -144,41 +123,92 @@ public class RecoveryUtil {
 	 *            starting period of recovery
 	 * @param endPeriod
 	 *            ending period of recovery
-	 * @param thirdParty
-	 *            third party to be matched
-	 * @return null if nothing to pay, the amount otherwise
+	 * @param insurance
+	 *            insurance to be matched
+	 * @return 0 if nothing to pay, the amount otherwise
 	 */
 	public static BigDecimal getInsuranceDueAmount(Date startPeriod,
 			Date endPeriod, Insurance insurance) {
 
-		BigDecimal allDueAmount = null;
-		BigDecimal thirdPartyDueAmount = new BigDecimal(0);
-
-		if (startPeriod != null && endPeriod != null && insurance != null) {
+		if (startPeriod != null && endPeriod != null && insurance != null)
+			return getDueAmount(getRate(insurance, startPeriod), getService()
+					.getBillAmountsByInsurance(startPeriod, endPeriod)
+					.get(insurance.getInsuranceId()));
 
-			Float insuranceRate = insurance.getRateOnDate(startPeriod)
-					.getRate();
-			allDueAmount = new BigDecimal(0);
+		return new BigDecimal(0);
+	}
 
-			for (PatientBill bill : PatientBillUtil.getBillsByPeriod(
-					startPeriod, endPeriod)) {
+	/**
+	 * Gets the Amounts due by all the Insurances, from a single query
+	 * 
+	 * @param startPeriod
+	 *            starting period of recovery
+	 * @param endPeriod
+	 *            ending period of recovery
+	 * @param insurances
+	 *            the insurances
+	 * @return the due amount keyed by insurance id
+	 */
+	public static Map<Integer, BigDecimal> getInsuranceDueAmounts(
+			Date startPeriod, Date endPeriod, List<Insurance> insurances) {
+
+		Map<Integer, BigDecimal> amounts = getService()
+				.getBillAmountsByInsurance(startPeriod, endPeriod);
+		Map<Integer, BigDecimal> dueAmounts = new HashMap<Integer, BigDecimal>();
+		for (Insurance insurance : insurances)
+			dueAmounts.put(insurance.getInsuranceId(), getDueAmount(
+					getRate(insurance, startPeriod),
+					amounts.get(insurance.getInsuranceId())));
+
+		return dueAmounts;
+	}
 
-				if (bill.getBeneficiary().getInsurancePolicy().getInsurance()
-						.getInsuranceId().intValue() == insurance
-						.getInsuranceId().intValue()) {
-					allDueAmount = allDueAmount.add(bill.getAmount());
-				}
-			}
+	/**
+	 * Gets the Amounts due by all the Third Parties, from a single query
+	 * 
+	 * @param startPeriod
+	 *            starting period of recovery
+	 * @param endPeriod
+	 *            ending period of recovery
+	 * @param thirdParties
+	 *            the third parties
+	 * @return the due amount keyed by third party id
+	 */
+	public static Map<Integer, BigDecimal> getThirdPartyDueAmounts(
+			Date startPeriod, Date endPeriod, List<ThirdParty> thirdParties) {
+
+		Map<Integer, BigDecimal> amounts = getService()
+				.getBillAmountsByThirdParty(startPeriod, endPeriod);
+		Map<Integer, BigDecimal> dueAmounts = new HashMap<Integer, BigDecimal>();
+		for (ThirdParty thirdParty : thirdParties)
+			dueAmounts.put(thirdParty.getThirdPartyId(), getDueAmount(
+					thirdParty.getRate(),
+					amounts.get(thirdParty.getThirdPartyId())));
+
+		return dueAmounts;
+	}
 
-			if (insuranceRate != null && insuranceRate > 0f
-					&& allDueAmount.compareTo(new BigDecimal(0)) > 0)
+	/**
+	 * @return the rate of the insurance at the start of the period, null if
+	 *         it has none
+	 */
+	private static Float getRate(Insurance insurance, Date startPeriod) {
+		InsuranceRate rate = insurance.getRateOnDate(startPeriod);
+		return (rate != null) ? rate.getRate() : null;
+	}
 
-				thirdPartyDueAmount = new BigDecimal(insuranceRate).multiply(
-						allDueAmount).divide(new BigDecimal(100));
+	/**
+	 * @return the share of the bill amounts given by the rate, 0 if there is
+	 *         nothing to pay
+	 */
+	private static BigDecimal getDueAmount(Float rate, BigDecimal allDueAmount) {
 
-		}
+		if (rate != null && rate > 0f && allDueAmount != null
+				&& allDueAmount.compareTo(new BigDecimal(0)) > 0)
+			return new BigDecimal(rate).multiply(allDueAmount).divide(
+					new BigDecimal(100));
 
-		return thirdPartyDueAmount;
+		return new BigDecimal(0);
 	}
 
 	/**
@@ -0,0 +1,179 @@
+package org.openmrs.module.mohbilling.businesslogic;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.GlobalProperty;
+import org.openmrs.api.GlobalPropertyListener;
+import org.openmrs.api.context.Context;
+
+import com.itextpdf.text.Font;
+import com.itextpdf.text.Font.FontFamily;
+import com.itextpdf.text.Image;
+
+/**
+ * Resources shared by every printed receipt and report: the health facility
+ * global properties, the decoded and scaled facility logo and the address
+ * block of the letterhead. They are read once and kept until one of the
+ * health facility global properties changes, rather than for every document.
+ * <p>
+ * The fonts of the tables are shared as well. They must not be changed, a
+ * font of another size or style being created instead.
+ */
+public class RenderingResourceCache {
+
+	private static Log log = LogFactory.getLog(RenderingResourceCache.class);
+
+	private static final String FACILITY_PROPERTY_PREFIX = "billing.healthFacility";
+
+	private static final String[] FACILITY_PROPERTIES = {
+			BillingConstants.GLOBAL_PROPERTY_HEALTH_FACILITY_LOGO,
+			BillingConstants.GLOBAL_PROPERTY_HEALTH_FACILITY_NAME,
+			BillingConstants.GLOBAL_PROPERTY_HEALTH_FACILITY_PHYSICAL_ADDRESS,
+			BillingConstants.GLOBAL_PROPERTY_HEALTH_FACILITY_SHORT_CODE,
+			BillingConstants.GLOBAL_PROPERTY_HEALTH_FACILITY_EMAIL };
+
+	/** Font of the table cells */
+	public static final Font NORMAL_FONT = new Font(FontFamily.COURIER, 9,
+			Font.NORMAL);
+
+	/** Font of the table headers and totals */
+	public static final Font BOLD_FONT = new Font(FontFamily.COURIER, 9,
+			Font.BOLD);
+
+	private static volatile RenderingResourceCache resources;
+
+	/** Values of the health facility global properties, the blank ones left out */
+	private final Map<String, String> properties;
+
+	/** The scaled logo, copied for each document, null if there is none */
+	private final Image logo;
+
+	private final String address;
+
+	/**
+	 * @param properties
+	 *            the values of the health facility global properties
+	 */
+	public RenderingResourceCache(Map<String, String> properties) {
+
+		this.properties = new HashMap<String, String>();
+		for (Map.Entry<String, String> property : properties.entrySet())
+			if (StringUtils.isNotBlank(property.getValue()))
+				this.properties.put(property.getKey(), property.getValue());
+
+		logo = loadLogo(this.properties
+				.get(BillingConstants.GLOBAL_PROPERTY_HEALTH_FACILITY_LOGO));
+		address = getProperty(
+				BillingConstants.GLOBAL_PROPERTY_HEALTH_FACILITY_NAME, "")
+				+ "\n"
+				+ getProperty(
+						BillingConstants.GLOBAL_PROPERTY_HEALTH_FACILITY_PHYSICAL_ADDRESS,
+						"")
+				+ "\n"
+				+ getProperty(
+						BillingConstants.GLOBAL_PROPERTY_HEALTH_FACILITY_EMAIL,
+						"");
+	}
+
+	/**
+	 * @return the resources of the current health facility global properties
+	 */
+	public static RenderingResourceCache getResources() {
+
+		RenderingResourceCache current = resources;
+		if (current == null) {
+			Map<String, String> values = new HashMap<String, String>();
+			for (String name : FACILITY_PROPERTIES)
+				values.put(name, Context.getAdministrationService()
+						.getGlobalProperty(name));
+
+			current = new RenderingResourceCache(values);
+			resources = current;
+		}
+
+		return current;
+	}
+
+	/**
+	 * Forgets the resources, they are read again for the next document
+	 */
+	public static void invalidate() {
+		resources = null;
+	}
+
+	/**
+	 * @param name
+	 *            the name of a global property
+	 * @return true if it is a health facility property, kept by the cache
+	 */
+	public static boolean isHealthFacilityProperty(String name) {
+		return name != null && name.startsWith(FACILITY_PROPERTY_PREFIX);
+	}
+
+	/**
+	 * @param name
+	 *            the name of a health facility global property
+	 * @param defaultValue
+	 *            the value returned if the property is blank
+	 * @return the value of the property
+	 */
+	public String getProperty(String name, String defaultValue) {
+
+		String value = properties.get(name);
+		return (value != null) ? value : defaultValue;
+	}
+
+	/**
+	 * @return a copy of the logo scaled to fit 40 by 40 points, sharing its
+	 *         decoded data, or null if the logo could not be read
+	 */
+	public Image getLogo() {
+		return (logo != null) ? Image.getInstance(logo) : null;
+	}
+
+	/**
+	 * @return the name, address, and email of the facility, on three lines
+	 */
+	public String getAddress() {
+		return address;
+	}
+
+	private static Image loadLogo(String imagePath) {
+
+		if (imagePath == null)
+			return null;
+
+		try {
+			Image image = Image.getInstance(imagePath);
+			image.scaleToFit(40, 40);
+			return image;
+		} catch (Exception e) {
+			log.warn("WARNING: Unable to get health facility image logo.  Please check that '"
+					+ imagePath + "' is valid");
+		}
+		return null;
+	}
+
+	/**
+	 * Reads the resources again when a health facility global property
+	 * changes
+	 */
+	public static class PropertyListener implements GlobalPropertyListener {
+
+		public boolean supportsPropertyName(String propertyName) {
+			return isHealthFacilityProperty(propertyName);
+		}
+
+		public void globalPropertyChanged(GlobalProperty newValue) {
+			invalidate();
+		}
+
+		public void globalPropertyDeleted(String propertyName) {
+			invalidate();
+		}
+	}
+}
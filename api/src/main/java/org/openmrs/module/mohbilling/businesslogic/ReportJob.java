@@ -0,0 +1,233 @@
+package org.openmrs.module.mohbilling.businesslogic;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.openmrs.api.APIException;
+import org.openmrs.module.mohbilling.model.ReportJobStatus;
+import org.openmrs.util.OpenmrsUtil;
+
+/**
+ * A report generated in the background by {@link ReportJobUtil}. The job is
+ * identified by a random id, given to its owner only. The key computed from
+ * the report name and parameters tells the same report asked again: its
+ * result is saved in a file of its owner named after this key.
+ */
+public abstract class ReportJob {
+
+	private String id;
+	private String name;
+	private String fileExtension;
+	private String contentType;
+	private Map<String, Object> parameters = new TreeMap<String, Object>();
+
+	/** The end of the period of the report, null if it has none */
+	private Date periodEndDate;
+
+	private Integer ownerId;
+	private Date submittedDate;
+	private volatile ReportJobStatus status;
+	private volatile Date finishedDate;
+	private volatile String errorMessage;
+	private volatile File resultFile;
+
+	/**
+	 * @param name the name of the report, also used as file name
+	 * @param fileExtension the extension of the result file
+	 * @param contentType the content type of the result file
+	 */
+	protected ReportJob(String name, String fileExtension, String contentType) {
+		this.name = name;
+		this.fileExtension = fileExtension;
+		this.contentType = contentType;
+	}
+
+	/**
+	 * Writes the report to the result file. This is called from a worker
+	 * thread having its own session, authenticated as the user who submitted
+	 * the job: entities have to be loaded again from the ids given as
+	 * parameters.
+	 *
+	 * @param out the stream of the result file
+	 * @throws Exception
+	 */
+	protected abstract void write(OutputStream out) throws Exception;
+
+	/**
+	 * Adds a parameter of the report, which is part of the job key
+	 *
+	 * @param name
+	 * @param value
+	 */
+	protected void addParameter(String name, Object value) {
+		parameters.put(name, value);
+	}
+
+	/**
+	 * Sets the last day of the period of the report, its result only being
+	 * reused if it was generated once this day was over
+	 *
+	 * @param endDate
+	 */
+	protected void setPeriodEndDate(Date endDate) {
+		if (endDate == null) {
+			periodEndDate = null;
+			return;
+		}
+		Calendar calendar = Calendar.getInstance();
+		calendar.setTime(OpenmrsUtil.firstSecondOfDay(endDate));
+		calendar.add(Calendar.DAY_OF_MONTH, 1);
+		periodEndDate = calendar.getTime();
+	}
+
+	/**
+	 * @param generatedDate when a result of the same report was generated
+	 * @return true if the result may be served for this job, the period of
+	 *         the report having ended when it was generated
+	 */
+	public boolean isReusable(Date generatedDate) {
+		return periodEndDate == null || !generatedDate.before(periodEndDate);
+	}
+
+	/**
+	 * @return the digest of the report name and parameters, in the order of
+	 *         their names, the dates being formatted to the second
+	 */
+	public String getKey() {
+		SimpleDateFormat df = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+		StringBuilder description = new StringBuilder(name);
+		for (Map.Entry<String, Object> parameter : parameters.entrySet()) {
+			Object value = parameter.getValue();
+			description.append("|").append(parameter.getKey()).append("=")
+					.append(value instanceof Date ? df.format(value)
+							: (value != null) ? value : "");
+		}
+
+		try {
+			byte[] digest = MessageDigest.getInstance("MD5").digest(
+					description.toString().getBytes("UTF-8"));
+			StringBuilder key = new StringBuilder();
+			for (byte b : digest)
+				key.append(Integer.toHexString((b & 0xff) | 0x100).substring(1));
+			return key.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new APIException("Unable to compute the report key", e);
+		} catch (UnsupportedEncodingException e) {
+			throw new APIException("Unable to compute the report key", e);
+		}
+	}
+
+	/**
+	 * @return the random id of the job, set once it is submitted
+	 */
+	public String getId() {
+		return id;
+	}
+
+	void setId(String id) {
+		this.id = id;
+	}
+
+	/**
+	 * @return the name
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return the fileExtension
+	 */
+	public String getFileExtension() {
+		return fileExtension;
+	}
+
+	/**
+	 * @return the contentType
+	 */
+	public String getContentType() {
+		return contentType;
+	}
+
+	/**
+	 * @return the id of the user who submitted the job
+	 */
+	public Integer getOwnerId() {
+		return ownerId;
+	}
+
+	void setOwnerId(Integer ownerId) {
+		this.ownerId = ownerId;
+	}
+
+	/**
+	 * @return the submittedDate
+	 */
+	public Date getSubmittedDate() {
+		return submittedDate;
+	}
+
+	void setSubmittedDate(Date submittedDate) {
+		this.submittedDate = submittedDate;
+	}
+
+	/**
+	 * @return the status
+	 */
+	public ReportJobStatus getStatus() {
+		return status;
+	}
+
+	void setStatus(ReportJobStatus status) {
+		this.status = status;
+	}
+
+	/**
+	 * @return the finishedDate
+	 */
+	public Date getFinishedDate() {
+		return finishedDate;
+	}
+
+	void setFinishedDate(Date finishedDate) {
+		this.finishedDate = finishedDate;
+	}
+
+	/**
+	 * @return the message of the error which made the job fail
+	 */
+	public String getErrorMessage() {
+		return errorMessage;
+	}
+
+	void setErrorMessage(String errorMessage) {
+		this.errorMessage = errorMessage;
+	}
+
+	/**
+	 * @return the result file, set once the job is done
+	 */
+	public File getResultFile() {
+		return resultFile;
+	}
+
+	void setResultFile(File resultFile) {
+		this.resultFile = resultFile;
+	}
+
+	/**
+	 * @return true if the job is queued or running
+	 */
+	public boolean isActive() {
+		return status == ReportJobStatus.QUEUED
+				|| status == ReportJobStatus.RUNNING;
+	}
+}
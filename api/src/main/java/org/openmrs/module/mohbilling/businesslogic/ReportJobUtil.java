@@ -0,0 +1,335 @@
+package org.openmrs.module.mohbilling.businesslogic;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.User;
+import org.openmrs.api.APIException;
+import org.openmrs.api.AdministrationService;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.mohbilling.model.ReportJobStatus;
+import org.openmrs.util.OpenmrsUtil;
+
+/**
+ * Generates the heavy reports in the background rather than in the servlet
+ * request. The jobs run on a small pool of threads behind a bounded queue,
+ * and each user may only have a few jobs queued or running.
+ * <p>
+ * The results are saved on disk under the application data directory, in a
+ * directory of the user who asked for them, named after the key of the report
+ * name and parameters. The same report asked again by the same user is served
+ * from its saved result, even after a restart, as long as the period of the
+ * report had ended when it was generated and the result is less than a day
+ * old. The job page offers to generate it again.
+ */
+public class ReportJobUtil {
+
+	private static Log log = LogFactory.getLog(ReportJobUtil.class);
+
+	/** Number of reports generated at the same time */
+	private static final int REPORT_THREADS = 2;
+
+	/** Number of reports waiting for a thread */
+	private static final int REPORT_QUEUE_SIZE = 20;
+
+	/** Number of reports a user may have queued or running */
+	private static final int MAX_ACTIVE_JOBS_PER_USER = 2;
+
+	/**
+	 * Time after which a finished job is forgotten, and a saved result
+	 * deleted
+	 */
+	private static final long FINISHED_JOB_RETENTION = 24L * 60 * 60 * 1000;
+
+	/** Global properties of the user the scheduled tasks run as */
+	private static final String SCHEDULER_USERNAME_PROPERTY = "scheduler.username";
+
+	private static final String SCHEDULER_PASSWORD_PROPERTY = "scheduler.password";
+
+	private static final String REPORTS_DIRECTORY = "mohbilling"
+			+ File.separator + "reports";
+
+	private static final Map<String, ReportJob> jobs = new HashMap<String, ReportJob>();
+
+	private static ThreadPoolExecutor executor;
+
+	/**
+	 * Submits a report job. The job of the same report the user already has
+	 * queued or running is returned instead. If the user already generated
+	 * the same report and it may be reused, the job is done at once with
+	 * this result.
+	 *
+	 * @param job the job to submit
+	 * @return the job generating the report
+	 * @throws APIException if the user or the queue has too many jobs
+	 */
+	public static synchronized ReportJob submit(ReportJob job) {
+
+		removeExpiredJobs();
+
+		Integer ownerId = Context.getAuthenticatedUser().getUserId();
+		ReportJob activeJob = getActiveJob(ownerId, job.getKey());
+		if (activeJob != null)
+			return activeJob;
+
+		job.setId(UUID.randomUUID().toString());
+		job.setOwnerId(ownerId);
+		job.setSubmittedDate(new Date());
+
+		File result = getResultFile(job);
+		Date generatedDate = new Date(result.lastModified());
+		if (result.exists() && !isExpired(generatedDate)
+				&& job.isReusable(generatedDate)) {
+			job.setResultFile(result);
+			job.setFinishedDate(generatedDate);
+			job.setStatus(ReportJobStatus.DONE);
+		} else
+			run(job, result);
+
+		jobs.put(job.getId(), job);
+
+		return job;
+	}
+
+	/**
+	 * Generates again the report of a finished job, rather than serving its
+	 * saved result
+	 *
+	 * @param job a job of the authenticated user
+	 * @return the job, queued again
+	 * @throws APIException if the user or the queue has too many jobs
+	 */
+	public static synchronized ReportJob regenerate(ReportJob job) {
+
+		if (job.isActive())
+			return job;
+		if (getActiveJob(job.getOwnerId(), job.getKey()) != null)
+			throw new APIException(
+					"This report is already being generated, wait for it to finish");
+
+		job.setSubmittedDate(new Date());
+		run(job, getResultFile(job));
+
+		return job;
+	}
+
+	/**
+	 * @param id the id of the job
+	 * @return the job, or null if it is unknown or was forgotten
+	 */
+	public static synchronized ReportJob getJob(String id) {
+		return jobs.get(id);
+	}
+
+	/**
+	 * Stops the threads generating the reports, the jobs being interrupted and
+	 * forgotten. The saved results are kept.
+	 */
+	public static synchronized void shutdown() {
+		if (executor != null) {
+			executor.shutdownNow();
+			executor = null;
+		}
+		jobs.clear();
+	}
+
+	/**
+	 * @return the job of the report the owner has queued or running, null if
+	 *         there is none
+	 */
+	private static ReportJob getActiveJob(Integer ownerId, String key) {
+		for (ReportJob j : jobs.values())
+			if (j.isActive() && ownerId.equals(j.getOwnerId())
+					&& key.equals(j.getKey()))
+				return j;
+		return null;
+	}
+
+	/**
+	 * Queues the job, its result being written to the file
+	 *
+	 * @throws APIException if its owner or the queue has too many jobs
+	 */
+	private static void run(ReportJob job, File result) {
+		int activeJobs = 0;
+		for (ReportJob j : jobs.values())
+			if (j.isActive() && job.getOwnerId().equals(j.getOwnerId()))
+				activeJobs++;
+		if (activeJobs >= MAX_ACTIVE_JOBS_PER_USER)
+			throw new APIException("You already have " + activeJobs
+					+ " reports being generated, wait for them to finish");
+
+		job.setResultFile(null);
+		job.setFinishedDate(null);
+		job.setErrorMessage(null);
+		job.setStatus(ReportJobStatus.QUEUED);
+		try {
+			getExecutor().execute(new ReportJobRunner(job, result));
+		} catch (RejectedExecutionException e) {
+			job.setErrorMessage("Too many reports are being generated");
+			job.setFinishedDate(new Date());
+			job.setStatus(ReportJobStatus.FAILED);
+			throw new APIException(
+					"Too many reports are being generated, try again later", e);
+		}
+	}
+
+	private static ThreadPoolExecutor getExecutor() {
+		if (executor == null) {
+			executor = new ThreadPoolExecutor(REPORT_THREADS, REPORT_THREADS,
+					0L, TimeUnit.MILLISECONDS,
+					new ArrayBlockingQueue<Runnable>(REPORT_QUEUE_SIZE),
+					new ThreadFactory() {
+						private int count = 0;
+
+						public synchronized Thread newThread(Runnable r) {
+							Thread thread = new Thread(r, "mohbilling-report-"
+									+ (++count));
+							thread.setDaemon(true);
+							return thread;
+						}
+					});
+		}
+		return executor;
+	}
+
+	private static boolean isExpired(Date date) {
+		return System.currentTimeMillis() - date.getTime() > FINISHED_JOB_RETENTION;
+	}
+
+	/**
+	 * Forgets the jobs finished for more than the retention time, and deletes
+	 * the saved results as old, those of the running jobs being newer
+	 */
+	private static void removeExpiredJobs() {
+		for (Iterator<ReportJob> it = jobs.values().iterator(); it.hasNext();) {
+			ReportJob job = it.next();
+			if (!job.isActive() && job.getFinishedDate() != null
+					&& isExpired(job.getFinishedDate()))
+				it.remove();
+		}
+
+		File[] ownerDirectories = getReportsDirectory().listFiles();
+		if (ownerDirectories == null)
+			return;
+		for (File ownerDirectory : ownerDirectories) {
+			File[] results = ownerDirectory.listFiles();
+			if (results == null)
+				continue;
+			for (File result : results)
+				if (isExpired(new Date(result.lastModified()))
+						&& !result.delete())
+					log.warn("Unable to delete the report " + result);
+		}
+	}
+
+	private static File getReportsDirectory() {
+		return new File(OpenmrsUtil.getApplicationDataDirectory(),
+				REPORTS_DIRECTORY);
+	}
+
+	/**
+	 * @return the file of the result of the report, in the directory of its
+	 *         owner and named after its key
+	 */
+	private static File getResultFile(ReportJob job) {
+		File directory = new File(getReportsDirectory(), job.getOwnerId()
+				.toString());
+		if (!directory.exists() && !directory.mkdirs())
+			throw new APIException("Unable to create the reports directory "
+					+ directory.getAbsolutePath());
+
+		return new File(directory, job.getKey() + "."
+				+ job.getFileExtension());
+	}
+
+	/**
+	 * Runs a job in its own session, authenticated as the user who submitted
+	 * it, and saves its result once it is complete
+	 */
+	private static class ReportJobRunner implements Runnable {
+
+		private ReportJob job;
+		private File result;
+
+		public ReportJobRunner(ReportJob job, File result) {
+			this.job = job;
+			this.result = result;
+		}
+
+		public void run() {
+
+			job.setStatus(ReportJobStatus.RUNNING);
+			File partial = new File(result.getPath() + ".part");
+			OutputStream out = null;
+			try {
+				Context.openSession();
+				authenticateAsOwner();
+
+				out = new BufferedOutputStream(new FileOutputStream(partial));
+				job.write(out);
+				out.close();
+				out = null;
+
+				if (result.exists() && !result.delete())
+					throw new IOException("Unable to replace " + result);
+				if (!partial.renameTo(result))
+					throw new IOException("Unable to save " + result);
+
+				job.setResultFile(result);
+				job.setStatus(ReportJobStatus.DONE);
+			} catch (Throwable t) {
+				log.error("Error while generating the report " + job.getName(), t);
+				job.setErrorMessage(t.getMessage());
+				job.setStatus(ReportJobStatus.FAILED);
+			} finally {
+				if (out != null) {
+					try {
+						out.close();
+					} catch (IOException e) {
+						log.warn("Unable to close " + partial, e);
+					}
+				}
+				partial.delete();
+				job.setFinishedDate(new Date());
+				Context.closeSession();
+			}
+		}
+
+		/**
+		 * Authenticates the user context of the session of the thread as the
+		 * user the scheduled tasks run as, then takes the identity of the
+		 * owner of the job, so that the report is generated with the
+		 * privileges of its owner. The scheduler user has to be a super user.
+		 */
+		private void authenticateAsOwner() {
+			AdministrationService administrationService = Context
+					.getAdministrationService();
+			Context.authenticate(administrationService
+					.getGlobalProperty(SCHEDULER_USERNAME_PROPERTY),
+					administrationService
+							.getGlobalProperty(SCHEDULER_PASSWORD_PROPERTY));
+
+			User owner = Context.getUserService().getUser(job.getOwnerId());
+			if (owner == null)
+				throw new APIException("The user " + job.getOwnerId()
+						+ " who asked for the report does not exist");
+			Context.becomeUser(owner.getSystemId());
+		}
+	}
+}
@@ -7,13 +7,14 @@ import java.math.BigDecimal;
 import java.text.DecimalFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.TreeSet;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -27,6 +28,7 @@ import org.openmrs.Patient;
 import org.openmrs.api.context.Context;
 import org.openmrs.module.mohbilling.model.Beneficiary;
 import org.openmrs.module.mohbilling.model.BillPayment;
+import org.openmrs.module.mohbilling.model.BillSummary;
 import org.openmrs.module.mohbilling.model.BillableService;
 import org.openmrs.module.mohbilling.model.FacilityServicePrice;
 import org.openmrs.module.mohbilling.model.Insurance;
@@ -107,28 +109,9 @@ public class ReportsUtil {
 	 */
 	public static List<PatientBill> getPaidBills(Date date, Boolean isPaid) {
 
-		List<PatientBill> bills;
-		Set<PatientServiceBill> itemBills;
-
-		if (date != null && isPaid != null) {
-			bills = new ArrayList<PatientBill>();
-			for (PatientBill pb : getService().getAllPatientBills())
-				if (!pb.isVoided() && pb.getIsPaid() == isPaid) {
-					itemBills = new TreeSet<PatientServiceBill>();
-
-					if (pb.getBillItems() != null)
-						for (PatientServiceBill psb : pb.getBillItems()) {
-							if (!psb.isVoided()
-									&& psb.getServiceDate().compareTo(date) == 0) {
-								itemBills.add(psb);
-							}
-							bills.add(pb);
-						}
-					pb.setBillItems(itemBills);
-				}
-
-			return bills;
-		}
+		if (date != null && isPaid != null)
+			return getBills(getService().getBillSummaries(null, date, date,
+					isPaid, null));
 
 		return null;
 	}
@@ -150,30 +133,7 @@ public class ReportsUtil {
 	public static List<BillableService> getPaidServices(Date startDate,
 			Date endDate, Boolean isPaid) {
 
-		List<BillableService> services = new ArrayList<BillableService>();
-
-		if (getService().getAllPatientBills() != null)
-			for (PatientBill pb : getService().getAllPatientBills())
-				if (!pb.isVoided())
-					if (pb != null && pb.getIsPaid() == isPaid) {
-
-						for (PatientServiceBill psb : pb.getBillItems())
-							if (!psb.isVoided()
-									&& psb.getServiceDate()
-											.compareTo(startDate) >= 0
-									&& psb.getServiceDate().compareTo(endDate) <= 0)
-								services.add(psb.getService());
-					} else if (pb != null) {
-						for (PatientServiceBill psb : pb.getBillItems())
-							if (!psb.isVoided()
-									&& psb.getServiceDate()
-											.compareTo(startDate) >= 0
-									&& psb.getServiceDate().compareTo(endDate) <= 0)
-								services.add(psb.getService());
-					} else
-						services = null;
-
-		return services;
+		return getService().getBilledServices(startDate, endDate, isPaid);
 	}
 
 	/**
@@ -192,26 +152,8 @@ public class ReportsUtil {
 	public static List<PatientBill> getMonthlyGeneralBills(Date startDate,
 			Date endDate, Boolean isPaid) {
 
-		List<PatientBill> bills = new ArrayList<PatientBill>();
-
-		for (PatientBill pb : getService().getAllPatientBills())
-			if (isPaid != null) {
-				if (!pb.isVoided() && pb.getIsPaid() == isPaid)
-					for (PatientServiceBill psb : pb.getBillItems())
-						if (!psb.isVoided()
-								&& psb.getServiceDate().compareTo(startDate) >= 0
-								&& psb.getServiceDate().compareTo(endDate) <= 0)
-							bills.add(pb);
-			} else {
-				if (!pb.isVoided())
-					for (PatientServiceBill psb : pb.getBillItems())
-						if (!psb.isVoided()
-								&& psb.getServiceDate().compareTo(startDate) >= 0
-								&& psb.getServiceDate().compareTo(endDate) <= 0)
-							bills.add(pb);
-			}
-
-		return bills;
+		return getBills(getService().getBillSummaries(null, startDate,
+				endDate, isPaid, null));
 	}
 
 	/**
@@ -231,21 +173,8 @@ public class ReportsUtil {
 	public static List<PatientBill> getMonthlyBillsByInsurance(
 			Insurance insurance, Date startDate, Date endDate, Boolean isPaid) {
 
-		List<PatientBill> bills = new ArrayList<PatientBill>();
-
-		for (PatientBill pb : getService().getAllPatientBills())
-			if (!pb.isVoided()
-					&& pb.getBeneficiary().getInsurancePolicy().getInsurance()
-							.getInsuranceId().intValue() == insurance
-							.getInsuranceId().intValue()
-					&& pb.getIsPaid() == isPaid)
-				for (PatientServiceBill psb : pb.getBillItems())
-					if (!psb.isVoided()
-							&& psb.getServiceDate().compareTo(startDate) >= 0
-							& psb.getServiceDate().compareTo(endDate) <= 0)
-						bills.add(pb);
-
-		return bills;
+		return getBills(getService().getBillSummaries(insurance, startDate,
+				endDate, isPaid, null));
 	}
 
 	/**
@@ -290,16 +219,7 @@ public class ReportsUtil {
 	 */
 	public static List<BillPayment> getDailyPayments(Date day) {
 
-		List<BillPayment> payments = new ArrayList<BillPayment>();
-
-		for (PatientBill pb : getService().getAllPatientBills())
-			if (!pb.isVoided() && pb.getPayments() != null)
-				for (BillPayment bp : pb.getPayments())
-					if (!bp.isVoided()
-							&& bp.getDateReceived().compareTo(day) == 0)
-						payments.add(bp);
-
-		return payments;
+		return getService().getPaymentsReceivedOn(day);
 	}
 
 	// <<<<<<<<<< B. External:
@@ -318,77 +238,8 @@ public class ReportsUtil {
 	public static List<PatientBill> getMonthlyReportByInsurance(
 			Insurance insurance, Date startDate, Date endDate, Integer patientId) {
 
-		List<PatientBill> bills = new ArrayList<PatientBill>();
-
-		for (PatientBill pb : getService().getAllPatientBills())
-			if (!pb.isVoided()
-					&& pb.getBeneficiary().getInsurancePolicy().getInsurance()
-							.getInsuranceId().intValue() == insurance
-							.getInsuranceId().intValue())
-
-				/*
-				 * for (PatientServiceBill psb : pb.getBillItems()){
-				 * if(startDate!=null && endDate!=null) if (!psb.isVoided()&&
-				 * psb.getServiceDate().compareTo(startDate) >= 0 &&
-				 * psb.getServiceDate().compareTo(endDate) <= 0) bills.add(pb);
-				 * if(startDate!=null && endDate==null) if (!psb.isVoided()&&
-				 * psb.getServiceDate().compareTo(startDate) >= 0)
-				 * bills.add(pb); if(startDate==null && endDate!=null) if
-				 * (!psb.isVoided()&& psb.getServiceDate().compareTo(endDate) <=
-				 * 0) bills.add(pb); if(startDate==null && endDate==null)
-				 */
-				for (PatientServiceBill psb : pb.getBillItems()) {
-					if (startDate != null && endDate != null
-							&& patientId != null) {
-						if (!psb.isVoided()
-								&& psb.getServiceDate().compareTo(startDate) >= 0
-								&& psb.getServiceDate().compareTo(endDate) <= 0) {
-							if (!bills.contains(getService().getPatientBill(pb
-									.getPatientBillId()))) {
-								if (psb.getPatientBill().getBeneficiary()
-										.getPatient().getPatientId()
-										.compareTo(patientId) == 0) {
-									// pb.getBeneficiary().getPatient().getPatientId();
-									// System.out.println("sjdbfhjdfsjdbfhkjavjads 1");
-									bills.add(pb);
-									// System.out.println("sjdbfhjdfsjdbfhkjavjads 2");
-								}
-							}
-						}
-					}
-					if (startDate != null && endDate != null
-							&& patientId == null) {
-						if (!psb.isVoided()
-								&& psb.getServiceDate().compareTo(startDate) >= 0
-								&& psb.getServiceDate().compareTo(endDate) <= 0) {
-							if (!bills.contains(getService().getPatientBill(pb
-									.getPatientBillId()))) {
-								bills.add(pb);
-							}
-						}
-					}
-					if (startDate != null && endDate == null
-							&& patientId == null)
-						if (!psb.isVoided()
-								&& psb.getServiceDate().compareTo(startDate) >= 0)
-							if (!bills.contains(getService().getPatientBill(pb
-									.getPatientBillId())))
-								bills.add(pb);
-					if (startDate == null && endDate != null
-							&& patientId == null)
-						if (!psb.isVoided()
-								&& psb.getServiceDate().compareTo(endDate) <= 0)
-							if (!bills.contains(getService().getPatientBill(pb
-									.getPatientBillId())))
-								bills.add(pb);
-					if (startDate == null && endDate == null
-							&& patientId == null)
-						if (!bills.contains(getService().getPatientBill(pb
-								.getPatientBillId())))
-
-							bills.add(pb);
-				}
-		return bills;
+		return getBills(getService().getBillSummaries(insurance, startDate,
+				endDate, null, patientId));
 	}
 
 	public static List<PatientBill> billCohortBuilder(Insurance insurance,
@@ -418,30 +269,13 @@ public class ReportsUtil {
 	public static Float getMonthlyInsuranceDueAmount(Insurance insurance,
 			Date startDate, Date endDate, Boolean isPaid) {
 
-		List<PatientBill> bills = new ArrayList<PatientBill>();
-
-		for (PatientBill pb : getService().getAllPatientBills()) {
-
-			if (!pb.isVoided()
-					&& pb.getBeneficiary().getInsurancePolicy().getInsurance()
-							.getInsuranceId().intValue() == insurance
-							.getInsuranceId().intValue()
-					&& pb.getIsPaid() == isPaid) {
-
-				for (PatientServiceBill psb : pb.getBillItems()) {
-					if (!psb.isVoided()
-							&& psb.getServiceDate().compareTo(startDate) >= 0
-							& psb.getServiceDate().compareTo(endDate) <= 0)
-
-						bills.add(pb);
-				}
-			}
-		}
 		float amountToBePaid = 0;
-		for (PatientBill patientBills : bills) {
+		float rate = insurance.getRateOnDate(endDate).getRate();
 
-			float amountPerBillByInsurance = (patientBills.getAmount()
-					.intValue() * insurance.getRateOnDate(endDate).getRate()) / 100;
+		for (BillSummary summary : getService().getBillSummaries(insurance,
+				startDate, endDate, isPaid, null)) {
+
+			float amountPerBillByInsurance = (summary.getAmount().intValue() * rate) / 100;
 			amountToBePaid = amountToBePaid + amountPerBillByInsurance;
 
 		}
@@ -464,75 +298,27 @@ public class ReportsUtil {
 			FacilityServicePrice sc, Date startDate, Date endDate,
 			Patient patient, Insurance insurance) {
 
-		List<PatientBill> bills = new ArrayList<PatientBill>();
+		return getBills(getService().getBillSummariesByFacilityService(sc,
+				startDate, endDate, patient, insurance));
+	}
 
-		for (PatientBill pb : getService().getAllPatientBills())
-			for (PatientServiceBill psb : pb.getBillItems()) {
-				if (sc != null && startDate == null && endDate == null
-						&& patient == null && insurance == null)
-					if (psb.getService().getFacilityServicePrice()
-							.getFacilityServicePriceId().intValue() == sc
-							.getFacilityServicePriceId().intValue()) {
-						bills.add(pb);
-					}
-				if (sc != null && startDate != null && endDate == null
-						&& patient == null && insurance == null)
-					if (psb.getService().getFacilityServicePrice()
-							.getFacilityServicePriceId().intValue() == sc
-							.getFacilityServicePriceId().intValue()
-							&& psb.getService().getStartDate()
-									.compareTo(startDate) >= 0) {
-						bills.add(pb);
-					}
-				if (sc != null && startDate == null && endDate != null
-						&& patient == null && insurance == null)
-					if (psb.getService().getFacilityServicePrice()
-							.getFacilityServicePriceId().intValue() == sc
-							.getFacilityServicePriceId().intValue()
-							&& psb.getService().getStartDate()
-									.compareTo(endDate) <= 0) {
-						bills.add(pb);
-					}
-				if (sc != null && startDate != null && endDate != null
-						&& patient == null && insurance == null)
-					if (psb.getService().getFacilityServicePrice()
-							.getFacilityServicePriceId().intValue() == sc
-							.getFacilityServicePriceId().intValue()
-							&& psb.getService().getStartDate()
-									.compareTo(startDate) >= 0
-							&& psb.getService().getStartDate()
-									.compareTo(endDate) <= 0) {
-						bills.add(pb);
-					}
-				if (sc != null && startDate != null && endDate != null
-						&& patient != null && insurance == null)
-					if (psb.getService().getFacilityServicePrice()
-							.getFacilityServicePriceId().intValue() == sc
-							.getFacilityServicePriceId().intValue()
-							&& psb.getService().getStartDate()
-									.compareTo(startDate) >= 0
-							&& psb.getService().getStartDate()
-									.compareTo(endDate) <= 0
-							&& pb.getBeneficiary().getPatient().getPatientId()
-									.intValue() == patient.getPatientId()) {
-						bills.add(pb);
-					}
-				if (sc != null && startDate != null && endDate != null
-						&& patient != null && insurance != null)
-					if (psb.getService().getFacilityServicePrice()
-							.getFacilityServicePriceId().intValue() == sc
-							.getFacilityServicePriceId().intValue()
-							&& psb.getService().getStartDate()
-									.compareTo(startDate) >= 0
-							&& psb.getService().getStartDate()
-									.compareTo(endDate) <= 0
-							&& psb.getService().getInsurance().getInsuranceId() == insurance
-									.getInsuranceId()) {
-						bills.add(pb);
-					}
-			}
+	/**
+	 * Loads the bills of the given report rows, once each
+	 * 
+	 * @param summaries
+	 *            the rows returned by the report queries
+	 * @return bills the matched PatientBill, in the order of the rows
+	 */
+	private static List<PatientBill> getBills(List<BillSummary> summaries) {
 
-		return bills;
+		List<Integer> billIds = new ArrayList<Integer>(summaries.size());
+		for (BillSummary summary : summaries)
+			billIds.add(summary.getPatientBillId());
+
+		if (billIds.isEmpty())
+			return new ArrayList<PatientBill>();
+
+		return getService().getPatientBills(billIds);
 	}
 	
 	static public double roundTwoDecimals(double d) {
@@ -636,8 +422,7 @@ public class ReportsUtil {
 
 		// Table of bill items;
 		float[] colsWidth = { 4f, 4f, 3f, 6f, 5f, 4f, 4f, 3f };
-		table = new PdfPTable(colsWidth);
-		table.setWidthPercentage(100f);
+		table = FileExporter.createLargeTable(colsWidth);
 		BaseColor bckGroundTitle = new BaseColor(170, 170, 170);
 
 		// table Header
@@ -767,8 +552,8 @@ public class ReportsUtil {
 							.getName()));
 
 			table.addCell(cell);
-			Float a = pb.getBeneficiary().getInsurancePolicy().getInsurance()
-					.getCurrentRate().getRate();
+			Float a = TariffMatrixUtil.getCurrentRate(pb.getBeneficiary()
+					.getInsurancePolicy().getInsurance());
 			BigDecimal b = pb.getAmount();
 
 			Float bFloat = Float.parseFloat(b.toString());
@@ -793,19 +578,13 @@ public class ReportsUtil {
 			// cell.setBackgroundColor(bckGroundTitle);
 			table.addCell(cell);
 
-			// normal row
-			// FontSelector fontselector = new FontSelector();
-			fontselector.addFont(new Font(FontFamily.COURIER, 8, Font.NORMAL));
-
-			// empty row
-			// FontSelector fontTotals = new FontSelector();
-			fontTotals.addFont(new Font(FontFamily.COURIER, 9, Font.BOLD));
+			FileExporter.flushRows(document, table, count);
 			count++;
 		}
 		// ================================================================
 		table.addCell(cell);
 
-		document.add(table);
+		FileExporter.completeTable(document, table);
 
 		// log.info("reportedPatientBills   new reportedPatientBills reportedPatientBills reportedPatientBills reportedPatientBills  : "+reportedPatientBills.size());
 		document.close();
@@ -849,4 +628,128 @@ public class ReportsUtil {
 		return total;
 		 
 	 }
+
+	/**
+	 * Groups the patient dues of the bills by service category, as shown and
+	 * printed by the revenue report
+	 *
+	 * @return the due of each category, the total due, the received and the
+	 *         partially paid amounts
+	 */
+	public static LinkedHashMap<String, Double> getAllBillsByCollector(
+			Set<PatientBill> bills, List<String> serviceCategories,
+			Double receivedAmount, Double partiallyPaids) {
+		// int []docuLegIds ={300,81,5002};
+		List<Integer> docuLegIds = Arrays.asList(300, 81, 5002);
+
+		List<Integer> actMorgueIds = Arrays.asList(5011, 5046, 107, 106, 105,
+				101, 109);
+
+		List<Integer> notTonsiderIds = Arrays.asList(5011, 5046, 107, 106, 105,
+				101, 109, 300, 81, 5002, 96);
+
+		LinkedHashMap<String, Double> invoiceMap = new LinkedHashMap<String, Double>();
+		Double total = 0.0;
+		Double ambulanceCost = 0.0;
+		// run through all services category and group amount by service
+		// category
+
+		for (String svceCateg : serviceCategories) {
+
+			Double subTotal = 0.0;
+
+			// run through all patient bills and group amount by category
+
+			for (PatientBill pb : bills) {
+				Double currentRate = pb.getBeneficiary().getInsurancePolicy()
+						.getInsurance().getCurrentRate().getRate()
+						.doubleValue();
+				// scan each item amount
+				double patDueAmt = 0.0;
+				for (PatientServiceBill item : pb.getBillItems()) {
+					String category = item.getService()
+							.getFacilityServicePrice().getCategory();
+					FacilityServicePrice fsp = item.getService()
+							.getFacilityServicePrice();
+					Integer fspId = fsp.getFacilityServicePriceId();
+
+					if (category.startsWith(svceCateg)) {
+
+						if (notTonsiderIds.contains(fspId) == false) {
+
+							if (category.equals("AUTRES")) {
+
+								double patientCost = item.getQuantity().doubleValue()
+										* item.getUnitPrice().doubleValue();
+								patDueAmt = patDueAmt + patientCost;
+
+							} else {
+								double patientCost = item.getQuantity().doubleValue()
+										* item.getUnitPrice().doubleValue()
+										* (100 - currentRate) / 100;
+								patDueAmt = patDueAmt + patientCost;
+
+							}
+
+						}
+
+					}
+					// if facilicity service name equal ambulance ,take it away
+					if (svceCateg.startsWith("AMBULAN")) {
+						if (fspId == 96) {
+
+							double patientCost = item.getQuantity().doubleValue()
+									* item.getUnitPrice().doubleValue()
+									* (100 - currentRate) / 100;
+
+							patDueAmt = patDueAmt + patientCost;
+						}
+					}
+					// group amount for all considered medicaux documents
+					if (svceCateg.startsWith("DOC.LEGAUX")) {
+
+						if (docuLegIds.contains(fspId)) {
+
+							double patientCost = item.getQuantity().doubleValue()
+									* item.getUnitPrice().doubleValue()
+									* (100 - currentRate) / 100;
+
+							patDueAmt = patDueAmt + patientCost;
+
+						}
+
+					}
+					// morgue grouping
+
+					if (svceCateg.startsWith("MORGUE")) {
+
+						if (actMorgueIds.contains(fspId)) {
+
+							double patientCost = item.getQuantity().doubleValue()
+									* item.getUnitPrice().doubleValue()
+									* (100 - currentRate) / 100;
+
+							patDueAmt = patDueAmt + patientCost;
+						}
+
+					}
+
+				}
+				subTotal = subTotal + patDueAmt;
+			}
+
+			// end of all patient bills
+
+			invoiceMap.put(svceCateg, roundTwoDecimals(subTotal));
+			total = total + subTotal;
+		}
+
+		// add each invoice linked to catehory service to list of invoice
+
+		invoiceMap.put("Total", roundTwoDecimals(total));
+		invoiceMap.put("receivedAmount", roundTwoDecimals(receivedAmount));
+		invoiceMap.put("partiallyPaid", roundTwoDecimals(partiallyPaids));
+
+		return invoiceMap;
+	}
 }
@@ -0,0 +1,65 @@
+package org.openmrs.module.mohbilling.businesslogic;
+
+import java.io.OutputStream;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.openmrs.User;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.mohbilling.model.PatientBill;
+import org.openmrs.module.mohbilling.service.BillingService;
+
+/**
+ * Generates in the background the pdf of the revenue by service category
+ * over a period, as printed from the revenue page
+ */
+public class RevenueReportJob extends ReportJob {
+
+	private Date startDate;
+	private Date endDate;
+	private Integer collectorId;
+
+	/**
+	 * @param startDate the start of the period
+	 * @param endDate the end of the period
+	 * @param collectorId the user who received the payments, null for all
+	 */
+	public RevenueReportJob(Date startDate, Date endDate, Integer collectorId) {
+		super("daily_report", "pdf", "application/pdf");
+		this.startDate = startDate;
+		this.endDate = endDate;
+		this.collectorId = collectorId;
+
+		addParameter("startDate", startDate);
+		addParameter("endDate", endDate);
+		addParameter("collectorId", collectorId);
+		setPeriodEndDate(endDate);
+	}
+
+	/**
+	 * @see org.openmrs.module.mohbilling.businesslogic.ReportJob#write(java.io.OutputStream)
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	protected void write(OutputStream out) throws Exception {
+
+		User collector = (collectorId != null) ? Context.getUserService()
+				.getUser(collectorId) : null;
+		Object[] bills = Context.getService(BillingService.class).getBills(
+				startDate, endDate, collector);
+		Set<PatientBill> patientBills = (Set<PatientBill>) bills[0];
+
+		LinkedHashMap<String, Map<String, Double>> basedDateReport = new LinkedHashMap<String, Map<String, Double>>();
+		if (!patientBills.isEmpty())
+			basedDateReport.put(new SimpleDateFormat("yyyy-MM-dd")
+					.format(startDate), ReportsUtil.getAllBillsByCollector(
+					patientBills, BillingGlobalProperties
+							.getListofServiceCategory(), (Double) bills[1],
+					(Double) bills[2]));
+
+		new FileExporter().writeCashierReport(out, basedDateReport);
+	}
+}
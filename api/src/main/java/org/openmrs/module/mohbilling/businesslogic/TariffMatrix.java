@@ -0,0 +1,266 @@
+package org.openmrs.module.mohbilling.businesslogic;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import org.openmrs.module.mohbilling.model.Insurance;
+import org.openmrs.module.mohbilling.model.InsuranceRate;
+
+/**
+ * Immutable snapshot of the tariff catalogue: the maxima to pay of every
+ * facility service by every insurance with their validity intervals, and the
+ * rates of every insurance. It is held in primitive arrays indexed by the
+ * facility service and insurance ids, so that a line is priced without
+ * walking the rates and billable services of Hibernate entities.
+ * <p>
+ * The amounts are kept in hundredths, the dates in milliseconds, an open
+ * interval ending at {@link Long#MAX_VALUE}.
+ */
+public class TariffMatrix {
+
+	private final long version;
+
+	/** Row of each facility service, by id, -1 if it has no tariff */
+	private final int[] facilityServiceRows;
+
+	/** Column of each insurance, by id, -1 if it is unknown */
+	private final int[] insuranceColumns;
+
+	private final int columnCount;
+
+	/** Start of the tariffs of each cell, the last one ending the arrays */
+	private final int[] cellOffsets;
+
+	private final int[] billableServiceIds;
+	private final long[] tariffStarts;
+	private final long[] tariffEnds;
+	private final long[] maximaToPay;
+
+	/** Start of the rates of each column, the last one ending the arrays */
+	private final int[] rateOffsets;
+
+	private final long[] rateEnds;
+	private final float[] rates;
+
+	/**
+	 * @param version
+	 *            the version of the snapshot
+	 * @param insurances
+	 *            the insurances with their rates
+	 * @param tariffs
+	 *            the facility service id, insurance id, billable service id,
+	 *            maxima to pay, start date, end date, retired flag and retire
+	 *            date of each billable service
+	 */
+	public TariffMatrix(long version, List<Insurance> insurances,
+			List<Object[]> tariffs) {
+
+		this.version = version;
+
+		int maxInsuranceId = 0;
+		for (Insurance insurance : insurances)
+			maxInsuranceId = Math.max(maxInsuranceId, insurance.getInsuranceId());
+		for (Object[] tariff : tariffs)
+			if (tariff[1] != null)
+				maxInsuranceId = Math.max(maxInsuranceId, (Integer) tariff[1]);
+
+		insuranceColumns = new int[maxInsuranceId + 1];
+		Arrays.fill(insuranceColumns, -1);
+		int columns = 0;
+		for (Insurance insurance : insurances)
+			insuranceColumns[insurance.getInsuranceId()] = columns++;
+		for (Object[] tariff : tariffs)
+			if (tariff[1] != null && insuranceColumns[(Integer) tariff[1]] < 0)
+				insuranceColumns[(Integer) tariff[1]] = columns++;
+		columnCount = columns;
+
+		// the rates, in the order Insurance.getRateOnDate walks them
+		int rateCount = 0;
+		for (Insurance insurance : insurances)
+			if (insurance.getRates() != null)
+				rateCount += insurance.getRates().size();
+
+		rateOffsets = new int[columnCount + 1];
+		rateEnds = new long[rateCount];
+		rates = new float[rateCount];
+		int[] rateColumns = new int[columnCount];
+		Arrays.fill(rateColumns, -1);
+		for (int i = 0; i < insurances.size(); i++)
+			rateColumns[insuranceColumns[insurances.get(i).getInsuranceId()]] = i;
+
+		int r = 0;
+		for (int column = 0; column < columnCount; column++) {
+			rateOffsets[column] = r;
+			if (rateColumns[column] < 0
+					|| insurances.get(rateColumns[column]).getRates() == null)
+				continue;
+			for (InsuranceRate rate : insurances.get(rateColumns[column])
+					.getRates()) {
+				rateEnds[r] = (rate.getRetiredDate() != null) ? rate
+						.getRetiredDate().getTime() : Long.MAX_VALUE;
+				rates[r] = (rate.getRate() != null) ? rate.getRate() : Float.NaN;
+				r++;
+			}
+		}
+		rateOffsets[columnCount] = r;
+
+		// the billable services, grouped by cell
+		int maxFacilityServiceId = 0;
+		for (Object[] tariff : tariffs)
+			if (tariff[0] != null)
+				maxFacilityServiceId = Math.max(maxFacilityServiceId,
+						(Integer) tariff[0]);
+
+		facilityServiceRows = new int[maxFacilityServiceId + 1];
+		Arrays.fill(facilityServiceRows, -1);
+		int rowCount = 0;
+		for (Object[] tariff : tariffs)
+			if (tariff[0] != null && tariff[1] != null
+					&& facilityServiceRows[(Integer) tariff[0]] < 0)
+				facilityServiceRows[(Integer) tariff[0]] = rowCount++;
+
+		cellOffsets = new int[rowCount * columnCount + 1];
+		int tariffCount = 0;
+		for (Object[] tariff : tariffs)
+			if (tariff[0] != null && tariff[1] != null) {
+				cellOffsets[getCell((Integer) tariff[0], (Integer) tariff[1]) + 1]++;
+				tariffCount++;
+			}
+		for (int cell = 1; cell < cellOffsets.length; cell++)
+			cellOffsets[cell] += cellOffsets[cell - 1];
+
+		billableServiceIds = new int[tariffCount];
+		tariffStarts = new long[tariffCount];
+		tariffEnds = new long[tariffCount];
+		maximaToPay = new long[tariffCount];
+		int[] filled = new int[rowCount * columnCount];
+		for (Object[] tariff : tariffs) {
+			if (tariff[0] == null || tariff[1] == null)
+				continue;
+
+			int cell = getCell((Integer) tariff[0], (Integer) tariff[1]);
+			int t = cellOffsets[cell] + filled[cell]++;
+
+			billableServiceIds[t] = (Integer) tariff[2];
+			maximaToPay[t] = (tariff[3] != null) ? ((BigDecimal) tariff[3])
+					.movePointRight(2).longValue() : 0L;
+			tariffStarts[t] = (tariff[4] != null) ? ((Date) tariff[4])
+					.getTime() : Long.MIN_VALUE;
+			tariffEnds[t] = (tariff[5] != null) ? ((Date) tariff[5]).getTime()
+					: Long.MAX_VALUE;
+			if (Boolean.TRUE.equals(tariff[6]))
+				tariffEnds[t] = Math.min(tariffEnds[t],
+						(tariff[7] != null) ? ((Date) tariff[7]).getTime()
+								: Long.MIN_VALUE);
+		}
+	}
+
+	/**
+	 * @return the version of the tariff catalogue this snapshot was built from
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	/**
+	 * Gets the rate of an insurance on a date, as
+	 * {@link Insurance#getRateOnDate(Date)} does
+	 *
+	 * @param insuranceId
+	 *            the id of the insurance
+	 * @param date
+	 *            the date of the rate
+	 * @return the rate, or null if the insurance has no rate on that date
+	 */
+	public Float getRate(Integer insuranceId, Date date) {
+
+		int column = getColumn(insuranceId);
+		if (column < 0)
+			return null;
+
+		long time = date.getTime();
+		for (int r = rateOffsets[column]; r < rateOffsets[column + 1]; r++)
+			if (rateEnds[r] > time)
+				return Float.isNaN(rates[r]) ? null : rates[r];
+
+		return null;
+	}
+
+	/**
+	 * Gets the maxima an insurance pays for a facility service on a date
+	 *
+	 * @param facilityServicePriceId
+	 *            the id of the facility service
+	 * @param insuranceId
+	 *            the id of the insurance
+	 * @param date
+	 *            the date of the service
+	 * @return the maxima to pay, or null if there is no valid tariff
+	 */
+	public BigDecimal getMaximaToPay(Integer facilityServicePriceId,
+			Integer insuranceId, Date date) {
+
+		int t = getTariff(facilityServicePriceId, insuranceId, date);
+		return (t >= 0) ? BigDecimal.valueOf(maximaToPay[t], 2) : null;
+	}
+
+	/**
+	 * Gets the billable service of a facility service for an insurance valid
+	 * on a date
+	 *
+	 * @param facilityServicePriceId
+	 *            the id of the facility service
+	 * @param insuranceId
+	 *            the id of the insurance
+	 * @param date
+	 *            the date of the service
+	 * @return the id of the billable service, or null if there is no valid
+	 *         tariff
+	 */
+	public Integer getBillableServiceId(Integer facilityServicePriceId,
+			Integer insuranceId, Date date) {
+
+		int t = getTariff(facilityServicePriceId, insuranceId, date);
+		return (t >= 0) ? billableServiceIds[t] : null;
+	}
+
+	/**
+	 * @return the index of the tariff valid on the date starting last, -1 if
+	 *         there is none
+	 */
+	private int getTariff(Integer facilityServicePriceId, Integer insuranceId,
+			Date date) {
+
+		if (facilityServicePriceId == null || facilityServicePriceId < 0
+				|| facilityServicePriceId >= facilityServiceRows.length
+				|| facilityServiceRows[facilityServicePriceId] < 0
+				|| getColumn(insuranceId) < 0)
+			return -1;
+
+		int cell = getCell(facilityServicePriceId, insuranceId);
+		long time = date.getTime();
+		int valid = -1;
+		for (int t = cellOffsets[cell]; t < cellOffsets[cell + 1]; t++)
+			if (tariffStarts[t] <= time && time < tariffEnds[t]
+					&& (valid < 0 || tariffStarts[t] >= tariffStarts[valid]))
+				valid = t;
+
+		return valid;
+	}
+
+	private int getColumn(Integer insuranceId) {
+
+		if (insuranceId == null || insuranceId < 0
+				|| insuranceId >= insuranceColumns.length)
+			return -1;
+
+		return insuranceColumns[insuranceId];
+	}
+
+	private int getCell(int facilityServicePriceId, int insuranceId) {
+		return facilityServiceRows[facilityServicePriceId] * columnCount
+				+ insuranceColumns[insuranceId];
+	}
+}
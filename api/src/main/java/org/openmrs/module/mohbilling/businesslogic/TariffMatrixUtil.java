@@ -0,0 +1,87 @@
+package org.openmrs.module.mohbilling.businesslogic;
+
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.mohbilling.model.Insurance;
+import org.openmrs.module.mohbilling.service.BillingService;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Holds the current {@link TariffMatrix}. Each change of the tariff catalogue
+ * asks for a new version once its transaction is committed, and the next
+ * reader builds it and swaps it in, the readers holding the previous snapshot
+ * being unaffected.
+ */
+public class TariffMatrixUtil {
+
+	private static Log log = LogFactory.getLog(TariffMatrixUtil.class);
+
+	private static volatile TariffMatrix matrix;
+
+	/** Version of the tariff catalogue the matrix must be built from */
+	private static final AtomicLong catalogueVersion = new AtomicLong(1);
+
+	/**
+	 * @return the tariff matrix of the current version of the catalogue
+	 */
+	public static TariffMatrix getMatrix() {
+
+		TariffMatrix current = matrix;
+		if (current == null || current.getVersion() < catalogueVersion.get())
+			current = build();
+
+		return current;
+	}
+
+	/**
+	 * Gets the rate of an insurance today from the tariff matrix
+	 * 
+	 * @param insurance
+	 *            the insurance
+	 * @return the current rate, or null if the insurance has none
+	 */
+	public static Float getCurrentRate(Insurance insurance) {
+		return getMatrix().getRate(insurance.getInsuranceId(), new Date());
+	}
+
+	/**
+	 * Marks the matrix out of date once the current transaction is committed,
+	 * or at once outside a transaction
+	 */
+	public static void invalidate() {
+
+		if (TransactionSynchronizationManager.isSynchronizationActive())
+			TransactionSynchronizationManager
+					.registerSynchronization(new TransactionSynchronizationAdapter() {
+						@Override
+						public void afterCommit() {
+							catalogueVersion.incrementAndGet();
+						}
+					});
+		else
+			catalogueVersion.incrementAndGet();
+	}
+
+	private static synchronized TariffMatrix build() {
+
+		long version = catalogueVersion.get();
+		if (matrix != null && matrix.getVersion() >= version)
+			return matrix;
+
+		long start = System.currentTimeMillis();
+		BillingService service = Context.getService(BillingService.class);
+		TariffMatrix built = new TariffMatrix(version,
+				service.getAllInsurances(), service.getBillableServiceTariffs());
+		matrix = built;
+
+		log.info("Built the tariff matrix version " + version + " in "
+				+ (System.currentTimeMillis() - start) + " ms");
+
+		return built;
+	}
+}
@@ -21,18 +21,24 @@ import java.util.Set;
 
 import org.openmrs.Concept;
 import org.openmrs.Patient;
+import org.openmrs.Person;
 import org.openmrs.User;
 import org.openmrs.api.db.DAOException;
 import org.openmrs.module.mohbilling.model.Beneficiary;
 import org.openmrs.module.mohbilling.model.BillPayment;
+import org.openmrs.module.mohbilling.model.BillSummary;
 import org.openmrs.module.mohbilling.model.BillableService;
+import org.openmrs.module.mohbilling.model.CohortQuery;
 import org.openmrs.module.mohbilling.model.FacilityServicePrice;
 import org.openmrs.module.mohbilling.model.Insurance;
 import org.openmrs.module.mohbilling.model.InsurancePolicy;
 import org.openmrs.module.mohbilling.model.InsuranceRate;
+import org.openmrs.module.mohbilling.model.InvoiceLine;
 import org.openmrs.module.mohbilling.model.PatientBill;
+import org.openmrs.module.mohbilling.model.PatientBillBalance;
 import org.openmrs.module.mohbilling.model.PatientServiceBill;
 import org.openmrs.module.mohbilling.model.Recovery;
+import org.openmrs.module.mohbilling.model.RefundEvent;
 import org.openmrs.module.mohbilling.model.ServiceCategory;
 import org.openmrs.module.mohbilling.model.ThirdParty;
 import org.springframework.transaction.annotation.Transactional;
@@ -236,6 +242,76 @@ public interface BillingDAO {
 			Date endDate, Integer patientId, String serviceName,
 			String billStatus, String billCollector);
 
+	/**
+	 * Gets the page of the bill cohort matching the query, ordered by bill id
+	 * 
+	 * @param cohortQuery
+	 *            the search parameters and page
+	 * @return the matched bills
+	 * @throws DAOException
+	 */
+	public List<PatientBill> getBillCohort(CohortQuery cohortQuery)
+			throws DAOException;
+
+	/**
+	 * Counts the bills of the cohort matching the query, without loading them
+	 * 
+	 * @param cohortQuery
+	 *            the search parameters, the page size being ignored
+	 * @return the number of matched bills
+	 * @throws DAOException
+	 */
+	public Integer getBillCohortSize(CohortQuery cohortQuery)
+			throws DAOException;
+
+	/**
+	 * Sums the balance columns of the bills of the cohort matching the query,
+	 * without loading them. The bills without balances are left out.
+	 * 
+	 * @param cohortQuery
+	 *            the search parameters, the page being ignored
+	 * @return the totalDue, insurerDue, patientDue and paidAmount totals
+	 * @throws DAOException
+	 */
+	public Map<String, BigDecimal> getBillCohortTotals(CohortQuery cohortQuery)
+			throws DAOException;
+
+	/**
+	 * Gets the ids of the bills of the cohort matching the query whose
+	 * balance columns were never filled in
+	 * 
+	 * @param cohortQuery
+	 *            the search parameters, the page being ignored
+	 * @return the bill ids
+	 * @throws DAOException
+	 */
+	public List<Integer> getBillCohortIdsWithoutBalances(
+			CohortQuery cohortQuery) throws DAOException;
+
+	/**
+	 * Gets the page of the payment cohort matching the query, ordered by
+	 * payment id
+	 * 
+	 * @param cohortQuery
+	 *            the search parameters and page
+	 * @return the matched payments
+	 * @throws DAOException
+	 */
+	public List<BillPayment> getPaymentCohort(CohortQuery cohortQuery)
+			throws DAOException;
+
+	/**
+	 * Counts the payments of the cohort matching the query, without loading
+	 * them
+	 * 
+	 * @param cohortQuery
+	 *            the search parameters, the page size being ignored
+	 * @return the number of matched payments
+	 * @throws DAOException
+	 */
+	public Integer getPaymentCohortSize(CohortQuery cohortQuery)
+			throws DAOException;
+
 	/**
 	 * Gets a BillableService by selecting those having the provided
 	 * FacilityServicePrice and the Insurance.
@@ -430,6 +506,24 @@ public interface BillingDAO {
 	public List<Date> getRevenueDatesBetweenDates(Date startDate, Date endDate);
 	
 	public Map<String,Double> getRevenueByService(Date receivedDate,String[] serviceCategory, String collector,Insurance insurance);
+
+	/**
+	 * Recomputes the daily revenue rows of the bill from its payments and
+	 * items, and adds the difference with its former rows to the daily
+	 * revenue rollup
+	 * 
+	 * @param bill
+	 * @throws DAOException
+	 */
+	public void updateDailyRevenue(PatientBill bill) throws DAOException;
+
+	/**
+	 * Recomputes the whole daily revenue rollup, and the rows of each bill,
+	 * from the payments and bill items
+	 * 
+	 * @throws DAOException
+	 */
+	public void rebuildDailyRevenue() throws DAOException;
 	
 
 	public Object[] getBills(Date startDate,Date endDate,User collector);
@@ -461,5 +555,536 @@ public interface BillingDAO {
 	 */
 	public List<PatientBill> getPendingBill();
 
+	/**
+	 * Gets the Bills refunded in a period, from the refund event log, those
+	 * left with items being only partly refunded and left out
+	 * 
+	 * @param startDate
+	 *            the start of the period
+	 * @param endDate
+	 *            the end of the period
+	 * @param collector
+	 *            the user who refunded, or null for all of them
+	 * @return the refunded bills
+	 * @throws DAOException
+	 */
 	public Set<PatientBill> getRefundedBills(Date startDate, Date endDate, User collector);
+
+	/**
+	 * Gets all Bills whose beneficiary is the given patient
+	 *
+	 * @param patient
+	 *            the patient to match
+	 * @return bills ordered by id
+	 * @throws DAOException
+	 */
+	public List<PatientBill> getBillsByPatient(Patient patient)
+			throws DAOException;
+
+	/**
+	 * Gets the Bills of the given patient having at least one item served on
+	 * the given date
+	 *
+	 * @param patient
+	 *            the patient to match
+	 * @param serviceDate
+	 *            the date on which the service was delivered
+	 * @return distinct bills ordered by id
+	 * @throws DAOException
+	 */
+	public List<PatientBill> getBillsByPatientOnDate(Patient patient,
+			Date serviceDate) throws DAOException;
+
+	/**
+	 * Gets the bill items of the given beneficiary served on the given date
+	 *
+	 * @param beneficiary
+	 *            the beneficiary to match
+	 * @param serviceDate
+	 *            the date on which the service was delivered
+	 * @return items ordered by bill id then item id
+	 * @throws DAOException
+	 */
+	public List<PatientServiceBill> getBillItemsByBeneficiaryOnDate(
+			Beneficiary beneficiary, Date serviceDate) throws DAOException;
+
+	/**
+	 * Gets the non voided items of the non voided Bills of the given patient
+	 * served between the two dates (inclusive)
+	 *
+	 * @param patient
+	 *            the patient to match
+	 * @param startDate
+	 *            the min service date
+	 * @param endDate
+	 *            the max service date
+	 * @return items ordered by bill id then item id
+	 * @throws DAOException
+	 */
+	public List<PatientServiceBill> getBillItemsByPatientAndPeriod(
+			Patient patient, Date startDate, Date endDate) throws DAOException;
+
+	/**
+	 * Gets the Bills created between the two dates (inclusive). A null bound
+	 * is not applied, neither is a null isPaid.
+	 *
+	 * @param startDate
+	 *            the min created date, may be null
+	 * @param endDate
+	 *            the max created date, may be null
+	 * @param isPaid
+	 *            the paid flag to match, may be null
+	 * @return bills ordered by id
+	 * @throws DAOException
+	 */
+	public List<PatientBill> getBillsByCreatedDate(Date startDate,
+			Date endDate, Boolean isPaid) throws DAOException;
+
+	/**
+	 * Gets the Bills of the given beneficiary having the given paid flag
+	 *
+	 * @param beneficiary
+	 *            the beneficiary to match
+	 * @param isPaid
+	 *            the paid flag to match, may be null
+	 * @return bills ordered by id
+	 * @throws DAOException
+	 */
+	public List<PatientBill> getPaidBillsByBeneficiary(
+			Beneficiary beneficiary, Boolean isPaid) throws DAOException;
+
+	/**
+	 * Gets the InsurancePolicies covering the given beneficiary on the given
+	 * date (strictly after the coverage start and before the expiration)
+	 *
+	 * @param beneficiary
+	 *            the beneficiary to match, by id or policy id number
+	 * @param date
+	 *            the date to be covered
+	 * @return policies ordered by id
+	 * @throws DAOException
+	 */
+	public List<InsurancePolicy> getInsurancePoliciesByBeneficiaryOnDate(
+			Beneficiary beneficiary, Date date) throws DAOException;
+
+	/**
+	 * Gets the InsurancePolicies owned by the given person and covering the
+	 * given date (strictly after the coverage start and before the
+	 * expiration)
+	 *
+	 * @param owner
+	 *            the owner to match
+	 * @param date
+	 *            the date to be covered
+	 * @return policies ordered by id
+	 * @throws DAOException
+	 */
+	public List<InsurancePolicy> getInsurancePoliciesByOwnerOnDate(
+			Person owner, Date date) throws DAOException;
+
+	/**
+	 * Gets all InsurancePolicies owned by the given patient
+	 *
+	 * @param owner
+	 *            the owner to match
+	 * @return policies ordered by id
+	 * @throws DAOException
+	 */
+	public List<InsurancePolicy> getInsurancePoliciesByOwner(Patient owner)
+			throws DAOException;
+
+	/**
+	 * Gets all InsurancePolicies of the given Insurance
+	 *
+	 * @param insurance
+	 *            the insurance to match
+	 * @return policies ordered by id
+	 * @throws DAOException
+	 */
+	public List<InsurancePolicy> getInsurancePoliciesByInsurance(
+			Insurance insurance) throws DAOException;
+
+	/**
+	 * Gets the first InsurancePolicy having the given card number, tolerating
+	 * duplicated card numbers
+	 *
+	 * @param insurance
+	 *            the insurance to match, not applied when null
+	 * @param insuranceCardNo
+	 *            the card number to match
+	 * @return the matched policy with the lowest id, null otherwise
+	 * @throws DAOException
+	 */
+	public InsurancePolicy getInsurancePolicyByCardNo(Insurance insurance,
+			String insuranceCardNo) throws DAOException;
+
+	/**
+	 * Gets the first InsurancePolicy having a beneficiary with the given policy
+	 * id number and the given retired status
+	 *
+	 * @param policyIdNumber
+	 *            the beneficiary policy id number to match
+	 * @param retired
+	 *            the policy retired status to match
+	 * @return the matched policy with the lowest id, null otherwise
+	 * @throws DAOException
+	 */
+	public InsurancePolicy getInsurancePolicyByPolicyIdNumber(
+			String policyIdNumber, boolean retired) throws DAOException;
+
+	/**
+	 * Gets the non retired Beneficiaries that are the given patient
+	 *
+	 * @param patient
+	 *            the patient to match
+	 * @return beneficiaries ordered by policy then id
+	 * @throws DAOException
+	 */
+	public List<Beneficiary> getBeneficiariesByPatient(Patient patient)
+			throws DAOException;
+
+	/**
+	 * Gets the non retired Beneficiaries of the policies owned by the given
+	 * patient
+	 *
+	 * @param owner
+	 *            the policy owner to match
+	 * @return beneficiaries ordered by policy then id
+	 * @throws DAOException
+	 */
+	public List<Beneficiary> getBeneficiariesByOwner(Patient owner)
+			throws DAOException;
+
+	/**
+	 * Gets one summary row per non voided Bill having non voided items served
+	 * in the given period, computed with a single GROUP BY query. Every null
+	 * parameter is ignored.
+	 *
+	 * @param insurance
+	 *            the insurance of the beneficiary policy
+	 * @param startDate
+	 *            the min service date of the items
+	 * @param endDate
+	 *            the max service date of the items
+	 * @param isPaid
+	 *            the paid flag of the bill
+	 * @param patientId
+	 *            the patient of the beneficiary
+	 * @return summaries ordered by bill id
+	 * @throws DAOException
+	 */
+	public List<BillSummary> getBillSummaries(Insurance insurance,
+			Date startDate, Date endDate, Boolean isPaid, Integer patientId)
+			throws DAOException;
+
+	/**
+	 * Gets one summary row per Bill having items billed through the given
+	 * Facility Service, where the billable service started in the given
+	 * period. Every null parameter is ignored.
+	 *
+	 * @param fsp
+	 *            the facility service of the billed items
+	 * @param startDate
+	 *            the min start date of the billable service
+	 * @param endDate
+	 *            the max start date of the billable service
+	 * @param patient
+	 *            the patient of the beneficiary
+	 * @param insurance
+	 *            the insurance of the billable service
+	 * @return summaries ordered by bill id
+	 * @throws DAOException
+	 */
+	public List<BillSummary> getBillSummariesByFacilityService(
+			FacilityServicePrice fsp, Date startDate, Date endDate,
+			Patient patient, Insurance insurance) throws DAOException;
+
+	/**
+	 * Loads the Bills having the given ids with one query per 1000 ids
+	 *
+	 * @param billIds
+	 *            the ids to load
+	 * @return bills ordered by id
+	 * @throws DAOException
+	 */
+	public List<PatientBill> getPatientBills(List<Integer> billIds)
+			throws DAOException;
+
+	/**
+	 * Gets the Billable Service of every non voided item of a non voided Bill
+	 * served in the given period, once per item
+	 *
+	 * @param startDate
+	 *            the min service date
+	 * @param endDate
+	 *            the max service date
+	 * @param isPaid
+	 *            the paid flag of the bill, ignored when null
+	 * @return the billed services
+	 * @throws DAOException
+	 */
+	public List<BillableService> getBilledServices(Date startDate,
+			Date endDate, Boolean isPaid) throws DAOException;
+
+	/**
+	 * Gets the non voided payments of non voided Bills received on the given
+	 * day
+	 *
+	 * @param day
+	 *            the date received
+	 * @return payments ordered by id
+	 * @throws DAOException
+	 */
+	public List<BillPayment> getPaymentsReceivedOn(Date day)
+			throws DAOException;
+
+	/**
+	 * Gets the PatientBill together with its items and their billable
+	 * services in a single query, for the screens printing the items
+	 * 
+	 * @param billId
+	 *            the bill id
+	 * @return the bill, null if none has this id
+	 * @throws DAOException
+	 */
+	public PatientBill getPatientBillWithItems(Integer billId)
+			throws DAOException;
+
+	/**
+	 * Loads the Bills having the given ids together with their items and
+	 * their billable services
+	 * 
+	 * @param billIds
+	 * @return bills ordered by id
+	 * @throws DAOException
+	 */
+	public List<PatientBill> getPatientBillsWithItems(List<Integer> billIds)
+			throws DAOException;
+
+	/**
+	 * Loads the payments having the given ids together with their Bill, its
+	 * beneficiary and its patient
+	 * 
+	 * @param paymentIds
+	 * @return payments ordered by id
+	 * @throws DAOException
+	 */
+	public List<BillPayment> getBillPayments(List<Integer> paymentIds)
+			throws DAOException;
+
+	/**
+	 * Removes the tariff catalogue entities, collections and lookups from the
+	 * second-level cache, after they were changed without Hibernate
+	 * 
+	 * @throws DAOException
+	 */
+	public void evictTariffCache() throws DAOException;
+
+	/**
+	 * Gets the hits, misses, puts and element counts of the tariff cache
+	 * regions, if the Hibernate statistics are enabled
+	 * 
+	 * @return the counts keyed by region name and count name, empty if the
+	 *         statistics are not enabled
+	 * @throws DAOException
+	 */
+	public Map<String, Long> getTariffCacheStatistics() throws DAOException;
+
+	/**
+	 * Gets a page of the Bills ordered by id, starting after the given id
+	 * 
+	 * @param afterId
+	 *            the id after which the page starts
+	 * @param maxResults
+	 *            the size of the page
+	 * @return the bills
+	 * @throws DAOException
+	 */
+	public List<PatientBill> getPatientBillsAfter(Integer afterId,
+			int maxResults) throws DAOException;
+
+	/**
+	 * Gets the balances of the Bills in one query on their balance columns.
+	 * The bills whose balances are not stored yet are left out.
+	 * 
+	 * @param billIds
+	 *            the ids of the bills
+	 * @return the balances keyed by bill id
+	 * @throws DAOException
+	 */
+	public Map<Integer, PatientBillBalance> getPatientBillBalances(
+			List<Integer> billIds) throws DAOException;
+
+	/**
+	 * Gets a page of the searchable fields of the Beneficiaries that are not
+	 * retired, ordered by id, starting after the given id
+	 * 
+	 * @param afterId
+	 *            the id after which the page starts
+	 * @param maxResults
+	 *            the size of the page
+	 * @return the beneficiary id, policy id number, insurance card number,
+	 *         given name and family name of each beneficiary
+	 * @throws DAOException
+	 */
+	public List<Object[]> getBeneficiarySearchFields(Integer afterId,
+			int maxResults) throws DAOException;
+
+	/**
+	 * Gets the Beneficiaries having the given ids
+	 * 
+	 * @param beneficiaryIds
+	 *            the ids of the beneficiaries
+	 * @return the beneficiaries, in no particular order
+	 * @throws DAOException
+	 */
+	public List<Beneficiary> getBeneficiaries(List<Integer> beneficiaryIds)
+			throws DAOException;
+
+	/**
+	 * Gets the ids of the Billable Services of the given Facility Services
+	 * 
+	 * @param facilityServicePriceIds
+	 *            the ids of the facility services
+	 * @return the billable service id, facility service id and insurance id
+	 *         of each billable service, ordered by billable service id
+	 * @throws DAOException
+	 */
+	public List<Object[]> getBillableServiceIds(
+			List<Integer> facilityServicePriceIds) throws DAOException;
+
+	/**
+	 * Gets the Service Categories of all insurances having one of the given
+	 * names
+	 * 
+	 * @param names
+	 *            the names of the categories
+	 * @return the service categories
+	 * @throws DAOException
+	 */
+	public List<ServiceCategory> getServiceCategoriesByNames(List<String> names)
+			throws DAOException;
+
+	/**
+	 * Inserts the new Billable Services and updates the existing ones using
+	 * JDBC batches, then removes the tariff catalogue from the caches. The
+	 * facility services of the billable services are detached from the
+	 * session, as their collection of billable services is out of date.
+	 * 
+	 * @param billableServices
+	 *            the billable services, new ones having no id
+	 * @throws DAOException
+	 */
+	public void saveBillableServicesInBatch(
+			List<BillableService> billableServices) throws DAOException;
+
+	/**
+	 * Gets the tariff of every Billable Service, as loaded in the tariff
+	 * matrix
+	 * 
+	 * @return the facility service id, insurance id, billable service id,
+	 *         maxima to pay, start date, end date, retired flag and retire
+	 *         date of each billable service, ordered by billable service id
+	 * @throws DAOException
+	 */
+	public List<Object[]> getBillableServiceTariffs() throws DAOException;
+
+	/**
+	 * Gets the items of the Bills projected as invoice lines, in one query by
+	 * thousand bills
+	 * 
+	 * @param billIds
+	 *            the ids of the bills
+	 * @return the lines of each bill in the order of its items, keyed by bill
+	 *         id
+	 * @throws DAOException
+	 */
+	public Map<Integer, List<InvoiceLine>> getInvoiceLines(List<Integer> billIds)
+			throws DAOException;
+
+	/**
+	 * Sums the amounts of the Bills created in a period by the insurance of
+	 * their beneficiary, in one grouped query
+	 * 
+	 * @param startDate
+	 *            the start of the period
+	 * @param endDate
+	 *            the end of the period
+	 * @return the sum of the bill amounts keyed by insurance id
+	 * @throws DAOException
+	 */
+	public Map<Integer, BigDecimal> getBillAmountsByInsurance(Date startDate,
+			Date endDate) throws DAOException;
+
+	/**
+	 * Sums the amounts of the Bills created in a period by the third party of
+	 * the insurance policy of their beneficiary, in one grouped query
+	 * 
+	 * @param startDate
+	 *            the start of the period
+	 * @param endDate
+	 *            the end of the period
+	 * @return the sum of the bill amounts keyed by third party id
+	 * @throws DAOException
+	 */
+	public Map<Integer, BigDecimal> getBillAmountsByThirdParty(Date startDate,
+			Date endDate) throws DAOException;
+
+	/**
+	 * Saves the refund of a bill item
+	 * 
+	 * @param event
+	 *            the refund to be saved
+	 * @throws DAOException
+	 */
+	public void saveRefundEvent(RefundEvent event) throws DAOException;
+
+	/**
+	 * Sums the amounts given back to the patients in a period, from the
+	 * refund event log, the bills only partly refunded included
+	 * 
+	 * @param startDate
+	 *            the start of the period
+	 * @param endDate
+	 *            the end of the period
+	 * @param collector
+	 *            the user who refunded, or null for all of them
+	 * @return the amount refunded, zero if nothing was
+	 * @throws DAOException
+	 */
+	public BigDecimal getTotalRefundedAmount(Date startDate, Date endDate,
+			User collector) throws DAOException;
+
+	/**
+	 * Gets the Billable Services having the given ids, queried by thousand
+	 * 
+	 * @param billableServiceIds
+	 *            the ids of the billable services
+	 * @return the billable services, in no particular order
+	 * @throws DAOException
+	 */
+	public List<BillableService> getBillableServices(
+			List<Integer> billableServiceIds) throws DAOException;
+
+	/**
+	 * Gets the PatientBill captured from the form having the given key
+	 * 
+	 * @param captureKey
+	 *            the key of the bill capture form
+	 * @return the bill, null if none was captured with this key
+	 * @throws DAOException
+	 */
+	public PatientBill getPatientBillByCaptureKey(String captureKey)
+			throws DAOException;
+
+	/**
+	 * Inserts a new PatientBill, then its items using a JDBC batch rather
+	 * than one statement each through the cascade. The bill is refreshed
+	 * afterwards, its items being read again from the database.
+	 * 
+	 * @param bill
+	 *            the new bill with its items
+	 * @throws DAOException
+	 */
+	public void savePatientBillInBatch(PatientBill bill) throws DAOException;
 }
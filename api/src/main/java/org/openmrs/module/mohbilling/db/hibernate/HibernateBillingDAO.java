@@ -16,40 +16,67 @@ package org.openmrs.module.mohbilling.db.hibernate;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.hibernate.Criteria;
+import org.hibernate.FetchMode;
+import org.hibernate.Hibernate;
+import org.hibernate.Query;
 import org.hibernate.SQLQuery;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
+import org.hibernate.criterion.CriteriaSpecification;
+import org.hibernate.criterion.Criterion;
+import org.hibernate.criterion.DetachedCriteria;
 import org.hibernate.criterion.Expression;
 import org.hibernate.criterion.Order;
+import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
+import org.hibernate.criterion.Subqueries;
+import org.hibernate.jdbc.Work;
+import org.hibernate.stat.SecondLevelCacheStatistics;
+import org.hibernate.stat.Statistics;
 import org.openmrs.Concept;
 import org.openmrs.Patient;
+import org.openmrs.Person;
 import org.openmrs.User;
 import org.openmrs.api.context.Context;
 import org.openmrs.api.db.DAOException;
 import org.openmrs.module.mohbilling.businesslogic.FacilityServicePriceUtil;
 import org.openmrs.module.mohbilling.businesslogic.InsuranceUtil;
 import org.openmrs.module.mohbilling.businesslogic.ReportsUtil;
+import org.openmrs.module.mohbilling.businesslogic.TariffMatrixUtil;
 import org.openmrs.module.mohbilling.db.BillingDAO;
 import org.openmrs.module.mohbilling.model.Beneficiary;
 import org.openmrs.module.mohbilling.model.BillPayment;
+import org.openmrs.module.mohbilling.model.BillSummary;
 import org.openmrs.module.mohbilling.model.BillableService;
+import org.openmrs.module.mohbilling.model.CohortQuery;
 import org.openmrs.module.mohbilling.model.FacilityServicePrice;
 import org.openmrs.module.mohbilling.model.Insurance;
 import org.openmrs.module.mohbilling.model.InsurancePolicy;
 import org.openmrs.module.mohbilling.model.InsuranceRate;
+import org.openmrs.module.mohbilling.model.InvoiceLine;
 import org.openmrs.module.mohbilling.model.PatientBill;
+import org.openmrs.module.mohbilling.model.PatientBillBalance;
 import org.openmrs.module.mohbilling.model.PatientServiceBill;
 import org.openmrs.module.mohbilling.model.Recovery;
+import org.openmrs.module.mohbilling.model.RefundEvent;
 import org.openmrs.module.mohbilling.model.ServiceCategory;
 import org.openmrs.module.mohbilling.model.ThirdParty;
 import org.openmrs.module.mohbilling.service.BillingService;
+import org.openmrs.util.OpenmrsUtil;
 
 import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -69,6 +96,25 @@ public class HibernateBillingDAO implements BillingDAO {
 
 	private SessionFactory sessionFactory;
 
+	/**
+	 * Query cache region of the tariff lookups (insurances, rates, service
+	 * categories, billable services and facility service prices)
+	 */
+	private static final String TARIFF_QUERY_REGION = "org.openmrs.module.mohbilling.tariff";
+
+	/** The mapped classes and collections of the tariff catalogue */
+	private static final Class<?>[] TARIFF_CLASSES = { Insurance.class,
+			InsuranceRate.class, ServiceCategory.class, BillableService.class,
+			FacilityServicePrice.class };
+
+	/** Number of statements sent to the database at a time by the batches */
+	private static final int JDBC_BATCH_SIZE = 100;
+
+	private static final String[] TARIFF_COLLECTIONS = {
+			Insurance.class.getName() + ".rates",
+			Insurance.class.getName() + ".categories",
+			FacilityServicePrice.class.getName() + ".billableServices" };
+
 	/**
 	 * @param sessionFactory
 	 *            the sessionFactory to set
@@ -147,7 +193,9 @@ public class HibernateBillingDAO implements BillingDAO {
 		return (BillableService) sessionFactory.getCurrentSession()
 				.createCriteria(BillableService.class)
 				.add(Restrictions.eq("facilityServicePrice", price))
-				.add(Restrictions.eq("insurance", insurance)).uniqueResult();
+				.add(Restrictions.eq("insurance", insurance))
+				.setCacheable(true).setCacheRegion(TARIFF_QUERY_REGION)
+				.uniqueResult();
 	}
 
 	/**
@@ -251,7 +299,8 @@ public class HibernateBillingDAO implements BillingDAO {
 
 		return sessionFactory.getCurrentSession()
 				.createCriteria(Insurance.class)
-				.addOrder(Order.asc("category")).list();
+				.addOrder(Order.asc("category"))
+				.setCacheable(true).setCacheRegion(TARIFF_QUERY_REGION).list();
 	}
 
 	/**
@@ -275,7 +324,8 @@ public class HibernateBillingDAO implements BillingDAO {
 	public List<ServiceCategory> getAllServiceCategories() throws DAOException {
 
 		return sessionFactory.getCurrentSession()
-				.createCriteria(ServiceCategory.class).list();
+				.createCriteria(ServiceCategory.class)
+				.setCacheable(true).setCacheRegion(TARIFF_QUERY_REGION).list();
 	}
 
 	/**
@@ -289,7 +339,8 @@ public class HibernateBillingDAO implements BillingDAO {
 
 		return sessionFactory.getCurrentSession()
 				.createCriteria(FacilityServicePrice.class)
-				.add(Restrictions.eq("retired", false)).list();
+				.add(Restrictions.eq("retired", false))
+				.setCacheable(true).setCacheRegion(TARIFF_QUERY_REGION).list();
 	}
 
 	/**
@@ -405,122 +456,348 @@ public class HibernateBillingDAO implements BillingDAO {
 			Date startDate, Date endDate, Integer patientId,
 			String serviceName, String billStatus, String billCollector) {
 
-		Session session = sessionFactory.getCurrentSession();
-		DateFormat formatter = new SimpleDateFormat("yyyy-MM-dd");
-		StringBuilder combinedSearch = new StringBuilder("");
+		return getBillCohort(toCohortQuery(insurance, startDate, endDate,
+				patientId, billStatus, billCollector));
+	}
 
-		combinedSearch
-				.append("SELECT pb.* FROM moh_bill_patient_bill pb "
-						+ "inner join moh_bill_beneficiary b on pb.beneficiary_id = b.beneficiary_id ");
+	@Override
+	public List<BillPayment> paymentsCohortBuilder(Insurance insurance,
+			Date startDate, Date endDate, Integer patientId,
+			String serviceName, String billStatus, String billCollector) {
 
-		if (patientId != null)
-			combinedSearch
-					.append(" and b.patient_id = " + patientId.intValue());
+		// when the status is "0" it does not affect the query
+		if ("0".equals(billStatus))
+			billStatus = null;
 
-		combinedSearch
-				.append(" inner join moh_bill_patient_service_bill psb on pb.patient_bill_id = psb.patient_bill_id and psb.voided = 0 "
-						+ " inner join moh_bill_billable_service bs on psb.billable_service_id = bs.billable_service_id "
-						+ " inner join moh_bill_insurance i on bs.insurance_id = i.insurance_id ");
+		return getPaymentCohort(toCohortQuery(insurance, startDate, endDate,
+				patientId, billStatus, billCollector));
+	}
 
-		if (insurance != null)
-			combinedSearch.append(" and i.insurance_id =  "
-					+ insurance.getInsuranceId().intValue());
+	/**
+	 * @see org.openmrs.module.mohbilling.db.BillingDAO#getBillCohort(org.openmrs.module.mohbilling.model.CohortQuery)
+	 */
+	@Override
+	public List<PatientBill> getBillCohort(CohortQuery cohortQuery) {
+
+		Map<String, Object> parameters = new LinkedHashMap<String, Object>();
+		StringBuilder sql = new StringBuilder("SELECT pb.*");
+		appendBillCohortFilters(sql, parameters, cohortQuery);
+		sql.append(" GROUP BY pb.patient_bill_id ORDER BY pb.patient_bill_id");
+		if (isBackwards(cohortQuery))
+			sql.append(" DESC");
+
+		Query query = sessionFactory.getCurrentSession()
+				.createSQLQuery(sql.toString())
+				.addEntity("pb", PatientBill.class);
+		setCohortParameters(query, parameters, cohortQuery);
+
+		List<PatientBill> bills = query.list();
+		if (isBackwards(cohortQuery))
+			Collections.reverse(bills);
+		return bills;
+	}
+
+	/**
+	 * @see org.openmrs.module.mohbilling.db.BillingDAO#getBillCohortSize(org.openmrs.module.mohbilling.model.CohortQuery)
+	 */
+	@Override
+	public Integer getBillCohortSize(CohortQuery cohortQuery) {
 
-		combinedSearch.append(" WHERE 1 = 1 ");
+		Map<String, Object> parameters = new LinkedHashMap<String, Object>();
+		StringBuilder sql = new StringBuilder(
+				"SELECT COUNT(DISTINCT pb.patient_bill_id) AS cohort_size");
+		appendBillCohortFilters(sql, parameters, cohortQuery);
 
-		if (billCollector != null && !billCollector.equals(""))
-			combinedSearch.append(" and pb.creator =  " + billCollector);
+		Query query = sessionFactory.getCurrentSession()
+				.createSQLQuery(sql.toString())
+				.addScalar("cohort_size", Hibernate.INTEGER);
+		for (Map.Entry<String, Object> parameter : parameters.entrySet())
+			query.setParameter(parameter.getKey(), parameter.getValue());
 
-		if (startDate != null && endDate != null)
-			combinedSearch.append(" and pb.created_date >= '"
-					+ formatter.format(startDate)
-					+ " 00:00:00' and pb.created_date <= '"
-					+ formatter.format(endDate) + " 23:59:59' ");
+		return (Integer) query.uniqueResult();
+	}
 
-		if (startDate != null && endDate == null)
-			combinedSearch.append(" and pb.created_date >= '"
-					+ formatter.format(startDate) + " 00:00:00' ");
+	/**
+	 * @see org.openmrs.module.mohbilling.db.BillingDAO#getBillCohortTotals(org.openmrs.module.mohbilling.model.CohortQuery)
+	 */
+	@Override
+	public Map<String, BigDecimal> getBillCohortTotals(CohortQuery cohortQuery) {
 
-		if (startDate == null && endDate != null)
-			combinedSearch.append(" and pb.created_date <= '"
-					+ formatter.format(endDate) + " 23:59:59' ");
+		// the filters join the items, the bills are made distinct before
+		// their balance columns are summed. The bills without balances are
+		// left to getBillCohortIdsWithoutBalances.
+		Map<String, Object> parameters = new LinkedHashMap<String, Object>();
+		StringBuilder cohort = new StringBuilder(
+				"SELECT DISTINCT pb.patient_bill_id");
+		appendBillCohortFilters(cohort, parameters, cohortQuery);
 
-		if (billStatus != null && !billStatus.equals(""))
-			combinedSearch.append(" AND pb.status = '" + billStatus + "' ");
+		Query query = sessionFactory.getCurrentSession()
+				.createSQLQuery(
+						"SELECT SUM(c.total_due) AS total_due, SUM(c.insurer_due) AS insurer_due,"
+								+ " SUM(c.patient_due) AS patient_due, SUM(c.paid_amount) AS paid_amount"
+								+ " FROM moh_bill_patient_bill c inner join ("
+								+ cohort
+								+ ") cohort on cohort.patient_bill_id = c.patient_bill_id"
+								+ " WHERE c.total_due IS NOT NULL")
+				.addScalar("total_due", Hibernate.BIG_DECIMAL)
+				.addScalar("insurer_due", Hibernate.BIG_DECIMAL)
+				.addScalar("patient_due", Hibernate.BIG_DECIMAL)
+				.addScalar("paid_amount", Hibernate.BIG_DECIMAL);
+		for (Map.Entry<String, Object> parameter : parameters.entrySet())
+			query.setParameter(parameter.getKey(), parameter.getValue());
+
+		Object[] row = (Object[]) query.uniqueResult();
+		Map<String, BigDecimal> totals = new LinkedHashMap<String, BigDecimal>();
+		String[] names = { "totalDue", "insurerDue", "patientDue", "paidAmount" };
+		for (int i = 0; i < names.length; i++)
+			totals.put(names[i], (row != null && row[i] != null) ? (BigDecimal) row[i]
+					: BigDecimal.ZERO);
+		return totals;
+	}
 
-		combinedSearch.append(" GROUP BY pb.patient_bill_id;");
+	/**
+	 * @see org.openmrs.module.mohbilling.db.BillingDAO#getBillCohortIdsWithoutBalances(org.openmrs.module.mohbilling.model.CohortQuery)
+	 */
+	@Override
+	public List<Integer> getBillCohortIdsWithoutBalances(CohortQuery cohortQuery) {
 
+		Map<String, Object> parameters = new LinkedHashMap<String, Object>();
+		StringBuilder cohort = new StringBuilder(
+				"SELECT DISTINCT pb.patient_bill_id");
+		appendBillCohortFilters(cohort, parameters, cohortQuery);
 
-		List<PatientBill> patientBills = session
-				.createSQLQuery(combinedSearch.toString())
-				.addEntity("pb", PatientBill.class).list();
+		Query query = sessionFactory.getCurrentSession()
+				.createSQLQuery(
+						"SELECT c.patient_bill_id AS patient_bill_id"
+								+ " FROM moh_bill_patient_bill c inner join ("
+								+ cohort
+								+ ") cohort on cohort.patient_bill_id = c.patient_bill_id"
+								+ " WHERE c.total_due IS NULL")
+				.addScalar("patient_bill_id", Hibernate.INTEGER);
+		for (Map.Entry<String, Object> parameter : parameters.entrySet())
+			query.setParameter(parameter.getKey(), parameter.getValue());
+
+		return query.list();
+	}
 
-		System.out.println("_____________________ BILL QUERY __________\n"
-				+ combinedSearch.toString());
-		return patientBills;
+	/**
+	 * @see org.openmrs.module.mohbilling.db.BillingDAO#getPaymentCohort(org.openmrs.module.mohbilling.model.CohortQuery)
+	 */
+	@Override
+	public List<BillPayment> getPaymentCohort(CohortQuery cohortQuery) {
+
+		Map<String, Object> parameters = new LinkedHashMap<String, Object>();
+		StringBuilder sql = new StringBuilder("SELECT pay.*");
+		appendPaymentCohortFilters(sql, parameters, cohortQuery);
+		sql.append(" GROUP BY pay.bill_payment_id ORDER BY pay.bill_payment_id");
+		if (isBackwards(cohortQuery))
+			sql.append(" DESC");
+
+		Query query = sessionFactory.getCurrentSession()
+				.createSQLQuery(sql.toString())
+				.addEntity("pay", BillPayment.class);
+		setCohortParameters(query, parameters, cohortQuery);
+
+		List<BillPayment> payments = query.list();
+		if (isBackwards(cohortQuery))
+			Collections.reverse(payments);
+		return payments;
 	}
 
+	/**
+	 * @see org.openmrs.module.mohbilling.db.BillingDAO#getPaymentCohortSize(org.openmrs.module.mohbilling.model.CohortQuery)
+	 */
 	@Override
-	public List<BillPayment> paymentsCohortBuilder(Insurance insurance,
-			Date startDate, Date endDate, Integer patientId,
-			String serviceName, String billStatus, String billCollector) {
-		Session session = sessionFactory.getCurrentSession();
-		DateFormat formatter = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
-		StringBuilder combinedSearch = new StringBuilder("");
+	public Integer getPaymentCohortSize(CohortQuery cohortQuery) {
 
-		combinedSearch
-				.append(" SELECT pay.* FROM moh_bill_payment pay "
-						+ "inner join moh_bill_patient_bill pb on pay.patient_bill_id = pb.patient_bill_id "
-						+ " INNER JOIN moh_bill_beneficiary b ON pb.beneficiary_id = b.beneficiary_id ");
-		if (patientId != null)
-			combinedSearch
-					.append(" AND b.patient_id = " + patientId.intValue());
+		Map<String, Object> parameters = new LinkedHashMap<String, Object>();
+		StringBuilder sql = new StringBuilder(
+				"SELECT COUNT(DISTINCT pay.bill_payment_id) AS cohort_size");
+		appendPaymentCohortFilters(sql, parameters, cohortQuery);
 
-		combinedSearch
-				.append(" inner join moh_bill_patient_service_bill psb on pb.patient_bill_id = psb.patient_bill_id "
-						+ " inner join moh_bill_billable_service bs on psb.billable_service_id = bs.billable_service_id "
-						+ " inner join moh_bill_insurance i on bs.insurance_id = i.insurance_id ");
+		Query query = sessionFactory.getCurrentSession()
+				.createSQLQuery(sql.toString())
+				.addScalar("cohort_size", Hibernate.INTEGER);
+		for (Map.Entry<String, Object> parameter : parameters.entrySet())
+			query.setParameter(parameter.getKey(), parameter.getValue());
 
-		if (insurance != null)
-			combinedSearch.append(" and i.insurance_id =  "
-					+ insurance.getInsuranceId().intValue());
+		return (Integer) query.uniqueResult();
+	}
 
-		combinedSearch
-				.append(" inner join moh_bill_service_category sc on bs.service_category_id = sc.service_category_id WHERE 1 = 1");
+	/**
+	 * Builds the query of the former cohort builder signatures, the bill
+	 * collector being the id of a user
+	 */
+	private static CohortQuery toCohortQuery(Insurance insurance,
+			Date startDate, Date endDate, Integer patientId,
+			String billStatus, String billCollector) {
+
+		CohortQuery cohortQuery = new CohortQuery();
+		cohortQuery.setInsurance(insurance);
+		cohortQuery.setStartDate(startDate);
+		cohortQuery.setEndDate(endDate);
+		cohortQuery.setPatientId(patientId);
+
+		if (billStatus != null && !billStatus.equals(""))
+			cohortQuery.setBillStatus(billStatus);
 
 		if (billCollector != null && !billCollector.equals(""))
-			combinedSearch.append(" AND pay.creator =  " + billCollector);
+			cohortQuery.setCreatorId(Integer.valueOf(billCollector));
 
-		if (startDate != null && endDate != null)
-			combinedSearch.append(" and pay.created_date >= '"
-					+ formatter.format(startDate)
-					+ "' and pay.created_date <= '" + formatter.format(endDate)
-					+ "' ");
+		return cohortQuery;
+	}
 
-		if (startDate != null && endDate == null)
-			combinedSearch.append(" and pay.created_date >= '"
-					+ formatter.format(startDate) + "' ");
+	/**
+	 * Appends the FROM and WHERE clauses of the bill cohort. Only the filters
+	 * which are set are appended and their values are bound, so that the same
+	 * statement is reused for every search using the same filters. The bills
+	 * are matched on whole days of their creation date.
+	 */
+	private static void appendBillCohortFilters(StringBuilder sql,
+			Map<String, Object> parameters, CohortQuery cohortQuery) {
+
+		sql.append(" FROM moh_bill_patient_bill pb"
+				+ " inner join moh_bill_beneficiary b on pb.beneficiary_id = b.beneficiary_id"
+				+ " inner join moh_bill_patient_service_bill psb on pb.patient_bill_id = psb.patient_bill_id and psb.voided = 0"
+				+ " inner join moh_bill_billable_service bs on psb.billable_service_id = bs.billable_service_id"
+				+ " inner join moh_bill_insurance i on bs.insurance_id = i.insurance_id"
+				+ " WHERE 1 = 1");
+
+		if (cohortQuery.getPatientId() != null) {
+			sql.append(" and b.patient_id = :patientId");
+			parameters.put("patientId", cohortQuery.getPatientId());
+		}
 
-		if (startDate == null && endDate != null)
-			combinedSearch.append(" and pay.created_date <= '"
-					+ formatter.format(endDate) + "' ");
+		if (cohortQuery.getInsurance() != null) {
+			sql.append(" and i.insurance_id = :insuranceId");
+			parameters.put("insuranceId", cohortQuery.getInsurance()
+					.getInsuranceId());
+		}
 
-		// payment status
-		if (billStatus != null && !billStatus.equals(""))
-			if (!billStatus.equals("0"))// when it's "0" it does affect the
-										// query...
-				combinedSearch.append(" AND pb.status = '" + billStatus + "'");
+		if (cohortQuery.getCreatorId() != null) {
+			sql.append(" and pb.creator = :creatorId");
+			parameters.put("creatorId", cohortQuery.getCreatorId());
+		}
+
+		if (cohortQuery.getStartDate() != null) {
+			Calendar startOfDay = Calendar.getInstance();
+			startOfDay.setTime(cohortQuery.getStartDate());
+			startOfDay.set(Calendar.HOUR_OF_DAY, 0);
+			startOfDay.set(Calendar.MINUTE, 0);
+			startOfDay.set(Calendar.SECOND, 0);
+			startOfDay.set(Calendar.MILLISECOND, 0);
+
+			sql.append(" and pb.created_date >= :startDate");
+			parameters.put("startDate", startOfDay.getTime());
+		}
+
+		if (cohortQuery.getEndDate() != null) {
+			Calendar endOfDay = Calendar.getInstance();
+			endOfDay.setTime(cohortQuery.getEndDate());
+			endOfDay.set(Calendar.HOUR_OF_DAY, 23);
+			endOfDay.set(Calendar.MINUTE, 59);
+			endOfDay.set(Calendar.SECOND, 59);
+			endOfDay.set(Calendar.MILLISECOND, 0);
+
+			sql.append(" and pb.created_date <= :endDate");
+			parameters.put("endDate", endOfDay.getTime());
+		}
+
+		if (cohortQuery.getBillStatus() != null) {
+			sql.append(" and pb.status = :billStatus");
+			parameters.put("billStatus", cohortQuery.getBillStatus());
+		}
+
+		if (cohortQuery.getAfterId() != null) {
+			sql.append(" and pb.patient_bill_id > :afterId");
+			parameters.put("afterId", cohortQuery.getAfterId());
+		}
+
+		if (cohortQuery.getBeforeId() != null) {
+			sql.append(" and pb.patient_bill_id < :beforeId");
+			parameters.put("beforeId", cohortQuery.getBeforeId());
+		}
+	}
+
+	/**
+	 * Appends the FROM and WHERE clauses of the payment cohort, the same way
+	 * as the bill cohort. The payments are matched on their creation time.
+	 */
+	private static void appendPaymentCohortFilters(StringBuilder sql,
+			Map<String, Object> parameters, CohortQuery cohortQuery) {
+
+		sql.append(" FROM moh_bill_payment pay"
+				+ " inner join moh_bill_patient_bill pb on pay.patient_bill_id = pb.patient_bill_id"
+				+ " inner join moh_bill_beneficiary b on pb.beneficiary_id = b.beneficiary_id"
+				+ " inner join moh_bill_patient_service_bill psb on pb.patient_bill_id = psb.patient_bill_id"
+				+ " inner join moh_bill_billable_service bs on psb.billable_service_id = bs.billable_service_id"
+				+ " inner join moh_bill_insurance i on bs.insurance_id = i.insurance_id"
+				+ " inner join moh_bill_service_category sc on bs.service_category_id = sc.service_category_id"
+				+ " WHERE 1 = 1");
+
+		if (cohortQuery.getPatientId() != null) {
+			sql.append(" and b.patient_id = :patientId");
+			parameters.put("patientId", cohortQuery.getPatientId());
+		}
+
+		if (cohortQuery.getInsurance() != null) {
+			sql.append(" and i.insurance_id = :insuranceId");
+			parameters.put("insuranceId", cohortQuery.getInsurance()
+					.getInsuranceId());
+		}
+
+		if (cohortQuery.getCreatorId() != null) {
+			sql.append(" and pay.creator = :creatorId");
+			parameters.put("creatorId", cohortQuery.getCreatorId());
+		}
+
+		if (cohortQuery.getStartDate() != null) {
+			sql.append(" and pay.created_date >= :startDate");
+			parameters.put("startDate", cohortQuery.getStartDate());
+		}
+
+		if (cohortQuery.getEndDate() != null) {
+			sql.append(" and pay.created_date <= :endDate");
+			parameters.put("endDate", cohortQuery.getEndDate());
+		}
+
+		if (cohortQuery.getBillStatus() != null) {
+			sql.append(" and pb.status = :billStatus");
+			parameters.put("billStatus", cohortQuery.getBillStatus());
+		}
+
+		if (cohortQuery.getAfterId() != null) {
+			sql.append(" and pay.bill_payment_id > :afterId");
+			parameters.put("afterId", cohortQuery.getAfterId());
+		}
+
+		if (cohortQuery.getBeforeId() != null) {
+			sql.append(" and pay.bill_payment_id < :beforeId");
+			parameters.put("beforeId", cohortQuery.getBeforeId());
+		}
+	}
 
-		combinedSearch.append(" GROUP BY bill_payment_id");
+	/**
+	 * @return true if the page ends before an id, its rows being read from
+	 *         the last one and put back in id order once read
+	 */
+	private static boolean isBackwards(CohortQuery cohortQuery) {
+		return cohortQuery.getBeforeId() != null
+				&& cohortQuery.getAfterId() == null;
+	}
 
+	/**
+	 * Binds the filter values of a cohort query and limits the size of its
+	 * page
+	 */
+	private static void setCohortParameters(Query query,
+			Map<String, Object> parameters, CohortQuery cohortQuery) {
 
-		List<BillPayment> billPayments = session
-				.createSQLQuery(combinedSearch.toString())
-				.addEntity("pay", BillPayment.class).list();
+		for (Map.Entry<String, Object> parameter : parameters.entrySet())
+			query.setParameter(parameter.getKey(), parameter.getValue());
 
-//		System.out.println("_____________________ BILL QUERY __________\n"
-//				+ combinedSearch.toString());
-		return billPayments;
+		if (cohortQuery.getMaxResults() != null)
+			query.setMaxResults(cohortQuery.getMaxResults());
 	}
 
 	/**
@@ -652,7 +929,8 @@ public class HibernateBillingDAO implements BillingDAO {
 
 		return sessionFactory.getCurrentSession()
 				.createCriteria(BillableService.class)
-				.add(Restrictions.eq("serviceCategory", sc)).list();
+				.add(Restrictions.eq("serviceCategory", sc))
+				.setCacheable(true).setCacheRegion(TARIFF_QUERY_REGION).list();
 	}
 
 	/**
@@ -663,7 +941,9 @@ public class HibernateBillingDAO implements BillingDAO {
 
 		return (FacilityServicePrice) sessionFactory.getCurrentSession()
 				.createCriteria(FacilityServicePrice.class)
-				.add(Restrictions.eq("concept", concept)).uniqueResult();
+				.add(Restrictions.eq("concept", concept))
+				.setCacheable(true).setCacheRegion(TARIFF_QUERY_REGION)
+				.uniqueResult();
 	}
 
 	@Override
@@ -672,7 +952,8 @@ public class HibernateBillingDAO implements BillingDAO {
 
 		return sessionFactory.getCurrentSession()
 				.createCriteria(BillableService.class)
-				.add(Restrictions.eq("facilityServicePrice", fsp)).list();
+				.add(Restrictions.eq("facilityServicePrice", fsp))
+				.setCacheable(true).setCacheRegion(TARIFF_QUERY_REGION).list();
 	}
 
 	/**
@@ -684,7 +965,8 @@ public class HibernateBillingDAO implements BillingDAO {
 
 		return sessionFactory.getCurrentSession()
 				.createCriteria(BillableService.class)
-				.add(Restrictions.eq("insurance", insurance)).list();
+				.add(Restrictions.eq("insurance", insurance))
+				.setCacheable(true).setCacheRegion(TARIFF_QUERY_REGION).list();
 	}
 
 	/**
@@ -807,7 +1089,9 @@ public class HibernateBillingDAO implements BillingDAO {
 		return (ServiceCategory) sessionFactory.getCurrentSession()
 				.createCriteria(ServiceCategory.class)
 				.add(Restrictions.eq("name", name))
-				.add(Restrictions.eq("insurance", insurance)).uniqueResult();
+				.add(Restrictions.eq("insurance", insurance))
+				.setCacheable(true).setCacheRegion(TARIFF_QUERY_REGION)
+				.uniqueResult();
 	}
 
 	@Override
@@ -868,61 +1152,297 @@ public class HibernateBillingDAO implements BillingDAO {
 
 	@Override
 	public Map<String,Double> getRevenueByService(Date receivedDate,String[] serviceCategory, String collector, Insurance insurance) {
-		DateFormat formatter = new SimpleDateFormat("yyyy-MM-dd");
-		  Double amountSum =0.0;
-
-		   LinkedHashMap<String, Double> mappedReport= new LinkedHashMap();
-		  //Map<String, Double> mappedReport = new HashMap<String, Double>();
-		   
-		  Session session = getSessionFactory().getCurrentSession();
-		  
-		  for (String svceCatgory : serviceCategory) {
-		   StringBuilder strb = new StringBuilder("");
-//		   log.info(">>>>>>>>>start >sql query "+strb.toString());
-		   
-		   strb.append("SELECT fsp.category,SUM(((m.unit_price * m.quantity)*(100-ir.rate)/100)) " 
-		     +" FROM moh_bill_patient_service_bill m " 
-		     +" inner join moh_bill_billable_service bs on bs.billable_service_id =m.billable_service_id " 
-		     +" inner join moh_bill_facility_service_price fsp on fsp.facility_service_price_id =bs.facility_service_price_id " 
-		     +" inner join  moh_bill_patient_bill pb on pb.patient_bill_id=m.patient_bill_id " 
-		     +" inner join moh_bill_beneficiary bn on pb.beneficiary_id =bn.beneficiary_id "
-		     +" inner join  moh_bill_insurance_rate ir on ir.insurance_id=bs.insurance_id "      
-		     +" inner join moh_bill_insurance_policy ip on ip.insurance_policy_id =bn.insurance_policy_id"
-		     +" inner  join  moh_bill_payment pay on pay.patient_bill_id=pb.patient_bill_id " 
-		     +" where fsp.category like  '%" +svceCatgory+"%' and pay.date_received = '" +formatter.format(receivedDate)+"' "); 
-		
-		   if (insurance != null)
-				strb.append(" and ip.insurance_id =  "
-						+ insurance.getInsuranceId().intValue());
-
-			if (collector != null && !collector.equals(""))
-				strb.append(" AND pay.collector =  " + collector);
-		  
-		   SQLQuery query = session.createSQLQuery(strb.toString());  
-		 
-		   List<Object[]> categoryReports = query.list(); 
-		   
-//		   DecimalFormat decimalFormat = new DecimalFormat("###.##");
-		  
-		   for (Object[] object : categoryReports) {		   
-			   String catg =(String)object[0];     
-			   Double amount =(Double )object[1];   
-		   
-		     if(catg!=null){             
-		             mappedReport.put(catg, ReportsUtil.roundTwoDecimals(amount));
-		             amountSum=amountSum+amount; 
-		    }
-		           if(catg==null){
-		            
-		            mappedReport.put(svceCatgory, 0.0); 
-		            amountSum=amountSum+0.0; 
-		   }
-		                
-		  }
+		Double amountSum = 0.0;
+
+		LinkedHashMap<String, Double> mappedReport = new LinkedHashMap<String, Double>();
+
+		Session session = getSessionFactory().getCurrentSession();
+
+		StringBuilder strb = new StringBuilder(
+				"SELECT r.category AS category, SUM(r.amount) AS amount"
+						+ " FROM moh_bill_daily_revenue r"
+						+ " WHERE r.revenue_date = :receivedDate");
+
+		if (insurance != null)
+			strb.append(" AND r.insurance_id = :insuranceId");
+
+		if (collector != null && !collector.equals(""))
+			strb.append(" AND r.collector = :collector");
+
+		strb.append(" GROUP BY r.category ORDER BY r.category");
+
+		SQLQuery query = session.createSQLQuery(strb.toString());
+		query.addScalar("category", Hibernate.STRING);
+		query.addScalar("amount", Hibernate.DOUBLE);
+		query.setDate("receivedDate", receivedDate);
+
+		if (insurance != null)
+			query.setInteger("insuranceId", insurance.getInsuranceId());
+
+		if (collector != null && !collector.equals(""))
+			query.setInteger("collector", Integer.valueOf(collector));
+
+		List<Object[]> categoryReports = query.list();
+
+		// the day has a row by category, the requested names are matched
+		// here as the former LIKE '%name%' did, case insensitive as the
+		// MySQL collation, without scanning the rollup once by name
+		for (String svceCatgory : serviceCategory) {
+			String catg = null;
+			Double amount = 0.0;
+			for (Object[] object : categoryReports) {
+				String rowCategory = (String) object[0];
+				if (rowCategory != null && object[1] != null
+						&& rowCategory.toUpperCase().contains(
+								svceCatgory.toUpperCase())) {
+					if (catg == null)
+						catg = rowCategory;
+					amount = amount + (Double) object[1];
+				}
+			}
+
+			if (catg != null) {
+				mappedReport.put(catg, ReportsUtil.roundTwoDecimals(amount));
+				amountSum = amountSum + amount;
+			} else
+				mappedReport.put(svceCatgory, 0.0);
+		}
+		mappedReport.put("Total", ReportsUtil.roundTwoDecimals(amountSum));
+
+		return mappedReport;
+	}
+
+	/**
+	 * Spreads the payments of each bill over the service categories of its
+	 * items, by received date, collector, insurance and category, so that
+	 * the rows of a day add up to the cash received that day. A category
+	 * gets the part of the payment in proportion to what the patient pays of
+	 * it: its whole cost for AUTRES, its cost less the insurer due otherwise,
+	 * or in proportion to its cost if the patient pays nothing. The payments,
+	 * the items and the bill costs are summed separately before being
+	 * joined, so that no amount is counted once by item or by rate. Voided
+	 * payments, items and bills are left out.
+	 * 
+	 * @param oneBill
+	 *            true to restrict the rows to the bill
+	 *            <code>:patientBillId</code>
+	 * @return the rows of each bill, shared by the bill update and the full
+	 *         rebuild so that they always agree
+	 */
+	private static String dailyRevenueSelect(boolean oneBill) {
+
+		String items = " FROM moh_bill_patient_service_bill m"
+				+ " inner join moh_bill_billable_service bs on bs.billable_service_id = m.billable_service_id"
+				+ " inner join moh_bill_facility_service_price fsp on fsp.facility_service_price_id = bs.facility_service_price_id"
+				+ " WHERE (m.voided = 0 OR m.voided IS NULL)"
+				+ (oneBill ? " AND m.patient_bill_id = :patientBillId" : "");
+		String patientDue = "(bill.cost - COALESCE(pb.insurer_due, 0))";
+
+		return "SELECT pay.patient_bill_id, pay.date_received, pay.collector, ip.insurance_id, due.category,"
+				+ " SUM(pay.amount * CASE WHEN " + patientDue + " > 0"
+				+ " THEN (CASE WHEN due.category = 'AUTRES' OR bill.insured_cost = 0 THEN due.cost"
+				+ " ELSE due.cost - due.cost * COALESCE(pb.insurer_due, 0) / bill.insured_cost END)"
+				+ " / " + patientDue
+				+ " ELSE due.cost / bill.cost END)"
+				+ " FROM (SELECT p.patient_bill_id, p.date_received, p.collector, SUM(p.amount_paid) AS amount"
+				+ " FROM moh_bill_payment p"
+				+ " WHERE (p.voided = 0 OR p.voided IS NULL)"
+				+ (oneBill ? " AND p.patient_bill_id = :patientBillId" : "")
+				+ " GROUP BY p.patient_bill_id, p.date_received, p.collector) pay"
+				+ " inner join moh_bill_patient_bill pb on pb.patient_bill_id = pay.patient_bill_id"
+				+ " inner join moh_bill_beneficiary bn on pb.beneficiary_id = bn.beneficiary_id"
+				+ " inner join moh_bill_insurance_policy ip on ip.insurance_policy_id = bn.insurance_policy_id"
+				+ " inner join (SELECT m.patient_bill_id, fsp.category, SUM(m.unit_price * m.quantity) AS cost"
+				+ items
+				+ " GROUP BY m.patient_bill_id, fsp.category) due on due.patient_bill_id = pb.patient_bill_id"
+				+ " inner join (SELECT m.patient_bill_id, SUM(m.unit_price * m.quantity) AS cost,"
+				+ " SUM(CASE WHEN fsp.category = 'AUTRES' THEN 0 ELSE m.unit_price * m.quantity END) AS insured_cost"
+				+ items
+				+ " GROUP BY m.patient_bill_id) bill on bill.patient_bill_id = pb.patient_bill_id"
+				+ " WHERE (pb.voided = 0 OR pb.voided IS NULL) AND bill.cost > 0"
+				+ " GROUP BY pay.patient_bill_id, pay.date_received, pay.collector, ip.insurance_id, due.category";
+	}
+
+	/**
+	 * @see org.openmrs.module.mohbilling.db.BillingDAO#updateDailyRevenue(org.openmrs.module.mohbilling.model.PatientBill)
+	 */
+	@Override
+	public void updateDailyRevenue(PatientBill bill) {
+
+		if (bill.getPatientBillId() == null)
+			return;
+
+		Session session = sessionFactory.getCurrentSession();
+
+		// the rows are computed from the tables, pending bill changes must be
+		// written first
+		session.flush();
+
+		Map<DailyRevenueKey, Double> deltas = new HashMap<DailyRevenueKey, Double>();
+		addBillDailyRevenue(session, bill.getPatientBillId(), -1, deltas);
+
+		session.createSQLQuery(
+				"DELETE FROM moh_bill_daily_revenue_bill WHERE patient_bill_id = :patientBillId")
+				.setInteger("patientBillId", bill.getPatientBillId())
+				.executeUpdate();
+		session.createSQLQuery(
+				"INSERT INTO moh_bill_daily_revenue_bill (patient_bill_id, revenue_date, collector, insurance_id, category, amount) "
+						+ dailyRevenueSelect(true))
+				.setInteger("patientBillId", bill.getPatientBillId())
+				.executeUpdate();
+
+		addBillDailyRevenue(session, bill.getPatientBillId(), 1, deltas);
+
+		// the keys are always updated in the same order, so that two cashiers
+		// saving bills of the same day wait for each other instead of
+		// deadlocking
+		List<DailyRevenueKey> keys = new ArrayList<DailyRevenueKey>(
+				deltas.keySet());
+		Collections.sort(keys);
+		for (DailyRevenueKey key : keys) {
+			double delta = deltas.get(key);
+			if (Math.abs(delta) < 0.000001)
+				continue;
+
+			if (key.apply(session, "UPDATE moh_bill_daily_revenue SET amount = amount + :amount"
+					+ " WHERE revenue_date = :revenueDate" + key.restriction(), delta) == 0)
+				key.apply(session, "INSERT INTO moh_bill_daily_revenue (revenue_date, collector, insurance_id, category, amount)"
+						+ " VALUES (:revenueDate, :collector, :insuranceId, :category, :amount)", delta);
+		}
+	}
+
+	/**
+	 * Adds the rows of the bill stored in the per bill rollup to the deltas
+	 * 
+	 * @param sign
+	 *            -1 to take the rows out, 1 to add them
+	 */
+	private static void addBillDailyRevenue(Session session,
+			Integer patientBillId, int sign, Map<DailyRevenueKey, Double> deltas) {
+
+		List<Object[]> rows = session.createSQLQuery(
+				"SELECT r.revenue_date AS revenue_date, r.collector AS collector, r.insurance_id AS insurance_id,"
+						+ " r.category AS category, r.amount AS amount"
+						+ " FROM moh_bill_daily_revenue_bill r WHERE r.patient_bill_id = :patientBillId")
+				.addScalar("revenue_date", Hibernate.DATE)
+				.addScalar("collector", Hibernate.INTEGER)
+				.addScalar("insurance_id", Hibernate.INTEGER)
+				.addScalar("category", Hibernate.STRING)
+				.addScalar("amount", Hibernate.DOUBLE)
+				.setInteger("patientBillId", patientBillId).list();
+
+		for (Object[] row : rows) {
+			if (row[4] == null)
+				continue;
+			DailyRevenueKey key = new DailyRevenueKey((Date) row[0],
+					(Integer) row[1], (Integer) row[2], (String) row[3]);
+			Double amount = deltas.get(key);
+			deltas.put(key, ((amount != null) ? amount : 0d) + sign
+					* (Double) row[4]);
+		}
+	}
+
+	/**
+	 * The received date, collector, insurance and category of a daily
+	 * revenue row
+	 */
+	private static class DailyRevenueKey implements
+			Comparable<DailyRevenueKey> {
+
+		private final Date revenueDate;
+		private final Integer collector;
+		private final Integer insuranceId;
+		private final String category;
+
+		DailyRevenueKey(Date revenueDate, Integer collector,
+				Integer insuranceId, String category) {
+			this.revenueDate = new Date(revenueDate.getTime());
+			this.collector = collector;
+			this.insuranceId = insuranceId;
+			this.category = category;
+		}
+
+		/**
+		 * @return the restriction of the rows to this key, the null
+		 *         columns being matched with IS NULL
+		 */
+		String restriction() {
+			return (collector != null ? " AND collector = :collector" : " AND collector IS NULL")
+					+ (insuranceId != null ? " AND insurance_id = :insuranceId" : " AND insurance_id IS NULL")
+					+ (category != null ? " AND category = :category" : " AND category IS NULL");
+		}
+
+		/**
+		 * Runs the update with the key and the amount as parameters
+		 * 
+		 * @return the number of rows updated
+		 */
+		int apply(Session session, String sql, double amount) {
+
+			SQLQuery query = session.createSQLQuery(sql);
+			query.setDate("revenueDate", revenueDate);
+			query.setDouble("amount", amount);
+			if (sql.contains(":collector"))
+				query.setParameter("collector", collector, Hibernate.INTEGER);
+			if (sql.contains(":insuranceId"))
+				query.setParameter("insuranceId", insuranceId, Hibernate.INTEGER);
+			if (sql.contains(":category"))
+				query.setParameter("category", category, Hibernate.STRING);
+			return query.executeUpdate();
+		}
+
+		public int compareTo(DailyRevenueKey other) {
+			int ret = revenueDate.compareTo(other.revenueDate);
+			if (ret == 0)
+				ret = OpenmrsUtil.compareWithNullAsLowest(collector,
+						other.collector);
+			if (ret == 0)
+				ret = OpenmrsUtil.compareWithNullAsLowest(insuranceId,
+						other.insuranceId);
+			if (ret == 0)
+				ret = OpenmrsUtil.compareWithNullAsLowest(category,
+						other.category);
+			return ret;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return (obj instanceof DailyRevenueKey)
+					&& compareTo((DailyRevenueKey) obj) == 0;
+		}
+
+		@Override
+		public int hashCode() {
+			return revenueDate.hashCode()
+					+ 31 * (collector != null ? collector.hashCode() : 0)
+					+ 961 * (insuranceId != null ? insuranceId.hashCode() : 0)
+					+ (category != null ? category.hashCode() : 0);
 		}
-		  mappedReport.put("Total", ReportsUtil.roundTwoDecimals(amountSum));
-		  
-		  return mappedReport;
+	}
+
+	/**
+	 * @see org.openmrs.module.mohbilling.db.BillingDAO#rebuildDailyRevenue()
+	 */
+	@Override
+	public void rebuildDailyRevenue() {
+
+		Session session = sessionFactory.getCurrentSession();
+		session.flush();
+
+		session.createSQLQuery("DELETE FROM moh_bill_daily_revenue_bill")
+				.executeUpdate();
+		session.createSQLQuery("DELETE FROM moh_bill_daily_revenue")
+				.executeUpdate();
+
+		session.createSQLQuery(
+				"INSERT INTO moh_bill_daily_revenue_bill (patient_bill_id, revenue_date, collector, insurance_id, category, amount) "
+						+ dailyRevenueSelect(false)).executeUpdate();
+		session.createSQLQuery(
+				"INSERT INTO moh_bill_daily_revenue (revenue_date, collector, insurance_id, category, amount)"
+						+ " SELECT r.revenue_date, r.collector, r.insurance_id, r.category, SUM(r.amount)"
+						+ " FROM moh_bill_daily_revenue_bill r"
+						+ " GROUP BY r.revenue_date, r.collector, r.insurance_id, r.category")
+				.executeUpdate();
 	}
 
 
@@ -969,6 +1489,7 @@ public class HibernateBillingDAO implements BillingDAO {
 		Criteria crit = sessionFactory.getCurrentSession().createCriteria(InsuranceRate.class)
                  .add(Restrictions.eq("insurance",insurance));		
 		        crit.add(Expression.eq("retired", false));
+		        crit.setCacheable(true).setCacheRegion(TARIFF_QUERY_REGION);
 		        
 		InsuranceRate insuranceRate = (InsuranceRate) crit.uniqueResult();		
 		return insuranceRate;
@@ -1037,11 +1558,11 @@ public class HibernateBillingDAO implements BillingDAO {
 		for (Object[] b : baseBillableServices) {
 			newBS = new BillableService();
 			newBS.setInsurance(Context.getService(BillingService.class).getInsurance((Integer)b[0]));
-			newBS.setMaximaToPay((BigDecimal)b[1]);
 			newBS.setStartDate((Date)b[2]);
 			Integer fspId = (Integer)b[3];
 			FacilityServicePrice fsp = FacilityServicePriceUtil.getFacilityServicePrice(fspId);
 			newBS.setFacilityServicePrice(fsp);
+			newBS.setMaximaToPay(FacilityServicePriceUtil.getMaximaToPay(fsp, newBS.getInsurance()));
 			ServiceCategory sc = getServiceCategory((Integer)b[4]);
 			newBS.setServiceCategory(sc);
 			newBS.setCreatedDate(new Date());
@@ -1075,13 +1596,8 @@ public class HibernateBillingDAO implements BillingDAO {
 		Session session = getSessionFactory().getCurrentSession();
 
 		StringBuilder bui = new StringBuilder();
-		bui.append("select i.insurance_id,");
-		bui.append(" CASE ");
-		bui.append("");
-		bui.append(" WHEN i.category = 'MUTUELLE' THEN (full_price/2)");
-		bui.append(" WHEN i.category = 'PRIVATE' THEN (full_price*1.25)");
-		bui.append(" WHEN i.category = 'NONE' THEN (full_price*1.5)");
-		bui.append(" ELSE full_price END as maxima_to_pay,");
+		// the maxima to pay is set by FacilityServicePriceUtil.getMaximaToPay
+		bui.append("select i.insurance_id, full_price,");
 		bui.append(" fsp.start_date, fsp.facility_service_price_id, sc.service_category_id, fsp.created_date, fsp.retired, fsp.creator ");
 		bui.append(" FROM moh_bill_facility_service_price fsp ");
 		bui.append(" inner join moh_bill_service_category sc on fsp.category = sc.name ");
@@ -1124,29 +1640,1056 @@ public class HibernateBillingDAO implements BillingDAO {
 		return crit.list();
 	}
 
+	/**
+	 * @see org.openmrs.module.mohbilling.db.BillingDAO#getRefundedBills(java.util.Date, java.util.Date, org.openmrs.User)
+	 */
 	@Override
+	@SuppressWarnings("unchecked")
 	public Set<PatientBill> getRefundedBills(Date startDate, Date endDate, User collector) {
-		
-		Criteria crit = sessionFactory.getCurrentSession().createCriteria(BillPayment.class).add(Restrictions.between("createdDate", startDate, endDate));
-		//Criteria crit1 = sessionFactory.getCurrentSession().createCriteria(PatientBill.class).add(Restrictions.between("createdDate", startDate, endDate));
-		
-		if (collector != null && collector.getUserId() != null) {
-			crit.add(Expression.eq("collector", collector));
-		}
-		
-		List<BillPayment> payments = crit.list();		
-	
-		Set<PatientBill> refundedBills = new HashSet<PatientBill>();
-		
-		
-		for (BillPayment pay : payments) {			
-			
-			PatientBill pb = pay.getPatientBill();
-			if(pb.getBillItems().size()==0)
-			  refundedBills.add(pb);
-					    
-		}	
-		
-		return refundedBills;
-	}	
+
+		Query query = createRefundEventQuery("select distinct re.patientBill",
+				startDate, endDate, collector, true);
+
+		return new HashSet<PatientBill>(query.list());
+	}
+
+	/**
+	 * @see org.openmrs.module.mohbilling.db.BillingDAO#getBillsByPatient(org.openmrs.Patient)
+	 */
+	@Override
+	public List<PatientBill> getBillsByPatient(Patient patient) {
+
+		return sessionFactory.getCurrentSession()
+				.createCriteria(PatientBill.class)
+				.createAlias("beneficiary", "b")
+				.add(Restrictions.eq("b.patient", patient))
+				.addOrder(Order.asc("patientBillId")).list();
+	}
+
+	/**
+	 * @see org.openmrs.module.mohbilling.db.BillingDAO#getBillsByPatientOnDate(org.openmrs.Patient, java.util.Date)
+	 */
+	@Override
+	public List<PatientBill> getBillsByPatientOnDate(Patient patient,
+			Date serviceDate) {
+
+		DetachedCriteria servedOnDate = DetachedCriteria
+				.forClass(PatientServiceBill.class)
+				.add(Restrictions.eq("serviceDate", serviceDate))
+				.setProjection(Projections.property("patientBill.patientBillId"));
+
+		return sessionFactory.getCurrentSession()
+				.createCriteria(PatientBill.class)
+				.createAlias("beneficiary", "b")
+				.add(Restrictions.eq("b.patient", patient))
+				.add(Subqueries.propertyIn("patientBillId", servedOnDate))
+				.addOrder(Order.asc("patientBillId")).list();
+	}
+
+	/**
+	 * @see org.openmrs.module.mohbilling.db.BillingDAO#getBillItemsByBeneficiaryOnDate(org.openmrs.module.mohbilling.model.Beneficiary, java.util.Date)
+	 */
+	@Override
+	public List<PatientServiceBill> getBillItemsByBeneficiaryOnDate(
+			Beneficiary beneficiary, Date serviceDate) {
+
+		return sessionFactory.getCurrentSession()
+				.createCriteria(PatientServiceBill.class)
+				.createAlias("patientBill", "pb")
+				.add(Restrictions.eq("pb.beneficiary", beneficiary))
+				.add(Restrictions.eq("serviceDate", serviceDate))
+				.addOrder(Order.asc("pb.patientBillId"))
+				.addOrder(Order.asc("patientServiceBillId")).list();
+	}
+
+	/**
+	 * @see org.openmrs.module.mohbilling.db.BillingDAO#getBillItemsByPatientAndPeriod(org.openmrs.Patient, java.util.Date, java.util.Date)
+	 */
+	@Override
+	public List<PatientServiceBill> getBillItemsByPatientAndPeriod(
+			Patient patient, Date startDate, Date endDate) {
+
+		return sessionFactory.getCurrentSession()
+				.createCriteria(PatientServiceBill.class)
+				.createAlias("patientBill", "pb")
+				.createAlias("pb.beneficiary", "b")
+				.add(Restrictions.eq("b.patient", patient))
+				.add(Restrictions.eq("pb.voided", false))
+				.add(Restrictions.eq("voided", false))
+				.add(Restrictions.between("serviceDate", startDate, endDate))
+				.addOrder(Order.asc("pb.patientBillId"))
+				.addOrder(Order.asc("patientServiceBillId")).list();
+	}
+
+	/**
+	 * @see org.openmrs.module.mohbilling.db.BillingDAO#getBillsByCreatedDate(java.util.Date, java.util.Date, java.lang.Boolean)
+	 */
+	@Override
+	public List<PatientBill> getBillsByCreatedDate(Date startDate,
+			Date endDate, Boolean isPaid) {
+
+		Criteria crit = sessionFactory.getCurrentSession().createCriteria(
+				PatientBill.class);
+
+		if (startDate != null)
+			crit.add(Restrictions.ge("createdDate", startDate));
+		if (endDate != null)
+			crit.add(Restrictions.le("createdDate", endDate));
+		if (isPaid != null)
+			crit.add(Restrictions.eq("isPaid", isPaid));
+
+		return crit.addOrder(Order.asc("patientBillId")).list();
+	}
+
+	/**
+	 * @see org.openmrs.module.mohbilling.db.BillingDAO#getPaidBillsByBeneficiary(org.openmrs.module.mohbilling.model.Beneficiary, java.lang.Boolean)
+	 */
+	@Override
+	public List<PatientBill> getPaidBillsByBeneficiary(
+			Beneficiary beneficiary, Boolean isPaid) {
+
+		Criteria crit = sessionFactory.getCurrentSession()
+				.createCriteria(PatientBill.class)
+				.add(Restrictions.eq("beneficiary", beneficiary));
+
+		if (isPaid != null)
+			crit.add(Restrictions.eq("isPaid", isPaid));
+
+		return crit.addOrder(Order.asc("patientBillId")).list();
+	}
+	/**
+	 * @see org.openmrs.module.mohbilling.db.BillingDAO#getInsurancePoliciesByBeneficiaryOnDate(org.openmrs.module.mohbilling.model.Beneficiary, java.util.Date)
+	 */
+	@Override
+	public List<InsurancePolicy> getInsurancePoliciesByBeneficiaryOnDate(
+			Beneficiary beneficiary, Date date) {
+
+		return sessionFactory.getCurrentSession()
+				.createCriteria(InsurancePolicy.class)
+				.createAlias("beneficiaries", "b")
+				.add(Restrictions.or(
+						Restrictions.eq("b.beneficiaryId", beneficiary.getBeneficiaryId()),
+						Restrictions.eq("b.policyIdNumber", beneficiary.getPolicyIdNumber())))
+				.add(Restrictions.lt("coverageStartDate", date))
+				.add(Restrictions.gt("expirationDate", date))
+				.setResultTransformer(CriteriaSpecification.DISTINCT_ROOT_ENTITY)
+				.addOrder(Order.asc("insurancePolicyId")).list();
+	}
+
+	/**
+	 * @see org.openmrs.module.mohbilling.db.BillingDAO#getInsurancePoliciesByOwnerOnDate(org.openmrs.Person, java.util.Date)
+	 */
+	@Override
+	public List<InsurancePolicy> getInsurancePoliciesByOwnerOnDate(
+			Person owner, Date date) {
+
+		return sessionFactory.getCurrentSession()
+				.createCriteria(InsurancePolicy.class)
+				.add(Restrictions.eq("owner.id", owner.getPersonId()))
+				.add(Restrictions.lt("coverageStartDate", date))
+				.add(Restrictions.gt("expirationDate", date))
+				.addOrder(Order.asc("insurancePolicyId")).list();
+	}
+
+	/**
+	 * @see org.openmrs.module.mohbilling.db.BillingDAO#getInsurancePoliciesByOwner(org.openmrs.Patient)
+	 */
+	@Override
+	public List<InsurancePolicy> getInsurancePoliciesByOwner(Patient owner) {
+
+		return sessionFactory.getCurrentSession()
+				.createCriteria(InsurancePolicy.class)
+				.add(Restrictions.eq("owner", owner))
+				.addOrder(Order.asc("insurancePolicyId")).list();
+	}
+
+	/**
+	 * @see org.openmrs.module.mohbilling.db.BillingDAO#getInsurancePoliciesByInsurance(org.openmrs.module.mohbilling.model.Insurance)
+	 */
+	@Override
+	public List<InsurancePolicy> getInsurancePoliciesByInsurance(
+			Insurance insurance) {
+
+		return sessionFactory.getCurrentSession()
+				.createCriteria(InsurancePolicy.class)
+				.add(Restrictions.eq("insurance", insurance))
+				.addOrder(Order.asc("insurancePolicyId")).list();
+	}
+
+	/**
+	 * @see org.openmrs.module.mohbilling.db.BillingDAO#getInsurancePolicyByCardNo(org.openmrs.module.mohbilling.model.Insurance, java.lang.String)
+	 */
+	@Override
+	public InsurancePolicy getInsurancePolicyByCardNo(Insurance insurance,
+			String insuranceCardNo) {
+
+		Criteria crit = sessionFactory.getCurrentSession()
+				.createCriteria(InsurancePolicy.class)
+				.add(Restrictions.eq("insuranceCardNo", insuranceCardNo));
+
+		if (insurance != null)
+			crit.add(Restrictions.eq("insurance", insurance));
+
+		return (InsurancePolicy) crit.addOrder(Order.asc("insurancePolicyId"))
+				.setMaxResults(1).uniqueResult();
+	}
+
+	/**
+	 * @see org.openmrs.module.mohbilling.db.BillingDAO#getInsurancePolicyByPolicyIdNumber(java.lang.String, boolean)
+	 */
+	@Override
+	public InsurancePolicy getInsurancePolicyByPolicyIdNumber(
+			String policyIdNumber, boolean retired) {
+
+		DetachedCriteria holders = DetachedCriteria
+				.forClass(Beneficiary.class)
+				.add(Restrictions.eq("policyIdNumber", policyIdNumber))
+				.setProjection(Projections.property("insurancePolicy.insurancePolicyId"));
+
+		return (InsurancePolicy) sessionFactory.getCurrentSession()
+				.createCriteria(InsurancePolicy.class)
+				.add(retired ? Restrictions.eq("retired", true) : notRetired())
+				.add(Subqueries.propertyIn("insurancePolicyId", holders))
+				.addOrder(Order.asc("insurancePolicyId"))
+				.setMaxResults(1).uniqueResult();
+	}
+
+	/**
+	 * @see org.openmrs.module.mohbilling.db.BillingDAO#getBeneficiariesByPatient(org.openmrs.Patient)
+	 */
+	@Override
+	public List<Beneficiary> getBeneficiariesByPatient(Patient patient) {
+
+		return sessionFactory.getCurrentSession()
+				.createCriteria(Beneficiary.class)
+				.add(Restrictions.eq("patient", patient))
+				.add(notRetired())
+				.addOrder(Order.asc("insurancePolicy"))
+				.addOrder(Order.asc("beneficiaryId")).list();
+	}
+
+	/**
+	 * @see org.openmrs.module.mohbilling.db.BillingDAO#getBeneficiariesByOwner(org.openmrs.Patient)
+	 */
+	@Override
+	public List<Beneficiary> getBeneficiariesByOwner(Patient owner) {
+
+		return sessionFactory.getCurrentSession()
+				.createCriteria(Beneficiary.class)
+				.createAlias("insurancePolicy", "ip")
+				.add(Restrictions.eq("ip.owner", owner))
+				.add(notRetired())
+				.addOrder(Order.asc("ip.insurancePolicyId"))
+				.addOrder(Order.asc("beneficiaryId")).list();
+	}
+
+	/**
+	 * @return the restriction on the rows not retired, the legacy rows having
+	 *         no retired flag being taken as not retired
+	 */
+	private static Criterion notRetired() {
+		return Restrictions.or(Restrictions.eq("retired", false),
+				Restrictions.isNull("retired"));
+	}
+
+	/**
+	 * @return the restriction on the rows not voided, the legacy rows having
+	 *         no voided flag being taken as not voided
+	 */
+	private static Criterion notVoided(String property) {
+		return Restrictions.or(Restrictions.eq(property, false),
+				Restrictions.isNull(property));
+	}
+
+	/**
+	 * @see org.openmrs.module.mohbilling.db.BillingDAO#getBillSummaries(org.openmrs.module.mohbilling.model.Insurance, java.util.Date, java.util.Date, java.lang.Boolean, java.lang.Integer)
+	 */
+	@Override
+	public List<BillSummary> getBillSummaries(Insurance insurance,
+			Date startDate, Date endDate, Boolean isPaid, Integer patientId) {
+
+		StringBuilder sql = new StringBuilder(BILL_SUMMARY_SELECT);
+		sql.append(" WHERE (pb.voided = 0 OR pb.voided IS NULL)"
+				+ " AND (psb.voided = 0 OR psb.voided IS NULL)");
+
+		if (insurance != null)
+			sql.append(" AND ip.insurance_id = :insuranceId");
+		if (startDate != null)
+			sql.append(" AND psb.service_date >= :startDate");
+		if (endDate != null)
+			sql.append(" AND psb.service_date <= :endDate");
+		if (isPaid != null)
+			sql.append(" AND pb.is_paid = :isPaid");
+		if (patientId != null)
+			sql.append(" AND b.patient_id = :patientId");
+
+		sql.append(BILL_SUMMARY_GROUP_BY);
+
+		Query query = createBillSummaryQuery(sql.toString());
+
+		if (insurance != null)
+			query.setInteger("insuranceId", insurance.getInsuranceId());
+		if (startDate != null)
+			query.setTimestamp("startDate", startDate);
+		if (endDate != null)
+			query.setTimestamp("endDate", endDate);
+		if (isPaid != null)
+			query.setInteger("isPaid", isPaid ? 1 : 0);
+		if (patientId != null)
+			query.setInteger("patientId", patientId);
+
+		return toBillSummaries(query.list());
+	}
+
+	/**
+	 * @see org.openmrs.module.mohbilling.db.BillingDAO#getBillSummariesByFacilityService(org.openmrs.module.mohbilling.model.FacilityServicePrice, java.util.Date, java.util.Date, org.openmrs.Patient, org.openmrs.module.mohbilling.model.Insurance)
+	 */
+	@Override
+	public List<BillSummary> getBillSummariesByFacilityService(
+			FacilityServicePrice fsp, Date startDate, Date endDate,
+			Patient patient, Insurance insurance) {
+
+		StringBuilder sql = new StringBuilder(BILL_SUMMARY_SELECT);
+		sql.append(" INNER JOIN moh_bill_billable_service bs ON bs.billable_service_id = psb.billable_service_id"
+				+ " WHERE 1 = 1");
+
+		if (fsp != null)
+			sql.append(" AND bs.facility_service_price_id = :fspId");
+		if (startDate != null)
+			sql.append(" AND bs.start_date >= :startDate");
+		if (endDate != null)
+			sql.append(" AND bs.start_date <= :endDate");
+		if (patient != null)
+			sql.append(" AND b.patient_id = :patientId");
+		if (insurance != null)
+			sql.append(" AND bs.insurance_id = :insuranceId");
+
+		sql.append(BILL_SUMMARY_GROUP_BY);
+
+		Query query = createBillSummaryQuery(sql.toString());
+
+		if (fsp != null)
+			query.setInteger("fspId", fsp.getFacilityServicePriceId());
+		if (startDate != null)
+			query.setTimestamp("startDate", startDate);
+		if (endDate != null)
+			query.setTimestamp("endDate", endDate);
+		if (patient != null)
+			query.setInteger("patientId", patient.getPatientId());
+		if (insurance != null)
+			query.setInteger("insuranceId", insurance.getInsuranceId());
+
+		return toBillSummaries(query.list());
+	}
+
+	/**
+	 * @see org.openmrs.module.mohbilling.db.BillingDAO#getPatientBills(java.util.List)
+	 */
+	@Override
+	public List<PatientBill> getPatientBills(List<Integer> billIds) {
+
+		List<PatientBill> bills = new ArrayList<PatientBill>();
+
+		for (int i = 0; i < billIds.size(); i += 1000) {
+			List<Integer> chunk = billIds.subList(i,
+					Math.min(i + 1000, billIds.size()));
+			bills.addAll(sessionFactory.getCurrentSession()
+					.createCriteria(PatientBill.class)
+					.add(Restrictions.in("patientBillId", chunk))
+					.addOrder(Order.asc("patientBillId")).list());
+		}
+
+		return bills;
+	}
+
+	/**
+	 * @see org.openmrs.module.mohbilling.db.BillingDAO#getBilledServices(java.util.Date, java.util.Date, java.lang.Boolean)
+	 */
+	@Override
+	public List<BillableService> getBilledServices(Date startDate,
+			Date endDate, Boolean isPaid) {
+
+		StringBuilder hql = new StringBuilder(
+				"select psb.service from PatientServiceBill psb join psb.patientBill pb"
+						+ " where (pb.voided = false or pb.voided is null)"
+						+ " and (psb.voided = false or psb.voided is null)"
+						+ " and psb.serviceDate between :startDate and :endDate");
+
+		if (isPaid != null)
+			hql.append(" and pb.isPaid = :isPaid");
+
+		hql.append(" order by psb.patientServiceBillId");
+
+		Query query = sessionFactory.getCurrentSession()
+				.createQuery(hql.toString())
+				.setTimestamp("startDate", startDate)
+				.setTimestamp("endDate", endDate);
+
+		if (isPaid != null)
+			query.setBoolean("isPaid", isPaid);
+
+		return query.list();
+	}
+
+	/**
+	 * @see org.openmrs.module.mohbilling.db.BillingDAO#getPaymentsReceivedOn(java.util.Date)
+	 */
+	@Override
+	public List<BillPayment> getPaymentsReceivedOn(Date day) {
+
+		return sessionFactory.getCurrentSession()
+				.createCriteria(BillPayment.class)
+				.createAlias("patientBill", "pb")
+				.add(notVoided("pb.voided"))
+				.add(notVoided("voided"))
+				.add(Restrictions.eq("dateReceived", day))
+				.addOrder(Order.asc("billPaymentId")).list();
+	}
+
+	/**
+	 * Bill columns plus the count and total of the joined items, the caller
+	 * appends its own joins and WHERE clause
+	 */
+	private static final String BILL_SUMMARY_SELECT = "SELECT pb.patient_bill_id AS bill_id, pb.beneficiary_id AS beneficiary_id,"
+			+ " b.patient_id AS patient_id, ip.insurance_id AS insurance_id, pb.is_paid AS is_paid,"
+			+ " pb.amount AS amount, COUNT(psb.patient_service_bill_id) AS item_count,"
+			+ " SUM(psb.unit_price * psb.quantity) AS items_total"
+			+ " FROM moh_bill_patient_bill pb"
+			+ " INNER JOIN moh_bill_patient_service_bill psb ON psb.patient_bill_id = pb.patient_bill_id"
+			+ " INNER JOIN moh_bill_beneficiary b ON b.beneficiary_id = pb.beneficiary_id"
+			+ " INNER JOIN moh_bill_insurance_policy ip ON ip.insurance_policy_id = b.insurance_policy_id";
+
+	private static final String BILL_SUMMARY_GROUP_BY = " GROUP BY pb.patient_bill_id, pb.beneficiary_id, b.patient_id,"
+			+ " ip.insurance_id, pb.is_paid, pb.amount ORDER BY pb.patient_bill_id";
+
+	private Query createBillSummaryQuery(String sql) {
+
+		return sessionFactory.getCurrentSession().createSQLQuery(sql)
+				.addScalar("bill_id", Hibernate.INTEGER)
+				.addScalar("beneficiary_id", Hibernate.INTEGER)
+				.addScalar("patient_id", Hibernate.INTEGER)
+				.addScalar("insurance_id", Hibernate.INTEGER)
+				.addScalar("is_paid", Hibernate.BOOLEAN)
+				.addScalar("amount", Hibernate.BIG_DECIMAL)
+				.addScalar("item_count", Hibernate.INTEGER)
+				.addScalar("items_total", Hibernate.BIG_DECIMAL);
+	}
+
+	private List<BillSummary> toBillSummaries(List<Object[]> rows) {
+
+		List<BillSummary> summaries = new ArrayList<BillSummary>(rows.size());
+
+		for (Object[] row : rows)
+			summaries.add(new BillSummary((Integer) row[0], (Integer) row[1],
+					(Integer) row[2], (Integer) row[3], (Boolean) row[4],
+					(BigDecimal) row[5], (Integer) row[6], (BigDecimal) row[7]));
+
+		return summaries;
+	}
+
+	/**
+	 * @see org.openmrs.module.mohbilling.db.BillingDAO#getPatientBillWithItems(java.lang.Integer)
+	 */
+	@Override
+	public PatientBill getPatientBillWithItems(Integer billId) {
+
+		return (PatientBill) createBillWithItemsCriteria()
+				.add(Restrictions.idEq(billId)).uniqueResult();
+	}
+
+	/**
+	 * @see org.openmrs.module.mohbilling.db.BillingDAO#getPatientBillsWithItems(java.util.List)
+	 */
+	@Override
+	public List<PatientBill> getPatientBillsWithItems(List<Integer> billIds) {
+
+		List<PatientBill> bills = new ArrayList<PatientBill>();
+
+		for (int i = 0; i < billIds.size(); i += 1000) {
+			List<Integer> chunk = billIds.subList(i,
+					Math.min(i + 1000, billIds.size()));
+			bills.addAll(createBillWithItemsCriteria()
+					.add(Restrictions.in("patientBillId", chunk))
+					.addOrder(Order.asc("patientBillId")).list());
+		}
+
+		return bills;
+	}
+
+	/**
+	 * @see org.openmrs.module.mohbilling.db.BillingDAO#getBillPayments(java.util.List)
+	 */
+	@Override
+	public List<BillPayment> getBillPayments(List<Integer> paymentIds) {
+
+		List<BillPayment> payments = new ArrayList<BillPayment>();
+
+		for (int i = 0; i < paymentIds.size(); i += 1000) {
+			List<Integer> chunk = paymentIds.subList(i,
+					Math.min(i + 1000, paymentIds.size()));
+			payments.addAll(sessionFactory.getCurrentSession()
+					.createCriteria(BillPayment.class)
+					.setFetchMode("patientBill", FetchMode.JOIN)
+					.setFetchMode("patientBill.beneficiary", FetchMode.JOIN)
+					.setFetchMode("patientBill.beneficiary.patient",
+							FetchMode.JOIN)
+					.add(Restrictions.in("billPaymentId", chunk))
+					.addOrder(Order.asc("billPaymentId")).list());
+		}
+
+		return payments;
+	}
+
+	/**
+	 * Criteria on PatientBill joining its items, their billable service and
+	 * its facility service price in the same select
+	 */
+	private Criteria createBillWithItemsCriteria() {
+
+		return sessionFactory.getCurrentSession()
+				.createCriteria(PatientBill.class)
+				.setFetchMode("billItems", FetchMode.JOIN)
+				.setFetchMode("billItems.service", FetchMode.JOIN)
+				.setFetchMode("billItems.service.facilityServicePrice",
+						FetchMode.JOIN)
+				.setResultTransformer(CriteriaSpecification.DISTINCT_ROOT_ENTITY);
+	}
+
+	/**
+	 * @see org.openmrs.module.mohbilling.db.BillingDAO#evictTariffCache()
+	 */
+	@Override
+	public void evictTariffCache() {
+
+		for (Class<?> tariffClass : TARIFF_CLASSES)
+			sessionFactory.evictEntity(tariffClass.getName());
+
+		for (String role : TARIFF_COLLECTIONS)
+			sessionFactory.evictCollection(role);
+
+		sessionFactory.evictQueries(TARIFF_QUERY_REGION);
+
+		TariffMatrixUtil.invalidate();
+	}
+
+	/**
+	 * @see org.openmrs.module.mohbilling.db.BillingDAO#getTariffCacheStatistics()
+	 */
+	@Override
+	public Map<String, Long> getTariffCacheStatistics() {
+
+		Statistics statistics = sessionFactory.getStatistics();
+		Map<String, Long> cacheStatistics = new LinkedHashMap<String, Long>();
+
+		// only collected when hibernate.generate_statistics is set, which
+		// has a cost for every session of OpenMRS
+		if (!statistics.isStatisticsEnabled())
+			return cacheStatistics;
+
+		for (String region : statistics.getSecondLevelCacheRegionNames()) {
+			if (!isTariffRegion(region))
+				continue;
+
+			SecondLevelCacheStatistics regionStatistics = statistics
+					.getSecondLevelCacheStatistics(region);
+			cacheStatistics.put(region + ".hits",
+					regionStatistics.getHitCount());
+			cacheStatistics.put(region + ".misses",
+					regionStatistics.getMissCount());
+			cacheStatistics.put(region + ".puts",
+					regionStatistics.getPutCount());
+			cacheStatistics.put(region + ".elements",
+					regionStatistics.getElementCountInMemory());
+		}
+
+		return cacheStatistics;
+	}
+
+	/**
+	 * Tells whether the cache region holds tariff entities, collections or
+	 * lookups, the region names being possibly prefixed by the configuration
+	 */
+	private static boolean isTariffRegion(String region) {
+
+		if (region.endsWith(TARIFF_QUERY_REGION))
+			return true;
+
+		for (Class<?> tariffClass : TARIFF_CLASSES)
+			if (region.endsWith(tariffClass.getName()))
+				return true;
+
+		for (String role : TARIFF_COLLECTIONS)
+			if (region.endsWith(role))
+				return true;
+
+		return false;
+	}
+
+	/**
+	 * @see org.openmrs.module.mohbilling.db.BillingDAO#getPatientBillsAfter(java.lang.Integer, int)
+	 */
+	@Override
+	public List<PatientBill> getPatientBillsAfter(Integer afterId,
+			int maxResults) {
+
+		return sessionFactory.getCurrentSession()
+				.createCriteria(PatientBill.class)
+				.add(Restrictions.gt("patientBillId", afterId))
+				.addOrder(Order.asc("patientBillId"))
+				.setMaxResults(maxResults).list();
+	}
+
+	/**
+	 * @see org.openmrs.module.mohbilling.db.BillingDAO#getPatientBillBalances(java.util.List)
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public Map<Integer, PatientBillBalance> getPatientBillBalances(
+			List<Integer> billIds) {
+
+		Map<Integer, PatientBillBalance> balances = new HashMap<Integer, PatientBillBalance>();
+
+		for (int i = 0; i < billIds.size(); i += 1000) {
+			List<Integer> chunk = billIds.subList(i,
+					Math.min(i + 1000, billIds.size()));
+			List<Object[]> rows = sessionFactory
+					.getCurrentSession()
+					.createQuery(
+							"select pb.patientBillId, pb.paidAmount, pb.outstandingAmount, pb.thirdPartyDue, tp.thirdPartyId"
+									+ " from PatientBill pb left join pb.beneficiary b"
+									+ " left join b.insurancePolicy ip left join ip.thirdParty tp"
+									+ " where pb.patientBillId in (:billIds)"
+									+ " and pb.outstandingAmount is not null")
+					.setParameterList("billIds", chunk).list();
+
+			// the third party due is stored from the non voided items, as
+			// the outstanding amount is, and shown only if there is one
+			for (Object[] row : rows)
+				balances.put((Integer) row[0], new PatientBillBalance(
+						(Integer) row[0], (BigDecimal) row[1],
+						(BigDecimal) row[2], (row[4] != null) ? (BigDecimal) row[3]
+								: null));
+		}
+
+		return balances;
+	}
+
+	/**
+	 * @see org.openmrs.module.mohbilling.db.BillingDAO#getBeneficiarySearchFields(java.lang.Integer, int)
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public List<Object[]> getBeneficiarySearchFields(Integer afterId,
+			int maxResults) {
+
+		return sessionFactory
+				.getCurrentSession()
+				.createSQLQuery(
+						"SELECT b.beneficiary_id, b.policy_id_number, ip.insurance_card_no,"
+								+ " pn.given_name, pn.family_name"
+								+ " FROM moh_bill_beneficiary b"
+								+ " INNER JOIN moh_bill_insurance_policy ip ON ip.insurance_policy_id = b.insurance_policy_id"
+								+ " LEFT JOIN person_name pn ON pn.person_id = b.patient_id"
+								+ " AND pn.preferred = 1 AND pn.voided = 0"
+								+ " WHERE b.retired = 0 AND b.beneficiary_id > :afterId"
+								+ " ORDER BY b.beneficiary_id")
+				.addScalar("beneficiary_id", Hibernate.INTEGER)
+				.addScalar("policy_id_number", Hibernate.STRING)
+				.addScalar("insurance_card_no", Hibernate.STRING)
+				.addScalar("given_name", Hibernate.STRING)
+				.addScalar("family_name", Hibernate.STRING)
+				.setInteger("afterId", afterId).setMaxResults(maxResults)
+				.list();
+	}
+
+	/**
+	 * @see org.openmrs.module.mohbilling.db.BillingDAO#getBeneficiaries(java.util.List)
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public List<Beneficiary> getBeneficiaries(List<Integer> beneficiaryIds) {
+
+		if (beneficiaryIds.isEmpty())
+			return new ArrayList<Beneficiary>();
+
+		return sessionFactory.getCurrentSession()
+				.createCriteria(Beneficiary.class)
+				.add(Restrictions.in("beneficiaryId", beneficiaryIds)).list();
+	}
+
+	/**
+	 * @see org.openmrs.module.mohbilling.db.BillingDAO#getBillableServiceIds(java.util.List)
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public List<Object[]> getBillableServiceIds(
+			List<Integer> facilityServicePriceIds) {
+
+		List<Object[]> rows = new ArrayList<Object[]>();
+
+		for (int i = 0; i < facilityServicePriceIds.size(); i += 1000) {
+			List<Integer> chunk = facilityServicePriceIds.subList(i,
+					Math.min(i + 1000, facilityServicePriceIds.size()));
+			rows.addAll(sessionFactory
+					.getCurrentSession()
+					.createQuery(
+							"select bs.serviceId, bs.facilityServicePrice.facilityServicePriceId,"
+									+ " bs.insurance.insuranceId from BillableService bs"
+									+ " where bs.facilityServicePrice.facilityServicePriceId in (:ids)"
+									+ " order by bs.serviceId")
+					.setParameterList("ids", chunk).list());
+		}
+
+		return rows;
+	}
+
+	/**
+	 * @see org.openmrs.module.mohbilling.db.BillingDAO#getServiceCategoriesByNames(java.util.List)
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public List<ServiceCategory> getServiceCategoriesByNames(List<String> names) {
+
+		if (names.isEmpty())
+			return new ArrayList<ServiceCategory>();
+
+		return sessionFactory.getCurrentSession()
+				.createCriteria(ServiceCategory.class)
+				.add(Restrictions.in("name", names)).list();
+	}
+
+	/**
+	 * @see org.openmrs.module.mohbilling.db.BillingDAO#saveBillableServicesInBatch(java.util.List)
+	 */
+	@Override
+	public void saveBillableServicesInBatch(
+			final List<BillableService> billableServices) {
+
+		Session session = sessionFactory.getCurrentSession();
+
+		// the pending changes of the facility services go first
+		session.flush();
+
+		session.doWork(new Work() {
+			public void execute(Connection connection) throws SQLException {
+
+				PreparedStatement insert = connection
+						.prepareStatement("INSERT INTO moh_bill_billable_service"
+								+ " (uuid, maxima_to_pay, start_date, created_date, retired,"
+								+ " insurance_id, facility_service_price_id, service_category_id, creator)"
+								+ " VALUES (?, ?, ?, ?, 0, ?, ?, ?, ?)");
+				PreparedStatement update = connection
+						.prepareStatement("UPDATE moh_bill_billable_service"
+								+ " SET maxima_to_pay = ?, start_date = ?, created_date = ?, retired = 0,"
+								+ " retire_date = NULL, retired_by = NULL, retire_reason = NULL,"
+								+ " service_category_id = ?, creator = ?"
+								+ " WHERE billable_service_id = ?");
+				try {
+					int inserts = 0, updates = 0;
+					for (BillableService bs : billableServices) {
+						if (bs.getServiceId() == null) {
+							insert.setString(1, bs.getUuid());
+							insert.setBigDecimal(2, bs.getMaximaToPay());
+							insert.setTimestamp(3, toTimestamp(bs.getStartDate()));
+							insert.setTimestamp(4, toTimestamp(bs.getCreatedDate()));
+							insert.setInt(5, bs.getInsurance().getInsuranceId());
+							insert.setInt(6, bs.getFacilityServicePrice()
+									.getFacilityServicePriceId());
+							setId(insert, 7, (bs.getServiceCategory() != null) ? bs
+									.getServiceCategory().getServiceCategoryId() : null);
+							setId(insert, 8, (bs.getCreator() != null) ? bs
+									.getCreator().getUserId() : null);
+							insert.addBatch();
+							if (++inserts % JDBC_BATCH_SIZE == 0)
+								insert.executeBatch();
+						} else {
+							update.setBigDecimal(1, bs.getMaximaToPay());
+							update.setTimestamp(2, toTimestamp(bs.getStartDate()));
+							update.setTimestamp(3, toTimestamp(bs.getCreatedDate()));
+							setId(update, 4, (bs.getServiceCategory() != null) ? bs
+									.getServiceCategory().getServiceCategoryId() : null);
+							setId(update, 5, (bs.getCreator() != null) ? bs
+									.getCreator().getUserId() : null);
+							update.setInt(6, bs.getServiceId());
+							update.addBatch();
+							if (++updates % JDBC_BATCH_SIZE == 0)
+								update.executeBatch();
+						}
+					}
+					if (inserts % JDBC_BATCH_SIZE != 0)
+						insert.executeBatch();
+					if (updates % JDBC_BATCH_SIZE != 0)
+						update.executeBatch();
+				} finally {
+					insert.close();
+					update.close();
+				}
+			}
+		});
+
+		for (BillableService bs : billableServices)
+			if (session.contains(bs.getFacilityServicePrice()))
+				session.evict(bs.getFacilityServicePrice());
+
+		evictTariffCache();
+	}
+
+	private static Timestamp toTimestamp(Date date) {
+		return (date != null) ? new Timestamp(date.getTime()) : null;
+	}
+
+	private static void setId(PreparedStatement statement, int index,
+			Integer id) throws SQLException {
+		if (id != null)
+			statement.setInt(index, id);
+		else
+			statement.setNull(index, Types.INTEGER);
+	}
+
+	/**
+	 * @see org.openmrs.module.mohbilling.db.BillingDAO#getBillableServiceTariffs()
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public List<Object[]> getBillableServiceTariffs() {
+
+		return sessionFactory
+				.getCurrentSession()
+				.createQuery(
+						"select bs.facilityServicePrice.facilityServicePriceId, bs.insurance.insuranceId,"
+								+ " bs.serviceId, bs.maximaToPay, bs.startDate, bs.endDate,"
+								+ " bs.retired, bs.retiredDate from BillableService bs"
+								+ " order by bs.serviceId").list();
+	}
+
+	/**
+	 * @see org.openmrs.module.mohbilling.db.BillingDAO#getInvoiceLines(java.util.List)
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public Map<Integer, List<InvoiceLine>> getInvoiceLines(List<Integer> billIds) {
+
+		Map<Integer, List<InvoiceLine>> lines = new HashMap<Integer, List<InvoiceLine>>();
+
+		for (int i = 0; i < billIds.size(); i += 1000) {
+			List<Integer> chunk = billIds.subList(i,
+					Math.min(i + 1000, billIds.size()));
+			// ordered as the sorted items of a bill
+			List<Object[]> rows = sessionFactory
+					.getCurrentSession()
+					.createQuery(
+							"select psb.patientBill.patientBillId, fsp.category, fsp.name,"
+									+ " psb.serviceDate, psb.unitPrice, psb.quantity"
+									+ " from PatientServiceBill psb join psb.service bs"
+									+ " join bs.facilityServicePrice fsp"
+									+ " where psb.patientBill.patientBillId in (:billIds)"
+									+ " order by psb.patientBill.patientBillId, psb.voided,"
+									+ " psb.serviceDate, psb.createdDate, psb.patientServiceBillId")
+					.setParameterList("billIds", chunk).list();
+
+			for (Object[] row : rows) {
+				List<InvoiceLine> billLines = lines.get(row[0]);
+				if (billLines == null) {
+					billLines = new ArrayList<InvoiceLine>();
+					lines.put((Integer) row[0], billLines);
+				}
+				billLines.add(new InvoiceLine((Integer) row[0], (String) row[1],
+						(String) row[2], (Date) row[3], (BigDecimal) row[4],
+						(BigDecimal) row[5]));
+			}
+		}
+
+		return lines;
+	}
+
+	/**
+	 * @see org.openmrs.module.mohbilling.db.BillingDAO#getBillAmountsByInsurance(java.util.Date, java.util.Date)
+	 */
+	@Override
+	public Map<Integer, BigDecimal> getBillAmountsByInsurance(Date startDate,
+			Date endDate) {
+
+		return getBillAmounts("ip.insurance.insuranceId", startDate, endDate);
+	}
+
+	/**
+	 * @see org.openmrs.module.mohbilling.db.BillingDAO#getBillAmountsByThirdParty(java.util.Date, java.util.Date)
+	 */
+	@Override
+	public Map<Integer, BigDecimal> getBillAmountsByThirdParty(Date startDate,
+			Date endDate) {
+
+		return getBillAmounts("ip.thirdParty.thirdPartyId", startDate, endDate);
+	}
+
+	/**
+	 * Sums the amounts of the bills created in the period, grouped by a
+	 * property of their insurance policy, the bills without it being left out
+	 */
+	@SuppressWarnings("unchecked")
+	private Map<Integer, BigDecimal> getBillAmounts(String groupProperty,
+			Date startDate, Date endDate) {
+
+		List<Object[]> rows = sessionFactory
+				.getCurrentSession()
+				.createQuery(
+						"select " + groupProperty + ", sum(pb.amount)"
+								+ " from PatientBill pb join pb.beneficiary b"
+								+ " join b.insurancePolicy ip"
+								+ " where pb.createdDate >= :startDate"
+								+ " and pb.createdDate <= :endDate"
+								+ " and " + groupProperty + " is not null"
+								+ " group by " + groupProperty)
+				.setTimestamp("startDate", startDate)
+				.setTimestamp("endDate", endDate).list();
+
+		Map<Integer, BigDecimal> amounts = new HashMap<Integer, BigDecimal>();
+		for (Object[] row : rows)
+			if (row[1] != null)
+				amounts.put((Integer) row[0], (BigDecimal) row[1]);
+
+		return amounts;
+	}
+
+	/**
+	 * @see org.openmrs.module.mohbilling.db.BillingDAO#saveRefundEvent(org.openmrs.module.mohbilling.model.RefundEvent)
+	 */
+	@Override
+	public void saveRefundEvent(RefundEvent event) {
+
+		sessionFactory.getCurrentSession().saveOrUpdate(event);
+	}
+
+	/**
+	 * @see org.openmrs.module.mohbilling.db.BillingDAO#getTotalRefundedAmount(java.util.Date, java.util.Date, org.openmrs.User)
+	 */
+	@Override
+	public BigDecimal getTotalRefundedAmount(Date startDate, Date endDate,
+			User collector) {
+
+		BigDecimal total = (BigDecimal) createRefundEventQuery(
+				"select sum(re.amount)", startDate, endDate, collector, false)
+				.uniqueResult();
+
+		return (total != null) ? total : BigDecimal.ZERO;
+	}
+
+	/**
+	 * Creates a query on the refunds of the period, by the collector if there
+	 * is one, served by the (refund_date, collector) index.
+	 * 
+	 * @param refundedBillsOnly
+	 *            true to leave out the bills with items left, a bill being
+	 *            refunded once it has none as before the log
+	 */
+	private Query createRefundEventQuery(String select, Date startDate,
+			Date endDate, User collector, boolean refundedBillsOnly) {
+
+		boolean byCollector = collector != null && collector.getUserId() != null;
+		Query query = sessionFactory
+				.getCurrentSession()
+				.createQuery(
+						select + " from RefundEvent re"
+								+ " where re.refundDate >= :startDate"
+								+ " and re.refundDate <= :endDate"
+								+ (refundedBillsOnly ? " and not exists (from PatientServiceBill psb"
+										+ " where psb.patientBill = re.patientBill)"
+										: "")
+								+ (byCollector ? " and re.collector = :collector"
+										: ""))
+				.setTimestamp("startDate", startDate)
+				.setTimestamp("endDate", endDate);
+
+		if (byCollector)
+			query.setEntity("collector", collector);
+
+		return query;
+	}
+
+	/**
+	 * @see org.openmrs.module.mohbilling.db.BillingDAO#getBillableServices(java.util.List)
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public List<BillableService> getBillableServices(
+			List<Integer> billableServiceIds) {
+
+		List<BillableService> services = new ArrayList<BillableService>();
+
+		for (int i = 0; i < billableServiceIds.size(); i += 1000) {
+			List<Integer> chunk = billableServiceIds.subList(i,
+					Math.min(i + 1000, billableServiceIds.size()));
+			services.addAll(sessionFactory.getCurrentSession()
+					.createCriteria(BillableService.class)
+					.add(Restrictions.in("serviceId", chunk)).list());
+		}
+
+		return services;
+	}
+
+	/**
+	 * @see org.openmrs.module.mohbilling.db.BillingDAO#getPatientBillByCaptureKey(java.lang.String)
+	 */
+	@Override
+	public PatientBill getPatientBillByCaptureKey(String captureKey) {
+
+		return (PatientBill) sessionFactory.getCurrentSession()
+				.createCriteria(PatientBill.class)
+				.add(Restrictions.eq("captureKey", captureKey)).uniqueResult();
+	}
+
+	/**
+	 * @see org.openmrs.module.mohbilling.db.BillingDAO#savePatientBillInBatch(org.openmrs.module.mohbilling.model.PatientBill)
+	 */
+	@Override
+	public void savePatientBillInBatch(final PatientBill bill) {
+
+		Session session = sessionFactory.getCurrentSession();
+
+		// the items are not cascaded, the native ids of the cascade would
+		// insert them one statement each
+		final Set<PatientServiceBill> items = bill.getBillItems();
+		bill.setBillItems(null);
+		session.save(bill);
+		session.flush();
+
+		if (items != null && !items.isEmpty())
+			session.doWork(new Work() {
+				public void execute(Connection connection) throws SQLException {
+
+					PreparedStatement insert = connection
+							.prepareStatement("INSERT INTO moh_bill_patient_service_bill"
+									+ " (uuid, service_date, unit_price, quantity, service_other,"
+									+ " service_other_description, created_date, voided,"
+									+ " billable_service_id, patient_bill_id, creator)"
+									+ " VALUES (?, ?, ?, ?, ?, ?, ?, 0, ?, ?, ?)");
+					try {
+						int inserts = 0;
+						for (PatientServiceBill psb : items) {
+							insert.setString(1, psb.getUuid());
+							insert.setTimestamp(2, toTimestamp(psb.getServiceDate()));
+							insert.setBigDecimal(3, psb.getUnitPrice());
+							insert.setBigDecimal(4, psb.getQuantity());
+							insert.setString(5, psb.getServiceOther());
+							insert.setString(6, psb.getServiceOtherDescription());
+							insert.setTimestamp(7, toTimestamp(psb.getCreatedDate()));
+							setId(insert, 8, (psb.getService() != null) ? psb
+									.getService().getServiceId() : null);
+							insert.setInt(9, bill.getPatientBillId());
+							setId(insert, 10, (psb.getCreator() != null) ? psb
+									.getCreator().getUserId() : null);
+							insert.addBatch();
+							if (++inserts % JDBC_BATCH_SIZE == 0)
+								insert.executeBatch();
+						}
+						if (inserts % JDBC_BATCH_SIZE != 0)
+							insert.executeBatch();
+					} finally {
+						insert.close();
+					}
+				}
+			});
+
+		session.refresh(bill);
+	}
 }
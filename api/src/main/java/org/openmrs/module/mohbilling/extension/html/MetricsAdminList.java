@@ -0,0 +1,53 @@
+package org.openmrs.module.mohbilling.extension.html;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.openmrs.module.Extension;
+import org.openmrs.module.web.extension.AdministrationSectionExt;
+
+/**
+ * Links to the service metrics and the SQL diagnostics of the billing module
+ * in the administration list, the billing links being those of
+ * {@link AdminList}
+ */
+public class MetricsAdminList extends AdministrationSectionExt {
+
+	/**
+	 * @see org.openmrs.module.web.extension.AdministrationSectionExt#getMediaType()
+	 */
+	@Override
+	public Extension.MEDIA_TYPE getMediaType() {
+		return Extension.MEDIA_TYPE.html;
+	}
+
+	/**
+	 * @see org.openmrs.module.web.extension.AdministrationSectionExt#getTitle()
+	 */
+	@Override
+	public String getTitle() {
+		return "mohbilling.title";
+	}
+
+	/**
+	 * @see org.openmrs.module.web.extension.AdministrationSectionExt#getRequiredPrivilege()
+	 */
+	@Override
+	public String getRequiredPrivilege() {
+		return "View Administration Functions";
+	}
+
+	/**
+	 * @see org.openmrs.module.web.extension.AdministrationSectionExt#getLinks()
+	 */
+	@Override
+	public Map<String, String> getLinks() {
+
+		Map<String, String> links = new LinkedHashMap<String, String>();
+		links.put("module/mohbilling/serviceMetrics.list",
+				"mohbilling.metrics.title");
+		links.put("module/mohbilling/sqlDiagnostics.list",
+				"mohbilling.sqlDiagnostics.title");
+		return links;
+	}
+}
@@ -4,32 +4,46 @@
 package org.openmrs.module.mohbilling.impl;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 import org.openmrs.Concept;
 import org.openmrs.Patient;
+import org.openmrs.Person;
 import org.openmrs.User;
 import org.openmrs.api.APIException;
+import org.openmrs.api.context.Context;
 import org.openmrs.api.db.DAOException;
 import org.openmrs.api.impl.BaseOpenmrsService;
+import org.openmrs.module.mohbilling.businesslogic.FacilityServicePriceUtil;
+import org.openmrs.module.mohbilling.businesslogic.TariffMatrixUtil;
 import org.openmrs.module.mohbilling.db.BillingDAO;
 import org.openmrs.module.mohbilling.model.Beneficiary;
+import org.openmrs.module.mohbilling.model.BillCaptureLine;
 import org.openmrs.module.mohbilling.model.BillPayment;
+import org.openmrs.module.mohbilling.model.BillSummary;
 import org.openmrs.module.mohbilling.model.BillableService;
+import org.openmrs.module.mohbilling.model.CohortQuery;
 import org.openmrs.module.mohbilling.model.FacilityServicePrice;
 import org.openmrs.module.mohbilling.model.Insurance;
 import org.openmrs.module.mohbilling.model.InsuranceCategory;
 import org.openmrs.module.mohbilling.model.InsurancePolicy;
 import org.openmrs.module.mohbilling.model.InsuranceRate;
+import org.openmrs.module.mohbilling.model.InvoiceLine;
 import org.openmrs.module.mohbilling.model.PatientBill;
+import org.openmrs.module.mohbilling.model.PatientBillBalance;
 import org.openmrs.module.mohbilling.model.PatientServiceBill;
 import org.openmrs.module.mohbilling.model.Recovery;
+import org.openmrs.module.mohbilling.model.RefundEvent;
 import org.openmrs.module.mohbilling.model.ServiceCategory;
 import org.openmrs.module.mohbilling.model.ThirdParty;
 import org.openmrs.module.mohbilling.service.BillingService;
+import org.openmrs.util.OpenmrsUtil;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 /**
@@ -39,6 +53,9 @@ import org.springframework.transaction.annotation.Transactional;
 @Transactional
 public class BillingServiceImpl extends BaseOpenmrsService implements BillingService {
 
+	/** Number of bills verified before the session is cleared */
+	private static final int BALANCE_CHECK_PAGE_SIZE = 100;
+
 	private BillingDAO billingDAO;
 
 	/**
@@ -105,6 +122,8 @@ public class BillingServiceImpl extends BaseOpenmrsService implements BillingSer
 			throw new APIException("Insurance name is required");
 		}
 		billingDAO.saveInsurance(insurance);
+		// the read-write cache regions are updated by the save itself
+		TariffMatrixUtil.invalidate();
 	}
 
 	/**
@@ -131,7 +150,12 @@ public class BillingServiceImpl extends BaseOpenmrsService implements BillingSer
 	@Override
 	public void savePatientBill(PatientBill bill) {
 
+		// payments, refunds and removed items all reach the database here
+		bill.updateBalances();
 		billingDAO.savePatientBill(bill);
+		// only the rows of this bill are recomputed, a change made outside of
+		// the module needs rebuildDailyRevenue()
+		billingDAO.updateDailyRevenue(bill);
 	}
 
 	/**
@@ -154,7 +178,10 @@ public class BillingServiceImpl extends BaseOpenmrsService implements BillingSer
 		if (fsp.getName() == null) {
 			throw new APIException("Facility Service name is required");
 		}
+		// also saves the billable services added through
+		// InsuranceUtil.saveBillableService
 		billingDAO.saveFacilityServicePrice(fsp);
+		TariffMatrixUtil.invalidate();
 	}
 
 	/**
@@ -246,6 +273,76 @@ public class BillingServiceImpl extends BaseOpenmrsService implements BillingSer
 				serviceName, billStatus, billCollector);
 	}
 
+	/**
+	 * @see org.openmrs.module.mohbilling.service.BillingService#getBillCohort(org.openmrs.module.mohbilling.model.CohortQuery)
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public List<PatientBill> getBillCohort(CohortQuery cohortQuery) {
+		return billingDAO.getBillCohort(cohortQuery);
+	}
+
+	/**
+	 * @see org.openmrs.module.mohbilling.service.BillingService#getBillCohortSize(org.openmrs.module.mohbilling.model.CohortQuery)
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public Integer getBillCohortSize(CohortQuery cohortQuery) {
+		return billingDAO.getBillCohortSize(cohortQuery);
+	}
+
+	/**
+	 * @see org.openmrs.module.mohbilling.service.BillingService#getBillCohortTotals(org.openmrs.module.mohbilling.model.CohortQuery)
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public Map<String, BigDecimal> getBillCohortTotals(CohortQuery cohortQuery) {
+
+		Map<String, BigDecimal> totals = billingDAO
+				.getBillCohortTotals(cohortQuery);
+
+		// the bills recorded before the balances were stored are computed
+		// without being saved, as by getPatientBillBalances
+		List<Integer> missingBillIds = billingDAO
+				.getBillCohortIdsWithoutBalances(cohortQuery);
+		if (!missingBillIds.isEmpty()) {
+			for (PatientBill bill : billingDAO
+					.getPatientBillsWithItems(missingBillIds)) {
+				BigDecimal totalDue = bill.computeTotalDue();
+				if (totalDue == null)
+					continue;
+
+				totals.put("totalDue", totals.get("totalDue").add(totalDue));
+				totals.put("insurerDue",
+						totals.get("insurerDue").add(bill.computeInsurerDue()));
+				totals.put("patientDue",
+						totals.get("patientDue").add(bill.computePatientDue()));
+				totals.put("paidAmount",
+						totals.get("paidAmount").add(bill.getAmountPaid()));
+			}
+		}
+
+		return totals;
+	}
+
+	/**
+	 * @see org.openmrs.module.mohbilling.service.BillingService#getPaymentCohort(org.openmrs.module.mohbilling.model.CohortQuery)
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public List<BillPayment> getPaymentCohort(CohortQuery cohortQuery) {
+		return billingDAO.getPaymentCohort(cohortQuery);
+	}
+
+	/**
+	 * @see org.openmrs.module.mohbilling.service.BillingService#getPaymentCohortSize(org.openmrs.module.mohbilling.model.CohortQuery)
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public Integer getPaymentCohortSize(CohortQuery cohortQuery) {
+		return billingDAO.getPaymentCohortSize(cohortQuery);
+	}
+
 	@Override
 	public BillableService getBillableServiceByConcept(
 			FacilityServicePrice price, Insurance insurance) {
@@ -432,6 +529,14 @@ public class BillingServiceImpl extends BaseOpenmrsService implements BillingSer
 		return billingDAO.getRevenueByService(receivedDate, serviceCategory, collector, insurance);
 	}
 
+	/**
+	 * @see org.openmrs.module.mohbilling.service.BillingService#rebuildDailyRevenue()
+	 */
+	@Override
+	public void rebuildDailyRevenue() {
+		billingDAO.rebuildDailyRevenue();
+	}
+
 
 	@Override
 	public List<PatientBill> getPatientBillsByCollector(Date receivedDate,
@@ -497,11 +602,581 @@ public class BillingServiceImpl extends BaseOpenmrsService implements BillingSer
 	 * @see org.openmrs.module.mohbilling.service.BillingService#getRefundedBills(java.util.Date, java.util.Date, org.openmrs.User)
 	 */
 	@Override
+	@Transactional(readOnly = true)
 	public Set<PatientBill> getRefundedBills(Date startDate, Date endDate,
 			User collector) {
-		// TODO Auto-generated method stub
 		return billingDAO.getRefundedBills(startDate,endDate,collector);
 	}
 
+	/**
+	 * @see org.openmrs.module.mohbilling.service.BillingService#getBillsByPatient(org.openmrs.Patient)
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public List<PatientBill> getBillsByPatient(Patient patient) {
+		return billingDAO.getBillsByPatient(patient);
+	}
+
+	/**
+	 * @see org.openmrs.module.mohbilling.service.BillingService#getBillsByPatientOnDate(org.openmrs.Patient, java.util.Date)
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public List<PatientBill> getBillsByPatientOnDate(Patient patient,
+			Date serviceDate) {
+		return billingDAO.getBillsByPatientOnDate(patient, serviceDate);
+	}
+
+	/**
+	 * @see org.openmrs.module.mohbilling.service.BillingService#getBillItemsByBeneficiaryOnDate(org.openmrs.module.mohbilling.model.Beneficiary, java.util.Date)
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public List<PatientServiceBill> getBillItemsByBeneficiaryOnDate(
+			Beneficiary beneficiary, Date serviceDate) {
+		return billingDAO.getBillItemsByBeneficiaryOnDate(beneficiary,
+				serviceDate);
+	}
+
+	/**
+	 * @see org.openmrs.module.mohbilling.service.BillingService#getBillItemsByPatientAndPeriod(org.openmrs.Patient, java.util.Date, java.util.Date)
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public List<PatientServiceBill> getBillItemsByPatientAndPeriod(
+			Patient patient, Date startDate, Date endDate) {
+		return billingDAO.getBillItemsByPatientAndPeriod(patient, startDate,
+				endDate);
+	}
+
+	/**
+	 * @see org.openmrs.module.mohbilling.service.BillingService#getBillsByCreatedDate(java.util.Date, java.util.Date, java.lang.Boolean)
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public List<PatientBill> getBillsByCreatedDate(Date startDate,
+			Date endDate, Boolean isPaid) {
+		return billingDAO.getBillsByCreatedDate(startDate, endDate, isPaid);
+	}
+
+	/**
+	 * @see org.openmrs.module.mohbilling.service.BillingService#getPaidBillsByBeneficiary(org.openmrs.module.mohbilling.model.Beneficiary, java.lang.Boolean)
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public List<PatientBill> getPaidBillsByBeneficiary(
+			Beneficiary beneficiary, Boolean isPaid) {
+		return billingDAO.getPaidBillsByBeneficiary(beneficiary, isPaid);
+	}
+
+	/**
+	 * @see org.openmrs.module.mohbilling.service.BillingService#getInsurancePoliciesByBeneficiaryOnDate(org.openmrs.module.mohbilling.model.Beneficiary, java.util.Date)
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public List<InsurancePolicy> getInsurancePoliciesByBeneficiaryOnDate(
+			Beneficiary beneficiary, Date date) {
+		return billingDAO.getInsurancePoliciesByBeneficiaryOnDate(beneficiary, date);
+	}
+
+	/**
+	 * @see org.openmrs.module.mohbilling.service.BillingService#getInsurancePoliciesByOwnerOnDate(org.openmrs.Person, java.util.Date)
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public List<InsurancePolicy> getInsurancePoliciesByOwnerOnDate(
+			Person owner, Date date) {
+		return billingDAO.getInsurancePoliciesByOwnerOnDate(owner, date);
+	}
+
+	/**
+	 * @see org.openmrs.module.mohbilling.service.BillingService#getInsurancePoliciesByOwner(org.openmrs.Patient)
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public List<InsurancePolicy> getInsurancePoliciesByOwner(Patient owner) {
+		return billingDAO.getInsurancePoliciesByOwner(owner);
+	}
+
+	/**
+	 * @see org.openmrs.module.mohbilling.service.BillingService#getInsurancePoliciesByInsurance(org.openmrs.module.mohbilling.model.Insurance)
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public List<InsurancePolicy> getInsurancePoliciesByInsurance(
+			Insurance insurance) {
+		return billingDAO.getInsurancePoliciesByInsurance(insurance);
+	}
+
+	/**
+	 * @see org.openmrs.module.mohbilling.service.BillingService#getInsurancePolicyByCardNo(org.openmrs.module.mohbilling.model.Insurance, java.lang.String)
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public InsurancePolicy getInsurancePolicyByCardNo(
+			Insurance insurance, String insuranceCardNo) {
+		return billingDAO.getInsurancePolicyByCardNo(insurance, insuranceCardNo);
+	}
+
+	/**
+	 * @see org.openmrs.module.mohbilling.service.BillingService#getInsurancePolicyByPolicyIdNumber(java.lang.String, boolean)
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public InsurancePolicy getInsurancePolicyByPolicyIdNumber(
+			String policyIdNumber, boolean retired) {
+		return billingDAO.getInsurancePolicyByPolicyIdNumber(policyIdNumber, retired);
+	}
+
+	/**
+	 * @see org.openmrs.module.mohbilling.service.BillingService#getBeneficiariesByPatient(org.openmrs.Patient)
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public List<Beneficiary> getBeneficiariesByPatient(Patient patient) {
+		return billingDAO.getBeneficiariesByPatient(patient);
+	}
+
+	/**
+	 * @see org.openmrs.module.mohbilling.service.BillingService#getBeneficiariesByOwner(org.openmrs.Patient)
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public List<Beneficiary> getBeneficiariesByOwner(Patient owner) {
+		return billingDAO.getBeneficiariesByOwner(owner);
+	}
+
+	/**
+	 * @see org.openmrs.module.mohbilling.service.BillingService#getBillSummaries(org.openmrs.module.mohbilling.model.Insurance, java.util.Date, java.util.Date, java.lang.Boolean, java.lang.Integer)
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public List<BillSummary> getBillSummaries(Insurance insurance,
+			Date startDate, Date endDate, Boolean isPaid, Integer patientId) {
+		return billingDAO.getBillSummaries(insurance, startDate, endDate,
+				isPaid, patientId);
+	}
+
+	/**
+	 * @see org.openmrs.module.mohbilling.service.BillingService#getBillSummariesByFacilityService(org.openmrs.module.mohbilling.model.FacilityServicePrice, java.util.Date, java.util.Date, org.openmrs.Patient, org.openmrs.module.mohbilling.model.Insurance)
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public List<BillSummary> getBillSummariesByFacilityService(
+			FacilityServicePrice fsp, Date startDate, Date endDate,
+			Patient patient, Insurance insurance) {
+		return billingDAO.getBillSummariesByFacilityService(fsp, startDate,
+				endDate, patient, insurance);
+	}
+
+	/**
+	 * @see org.openmrs.module.mohbilling.service.BillingService#getPatientBills(java.util.List)
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public List<PatientBill> getPatientBills(List<Integer> billIds) {
+		return billingDAO.getPatientBills(billIds);
+	}
+
+	/**
+	 * @see org.openmrs.module.mohbilling.service.BillingService#getBilledServices(java.util.Date, java.util.Date, java.lang.Boolean)
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public List<BillableService> getBilledServices(Date startDate,
+			Date endDate, Boolean isPaid) {
+		return billingDAO.getBilledServices(startDate, endDate, isPaid);
+	}
+
+	/**
+	 * @see org.openmrs.module.mohbilling.service.BillingService#getPaymentsReceivedOn(java.util.Date)
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public List<BillPayment> getPaymentsReceivedOn(Date day) {
+		return billingDAO.getPaymentsReceivedOn(day);
+	}
+
+	/**
+	 * @see org.openmrs.module.mohbilling.service.BillingService#getPatientBillWithItems(java.lang.Integer)
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public PatientBill getPatientBillWithItems(Integer billId) {
+		return billingDAO.getPatientBillWithItems(billId);
+	}
+
+	/**
+	 * @see org.openmrs.module.mohbilling.service.BillingService#getPatientBillsWithItems(java.util.List)
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public List<PatientBill> getPatientBillsWithItems(List<Integer> billIds) {
+		return billingDAO.getPatientBillsWithItems(billIds);
+	}
+
+	/**
+	 * @see org.openmrs.module.mohbilling.service.BillingService#getBillPayments(java.util.List)
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public List<BillPayment> getBillPayments(List<Integer> paymentIds) {
+		return billingDAO.getBillPayments(paymentIds);
+	}
+
+	/**
+	 * @see org.openmrs.module.mohbilling.service.BillingService#getTariffCacheStatistics()
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public Map<String, Long> getTariffCacheStatistics() {
+		return billingDAO.getTariffCacheStatistics();
+	}
+
+	/**
+	 * @see org.openmrs.module.mohbilling.service.BillingService#checkPatientBillBalances(boolean)
+	 */
+	@Override
+	@Transactional(propagation = Propagation.SUPPORTS)
+	public List<Integer> checkPatientBillBalances(boolean repair) {
+
+		// the pages go through the service proxy, so that each one commits on
+		// its own when the caller, as the scheduled task, has no transaction
+		BillingService service = Context.getService(BillingService.class);
+
+		List<Integer> inconsistentBillIds = new ArrayList<Integer>();
+		Integer afterId = 0;
+		while (afterId != null)
+			afterId = service.checkPatientBillBalances(afterId,
+					BALANCE_CHECK_PAGE_SIZE, repair, inconsistentBillIds);
+
+		// the insurer due of the repaired bills spreads their payments, the
+		// rollup is rebuilt once rather than by bill
+		if (repair && !inconsistentBillIds.isEmpty())
+			service.rebuildDailyRevenue();
+
+		return inconsistentBillIds;
+	}
+
+	/**
+	 * @see org.openmrs.module.mohbilling.service.BillingService#checkPatientBillBalances(java.lang.Integer,
+	 *      int, boolean, java.util.List)
+	 */
+	@Override
+	public Integer checkPatientBillBalances(Integer afterId, int maxResults,
+			boolean repair, List<Integer> inconsistentBillIds) {
+
+		List<PatientBill> bills = billingDAO.getPatientBillsAfter(afterId,
+				maxResults);
+		if (bills.isEmpty())
+			return null;
+
+		for (PatientBill bill : bills) {
+			afterId = bill.getPatientBillId();
+			if (!bill.isBalanceConsistent()) {
+				inconsistentBillIds.add(afterId);
+				if (repair) {
+					bill.updateBalances();
+					billingDAO.savePatientBill(bill);
+				}
+			}
+		}
+		Context.flushSession();
+		Context.clearSession();
+
+		return afterId;
+	}
+
+	/**
+	 * @see org.openmrs.module.mohbilling.service.BillingService#getPatientBillBalances(java.util.List)
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public Map<Integer, PatientBillBalance> getPatientBillBalances(
+			List<Integer> billIds) {
+
+		Map<Integer, PatientBillBalance> balances = billingDAO
+				.getPatientBillBalances(billIds);
+
+		// the bills recorded before the balances were stored are computed
+		// without being saved, until the balance check repairs them
+		List<Integer> missingBillIds = new ArrayList<Integer>();
+		for (Integer billId : billIds)
+			if (billId != null && !balances.containsKey(billId))
+				missingBillIds.add(billId);
+
+		if (!missingBillIds.isEmpty()) {
+			for (PatientBill bill : billingDAO
+					.getPatientBillsWithItems(missingBillIds)) {
+				BigDecimal thirdPartyAmount = null;
+				if (bill.getBeneficiary().getInsurancePolicy() != null
+						&& bill.getBeneficiary().getInsurancePolicy()
+								.getThirdParty() != null)
+					thirdPartyAmount = (bill.getThirdPartyDue() != null) ? bill
+							.getThirdPartyDue() : bill.computeThirdPartyDue();
+
+				balances.put(bill.getPatientBillId(), new PatientBillBalance(
+						bill.getPatientBillId(), bill.getAmountPaid(), bill
+								.computeOutstandingAmount(), thirdPartyAmount));
+			}
+		}
+
+		return balances;
+	}
+
+	/**
+	 * @see org.openmrs.module.mohbilling.service.BillingService#getBeneficiarySearchFields(java.lang.Integer, int)
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public List<Object[]> getBeneficiarySearchFields(Integer afterId,
+			int maxResults) {
+		return billingDAO.getBeneficiarySearchFields(afterId, maxResults);
+	}
+
+	/**
+	 * @see org.openmrs.module.mohbilling.service.BillingService#getBeneficiaries(java.util.List)
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public List<Beneficiary> getBeneficiaries(List<Integer> beneficiaryIds) {
+		return billingDAO.getBeneficiaries(beneficiaryIds);
+	}
+
+	/**
+	 * @see org.openmrs.module.mohbilling.service.BillingService#propagateTariffs(java.util.List, java.util.Date, boolean)
+	 */
+	@Override
+	public int propagateTariffs(List<FacilityServicePrice> facilityServices,
+			Date startDate, boolean createMissing) {
+
+		List<Integer> facilityServiceIds = new ArrayList<Integer>();
+		List<String> categoryNames = new ArrayList<String>();
+		for (FacilityServicePrice fsp : facilityServices) {
+			facilityServiceIds.add(fsp.getFacilityServicePriceId());
+			if (fsp.getCategory() != null
+					&& !categoryNames.contains(fsp.getCategory()))
+				categoryNames.add(fsp.getCategory());
+		}
+
+		// the first billable service of a facility service and an insurance
+		// is the one being updated
+		Map<String, Integer> billableServiceIds = new HashMap<String, Integer>();
+		for (Object[] row : billingDAO.getBillableServiceIds(facilityServiceIds)) {
+			String key = row[1] + ":" + row[2];
+			if (!billableServiceIds.containsKey(key))
+				billableServiceIds.put(key, (Integer) row[0]);
+		}
+
+		Map<String, ServiceCategory> categories = new HashMap<String, ServiceCategory>();
+		for (ServiceCategory sc : billingDAO
+				.getServiceCategoriesByNames(categoryNames))
+			if (sc.getInsurance() != null)
+				categories.put(sc.getName() + ":"
+						+ sc.getInsurance().getInsuranceId(), sc);
+
+		List<BillableService> billableServices = new ArrayList<BillableService>();
+		Date now = new Date();
+		for (Insurance insurance : billingDAO.getAllInsurances()) {
+			if (Boolean.TRUE.equals(insurance.isVoided()))
+				continue;
+
+			for (FacilityServicePrice fsp : facilityServices) {
+				Integer billableServiceId = billableServiceIds.get(fsp
+						.getFacilityServicePriceId()
+						+ ":"
+						+ insurance.getInsuranceId());
+				if (billableServiceId == null && !createMissing)
+					continue;
+
+				BillableService bs = new BillableService();
+				bs.setServiceId(billableServiceId);
+				bs.setFacilityServicePrice(fsp);
+				bs.setInsurance(insurance);
+				bs.setServiceCategory(categories.get(fsp.getCategory() + ":"
+						+ insurance.getInsuranceId()));
+				bs.setMaximaToPay(FacilityServicePriceUtil.getMaximaToPay(fsp,
+						insurance));
+				bs.setStartDate(startDate);
+				bs.setCreatedDate(now);
+				bs.setCreator(Context.getAuthenticatedUser());
+				billableServices.add(bs);
+			}
+		}
+
+		billingDAO.saveBillableServicesInBatch(billableServices);
+
+		return billableServices.size();
+	}
+
+	/**
+	 * @see org.openmrs.module.mohbilling.service.BillingService#getBillableServiceTariffs()
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public List<Object[]> getBillableServiceTariffs() {
+		return billingDAO.getBillableServiceTariffs();
+	}
+
+	/**
+	 * @see org.openmrs.module.mohbilling.service.BillingService#getInvoiceLines(java.util.List)
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public Map<Integer, List<InvoiceLine>> getInvoiceLines(List<Integer> billIds) {
+		return billingDAO.getInvoiceLines(billIds);
+	}
+
+	/**
+	 * @see org.openmrs.module.mohbilling.service.BillingService#getBillAmountsByInsurance(java.util.Date, java.util.Date)
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public Map<Integer, BigDecimal> getBillAmountsByInsurance(Date startDate,
+			Date endDate) {
+		return billingDAO.getBillAmountsByInsurance(startDate, endDate);
+	}
+
+	/**
+	 * @see org.openmrs.module.mohbilling.service.BillingService#getBillAmountsByThirdParty(java.util.Date, java.util.Date)
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public Map<Integer, BigDecimal> getBillAmountsByThirdParty(Date startDate,
+			Date endDate) {
+		return billingDAO.getBillAmountsByThirdParty(startDate, endDate);
+	}
+
+	/**
+	 * @see org.openmrs.module.mohbilling.service.BillingService#refundPatientBill(org.openmrs.module.mohbilling.model.PatientBill, java.util.List)
+	 */
+	@Override
+	public PatientBill refundPatientBill(PatientBill bill,
+			List<PatientServiceBill> items) {
+
+		List<RefundEvent> events = new ArrayList<RefundEvent>();
+		User collector = Context.getAuthenticatedUser();
+		Date refundDate = new Date();
+		for (PatientServiceBill psb : items) {
+			if (psb == null)
+				continue;
+
+			// the patient gets back what they paid beyond their due once the
+			// item removed, the insurer and third party shares and what was
+			// not paid being left out. The cash is a negative payment of the
+			// collector, as refunds were recorded before the event log, so
+			// that the bill no longer shows it as paid.
+			bill.removeBillItem(psb);
+			BigDecimal refunded = getOverpaidAmount(bill);
+			if (refunded.signum() > 0) {
+				BillPayment payment = new BillPayment();
+				payment.setAmountPaid(refunded.negate());
+				payment.setDateReceived(OpenmrsUtil.firstSecondOfDay(refundDate));
+				payment.setCollector(collector);
+				payment.setCreator(collector);
+				payment.setCreatedDate(refundDate);
+				payment.setVoided(false);
+				bill.addBillPayment(payment);
+			}
+			events.add(new RefundEvent(psb, refunded, collector, refundDate));
+		}
+
+		savePatientBill(bill);
+		for (RefundEvent event : events)
+			billingDAO.saveRefundEvent(event);
+
+		return bill;
+	}
+
+	/**
+	 * @return what the patient paid beyond their due, zero if they did not
+	 */
+	private BigDecimal getOverpaidAmount(PatientBill bill) {
+
+		bill.updateBalances();
+		if (bill.getPatientDue() == null || bill.getPaidAmount() == null)
+			return BigDecimal.ZERO;
+
+		BigDecimal overpaid = bill.getPaidAmount().subtract(bill.getPatientDue());
+		return (overpaid.signum() > 0) ? overpaid : BigDecimal.ZERO;
+	}
 
+	/**
+	 * @see org.openmrs.module.mohbilling.service.BillingService#getTotalRefundedAmount(java.util.Date, java.util.Date, org.openmrs.User)
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public BigDecimal getTotalRefundedAmount(Date startDate, Date endDate,
+			User collector) {
+		return billingDAO.getTotalRefundedAmount(startDate, endDate, collector);
+	}
+
+	/**
+	 * @see org.openmrs.module.mohbilling.service.BillingService#capturePatientBill(org.openmrs.module.mohbilling.model.Beneficiary, java.util.List, java.lang.String)
+	 */
+	@Override
+	public PatientBill capturePatientBill(Beneficiary beneficiary,
+			List<BillCaptureLine> lines, String captureKey) {
+
+		if (captureKey != null) {
+			PatientBill captured = billingDAO
+					.getPatientBillByCaptureKey(captureKey);
+			if (captured != null)
+				return captured;
+		}
+
+		List<Integer> billableServiceIds = new ArrayList<Integer>();
+		for (BillCaptureLine line : lines)
+			billableServiceIds.add(line.getBillableServiceId());
+
+		Map<Integer, BillableService> services = new HashMap<Integer, BillableService>();
+		for (BillableService bs : billingDAO
+				.getBillableServices(billableServiceIds))
+			services.put(bs.getServiceId(), bs);
+
+		Date now = new Date();
+		User creator = Context.getAuthenticatedUser();
+
+		PatientBill bill = new PatientBill();
+		bill.setBeneficiary(beneficiary);
+		bill.setIsPaid(false);
+		bill.setPrinted(false);
+		bill.setCreatedDate(now);
+		bill.setCreator(creator);
+		bill.setVoided(false);
+		bill.setCaptureKey(captureKey);
+
+		for (BillCaptureLine line : lines) {
+			BillableService bs = services.get(line.getBillableServiceId());
+			if (bs == null)
+				throw new APIException("No billable service has the id "
+						+ line.getBillableServiceId());
+
+			PatientServiceBill psb = new PatientServiceBill();
+			psb.setService(bs);
+			psb.setQuantity(line.getQuantity());
+			psb.setUnitPrice(line.getUnitPrice());
+			psb.setServiceDate(now);
+			psb.setCreatedDate(now);
+			psb.setCreator(creator);
+			psb.setVoided(false);
+
+			bill.addBillItem(psb);
+		}
+
+		bill.updateBalances();
+		billingDAO.savePatientBillInBatch(bill);
+		billingDAO.updateDailyRevenue(bill);
+
+		return bill;
+	}
+
+	/**
+	 * @see org.openmrs.module.mohbilling.service.BillingService#getPatientBillByCaptureKey(java.lang.String)
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public PatientBill getPatientBillByCaptureKey(String captureKey) {
+		return billingDAO.getPatientBillByCaptureKey(captureKey);
+	}
 }
@@ -0,0 +1,121 @@
+package org.openmrs.module.mohbilling.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of latencies in microseconds, recorded without locking. Each power
+ * of two is split in 8 buckets, so the percentiles are within 12.5% of the
+ * recorded latencies, as with a HdrHistogram of one significant digit. The
+ * counts are read without a snapshot, a call recorded meanwhile may be missed.
+ */
+public class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 3;
+
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	/** Up to 2^40 microseconds, about 12 days */
+	private static final int MAX_EXPONENT = 40;
+
+	private final AtomicLongArray counts = new AtomicLongArray(
+			(MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS);
+
+	private final AtomicLong count = new AtomicLong();
+
+	private final AtomicLong total = new AtomicLong();
+
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * @param micros
+	 *            the latency of a call
+	 */
+	public void record(long micros) {
+
+		long value = Math.max(0, Math.min(micros, (1L << MAX_EXPONENT) - 1));
+		counts.incrementAndGet(index(value));
+		count.incrementAndGet();
+		total.addAndGet(value);
+
+		long current = max.get();
+		while (value > current && !max.compareAndSet(current, value))
+			current = max.get();
+	}
+
+	/**
+	 * @return the number of recorded latencies
+	 */
+	public long getCount() {
+		return count.get();
+	}
+
+	/**
+	 * @return the sum of the recorded latencies, in microseconds
+	 */
+	public long getTotal() {
+		return total.get();
+	}
+
+	/**
+	 * @return the highest recorded latency, in microseconds
+	 */
+	public long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * @param percent
+	 *            between 0 and 100
+	 * @return the latency below which the given percent of the calls are, in
+	 *         microseconds, 0 if none was recorded
+	 */
+	public long getPercentile(double percent) {
+
+		long recorded = count.get();
+		if (recorded == 0)
+			return 0;
+
+		long rank = Math.max(1, (long) Math.ceil(percent / 100 * recorded));
+		long seen = 0;
+		for (int i = 0; i < counts.length(); i++) {
+			seen += counts.get(i);
+			if (seen >= rank)
+				return Math.min(highestValue(i), max.get());
+		}
+		return max.get();
+	}
+
+	/**
+	 * Forgets the recorded latencies
+	 */
+	public void reset() {
+
+		for (int i = 0; i < counts.length(); i++)
+			counts.set(i, 0);
+		count.set(0);
+		total.set(0);
+		max.set(0);
+	}
+
+	private static int index(long value) {
+
+		if (value < SUB_BUCKETS)
+			return (int) value;
+
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int shift = exponent - SUB_BUCKET_BITS;
+		int subBucket = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+		return (shift + 1) * SUB_BUCKETS + subBucket;
+	}
+
+	private static long highestValue(int index) {
+
+		if (index < SUB_BUCKETS)
+			return index;
+
+		int shift = index / SUB_BUCKETS - 1;
+		long subBucket = index % SUB_BUCKETS;
+		return ((SUB_BUCKETS + subBucket + 1) << shift) - 1;
+	}
+}
@@ -0,0 +1,174 @@
+package org.openmrs.module.mohbilling.metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Calls of a service method: their number, latencies, the rows they returned
+ * and the last of the slow ones. It is updated without locking by the calls
+ * of every thread.
+ */
+public class MethodMetrics {
+
+	/** Number of slow calls kept, the oldest being replaced */
+	private static final int SLOW_CALL_SAMPLES = 10;
+
+	private final String name;
+
+	private final LatencyHistogram latencies = new LatencyHistogram();
+
+	private final AtomicLong errors = new AtomicLong();
+
+	private final AtomicLong rows = new AtomicLong();
+
+	private final AtomicLong maxRows = new AtomicLong();
+
+	private final AtomicLong slowCalls = new AtomicLong();
+
+	private final AtomicReferenceArray<SlowCall> slowCallSamples = new AtomicReferenceArray<SlowCall>(
+			SLOW_CALL_SAMPLES);
+
+	/**
+	 * @param name
+	 *            the method name with the simple names of its parameter types
+	 */
+	public MethodMetrics(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Records a call
+	 *
+	 * @param micros
+	 *            its latency
+	 * @param rowCount
+	 *            the size of the returned list, or -1 if it did not return one
+	 * @param failed
+	 *            whether it threw an exception
+	 */
+	public void record(long micros, int rowCount, boolean failed) {
+
+		latencies.record(micros);
+		if (failed)
+			errors.incrementAndGet();
+
+		if (rowCount >= 0) {
+			rows.addAndGet(rowCount);
+			long current = maxRows.get();
+			while (rowCount > current
+					&& !maxRows.compareAndSet(current, rowCount))
+				current = maxRows.get();
+		}
+	}
+
+	/**
+	 * Keeps a slow call, replacing the oldest one kept
+	 */
+	public void addSlowCall(SlowCall call) {
+
+		long slowCall = slowCalls.getAndIncrement();
+		slowCallSamples.set((int) (slowCall % SLOW_CALL_SAMPLES), call);
+	}
+
+	/**
+	 * Forgets the recorded calls
+	 */
+	public void reset() {
+
+		latencies.reset();
+		errors.set(0);
+		rows.set(0);
+		maxRows.set(0);
+		slowCalls.set(0);
+		for (int i = 0; i < SLOW_CALL_SAMPLES; i++)
+			slowCallSamples.set(i, null);
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public long getCalls() {
+		return latencies.getCount();
+	}
+
+	public long getErrors() {
+		return errors.get();
+	}
+
+	/**
+	 * @return the total of the rows returned by the calls
+	 */
+	public long getRows() {
+		return rows.get();
+	}
+
+	public long getMaxRows() {
+		return maxRows.get();
+	}
+
+	/**
+	 * @return the number of slow calls, including those no longer kept
+	 */
+	public long getSlowCalls() {
+		return slowCalls.get();
+	}
+
+	/**
+	 * @return the slow calls kept, the latest first
+	 */
+	public List<SlowCall> getSlowCallSamples() {
+
+		List<SlowCall> samples = new ArrayList<SlowCall>();
+		for (int i = 0; i < SLOW_CALL_SAMPLES; i++)
+			if (slowCallSamples.get(i) != null)
+				samples.add(slowCallSamples.get(i));
+
+		Collections.sort(samples, new Comparator<SlowCall>() {
+
+			public int compare(SlowCall c1, SlowCall c2) {
+				return c2.getDate().compareTo(c1.getDate());
+			}
+		});
+		return samples;
+	}
+
+	public double getTotalMillis() {
+		return latencies.getTotal() / 1000d;
+	}
+
+	public double getMeanMillis() {
+
+		long calls = latencies.getCount();
+		return (calls == 0) ? 0 : latencies.getTotal() / 1000d / calls;
+	}
+
+	public double getP50Millis() {
+		return getPercentileMillis(50);
+	}
+
+	public double getP90Millis() {
+		return getPercentileMillis(90);
+	}
+
+	public double getP99Millis() {
+		return getPercentileMillis(99);
+	}
+
+	public double getMaxMillis() {
+		return latencies.getMax() / 1000d;
+	}
+
+	/**
+	 * @param percent
+	 *            between 0 and 100
+	 * @return the latency below which the given percent of the calls are
+	 */
+	public double getPercentileMillis(double percent) {
+		return latencies.getPercentile(percent) / 1000d;
+	}
+}
@@ -0,0 +1,141 @@
+package org.openmrs.module.mohbilling.metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The SQL statements and entity loads of a billing request, counted by
+ * {@link SqlDiagnosticsInterceptor} while {@link SqlDiagnostics} is enabled.
+ * The statements are grouped by shape, their literals removed, a shape run
+ * {@link SqlDiagnostics#REPEATED_SHAPE_THRESHOLD} times or more being the sign
+ * of a query run once by row (N+1).
+ */
+public class RequestSqlStats {
+
+	private final String uri;
+	private final Date date = new Date();
+	private final long start = System.nanoTime();
+
+	private int statements;
+	private int entityLoads;
+	private double millis;
+
+	private Map<String, Integer> shapes = new HashMap<String, Integer>();
+	private int distinctShapes;
+
+	public RequestSqlStats(String uri) {
+		this.uri = uri;
+	}
+
+	/**
+	 * Counts a statement prepared by Hibernate
+	 *
+	 * @param sql
+	 *            the statement
+	 */
+	public void addStatement(String sql) {
+
+		statements++;
+		String shape = SqlDiagnostics.normalize(sql);
+		Integer count = shapes.get(shape);
+		if (count == null)
+			distinctShapes++;
+		shapes.put(shape, (count == null) ? 1 : count + 1);
+	}
+
+	public void addEntityLoad() {
+		entityLoads++;
+	}
+
+	/**
+	 * Ends the request, only the repeated shapes being kept, the most run
+	 * first
+	 */
+	void finish() {
+
+		millis = (System.nanoTime() - start) / 1000000d;
+
+		List<Map.Entry<String, Integer>> repeated = new ArrayList<Map.Entry<String, Integer>>();
+		for (Map.Entry<String, Integer> shape : shapes.entrySet())
+			if (shape.getValue() >= SqlDiagnostics.REPEATED_SHAPE_THRESHOLD)
+				repeated.add(shape);
+
+		Collections.sort(repeated, new Comparator<Map.Entry<String, Integer>>() {
+
+			public int compare(Map.Entry<String, Integer> s1,
+					Map.Entry<String, Integer> s2) {
+				return s2.getValue().compareTo(s1.getValue());
+			}
+		});
+
+		shapes = new LinkedHashMap<String, Integer>();
+		for (Map.Entry<String, Integer> shape : repeated)
+			shapes.put(shape.getKey(), shape.getValue());
+	}
+
+	/**
+	 * @return the path and query of the request
+	 */
+	public String getUri() {
+		return uri;
+	}
+
+	/**
+	 * @return when the request started
+	 */
+	public Date getDate() {
+		return date;
+	}
+
+	public int getStatements() {
+		return statements;
+	}
+
+	public int getEntityLoads() {
+		return entityLoads;
+	}
+
+	public double getMillis() {
+		return millis;
+	}
+
+	public int getDistinctShapes() {
+		return distinctShapes;
+	}
+
+	/**
+	 * @return the shapes run at least
+	 *         {@link SqlDiagnostics#REPEATED_SHAPE_THRESHOLD} times, with
+	 *         their count, the most run first, once the request has ended
+	 */
+	public Map<String, Integer> getRepeatedShapes() {
+		return shapes;
+	}
+
+	/**
+	 * @return the counts as sent in the response header, those so far if the
+	 *         request has not ended
+	 */
+	public String toHeader() {
+
+		int repeated = 0;
+		for (Integer count : shapes.values())
+			if (count >= SqlDiagnostics.REPEATED_SHAPE_THRESHOLD)
+				repeated++;
+
+		return "statements=" + statements + "; entityLoads=" + entityLoads
+				+ "; shapes=" + distinctShapes + "; repeatedShapes="
+				+ repeated;
+	}
+
+	@Override
+	public String toString() {
+		return uri + " " + toHeader();
+	}
+}
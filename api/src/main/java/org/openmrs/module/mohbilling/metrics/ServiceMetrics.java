@@ -0,0 +1,195 @@
+package org.openmrs.module.mohbilling.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Metrics of the BillingService methods, recorded by
+ * {@link ServiceMetricsInterceptor} and shown by the service metrics page and
+ * through JMX. They are kept in memory since the module started.
+ */
+public class ServiceMetrics implements ServiceMetricsMBean {
+
+	private static Log log = LogFactory.getLog(ServiceMetrics.class);
+
+	private static final String OBJECT_NAME = "org.openmrs.module.mohbilling:type=ServiceMetrics,name=BillingService";
+
+	private static final ServiceMetrics metrics = new ServiceMetrics();
+
+	private final ConcurrentMap<Method, MethodMetrics> methods = new ConcurrentHashMap<Method, MethodMetrics>();
+
+	private volatile long slowCallMillis = 1000;
+
+	/**
+	 * @return the metrics of the BillingService
+	 */
+	public static ServiceMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Registers the metrics in the platform MBean server, replacing those of a
+	 * previous start of the module
+	 */
+	public static void registerMBean() {
+
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(OBJECT_NAME);
+			if (server.isRegistered(name))
+				server.unregisterMBean(name);
+			server.registerMBean(metrics, name);
+		} catch (Exception e) {
+			log.warn("Unable to register the billing service metrics in JMX", e);
+		}
+	}
+
+	public static void unregisterMBean() {
+
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(OBJECT_NAME);
+			if (server.isRegistered(name))
+				server.unregisterMBean(name);
+		} catch (Exception e) {
+			log.warn("Unable to unregister the billing service metrics from JMX", e);
+		}
+	}
+
+	/**
+	 * @param method
+	 *            a service method
+	 * @return its metrics, created on its first call
+	 */
+	public MethodMetrics getMethodMetrics(Method method) {
+
+		MethodMetrics methodMetrics = methods.get(method);
+		if (methodMetrics == null) {
+			MethodMetrics created = new MethodMetrics(getName(method));
+			methodMetrics = methods.putIfAbsent(method, created);
+			if (methodMetrics == null)
+				methodMetrics = created;
+		}
+		return methodMetrics;
+	}
+
+	/**
+	 * @return the metrics of the called methods, the slowest in total first
+	 */
+	public List<MethodMetrics> getMethods() {
+
+		List<MethodMetrics> list = new ArrayList<MethodMetrics>(methods.values());
+		Collections.sort(list, new Comparator<MethodMetrics>() {
+
+			public int compare(MethodMetrics m1, MethodMetrics m2) {
+				return Double.compare(m2.getTotalMillis(), m1.getTotalMillis());
+			}
+		});
+		return list;
+	}
+
+	/**
+	 * @return the slow calls of every method, the latest first
+	 */
+	public List<SlowCall> getSlowCallSamples() {
+
+		List<SlowCall> calls = new ArrayList<SlowCall>();
+		for (MethodMetrics methodMetrics : methods.values())
+			calls.addAll(methodMetrics.getSlowCallSamples());
+
+		Collections.sort(calls, new Comparator<SlowCall>() {
+
+			public int compare(SlowCall c1, SlowCall c2) {
+				return c2.getDate().compareTo(c1.getDate());
+			}
+		});
+		return calls;
+	}
+
+	/**
+	 * @see org.openmrs.module.mohbilling.metrics.ServiceMetricsMBean#getMethodSummaries()
+	 */
+	public String[] getMethodSummaries() {
+
+		List<String> summaries = new ArrayList<String>();
+		for (MethodMetrics m : getMethods())
+			summaries.add(String.format(Locale.US,
+					"%s calls=%d errors=%d total=%.1fms mean=%.2fms p50=%.2fms"
+							+ " p90=%.2fms p99=%.2fms max=%.2fms rows=%d maxRows=%d slow=%d",
+					m.getName(), m.getCalls(), m.getErrors(), m.getTotalMillis(),
+					m.getMeanMillis(), m.getP50Millis(), m.getP90Millis(),
+					m.getP99Millis(), m.getMaxMillis(), m.getRows(),
+					m.getMaxRows(), m.getSlowCalls()));
+
+		return summaries.toArray(new String[summaries.size()]);
+	}
+
+	/**
+	 * @see org.openmrs.module.mohbilling.metrics.ServiceMetricsMBean#getSlowCalls()
+	 */
+	public String[] getSlowCalls() {
+
+		List<String> calls = new ArrayList<String>();
+		for (SlowCall call : getSlowCallSamples())
+			calls.add(call.toString());
+
+		return calls.toArray(new String[calls.size()]);
+	}
+
+	/**
+	 * @see org.openmrs.module.mohbilling.metrics.ServiceMetricsMBean#getTotalCalls()
+	 */
+	public long getTotalCalls() {
+
+		long calls = 0;
+		for (MethodMetrics methodMetrics : methods.values())
+			calls += methodMetrics.getCalls();
+		return calls;
+	}
+
+	/**
+	 * @see org.openmrs.module.mohbilling.metrics.ServiceMetricsMBean#getSlowCallMillis()
+	 */
+	public long getSlowCallMillis() {
+		return slowCallMillis;
+	}
+
+	/**
+	 * @see org.openmrs.module.mohbilling.metrics.ServiceMetricsMBean#setSlowCallMillis(long)
+	 */
+	public void setSlowCallMillis(long slowCallMillis) {
+		this.slowCallMillis = slowCallMillis;
+	}
+
+	/**
+	 * @see org.openmrs.module.mohbilling.metrics.ServiceMetricsMBean#reset()
+	 */
+	public void reset() {
+
+		for (MethodMetrics methodMetrics : methods.values())
+			methodMetrics.reset();
+	}
+
+	private static String getName(Method method) {
+
+		StringBuilder name = new StringBuilder(method.getName()).append("(");
+		Class<?>[] types = method.getParameterTypes();
+		for (int i = 0; i < types.length; i++)
+			name.append((i == 0) ? "" : ",").append(types[i].getSimpleName());
+
+		return name.append(")").toString();
+	}
+}
@@ -0,0 +1,120 @@
+package org.openmrs.module.mohbilling.metrics;
+
+import java.text.SimpleDateFormat;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Map;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.hibernate.proxy.HibernateProxy;
+import org.openmrs.OpenmrsObject;
+import org.openmrs.User;
+import org.openmrs.api.context.Context;
+
+/**
+ * Records the calls of the BillingService in {@link ServiceMetrics}. It is one
+ * of the interceptors of the service proxy, in moduleApplicationContext.xml,
+ * before the transaction so that the commit is part of the latency, and can be
+ * removed from there without other change.
+ */
+public class ServiceMetricsInterceptor implements MethodInterceptor {
+
+	/** Longest argument kept for a slow call */
+	private static final int MAX_ARGUMENT_LENGTH = 100;
+
+	/**
+	 * @param slowCallMillis
+	 *            the latency above which a call is kept with its arguments
+	 */
+	public void setSlowCallMillis(long slowCallMillis) {
+		ServiceMetrics.getMetrics().setSlowCallMillis(slowCallMillis);
+	}
+
+	/**
+	 * @see org.aopalliance.intercept.MethodInterceptor#invoke(org.aopalliance.intercept.MethodInvocation)
+	 */
+	public Object invoke(MethodInvocation invocation) throws Throwable {
+
+		ServiceMetrics metrics = ServiceMetrics.getMetrics();
+		long start = System.nanoTime();
+		Object result = null;
+		boolean failed = true;
+		try {
+			result = invocation.proceed();
+			failed = false;
+			return result;
+		} finally {
+			long micros = (System.nanoTime() - start) / 1000;
+			int rows = countRows(result);
+
+			MethodMetrics methodMetrics = metrics.getMethodMetrics(invocation
+					.getMethod());
+			methodMetrics.record(micros, rows, failed);
+
+			if (micros >= metrics.getSlowCallMillis() * 1000) {
+				User user = Context.isAuthenticated() ? Context
+						.getAuthenticatedUser() : null;
+				methodMetrics.addSlowCall(new SlowCall(methodMetrics.getName(),
+						formatArguments(invocation.getArguments()),
+						micros / 1000d, rows, (user != null) ? user
+								.getUsername() : null, new Date()));
+			}
+		}
+	}
+
+	/**
+	 * @return the size of the returned list, -1 if it is not a list
+	 */
+	private static int countRows(Object result) {
+
+		if (result instanceof Collection)
+			return ((Collection<?>) result).size();
+		if (result instanceof Map)
+			return ((Map<?, ?>) result).size();
+		if (result instanceof Object[])
+			return ((Object[]) result).length;
+		return -1;
+	}
+
+	/**
+	 * Formats the arguments without loading anything, the entities being
+	 * shown by their id and the lists by their size
+	 */
+	private static String formatArguments(Object[] arguments) {
+
+		if (arguments == null)
+			return "";
+
+		StringBuilder formatted = new StringBuilder();
+		for (int i = 0; i < arguments.length; i++) {
+			if (i > 0)
+				formatted.append(", ");
+			formatted.append(formatArgument(arguments[i]));
+		}
+		return formatted.toString();
+	}
+
+	private static String formatArgument(Object argument) {
+
+		if (argument instanceof HibernateProxy) {
+			HibernateProxy proxy = (HibernateProxy) argument;
+			return proxy.getHibernateLazyInitializer().getEntityName() + "#"
+					+ proxy.getHibernateLazyInitializer().getIdentifier();
+		}
+		if (argument instanceof OpenmrsObject)
+			return argument.getClass().getSimpleName() + "#"
+					+ ((OpenmrsObject) argument).getId();
+		if (argument instanceof Collection)
+			return "[" + ((Collection<?>) argument).size() + " items]";
+		if (argument instanceof Object[])
+			return "[" + ((Object[]) argument).length + " items]";
+		if (argument instanceof Date)
+			return new SimpleDateFormat("yyyy-MM-dd HH:mm:ss")
+					.format((Date) argument);
+
+		String value = String.valueOf(argument);
+		return (value.length() > MAX_ARGUMENT_LENGTH) ? value.substring(0,
+				MAX_ARGUMENT_LENGTH) + "..." : value;
+	}
+}
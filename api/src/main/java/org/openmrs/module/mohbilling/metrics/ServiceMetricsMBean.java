@@ -0,0 +1,32 @@
+package org.openmrs.module.mohbilling.metrics;
+
+/**
+ * The BillingService metrics as seen through JMX
+ */
+public interface ServiceMetricsMBean {
+
+	/**
+	 * @return one line by method: its calls, errors, latencies in
+	 *         milliseconds and rows, the slowest in total first
+	 */
+	public String[] getMethodSummaries();
+
+	/**
+	 * @return the slow calls kept, the latest first
+	 */
+	public String[] getSlowCalls();
+
+	public long getTotalCalls();
+
+	/**
+	 * @return the latency above which the calls are kept as slow calls
+	 */
+	public long getSlowCallMillis();
+
+	public void setSlowCallMillis(long slowCallMillis);
+
+	/**
+	 * Forgets the recorded calls
+	 */
+	public void reset();
+}
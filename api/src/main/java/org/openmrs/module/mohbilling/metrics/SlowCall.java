@@ -0,0 +1,69 @@
+package org.openmrs.module.mohbilling.metrics;
+
+import java.util.Date;
+
+/**
+ * A call of a service method slower than the threshold of
+ * {@link ServiceMetrics}, kept with its arguments
+ */
+public class SlowCall {
+
+	private final String method;
+	private final String arguments;
+	private final double millis;
+	private final int rows;
+	private final String user;
+	private final Date date;
+
+	public SlowCall(String method, String arguments, double millis, int rows,
+			String user, Date date) {
+		this.method = method;
+		this.arguments = arguments;
+		this.millis = millis;
+		this.rows = rows;
+		this.user = user;
+		this.date = date;
+	}
+
+	public String getMethod() {
+		return method;
+	}
+
+	/**
+	 * @return the arguments, the entities being shown by their id
+	 */
+	public String getArguments() {
+		return arguments;
+	}
+
+	public double getMillis() {
+		return millis;
+	}
+
+	/**
+	 * @return the size of the returned list, -1 if it did not return one
+	 */
+	public int getRows() {
+		return rows;
+	}
+
+	/**
+	 * @return the username of the caller, null if none was authenticated
+	 */
+	public String getUser() {
+		return user;
+	}
+
+	/**
+	 * @return when the call ended
+	 */
+	public Date getDate() {
+		return date;
+	}
+
+	@Override
+	public String toString() {
+		return date + " " + method + "(" + arguments + ") " + millis + " ms, "
+				+ rows + " rows, " + user;
+	}
+}
@@ -0,0 +1,167 @@
+package org.openmrs.module.mohbilling.metrics;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.GlobalProperty;
+import org.openmrs.api.GlobalPropertyListener;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.mohbilling.businesslogic.BillingConstants;
+
+/**
+ * Counts the SQL statements of each billing request when the global property
+ * {@link BillingConstants#GLOBAL_PROPERTY_SQL_DIAGNOSTICS} is true. The
+ * request filter {@link #begin(String) begins} the counts of its thread,
+ * {@link SqlDiagnosticsInterceptor} adds the statements Hibernate prepares and
+ * the entities it loads, and the ended requests are kept in a rolling log
+ * shown by the SQL diagnostics page.
+ */
+public class SqlDiagnostics {
+
+	private static Log log = LogFactory.getLog(SqlDiagnostics.class);
+
+	/** Count from which a statement shape is reported as repeated */
+	public static final int REPEATED_SHAPE_THRESHOLD = 5;
+
+	/** Number of ended requests kept in the log */
+	private static final int LOG_SIZE = 200;
+
+	private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+	private static final Pattern NUMBER_LITERAL = Pattern.compile("\\b\\d+(?:\\.\\d+)?\\b");
+	private static final Pattern IN_LIST = Pattern.compile("(?i)\\bin\\s*\\(\\s*\\?(?:\\s*,\\s*\\?)*\\s*\\)");
+	private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+	private static volatile Boolean enabled;
+
+	private static final ThreadLocal<RequestSqlStats> current = new ThreadLocal<RequestSqlStats>();
+
+	private static final LinkedList<RequestSqlStats> requests = new LinkedList<RequestSqlStats>();
+
+	/**
+	 * @return true if the statements of the billing requests are counted
+	 */
+	public static boolean isEnabled() {
+
+		Boolean value = enabled;
+		if (value == null) {
+			value = Boolean.valueOf(Context.getAdministrationService()
+					.getGlobalProperty(
+							BillingConstants.GLOBAL_PROPERTY_SQL_DIAGNOSTICS));
+			enabled = value;
+		}
+		return value;
+	}
+
+	/**
+	 * Forgets the global property, it is read again on the next request
+	 */
+	public static void invalidate() {
+		enabled = null;
+	}
+
+	/**
+	 * Starts counting the statements of the current thread
+	 *
+	 * @param uri
+	 *            the path and query of the request
+	 * @return the counts of the request
+	 */
+	public static RequestSqlStats begin(String uri) {
+
+		RequestSqlStats stats = new RequestSqlStats(uri);
+		current.set(stats);
+		return stats;
+	}
+
+	/**
+	 * @return the counts of the request served by the current thread, null if
+	 *         none is counted
+	 */
+	public static RequestSqlStats getCurrent() {
+		return current.get();
+	}
+
+	/**
+	 * Stops counting the statements of the current thread and adds its
+	 * request to the log
+	 *
+	 * @return the counts of the request, null if none was counted
+	 */
+	public static RequestSqlStats end() {
+
+		RequestSqlStats stats = current.get();
+		if (stats == null)
+			return null;
+
+		current.remove();
+		stats.finish();
+
+		if (!stats.getRepeatedShapes().isEmpty() && log.isWarnEnabled())
+			log.warn("Repeated statements in " + stats.getUri() + ": "
+					+ stats.getRepeatedShapes());
+
+		synchronized (requests) {
+			requests.addFirst(stats);
+			if (requests.size() > LOG_SIZE)
+				requests.removeLast();
+		}
+		return stats;
+	}
+
+	/**
+	 * @return the latest requests, the latest first
+	 */
+	public static List<RequestSqlStats> getLog() {
+
+		synchronized (requests) {
+			return new ArrayList<RequestSqlStats>(requests);
+		}
+	}
+
+	public static void clearLog() {
+
+		synchronized (requests) {
+			requests.clear();
+		}
+	}
+
+	/**
+	 * Gives the shape of a statement, its literals being replaced by
+	 * <code>?</code> and its <code>in</code> lists by <code>in (...)</code>,
+	 * so that the statements run for each row of a list have the same shape
+	 *
+	 * @param sql
+	 *            the statement
+	 * @return its shape
+	 */
+	public static String normalize(String sql) {
+
+		String shape = STRING_LITERAL.matcher(sql).replaceAll("?");
+		shape = NUMBER_LITERAL.matcher(shape).replaceAll("?");
+		shape = IN_LIST.matcher(shape).replaceAll("in (...)");
+		return WHITESPACE.matcher(shape).replaceAll(" ").trim();
+	}
+
+	/**
+	 * Reads the global property again when it is changed
+	 */
+	public static class PropertyListener implements GlobalPropertyListener {
+
+		public boolean supportsPropertyName(String propertyName) {
+			return BillingConstants.GLOBAL_PROPERTY_SQL_DIAGNOSTICS
+					.equals(propertyName);
+		}
+
+		public void globalPropertyChanged(GlobalProperty newValue) {
+			invalidate();
+		}
+
+		public void globalPropertyDeleted(String propertyName) {
+			invalidate();
+		}
+	}
+}
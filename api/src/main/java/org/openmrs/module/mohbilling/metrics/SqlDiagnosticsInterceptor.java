@@ -0,0 +1,48 @@
+package org.openmrs.module.mohbilling.metrics;
+
+import java.io.Serializable;
+
+import org.hibernate.EmptyInterceptor;
+import org.hibernate.type.Type;
+
+/**
+ * Adds the statements Hibernate prepares and the entities it loads to the
+ * counts of the request served by the current thread, see
+ * {@link SqlDiagnostics}. It is a bean of moduleApplicationContext.xml, the
+ * OpenMRS session factory chaining every Hibernate interceptor of the
+ * application context, and does nothing on the threads not counted.
+ * <p>
+ * The statements run through {@link org.hibernate.Session#doWork} are not
+ * prepared by Hibernate and are not counted.
+ */
+public class SqlDiagnosticsInterceptor extends EmptyInterceptor {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * @see org.hibernate.EmptyInterceptor#onPrepareStatement(java.lang.String)
+	 */
+	@Override
+	public String onPrepareStatement(String sql) {
+
+		RequestSqlStats stats = SqlDiagnostics.getCurrent();
+		if (stats != null)
+			stats.addStatement(sql);
+		return sql;
+	}
+
+	/**
+	 * @see org.hibernate.EmptyInterceptor#onLoad(java.lang.Object,
+	 *      java.io.Serializable, java.lang.Object[], java.lang.String[],
+	 *      org.hibernate.type.Type[])
+	 */
+	@Override
+	public boolean onLoad(Object entity, Serializable id, Object[] state,
+			String[] propertyNames, Type[] types) {
+
+		RequestSqlStats stats = SqlDiagnostics.getCurrent();
+		if (stats != null)
+			stats.addEntityLoad();
+		return false;
+	}
+}
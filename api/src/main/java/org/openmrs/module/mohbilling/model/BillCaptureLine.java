@@ -0,0 +1,44 @@
+package org.openmrs.module.mohbilling.model;
+
+import java.math.BigDecimal;
+
+/**
+ * Line of a bill as submitted by the bill capture form: the billable service
+ * with the quantity and the unit price shown to the cashier. It is not
+ * mapped, the billable services of all the lines being resolved at once when
+ * the bill is captured.
+ */
+public class BillCaptureLine {
+
+	private Integer billableServiceId;
+	private BigDecimal quantity;
+	private BigDecimal unitPrice;
+
+	public BillCaptureLine(Integer billableServiceId, BigDecimal quantity,
+			BigDecimal unitPrice) {
+		this.billableServiceId = billableServiceId;
+		this.quantity = quantity;
+		this.unitPrice = unitPrice;
+	}
+
+	/**
+	 * @return the billableServiceId
+	 */
+	public Integer getBillableServiceId() {
+		return billableServiceId;
+	}
+
+	/**
+	 * @return the quantity, null if none was given
+	 */
+	public BigDecimal getQuantity() {
+		return quantity;
+	}
+
+	/**
+	 * @return the unitPrice
+	 */
+	public BigDecimal getUnitPrice() {
+		return unitPrice;
+	}
+}
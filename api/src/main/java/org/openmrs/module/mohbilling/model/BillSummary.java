@@ -0,0 +1,90 @@
+package org.openmrs.module.mohbilling.model;
+
+import java.math.BigDecimal;
+
+/**
+ * Read-only projection of a PatientBill as computed by the report queries:
+ * the bill columns plus the count and total of its items matching the report
+ * criteria. It is not mapped and carries no associations, so that reports do
+ * not need to hydrate the bill, its items and its payments.
+ */
+public class BillSummary {
+
+	private Integer patientBillId;
+	private Integer beneficiaryId;
+	private Integer patientId;
+	private Integer insuranceId;
+	private Boolean paid;
+	private BigDecimal amount;
+	private Integer itemCount;
+	private BigDecimal itemsTotal;
+
+	public BillSummary(Integer patientBillId, Integer beneficiaryId,
+			Integer patientId, Integer insuranceId, Boolean paid,
+			BigDecimal amount, Integer itemCount, BigDecimal itemsTotal) {
+		this.patientBillId = patientBillId;
+		this.beneficiaryId = beneficiaryId;
+		this.patientId = patientId;
+		this.insuranceId = insuranceId;
+		this.paid = paid;
+		this.amount = amount;
+		this.itemCount = itemCount;
+		this.itemsTotal = itemsTotal;
+	}
+
+	/**
+	 * @return the patientBillId
+	 */
+	public Integer getPatientBillId() {
+		return patientBillId;
+	}
+
+	/**
+	 * @return the beneficiaryId
+	 */
+	public Integer getBeneficiaryId() {
+		return beneficiaryId;
+	}
+
+	/**
+	 * @return the patientId of the beneficiary
+	 */
+	public Integer getPatientId() {
+		return patientId;
+	}
+
+	/**
+	 * @return the insuranceId of the beneficiary policy
+	 */
+	public Integer getInsuranceId() {
+		return insuranceId;
+	}
+
+	/**
+	 * @return the bill paid flag
+	 */
+	public Boolean getPaid() {
+		return paid;
+	}
+
+	/**
+	 * @return the bill amount
+	 */
+	public BigDecimal getAmount() {
+		return amount;
+	}
+
+	/**
+	 * @return the number of items matching the report criteria
+	 */
+	public Integer getItemCount() {
+		return itemCount;
+	}
+
+	/**
+	 * @return the sum of unit price x quantity of the matching items
+	 */
+	public BigDecimal getItemsTotal() {
+		return itemsTotal;
+	}
+}
@@ -0,0 +1,159 @@
+package org.openmrs.module.mohbilling.model;
+
+import java.util.Date;
+
+/**
+ * Search parameters of the bill and payment cohort builders. Every null
+ * parameter is ignored. When <code>afterId</code> is set, only the rows having
+ * a greater id are returned, and <code>maxResults</code> limits the size of the
+ * page, so that a large cohort can be walked page by page ordered by id. When
+ * <code>beforeId</code> is set instead, the page is the one ending before that
+ * id, so that the cohort can be walked back.
+ */
+public class CohortQuery {
+
+	private Insurance insurance;
+	private Date startDate;
+	private Date endDate;
+	private Integer patientId;
+	private String billStatus;
+	private Integer creatorId;
+	private Integer afterId;
+	private Integer beforeId;
+	private Integer maxResults;
+
+	/**
+	 * @return the insurance
+	 */
+	public Insurance getInsurance() {
+		return insurance;
+	}
+
+	/**
+	 * @param insurance
+	 *            the insurance to set
+	 */
+	public void setInsurance(Insurance insurance) {
+		this.insurance = insurance;
+	}
+
+	/**
+	 * @return the startDate
+	 */
+	public Date getStartDate() {
+		return startDate;
+	}
+
+	/**
+	 * @param startDate
+	 *            the startDate to set
+	 */
+	public void setStartDate(Date startDate) {
+		this.startDate = startDate;
+	}
+
+	/**
+	 * @return the endDate
+	 */
+	public Date getEndDate() {
+		return endDate;
+	}
+
+	/**
+	 * @param endDate
+	 *            the endDate to set
+	 */
+	public void setEndDate(Date endDate) {
+		this.endDate = endDate;
+	}
+
+	/**
+	 * @return the patientId
+	 */
+	public Integer getPatientId() {
+		return patientId;
+	}
+
+	/**
+	 * @param patientId
+	 *            the patientId to set
+	 */
+	public void setPatientId(Integer patientId) {
+		this.patientId = patientId;
+	}
+
+	/**
+	 * @return the billStatus
+	 */
+	public String getBillStatus() {
+		return billStatus;
+	}
+
+	/**
+	 * @param billStatus
+	 *            the billStatus to set
+	 */
+	public void setBillStatus(String billStatus) {
+		this.billStatus = billStatus;
+	}
+
+	/**
+	 * @return the id of the user who created the bill or the payment
+	 */
+	public Integer getCreatorId() {
+		return creatorId;
+	}
+
+	/**
+	 * @param creatorId
+	 *            the creatorId to set
+	 */
+	public void setCreatorId(Integer creatorId) {
+		this.creatorId = creatorId;
+	}
+
+	/**
+	 * @return the id after which the page starts
+	 */
+	public Integer getAfterId() {
+		return afterId;
+	}
+
+	/**
+	 * @param afterId
+	 *            the afterId to set
+	 */
+	public void setAfterId(Integer afterId) {
+		this.afterId = afterId;
+	}
+
+	/**
+	 * @return the id before which the page ends
+	 */
+	public Integer getBeforeId() {
+		return beforeId;
+	}
+
+	/**
+	 * @param beforeId
+	 *            the beforeId to set
+	 */
+	public void setBeforeId(Integer beforeId) {
+		this.beforeId = beforeId;
+	}
+
+	/**
+	 * @return the maximum number of rows of the page
+	 */
+	public Integer getMaxResults() {
+		return maxResults;
+	}
+
+	/**
+	 * @param maxResults
+	 *            the maxResults to set
+	 */
+	public void setMaxResults(Integer maxResults) {
+		this.maxResults = maxResults;
+	}
+}
@@ -0,0 +1,55 @@
+package org.openmrs.module.mohbilling.model;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The invoices of a set of bills, in the order of the bills, with the sum of
+ * their sub totals by invoice group and in all
+ */
+public class InvoiceAggregation {
+
+	private List<PatientInvoice> invoices;
+	private LinkedHashMap<String, Double> totals;
+	private double total;
+
+	public InvoiceAggregation(List<PatientInvoice> invoices,
+			LinkedHashMap<String, Double> totals, double total) {
+		this.invoices = invoices;
+		this.totals = totals;
+		this.total = total;
+	}
+
+	/**
+	 * @return the invoices, in the order of the bills
+	 */
+	public List<PatientInvoice> getInvoices() {
+		return invoices;
+	}
+
+	/**
+	 * @return the sum of the sub totals of each invoice group, in the order
+	 *         of the invoices
+	 */
+	public Map<String, Double> getTotals() {
+		return totals;
+	}
+
+	/**
+	 * @param group
+	 *            the invoice group
+	 * @return the sum of the sub totals of the group, 0 if no invoice has it
+	 */
+	public double getTotal(String group) {
+		Double groupTotal = totals.get(group);
+		return (groupTotal != null) ? groupTotal : 0.0;
+	}
+
+	/**
+	 * @return the sum of the sub totals of all the groups
+	 */
+	public double getTotal() {
+		return total;
+	}
+}
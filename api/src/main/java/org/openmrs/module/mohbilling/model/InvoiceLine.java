@@ -0,0 +1,86 @@
+package org.openmrs.module.mohbilling.model;
+
+import java.math.BigDecimal;
+import java.util.Date;
+
+/**
+ * Detached projection of a PatientServiceBill holding what an invoice shows of
+ * it: its service category and name, its date, unit price and quantity. It is
+ * not mapped, so that the invoices of many bills can be built away from the
+ * Hibernate session, on other threads.
+ */
+public class InvoiceLine {
+
+	private Integer patientBillId;
+	private String category;
+	private String name;
+	private Date serviceDate;
+	private BigDecimal unitPrice;
+	private BigDecimal quantity;
+
+	public InvoiceLine(Integer patientBillId, String category, String name,
+			Date serviceDate, BigDecimal unitPrice, BigDecimal quantity) {
+		this.patientBillId = patientBillId;
+		this.category = category;
+		this.name = name;
+		this.serviceDate = serviceDate;
+		this.unitPrice = unitPrice;
+		this.quantity = quantity;
+	}
+
+	/**
+	 * Projects a bill item, its service being loaded if needed
+	 * 
+	 * @param item
+	 *            the bill item
+	 */
+	public InvoiceLine(PatientServiceBill item) {
+		this(item.getPatientBill() != null ? item.getPatientBill()
+				.getPatientBillId() : null, item.getService()
+				.getFacilityServicePrice().getCategory(), item.getService()
+				.getFacilityServicePrice().getName(), item.getServiceDate(),
+				item.getUnitPrice(), item.getQuantity());
+	}
+
+	/**
+	 * @return the patientBillId
+	 */
+	public Integer getPatientBillId() {
+		return patientBillId;
+	}
+
+	/**
+	 * @return the service category of the facility service
+	 */
+	public String getCategory() {
+		return category;
+	}
+
+	/**
+	 * @return the name of the facility service
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return the serviceDate
+	 */
+	public Date getServiceDate() {
+		return serviceDate;
+	}
+
+	/**
+	 * @return the unitPrice
+	 */
+	public BigDecimal getUnitPrice() {
+		return unitPrice;
+	}
+
+	/**
+	 * @return the quantity
+	 */
+	public BigDecimal getQuantity() {
+		return quantity;
+	}
+}
@@ -33,6 +33,15 @@ public class PatientBill extends BaseOpenmrsObject {
 	private Set<PatientServiceBill> billItems;
 	private Set<BillPayment> payments;
 
+	private BigDecimal totalDue;
+	private BigDecimal insurerDue;
+	private BigDecimal thirdPartyDue;
+	private BigDecimal patientDue;
+	private BigDecimal paidAmount;
+	private BigDecimal outstandingAmount;
+
+	private String captureKey;
+
     /**
      * @see BaseOpenmrsObject#getId()
      */
@@ -355,6 +364,262 @@ public class PatientBill extends BaseOpenmrsObject {
 		return false;
 	}
 
+	/**
+	 * Computes the balances of the bill from its items and payments and keeps
+	 * them in the balance columns. This is called each time the bill is saved,
+	 * so that pages and reports read the balances rather than walking the items
+	 * and payments of every bill.
+	 */
+	public void updateBalances() {
+
+		BigDecimal[] balances = computeBalances();
+		if (balances == null)
+			return;
+
+		totalDue = balances[0];
+		insurerDue = balances[1];
+		thirdPartyDue = balances[2];
+		patientDue = balances[3];
+		paidAmount = balances[4];
+		outstandingAmount = balances[5];
+	}
+
+	/**
+	 * @return the rest to be paid by the patient computed from the items and
+	 *         payments, without updating the balance columns, or null if the
+	 *         bill has no insurance policy
+	 */
+	public BigDecimal computeOutstandingAmount() {
+
+		BigDecimal[] balances = computeBalances();
+		return (balances != null) ? balances[5] : null;
+	}
+
+	/**
+	 * @return the total of the items, without updating the balance columns,
+	 *         or null if the bill has no insurance policy
+	 */
+	public BigDecimal computeTotalDue() {
+
+		BigDecimal[] balances = computeBalances();
+		return (balances != null) ? balances[0] : null;
+	}
+
+	/**
+	 * @return the insurer due computed from the items, without updating the
+	 *         balance columns, or null if the bill has no insurance policy
+	 */
+	public BigDecimal computeInsurerDue() {
+
+		BigDecimal[] balances = computeBalances();
+		return (balances != null) ? balances[1] : null;
+	}
+
+	/**
+	 * @return the patient due computed from the items, without updating the
+	 *         balance columns, or null if the bill has no insurance policy
+	 */
+	public BigDecimal computePatientDue() {
+
+		BigDecimal[] balances = computeBalances();
+		return (balances != null) ? balances[3] : null;
+	}
+
+	/**
+	 * @return the third party due computed from the items, without updating
+	 *         the balance columns, or null if the bill has no insurance policy
+	 */
+	public BigDecimal computeThirdPartyDue() {
+
+		BigDecimal[] balances = computeBalances();
+		return (balances != null) ? balances[2] : null;
+	}
+
+	/**
+	 * @return true if the balance columns match the balances computed from the
+	 *         items and payments of the bill
+	 */
+	public boolean isBalanceConsistent() {
+
+		BigDecimal[] balances = computeBalances();
+		if (balances == null)
+			return true;
+
+		BigDecimal[] stored = { totalDue, insurerDue, thirdPartyDue, patientDue,
+				paidAmount, outstandingAmount };
+		for (int i = 0; i < balances.length; i++)
+			if (stored[i] == null || stored[i].compareTo(balances[i]) != 0)
+				return false;
+
+		return true;
+	}
+
+	/**
+	 * The insurer pays its rate on the date the bill was created, except for
+	 * the AUTRES services which the patient pays in full. The third party pays
+	 * its rate of the total, which is deducted from the patient due.
+	 * 
+	 * @return the total, insurer, third party and patient dues, the paid and
+	 *         the outstanding amounts, or null if the bill has no insurance
+	 *         policy
+	 */
+	private BigDecimal[] computeBalances() {
+
+		if (beneficiary == null || beneficiary.getInsurancePolicy() == null
+				|| beneficiary.getInsurancePolicy().getInsurance() == null)
+			return null;
+
+		Insurance insurance = beneficiary.getInsurancePolicy().getInsurance();
+		InsuranceRate rate = (createdDate != null) ? insurance
+				.getRateOnDate(createdDate) : null;
+		if (rate == null)
+			rate = insurance.getCurrentRate();
+		BigDecimal patientRate = BigDecimal.valueOf(100d - ((rate != null) ? rate
+				.getRate().doubleValue() : 0d));
+
+		BigDecimal total = new BigDecimal(0);
+		BigDecimal patientShare = new BigDecimal(0);
+		if (billItems != null) {
+			for (PatientServiceBill psb : billItems) {
+				if (psb.isVoided() != null && psb.isVoided())
+					continue;
+
+				BigDecimal cost = psb.getUnitPrice().multiply(psb.getQuantity());
+				total = total.add(cost);
+				if ("AUTRES".equals(psb.getService().getFacilityServicePrice()
+						.getCategory()))
+					patientShare = patientShare.add(cost);
+				else
+					patientShare = patientShare.add(cost.multiply(patientRate)
+							.divide(BigDecimal.valueOf(100)));
+			}
+		}
+
+		BigDecimal thirdPartyShare = new BigDecimal(0);
+		ThirdParty thirdParty = beneficiary.getInsurancePolicy().getThirdParty();
+		if (thirdParty != null && thirdParty.getRate() != null)
+			thirdPartyShare = total.multiply(
+					BigDecimal.valueOf(thirdParty.getRate().doubleValue())).divide(
+					BigDecimal.valueOf(100));
+
+		BigDecimal paid = getAmountPaid();
+		BigDecimal patientNet = patientShare.subtract(thirdPartyShare);
+
+		return new BigDecimal[] { round(total),
+				round(total.subtract(patientShare)), round(thirdPartyShare),
+				round(patientNet), round(paid), round(patientNet.subtract(paid)) };
+	}
+
+	private static BigDecimal round(BigDecimal amount) {
+		return amount.setScale(2, BigDecimal.ROUND_HALF_UP);
+	}
+
+	/**
+	 * @return the total of the bill items
+	 */
+	public BigDecimal getTotalDue() {
+		return totalDue;
+	}
+
+	/**
+	 * @param totalDue
+	 *            the totalDue to set
+	 */
+	public void setTotalDue(BigDecimal totalDue) {
+		this.totalDue = totalDue;
+	}
+
+	/**
+	 * @return the part of the total paid by the insurance
+	 */
+	public BigDecimal getInsurerDue() {
+		return insurerDue;
+	}
+
+	/**
+	 * @param insurerDue
+	 *            the insurerDue to set
+	 */
+	public void setInsurerDue(BigDecimal insurerDue) {
+		this.insurerDue = insurerDue;
+	}
+
+	/**
+	 * @return the part of the total paid by the third party
+	 */
+	public BigDecimal getThirdPartyDue() {
+		return thirdPartyDue;
+	}
+
+	/**
+	 * @param thirdPartyDue
+	 *            the thirdPartyDue to set
+	 */
+	public void setThirdPartyDue(BigDecimal thirdPartyDue) {
+		this.thirdPartyDue = thirdPartyDue;
+	}
+
+	/**
+	 * @return the part of the total paid by the patient
+	 */
+	public BigDecimal getPatientDue() {
+		return patientDue;
+	}
+
+	/**
+	 * @param patientDue
+	 *            the patientDue to set
+	 */
+	public void setPatientDue(BigDecimal patientDue) {
+		this.patientDue = patientDue;
+	}
+
+	/**
+	 * @return the sum of the payments, as of the last save
+	 */
+	public BigDecimal getPaidAmount() {
+		return paidAmount;
+	}
+
+	/**
+	 * @param paidAmount
+	 *            the paidAmount to set
+	 */
+	public void setPaidAmount(BigDecimal paidAmount) {
+		this.paidAmount = paidAmount;
+	}
+
+	/**
+	 * @return the patient due not paid yet
+	 */
+	public BigDecimal getOutstandingAmount() {
+		return outstandingAmount;
+	}
+
+	/**
+	 * @param outstandingAmount
+	 *            the outstandingAmount to set
+	 */
+	public void setOutstandingAmount(BigDecimal outstandingAmount) {
+		this.outstandingAmount = outstandingAmount;
+	}
+
+	/**
+	 * @return the key of the form the bill was captured from, a form submitted
+	 *         twice giving the same bill
+	 */
+	public String getCaptureKey() {
+		return captureKey;
+	}
+
+	/**
+	 * @param captureKey
+	 *            the captureKey to set
+	 */
+	public void setCaptureKey(String captureKey) {
+		this.captureKey = captureKey;
+	}
+
 	/**
 	 * @return true when the bill is printed, false otherwise
 	 */
@@ -0,0 +1,63 @@
+package org.openmrs.module.mohbilling.model;
+
+import java.math.BigDecimal;
+
+/**
+ * Read-only balance of a PatientBill as shown on the bill lists: the amount
+ * paid, the rest to be paid by the patient and the amount paid by the third
+ * party. It is not mapped, so that a page can get the balances of all its
+ * bills without hydrating them.
+ */
+public class PatientBillBalance {
+
+	private Integer patientBillId;
+	private BigDecimal amountPaid;
+	private BigDecimal amountNotPaid;
+	private BigDecimal thirdPartyAmount;
+
+	public PatientBillBalance(Integer patientBillId, BigDecimal amountPaid,
+			BigDecimal amountNotPaid, BigDecimal thirdPartyAmount) {
+		this.patientBillId = patientBillId;
+		this.amountPaid = amountPaid;
+		this.amountNotPaid = amountNotPaid;
+		this.thirdPartyAmount = thirdPartyAmount;
+	}
+
+	/**
+	 * @return the patientBillId
+	 */
+	public Integer getPatientBillId() {
+		return patientBillId;
+	}
+
+	/**
+	 * @return the sum of the payments of the bill
+	 */
+	public BigDecimal getAmountPaid() {
+		return amountPaid;
+	}
+
+	/**
+	 * @return the rest to be paid by the patient, or null if the bill has no
+	 *         insurance policy
+	 */
+	public BigDecimal getAmountNotPaid() {
+		return amountNotPaid;
+	}
+
+	/**
+	 * @return the amount paid by the third party, or null if the insurance
+	 *         policy has no third party
+	 */
+	public BigDecimal getThirdPartyAmount() {
+		return thirdPartyAmount;
+	}
+
+	/**
+	 * @param amountNotPaid
+	 *            the amountNotPaid to set
+	 */
+	public void setAmountNotPaid(BigDecimal amountNotPaid) {
+		this.amountNotPaid = amountNotPaid;
+	}
+}
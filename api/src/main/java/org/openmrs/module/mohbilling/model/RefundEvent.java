@@ -0,0 +1,206 @@
+package org.openmrs.module.mohbilling.model;
+
+import java.math.BigDecimal;
+import java.util.Date;
+
+import org.openmrs.BaseOpenmrsObject;
+import org.openmrs.User;
+
+/**
+ * Item removed from a PatientBill when it is refunded, with the amount given
+ * back, who refunded it and when. The item itself is deleted with the refund,
+ * so only its id and its price are kept. The amount is what the patient had
+ * paid beyond their due once the item removed, the cash handed back to them,
+ * as the negative payments recorded the refunds before the log.
+ */
+public class RefundEvent extends BaseOpenmrsObject {
+
+	private Integer refundEventId;
+	private PatientBill patientBill;
+	private Integer patientServiceBillId;
+	private BillableService billableService;
+	private BigDecimal unitPrice;
+	private BigDecimal quantity;
+	private BigDecimal amount;
+	private User collector;
+	private Date refundDate;
+
+	public RefundEvent() {
+	}
+
+	/**
+	 * @param psb
+	 *            the item removed from its bill
+	 * @param amount
+	 *            the amount given back to the patient
+	 * @param collector
+	 *            the user refunding the item, the collector of the negative
+	 *            payment giving the cash back
+	 * @param refundDate
+	 *            the date of the refund
+	 */
+	public RefundEvent(PatientServiceBill psb, BigDecimal amount,
+			User collector, Date refundDate) {
+		this.patientBill = psb.getPatientBill();
+		this.patientServiceBillId = psb.getPatientServiceBillId();
+		this.billableService = psb.getService();
+		this.unitPrice = psb.getUnitPrice();
+		this.quantity = psb.getQuantity();
+		this.amount = amount;
+		this.collector = collector;
+		this.refundDate = refundDate;
+	}
+
+	/**
+	 * @see BaseOpenmrsObject#getId()
+	 */
+	@Override
+	public Integer getId() {
+		return getRefundEventId();
+	}
+
+	/**
+	 * @see BaseOpenmrsObject#setId(Integer)
+	 */
+	@Override
+	public void setId(Integer id) {
+		setRefundEventId(id);
+	}
+
+	/**
+	 * @return the refundEventId
+	 */
+	public Integer getRefundEventId() {
+		return refundEventId;
+	}
+
+	/**
+	 * @param refundEventId
+	 *            the refundEventId to set
+	 */
+	public void setRefundEventId(Integer refundEventId) {
+		this.refundEventId = refundEventId;
+	}
+
+	/**
+	 * @return the refunded bill
+	 */
+	public PatientBill getPatientBill() {
+		return patientBill;
+	}
+
+	/**
+	 * @param patientBill
+	 *            the patientBill to set
+	 */
+	public void setPatientBill(PatientBill patientBill) {
+		this.patientBill = patientBill;
+	}
+
+	/**
+	 * @return the id of the removed item, null for the refunds recorded before
+	 *         the items were kept
+	 */
+	public Integer getPatientServiceBillId() {
+		return patientServiceBillId;
+	}
+
+	/**
+	 * @param patientServiceBillId
+	 *            the patientServiceBillId to set
+	 */
+	public void setPatientServiceBillId(Integer patientServiceBillId) {
+		this.patientServiceBillId = patientServiceBillId;
+	}
+
+	/**
+	 * @return the billable service of the removed item
+	 */
+	public BillableService getBillableService() {
+		return billableService;
+	}
+
+	/**
+	 * @param billableService
+	 *            the billableService to set
+	 */
+	public void setBillableService(BillableService billableService) {
+		this.billableService = billableService;
+	}
+
+	/**
+	 * @return the unitPrice
+	 */
+	public BigDecimal getUnitPrice() {
+		return unitPrice;
+	}
+
+	/**
+	 * @param unitPrice
+	 *            the unitPrice to set
+	 */
+	public void setUnitPrice(BigDecimal unitPrice) {
+		this.unitPrice = unitPrice;
+	}
+
+	/**
+	 * @return the quantity
+	 */
+	public BigDecimal getQuantity() {
+		return quantity;
+	}
+
+	/**
+	 * @param quantity
+	 *            the quantity to set
+	 */
+	public void setQuantity(BigDecimal quantity) {
+		this.quantity = quantity;
+	}
+
+	/**
+	 * @return the amount refunded
+	 */
+	public BigDecimal getAmount() {
+		return amount;
+	}
+
+	/**
+	 * @param amount
+	 *            the amount to set
+	 */
+	public void setAmount(BigDecimal amount) {
+		this.amount = amount;
+	}
+
+	/**
+	 * @return the user who refunded the item, the collector of the negative
+	 *         payment giving the cash back
+	 */
+	public User getCollector() {
+		return collector;
+	}
+
+	/**
+	 * @param collector
+	 *            the collector to set
+	 */
+	public void setCollector(User collector) {
+		this.collector = collector;
+	}
+
+	/**
+	 * @return the refundDate
+	 */
+	public Date getRefundDate() {
+		return refundDate;
+	}
+
+	/**
+	 * @param refundDate
+	 *            the refundDate to set
+	 */
+	public void setRefundDate(Date refundDate) {
+		this.refundDate = refundDate;
+	}
+}
@@ -0,0 +1,32 @@
+package org.openmrs.module.mohbilling.model;
+
+/**
+ * Status of a report generated in the background
+ */
+public enum ReportJobStatus {
+
+	QUEUED("QUEUED", "QUEUED"), RUNNING("RUNNING", "RUNNING"), DONE("DONE",
+			"DONE"), FAILED("FAILED", "FAILED");
+
+	private final String name;
+	private final String description;
+
+	private ReportJobStatus(String name, String description) {
+		this.name = name;
+		this.description = description;
+	}
+
+	/**
+	 * @return the description
+	 */
+	public String getDescription() {
+		return this.description;
+	}
+
+	/**
+	 * @return the name
+	 */
+	public String getName() {
+		return name;
+	}
+}
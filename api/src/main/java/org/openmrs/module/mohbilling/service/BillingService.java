@@ -11,17 +11,24 @@ import java.util.Set;
 
 import org.openmrs.Concept;
 import org.openmrs.Patient;
+import org.openmrs.Person;
 import org.openmrs.User;
+import org.openmrs.api.APIException;
 import org.openmrs.api.OpenmrsService;
 import org.openmrs.api.db.DAOException;
 import org.openmrs.module.mohbilling.model.Beneficiary;
+import org.openmrs.module.mohbilling.model.BillCaptureLine;
 import org.openmrs.module.mohbilling.model.BillPayment;
+import org.openmrs.module.mohbilling.model.BillSummary;
 import org.openmrs.module.mohbilling.model.BillableService;
+import org.openmrs.module.mohbilling.model.CohortQuery;
 import org.openmrs.module.mohbilling.model.FacilityServicePrice;
 import org.openmrs.module.mohbilling.model.Insurance;
 import org.openmrs.module.mohbilling.model.InsurancePolicy;
 import org.openmrs.module.mohbilling.model.InsuranceRate;
+import org.openmrs.module.mohbilling.model.InvoiceLine;
 import org.openmrs.module.mohbilling.model.PatientBill;
+import org.openmrs.module.mohbilling.model.PatientBillBalance;
 import org.openmrs.module.mohbilling.model.PatientServiceBill;
 import org.openmrs.module.mohbilling.model.Recovery;
 import org.openmrs.module.mohbilling.model.ServiceCategory;
@@ -214,6 +221,54 @@ public interface BillingService extends OpenmrsService {
 			Date endDate, Integer patientId, String serviceName,
 			String billStatus, String billCollector);
 
+	/**
+	 * Gets the page of the bill cohort matching the query, ordered by bill id
+	 * 
+	 * @param cohortQuery
+	 *            the search parameters and page
+	 * @return the matched bills
+	 */
+	public List<PatientBill> getBillCohort(CohortQuery cohortQuery);
+
+	/**
+	 * Counts the bills of the cohort matching the query, without loading them
+	 * 
+	 * @param cohortQuery
+	 *            the search parameters, the page size being ignored
+	 * @return the number of matched bills
+	 */
+	public Integer getBillCohortSize(CohortQuery cohortQuery);
+
+	/**
+	 * Sums the balances of the bills of the cohort matching the query, so
+	 * that the totals of a search cover all of its pages
+	 * 
+	 * @param cohortQuery
+	 *            the search parameters, the page being ignored
+	 * @return the totalDue, insurerDue, patientDue and paidAmount totals
+	 */
+	public Map<String, BigDecimal> getBillCohortTotals(CohortQuery cohortQuery);
+
+	/**
+	 * Gets the page of the payment cohort matching the query, ordered by
+	 * payment id
+	 * 
+	 * @param cohortQuery
+	 *            the search parameters and page
+	 * @return the matched payments
+	 */
+	public List<BillPayment> getPaymentCohort(CohortQuery cohortQuery);
+
+	/**
+	 * Counts the payments of the cohort matching the query, without loading
+	 * them
+	 * 
+	 * @param cohortQuery
+	 *            the search parameters, the page size being ignored
+	 * @return the number of matched payments
+	 */
+	public Integer getPaymentCohortSize(CohortQuery cohortQuery);
+
 	/**
 	 * Gets a BillableService by selecting those having the provided
 	 * FacilityServicePrice and the Insurance.
@@ -400,6 +455,12 @@ public interface BillingService extends OpenmrsService {
 	public List<Date> getRevenueDatesBetweenDates(Date startDate, Date endDate);;
 	
 	public Map<String,Double> getRevenueByService(Date receivedDate,String[] serviceCategory, String collector,Insurance insurance);
+
+	/**
+	 * Recomputes the daily revenue rollup from scratch, used to backfill it
+	 * or to repair it after payments were changed outside of the module
+	 */
+	public void rebuildDailyRevenue();
 	
 	public  Object[]  getBills(Date startDate,Date endDate,User collector);
 	
@@ -428,7 +489,8 @@ public interface BillingService extends OpenmrsService {
 	public List<PatientBill> getPendingBill();
 	
 	/**
-	 * gets refunded bills 
+	 * gets refunded bills, from the refund event log, the bills left with
+	 * items being left out
 	 * 
 	 * @param startDate
 	 * @param endDate
@@ -436,4 +498,417 @@ public interface BillingService extends OpenmrsService {
 	 * @return
 	 */
 	public Set<PatientBill> getRefundedBills(Date startDate,Date endDate,User collector);
+
+	/**
+	 * Gets all Bills whose beneficiary is the given patient
+	 *
+	 * @param patient
+	 * @return bills ordered by id
+	 */
+	public List<PatientBill> getBillsByPatient(Patient patient);
+
+	/**
+	 * Gets the Bills of the given patient having at least one item served on
+	 * the given date
+	 *
+	 * @param patient
+	 * @param serviceDate
+	 * @return distinct bills ordered by id
+	 */
+	public List<PatientBill> getBillsByPatientOnDate(Patient patient,
+			Date serviceDate);
+
+	/**
+	 * Gets the bill items of the given beneficiary served on the given date
+	 *
+	 * @param beneficiary
+	 * @param serviceDate
+	 * @return items ordered by bill id then item id
+	 */
+	public List<PatientServiceBill> getBillItemsByBeneficiaryOnDate(
+			Beneficiary beneficiary, Date serviceDate);
+
+	/**
+	 * Gets the non voided items of the non voided Bills of the given patient
+	 * served between the two dates (inclusive)
+	 *
+	 * @param patient
+	 * @param startDate
+	 * @param endDate
+	 * @return items ordered by bill id then item id
+	 */
+	public List<PatientServiceBill> getBillItemsByPatientAndPeriod(
+			Patient patient, Date startDate, Date endDate);
+
+	/**
+	 * Gets the Bills created between the two dates (inclusive), null bounds
+	 * and a null isPaid are ignored
+	 *
+	 * @param startDate
+	 * @param endDate
+	 * @param isPaid
+	 * @return bills ordered by id
+	 */
+	public List<PatientBill> getBillsByCreatedDate(Date startDate,
+			Date endDate, Boolean isPaid);
+
+	/**
+	 * Gets the Bills of the given beneficiary having the given paid flag
+	 *
+	 * @param beneficiary
+	 * @param isPaid
+	 * @return bills ordered by id
+	 */
+	public List<PatientBill> getPaidBillsByBeneficiary(
+			Beneficiary beneficiary, Boolean isPaid);
+
+	/**
+	 * Gets the InsurancePolicies covering the given beneficiary on the given
+	 * date
+	 *
+	 * @param beneficiary
+	 * @param date
+	 * @return policies ordered by id
+	 */
+	public List<InsurancePolicy> getInsurancePoliciesByBeneficiaryOnDate(
+			Beneficiary beneficiary, Date date);
+
+	/**
+	 * Gets the InsurancePolicies owned by the given person and covering the
+	 * given date
+	 *
+	 * @param owner
+	 * @param date
+	 * @return policies ordered by id
+	 */
+	public List<InsurancePolicy> getInsurancePoliciesByOwnerOnDate(
+			Person owner, Date date);
+
+	/**
+	 * Gets all InsurancePolicies owned by the given patient
+	 *
+	 * @param owner
+	 * @return policies ordered by id
+	 */
+	public List<InsurancePolicy> getInsurancePoliciesByOwner(Patient owner);
+
+	/**
+	 * Gets all InsurancePolicies of the given Insurance
+	 *
+	 * @param insurance
+	 * @return policies ordered by id
+	 */
+	public List<InsurancePolicy> getInsurancePoliciesByInsurance(
+			Insurance insurance);
+
+	/**
+	 * Gets the first InsurancePolicy having the given card number and, when
+	 * provided, the given Insurance
+	 *
+	 * @param insurance
+	 * @param insuranceCardNo
+	 * @return the matched policy, null otherwise
+	 */
+	public InsurancePolicy getInsurancePolicyByCardNo(Insurance insurance,
+			String insuranceCardNo);
+
+	/**
+	 * Gets the first InsurancePolicy having a beneficiary with the given policy
+	 * id number and the given retired status, a policy without retired flag
+	 * being taken as not retired
+	 *
+	 * @param policyIdNumber
+	 * @param retired
+	 * @return the matched policy, null otherwise
+	 */
+	public InsurancePolicy getInsurancePolicyByPolicyIdNumber(
+			String policyIdNumber, boolean retired);
+
+	/**
+	 * Gets the non retired Beneficiaries that are the given patient
+	 *
+	 * @param patient
+	 * @return beneficiaries ordered by policy then id
+	 */
+	public List<Beneficiary> getBeneficiariesByPatient(Patient patient);
+
+	/**
+	 * Gets the non retired Beneficiaries of the policies owned by the given
+	 * patient
+	 *
+	 * @param owner
+	 * @return beneficiaries ordered by policy then id
+	 */
+	public List<Beneficiary> getBeneficiariesByOwner(Patient owner);
+
+	/**
+	 * Gets one summary row per non voided Bill having non voided items served
+	 * in the given period, null parameters being ignored
+	 *
+	 * @param insurance
+	 * @param startDate
+	 * @param endDate
+	 * @param isPaid
+	 * @param patientId
+	 * @return summaries ordered by bill id
+	 */
+	public List<BillSummary> getBillSummaries(Insurance insurance,
+			Date startDate, Date endDate, Boolean isPaid, Integer patientId);
+
+	/**
+	 * Gets one summary row per Bill having items billed through the given
+	 * Facility Service, null parameters being ignored
+	 *
+	 * @param fsp
+	 * @param startDate
+	 * @param endDate
+	 * @param patient
+	 * @param insurance
+	 * @return summaries ordered by bill id
+	 */
+	public List<BillSummary> getBillSummariesByFacilityService(
+			FacilityServicePrice fsp, Date startDate, Date endDate,
+			Patient patient, Insurance insurance);
+
+	/**
+	 * Loads the Bills having the given ids
+	 *
+	 * @param billIds
+	 * @return bills ordered by id
+	 */
+	public List<PatientBill> getPatientBills(List<Integer> billIds);
+
+	/**
+	 * Gets the Billable Service of every non voided item of a non voided Bill
+	 * served in the given period
+	 *
+	 * @param startDate
+	 * @param endDate
+	 * @param isPaid
+	 * @return the billed services, once per item
+	 */
+	public List<BillableService> getBilledServices(Date startDate,
+			Date endDate, Boolean isPaid);
+
+	/**
+	 * Gets the non voided payments of non voided Bills received on the given
+	 * day
+	 *
+	 * @param day
+	 * @return payments ordered by id
+	 */
+	public List<BillPayment> getPaymentsReceivedOn(Date day);
+
+	/**
+	 * Gets the PatientBill together with its items and their billable
+	 * services in a single query, for the screens printing the items
+	 *
+	 * @param billId
+	 * @return the bill, null if none has this id
+	 */
+	public PatientBill getPatientBillWithItems(Integer billId);
+
+	/**
+	 * Loads the Bills having the given ids together with their items and
+	 * their billable services
+	 *
+	 * @param billIds
+	 * @return bills ordered by id
+	 */
+	public List<PatientBill> getPatientBillsWithItems(List<Integer> billIds);
+
+	/**
+	 * Loads the payments having the given ids together with their Bill, its
+	 * beneficiary and its patient
+	 *
+	 * @param paymentIds
+	 * @return payments ordered by id
+	 */
+	public List<BillPayment> getBillPayments(List<Integer> paymentIds);
+
+	/**
+	 * Gets the hits, misses, puts and element counts of the second-level
+	 * cache regions of the tariff catalogue, collected when the
+	 * hibernate.generate_statistics property is set
+	 *
+	 * @return the counts keyed by region name and count name, empty if the
+	 *         statistics are not enabled
+	 */
+	public Map<String, Long> getTariffCacheStatistics();
+
+	/**
+	 * Verifies the balance columns of every bill against the balances computed
+	 * from its items and payments
+	 *
+	 * @param repair
+	 *            true to store the computed balances of the inconsistent bills
+	 * @return the ids of the inconsistent bills
+	 */
+	public List<Integer> checkPatientBillBalances(boolean repair);
+
+	/**
+	 * Verifies the balance columns of a page of bills, in its own transaction
+	 * when called outside of one
+	 *
+	 * @param afterId
+	 *            the id after which the bills of the page start
+	 * @param maxResults
+	 *            the number of bills of the page
+	 * @param repair
+	 *            true to store the computed balances of the inconsistent bills,
+	 *            without updating the daily revenue rollup
+	 * @param inconsistentBillIds
+	 *            the list the ids of the inconsistent bills are added to
+	 * @return the id of the last bill of the page, null if there was none
+	 */
+	public Integer checkPatientBillBalances(Integer afterId, int maxResults,
+			boolean repair, List<Integer> inconsistentBillIds);
+
+	/**
+	 * Gets the amount paid, the rest and the third party amount of the given
+	 * bills in one or two queries, without updating them
+	 *
+	 * @param billIds
+	 * @return the balances keyed by bill id
+	 */
+	public Map<Integer, PatientBillBalance> getPatientBillBalances(
+			List<Integer> billIds);
+
+	/**
+	 * Gets a page of the searchable fields of the Beneficiaries that are not
+	 * retired, as indexed by the beneficiary search
+	 *
+	 * @param afterId
+	 *            the id after which the page starts
+	 * @param maxResults
+	 *            the size of the page
+	 * @return the beneficiary id, policy id number, insurance card number,
+	 *         given name and family name of each beneficiary
+	 */
+	public List<Object[]> getBeneficiarySearchFields(Integer afterId,
+			int maxResults);
+
+	/**
+	 * Gets the Beneficiaries having the given ids
+	 *
+	 * @param beneficiaryIds
+	 * @return the beneficiaries, in no particular order
+	 */
+	public List<Beneficiary> getBeneficiaries(List<Integer> beneficiaryIds);
+
+	/**
+	 * Sets the tariff of the given Facility Services for every insurance that
+	 * is not voided, in one transaction. The billable services are looked up
+	 * and written in batches rather than one facility service and one
+	 * insurance at a time.
+	 *
+	 * @param facilityServices
+	 *            the facility services whose tariff changed
+	 * @param startDate
+	 *            the start date of the new tariff
+	 * @param createMissing
+	 *            true to create the billable services of the insurances not
+	 *            having one yet, false to only update the existing ones
+	 * @return the number of billable services saved
+	 */
+	public int propagateTariffs(List<FacilityServicePrice> facilityServices,
+			Date startDate, boolean createMissing);
+
+	/**
+	 * Gets the tariff of every billable service, as loaded in the tariff
+	 * matrix
+	 *
+	 * @return the facility service id, insurance id, billable service id,
+	 *         maxima to pay, start date, end date, retired flag and retire
+	 *         date of each billable service
+	 */
+	public List<Object[]> getBillableServiceTariffs();
+
+	/**
+	 * Gets the items of the given bills as detached invoice lines, without
+	 * loading the bill items
+	 *
+	 * @param billIds
+	 * @return the lines of each bill in the order of its items, keyed by bill
+	 *         id
+	 */
+	public Map<Integer, List<InvoiceLine>> getInvoiceLines(List<Integer> billIds);
+
+	/**
+	 * Sums the amounts of the bills created in a period by insurance
+	 *
+	 * @param startDate
+	 * @param endDate
+	 * @return the sum of the bill amounts keyed by insurance id
+	 */
+	public Map<Integer, BigDecimal> getBillAmountsByInsurance(Date startDate,
+			Date endDate);
+
+	/**
+	 * Sums the amounts of the bills created in a period by third party
+	 *
+	 * @param startDate
+	 * @param endDate
+	 * @return the sum of the bill amounts keyed by third party id
+	 */
+	public Map<Integer, BigDecimal> getBillAmountsByThirdParty(Date startDate,
+			Date endDate);
+
+	/**
+	 * Refunds items of a bill: they are removed from it, their amount being
+	 * deducted from the bill, and each of them is recorded in the refund
+	 * event log by the authenticated user, in the same transaction as the
+	 * bill is saved. The amount recorded is the cash given back, what the
+	 * patient had paid beyond their due once the item removed, nothing if
+	 * they had not paid it. The cash given back is added to the bill as a
+	 * negative payment of the authenticated user.
+	 *
+	 * @param bill
+	 *            the bill to be refunded
+	 * @param items
+	 *            the items to be removed
+	 * @return the refunded bill
+	 */
+	public PatientBill refundPatientBill(PatientBill bill,
+			List<PatientServiceBill> items);
+
+	/**
+	 * Sums the amounts given back to the patients in a period, the bills only
+	 * partly refunded included
+	 *
+	 * @param startDate
+	 * @param endDate
+	 * @param collector
+	 *            the user who refunded, or null for all of them
+	 * @return the amount refunded
+	 */
+	public BigDecimal getTotalRefundedAmount(Date startDate, Date endDate,
+			User collector);
+
+	/**
+	 * Captures a new bill: the billable services of all its lines are
+	 * resolved in one query, and the bill and its items are inserted in
+	 * batch. When a bill was already captured with the same key, as when the
+	 * form is submitted twice, that bill is returned and nothing is saved.
+	 *
+	 * @param beneficiary
+	 *            the beneficiary of the bill
+	 * @param lines
+	 *            the lines of the bill
+	 * @param captureKey
+	 *            the key of the bill capture form, null if there is none
+	 * @return the captured bill
+	 * @throws APIException
+	 *             if a line has an unknown billable service
+	 */
+	public PatientBill capturePatientBill(Beneficiary beneficiary,
+			List<BillCaptureLine> lines, String captureKey);
+
+	/**
+	 * Gets the bill captured from the form having the given key
+	 *
+	 * @param captureKey
+	 * @return the bill, null if none was captured with this key
+	 */
+	public PatientBill getPatientBillByCaptureKey(String captureKey);
 }
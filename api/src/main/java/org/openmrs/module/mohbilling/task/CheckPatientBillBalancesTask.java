@@ -0,0 +1,109 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.mohbilling.task;
+
+import java.util.Calendar;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.mohbilling.service.BillingService;
+import org.openmrs.scheduler.SchedulerException;
+import org.openmrs.scheduler.SchedulerService;
+import org.openmrs.scheduler.TaskDefinition;
+import org.openmrs.scheduler.tasks.AbstractTask;
+
+/**
+ * Scheduled task verifying the balance columns of the bills against the
+ * balances computed from their items and payments. The inconsistent bills are
+ * logged, and repaired when the task property "repair" is true. The balances
+ * of the bills recorded before they were kept are filled in by the sqldiff
+ * adding them, this task repairs the bills changed behind the module since.
+ * <p>
+ * The module registers and schedules it on startup, see {@link #register()},
+ * without an administrator having to create the task.
+ */
+public class CheckPatientBillBalancesTask extends AbstractTask {
+
+	public static final String TASK_NAME = "Check Patient Bill Balances";
+
+	private Log log = LogFactory.getLog(getClass());
+
+	/**
+	 * Saves and schedules the task definition, repairing the balances every
+	 * night and when OpenMRS starts, unless a task of the same name exists. An
+	 * administrator may change or stop it afterwards, it is not registered
+	 * again.
+	 * 
+	 * @throws SchedulerException
+	 *             if the saved task could not be scheduled
+	 */
+	public static void register() throws SchedulerException {
+
+		Context.addProxyPrivilege("Manage Scheduler");
+		try {
+			SchedulerService schedulerService = Context.getSchedulerService();
+			if (schedulerService.getTaskByName(TASK_NAME) != null)
+				return;
+
+			Calendar startTime = Calendar.getInstance();
+			startTime.add(Calendar.DAY_OF_YEAR, 1);
+			startTime.set(Calendar.HOUR_OF_DAY, 2);
+			startTime.set(Calendar.MINUTE, 0);
+			startTime.set(Calendar.SECOND, 0);
+			startTime.set(Calendar.MILLISECOND, 0);
+
+			TaskDefinition task = new TaskDefinition();
+			task.setName(TASK_NAME);
+			task.setDescription("Checks the balance columns of the bills, and"
+					+ " repairs them when the property repair is true");
+			task.setTaskClass(CheckPatientBillBalancesTask.class.getName());
+			task.setStartTime(startTime.getTime());
+			task.setRepeatInterval(24 * 60 * 60L);
+			task.setStartOnStartup(true);
+			task.setProperty("repair", "true");
+			schedulerService.saveTask(task);
+			// it would otherwise only be scheduled on the next restart
+			schedulerService.scheduleTask(task);
+		} finally {
+			Context.removeProxyPrivilege("Manage Scheduler");
+		}
+	}
+
+	/**
+	 * @see org.openmrs.scheduler.tasks.AbstractTask#execute()
+	 */
+	@Override
+	public void execute() {
+
+		if (!isExecuting) {
+			startExecuting();
+			try {
+				boolean repair = "true".equalsIgnoreCase(getTaskDefinition()
+						.getProperty("repair"));
+				List<Integer> billIds = Context.getService(BillingService.class)
+						.checkPatientBillBalances(repair);
+
+				if (!billIds.isEmpty())
+					log.warn(billIds.size() + " bills have inconsistent balances"
+							+ (repair ? ", repaired: " : ": ") + billIds);
+			} catch (Exception e) {
+				log.error("Error while checking the bill balances", e);
+			} finally {
+				stopExecuting();
+			}
+		}
+	}
+}
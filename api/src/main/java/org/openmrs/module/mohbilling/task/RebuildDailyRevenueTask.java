@@ -0,0 +1,48 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.mohbilling.task;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.mohbilling.service.BillingService;
+import org.openmrs.scheduler.tasks.AbstractTask;
+
+/**
+ * Scheduled task recomputing the daily revenue rollup from the payments and
+ * bill items. The rollup is kept up to date when bills are saved, this task
+ * backfills it and repairs it after changes made outside of the module.
+ */
+public class RebuildDailyRevenueTask extends AbstractTask {
+
+	private Log log = LogFactory.getLog(getClass());
+
+	/**
+	 * @see org.openmrs.scheduler.tasks.AbstractTask#execute()
+	 */
+	@Override
+	public void execute() {
+
+		if (!isExecuting) {
+			startExecuting();
+			try {
+				Context.getService(BillingService.class).rebuildDailyRevenue();
+			} catch (Exception e) {
+				log.error("Error while rebuilding the daily revenue", e);
+			} finally {
+				stopExecuting();
+			}
+		}
+	}
+}
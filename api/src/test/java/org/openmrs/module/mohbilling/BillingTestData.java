@@ -17,8 +17,18 @@ import org.openmrs.ConceptName;
 import org.openmrs.Location;
 import org.openmrs.api.ConceptService;
 import org.openmrs.api.context.Context;
+import org.openmrs.module.mohbilling.model.Beneficiary;
+import org.openmrs.module.mohbilling.model.BillPayment;
+import org.openmrs.module.mohbilling.model.BillableService;
 import org.openmrs.module.mohbilling.model.Category;
 import org.openmrs.module.mohbilling.model.FacilityServicePrice;
+import org.openmrs.module.mohbilling.model.Insurance;
+import org.openmrs.module.mohbilling.model.InsuranceCategory;
+import org.openmrs.module.mohbilling.model.InsurancePolicy;
+import org.openmrs.module.mohbilling.model.InsuranceRate;
+import org.openmrs.module.mohbilling.model.PatientBill;
+import org.openmrs.module.mohbilling.model.PatientServiceBill;
+import org.openmrs.module.mohbilling.model.ThirdParty;
 import org.openmrs.module.mohbilling.service.BillingService;
 
 import java.math.BigDecimal;
@@ -116,6 +126,138 @@ public class BillingTestData {
         return fsp;
     }
 
+    /**
+     * Creates an insurance paying the given rate from the given date
+     */
+    public static Insurance createInsurance(String name, float rate, String sd) {
+        Insurance insurance = new Insurance();
+        insurance.setName(name);
+        insurance.setCategory(InsuranceCategory.BASE.toString());
+        insurance.setCreator(Context.getAuthenticatedUser());
+        insurance.setCreatedDate(new Date());
+        insurance.setVoided(false);
+        insurance.addInsuranceRate(createInsuranceRate(rate, sd, null));
+        Context.getService(BillingService.class).saveInsurance(insurance);
+        return insurance;
+    }
+
+    /**
+     * Creates an insurance rate, retired on the given date if there is one
+     */
+    public static InsuranceRate createInsuranceRate(float rate, String sd, String retiredDate) {
+        InsuranceRate insuranceRate = new InsuranceRate();
+        insuranceRate.setRate(rate);
+        insuranceRate.setStartDate(parseDate(sd));
+        insuranceRate.setRetired(retiredDate != null);
+        insuranceRate.setRetiredDate(parseDate(retiredDate));
+        insuranceRate.setCreator(Context.getAuthenticatedUser());
+        insuranceRate.setCreatedDate(new Date());
+        return insuranceRate;
+    }
+
+    /**
+     * Creates a FacilityServicePrice followed by the BillableService of the given insurance for it
+     */
+    public static BillableService createBillableService(Insurance insurance, String serviceName, double price, Category category) {
+        FacilityServicePrice fsp = createFacilityServicePrice(serviceName, serviceName, price, category, "2015-01-01", null, null);
+
+        BillableService bs = new BillableService();
+        bs.setInsurance(insurance);
+        bs.setMaximaToPay(new BigDecimal(price));
+        bs.setStartDate(parseDate("2015-01-01"));
+        bs.setRetired(false);
+        bs.setCreator(Context.getAuthenticatedUser());
+        bs.setCreatedDate(new Date());
+        fsp.addBillableService(bs);
+        Context.getService(BillingService.class).saveFacilityServicePrice(fsp);
+        return bs;
+    }
+
+    /**
+     * Creates and saves a third party paying the given rate
+     */
+    public static ThirdParty createThirdParty(String name, float rate) {
+        ThirdParty thirdParty = new ThirdParty();
+        thirdParty.setName(name);
+        thirdParty.setRate(rate);
+        thirdParty.setVoided(false);
+        thirdParty.setCreator(Context.getAuthenticatedUser());
+        thirdParty.setCreatedDate(new Date());
+        Context.getService(BillingService.class).saveThirdParty(thirdParty);
+        return thirdParty;
+    }
+
+    /**
+     * Creates a policy of the given insurance, and third party if any, with the patient 2 of the standard test dataset as its beneficiary
+     */
+    public static Beneficiary createBeneficiary(Insurance insurance, ThirdParty thirdParty, String policyIdNumber) {
+        InsurancePolicy policy = new InsurancePolicy();
+        policy.setInsurance(insurance);
+        policy.setThirdParty(thirdParty);
+        policy.setInsuranceCardNo(policyIdNumber);
+        policy.setOwner(Context.getPatientService().getPatient(2));
+        policy.setCoverageStartDate(parseDate("2015-01-01"));
+        policy.setRetired(false);
+        policy.setCreator(Context.getAuthenticatedUser());
+        policy.setCreatedDate(new Date());
+
+        Beneficiary beneficiary = new Beneficiary();
+        beneficiary.setPatient(policy.getOwner());
+        beneficiary.setPolicyIdNumber(policyIdNumber);
+        beneficiary.setRetired(false);
+        beneficiary.setCreator(Context.getAuthenticatedUser());
+        beneficiary.setCreatedDate(new Date());
+        policy.addBeneficiary(beneficiary);
+
+        Context.getService(BillingService.class).saveInsurancePolicy(policy);
+        return beneficiary;
+    }
+
+    /**
+     * Creates an unsaved bill of the given beneficiary
+     */
+    public static PatientBill createPatientBill(Beneficiary beneficiary, String createdDate) {
+        PatientBill bill = new PatientBill();
+        bill.setBeneficiary(beneficiary);
+        bill.setIsPaid(false);
+        bill.setPrinted(false);
+        bill.setVoided(false);
+        bill.setCreator(Context.getAuthenticatedUser());
+        bill.setCreatedDate(parseDate(createdDate));
+        return bill;
+    }
+
+    /**
+     * Adds an item to the given bill, voided or not
+     */
+    public static PatientServiceBill addBillItem(PatientBill bill, BillableService service, double unitPrice, double quantity, boolean voided) {
+        PatientServiceBill psb = new PatientServiceBill();
+        psb.setService(service);
+        psb.setUnitPrice(BigDecimal.valueOf(unitPrice));
+        psb.setQuantity(BigDecimal.valueOf(quantity));
+        psb.setServiceDate(bill.getCreatedDate());
+        psb.setVoided(voided);
+        psb.setCreator(Context.getAuthenticatedUser());
+        psb.setCreatedDate(new Date());
+        bill.addBillItem(psb);
+        return psb;
+    }
+
+    /**
+     * Adds a payment received on the given date to the given bill, voided or not
+     */
+    public static BillPayment addBillPayment(PatientBill bill, double amount, String dateReceived, boolean voided) {
+        BillPayment payment = new BillPayment();
+        payment.setAmountPaid(BigDecimal.valueOf(amount));
+        payment.setDateReceived(parseDate(dateReceived));
+        payment.setCollector(Context.getAuthenticatedUser());
+        payment.setVoided(voided);
+        payment.setCreator(Context.getAuthenticatedUser());
+        payment.setCreatedDate(new Date());
+        bill.addBillPayment(payment);
+        return payment;
+    }
+
     /**
      * Return an appropriate concept class given the Category
      */
@@ -135,7 +277,7 @@ public class BillingTestData {
     /**
      * Parses a date in yyyy-MM-dd format into a date, returning null if the input is null
      */
-    protected static Date parseDate(String dateStr) {
+    public static Date parseDate(String dateStr) {
         if (dateStr != null) {
             try {
                 DateFormat df = new SimpleDateFormat("yyyy-MM-dd");
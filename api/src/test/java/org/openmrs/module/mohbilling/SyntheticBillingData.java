@@ -0,0 +1,661 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ *  obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+
+package org.openmrs.module.mohbilling;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.module.mohbilling.model.BillStatus;
+import org.openmrs.module.mohbilling.model.Category;
+import org.openmrs.module.mohbilling.model.InsuranceCategory;
+import org.openmrs.module.mohbilling.model.RecoveryStatus;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Generates a billing dataset of a configurable size, the same one for a given seed, and inserts it with JDBC batches
+ * into the database of the connection: insurances with their rates and service categories, facility services with a
+ * billable service by insurance, policies with their beneficiaries, bills with their items, payments and refunds, and
+ * the monthly recoveries of the insurers.
+ * <p>
+ * The bills are spread over the period with a few items each, drugs and consumables being billed most often, at
+ * log-normal prices. Eight bills in ten are paid in full, one partly and one not yet, and a few have an item refunded.
+ * <p>
+ * The policies are owned by the patients already in the database, such as those of the standard test dataset. The
+ * ids are given from the highest ones already used, and the H2 identity columns are moved past them once loaded, so
+ * that rows saved through Hibernate afterwards do not collide. The Hibernate session must be cleared, the billing
+ * caches invalidated and the daily revenue rebuilt by the caller. Moving the identities is DDL, which H2 commits, so
+ * the data is not rolled back with the transaction of a test.
+ */
+public class SyntheticBillingData {
+
+    protected static final Log log = LogFactory.getLog(SyntheticBillingData.class);
+
+    private static final int BATCH_SIZE = 500;
+
+    private static final long DAY = 24L * 60 * 60 * 1000;
+
+    /** Length of the period of a recovery */
+    private static final int RECOVERY_DAYS = 30;
+
+    /** Categories of the facility services, each followed by its relative frequency */
+    private static final Object[] CATEGORY_WEIGHTS = {
+            Category.MEDICAMENTS, 40, Category.CONSOMMABLES, 20, Category.LABORATOIRE, 12, Category.CONSULTATION, 5,
+            Category.RADIOLOGIE, 3, Category.ECHOGRAPHIE, 3, Category.HOSPITALISATION, 3, Category.CHIRURGIE, 3,
+            Category.SOINS_INFIRMIERS, 3, Category.MATERNITE, 2, Category.FORMALITES_ADMINISTRATIVES, 2,
+            Category.OXYGENOTHERAPIE, 1, Category.MEDECINE_INTERNE, 1, Category.STOMATOLOGIE, 1, Category.AUTRES, 1 };
+
+    /** Share of the insurance, in percent, of each insurance category */
+    private static final float[] INSURANCE_RATES = { 90f, 85f, 100f, 0f };
+
+    private final Random random;
+
+    private int insuranceCount = 4;
+    private int facilityServiceCount = 300;
+    private int policyCount = 1000;
+    private int billCount = 5000;
+    private int maxItemsPerBill = 12;
+    private int refundPercent = 3;
+
+    /** Whether each batch is committed, for the datasets too large for one transaction */
+    private boolean commitBatches;
+
+    /** Bills are created over this number of days, up to today */
+    private int days = 365;
+
+    private long now;
+    private int creatorId = 1;
+    private List<Integer> patientIds;
+
+    private int[] insuranceIds;
+    private float[] rates;
+    /** Service category of each insurance and category, by insurance index then category ordinal */
+    private int[][] serviceCategoryIds;
+    private int[] facilityServiceIds;
+    private Category[] facilityServiceCategories;
+    private BigDecimal[] facilityServicePrices;
+    /** Billable service of each facility service and insurance, by facility service index then insurance index */
+    private int[][] billableServiceIds;
+    private int[] beneficiaryIds;
+    private int[] beneficiaryInsurances;
+    private List<String> policyIdNumbers = new ArrayList<String>();
+    private List<Integer> billIds = new ArrayList<Integer>();
+    /** Insurer due of the bills, by insurance index then recovery period, the last 30 days first */
+    private double[][] insurerDue;
+
+    /**
+     * @param seed the seed of the random values, the same seed giving the same dataset
+     */
+    public SyntheticBillingData(long seed) {
+        this.random = new Random(seed);
+    }
+
+    /**
+     * @param seed the seed of the random values
+     * @param billCount the number of bills
+     * @return a generator of the given number of bills, with a policy for every five bills
+     */
+    public static SyntheticBillingData forBillCount(long seed, int billCount) {
+        SyntheticBillingData data = new SyntheticBillingData(seed);
+        data.setBillCount(billCount);
+        data.setPolicyCount(Math.max(100, billCount / 5));
+        data.setFacilityServiceCount(Math.max(300, Math.min(3000, billCount / 100)));
+        return data;
+    }
+
+    /**
+     * Generates the dataset and inserts it with JDBC batches, committing them only if asked to
+     */
+    public void load(Connection connection) throws SQLException {
+        long start = System.currentTimeMillis();
+        // whole days, so that the same seed gives the same dates during a day
+        now = startOfDay(start);
+        patientIds = queryIds(connection, "select patient_id from patient where voided = false order by patient_id");
+        if (patientIds.isEmpty()) {
+            throw new IllegalStateException("The synthetic billing data needs patients to own the insurance policies");
+        }
+
+        createDailyRevenueTable(connection);
+        loadInsurances(connection);
+        loadFacilityServices(connection);
+        loadPolicies(connection);
+        loadBills(connection);
+        loadRecoveries(connection);
+
+        log.warn("Loaded " + billIds.size() + " synthetic bills in " + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    /**
+     * Creates the daily revenue rollup and its rows by bill, which have no mapping and so are not in the schema built
+     * from the mappings
+     */
+    public static void createDailyRevenueTable(Connection connection) throws SQLException {
+        Statement statement = connection.createStatement();
+        try {
+            statement.execute("create table if not exists moh_bill_daily_revenue ("
+                    + " daily_revenue_id int auto_increment primary key, revenue_date date not null, collector int,"
+                    + " insurance_id int, category varchar(150), amount double)");
+            statement.execute("create table if not exists moh_bill_daily_revenue_bill ("
+                    + " daily_revenue_bill_id int auto_increment primary key, patient_bill_id int not null,"
+                    + " revenue_date date not null, collector int, insurance_id int, category varchar(150), amount double)");
+        }
+        finally {
+            statement.close();
+        }
+    }
+
+    private void loadInsurances(Connection connection) throws SQLException {
+        int insuranceId = nextId(connection, "moh_bill_insurance", "insurance_id");
+        int rateId = nextId(connection, "moh_bill_insurance_rate", "insurance_rate_id");
+        int categoryId = nextId(connection, "moh_bill_service_category", "service_category_id");
+
+        PreparedStatement insurance = connection.prepareStatement("insert into moh_bill_insurance"
+                + " (insurance_id, uuid, name, category, created_date, voided, creator) values (?, ?, ?, ?, ?, 0, ?)");
+        PreparedStatement rate = connection.prepareStatement("insert into moh_bill_insurance_rate"
+                + " (insurance_rate_id, uuid, rate, start_date, created_date, retired, insurance_id, creator)"
+                + " values (?, ?, ?, ?, ?, 0, ?, ?)");
+        PreparedStatement category = connection.prepareStatement("insert into moh_bill_service_category"
+                + " (service_category_id, uuid, name, description, price, created_date, retired, insurance_id, creator)"
+                + " values (?, ?, ?, ?, 0, ?, 0, ?, ?)");
+
+        insuranceIds = new int[insuranceCount];
+        rates = new float[insuranceCount];
+        serviceCategoryIds = new int[insuranceCount][Category.values().length];
+        for (int i = 0; i < insuranceCount; i++) {
+            InsuranceCategory insuranceCategory = InsuranceCategory.values()[i % InsuranceCategory.values().length];
+            insuranceIds[i] = insuranceId++;
+            rates[i] = INSURANCE_RATES[insuranceCategory.ordinal()];
+
+            insurance.setInt(1, insuranceIds[i]);
+            insurance.setString(2, uuid());
+            insurance.setString(3, "SYNTHETIC " + insuranceCategory.name() + " " + (i + 1));
+            insurance.setString(4, insuranceCategory.name());
+            insurance.setTimestamp(5, daysAgo(2 * days));
+            insurance.setInt(6, creatorId);
+            insurance.addBatch();
+
+            rate.setInt(1, rateId++);
+            rate.setString(2, uuid());
+            rate.setFloat(3, rates[i]);
+            rate.setTimestamp(4, daysAgo(2 * days));
+            rate.setTimestamp(5, daysAgo(2 * days));
+            rate.setInt(6, insuranceIds[i]);
+            rate.setInt(7, creatorId);
+            rate.addBatch();
+
+            for (Category c : Category.values()) {
+                serviceCategoryIds[i][c.ordinal()] = categoryId;
+                category.setInt(1, categoryId++);
+                category.setString(2, uuid());
+                category.setString(3, c.getDescription());
+                category.setString(4, c.getDescription());
+                category.setTimestamp(5, daysAgo(2 * days));
+                category.setInt(6, insuranceIds[i]);
+                category.setInt(7, creatorId);
+                category.addBatch();
+            }
+        }
+
+        execute(insurance, rate, category);
+    }
+
+    private void loadFacilityServices(Connection connection) throws SQLException {
+        int facilityServiceId = nextId(connection, "moh_bill_facility_service_price", "facility_service_price_id");
+        int billableServiceId = nextId(connection, "moh_bill_billable_service", "billable_service_id");
+
+        PreparedStatement facilityService = connection.prepareStatement("insert into moh_bill_facility_service_price"
+                + " (facility_service_price_id, uuid, name, short_name, category, full_price, start_date, created_date,"
+                + " retired, creator) values (?, ?, ?, ?, ?, ?, ?, ?, 0, ?)");
+        PreparedStatement billableService = connection.prepareStatement("insert into moh_bill_billable_service"
+                + " (billable_service_id, uuid, maxima_to_pay, start_date, created_date, retired, insurance_id,"
+                + " facility_service_price_id, service_category_id, creator) values (?, ?, ?, ?, ?, 0, ?, ?, ?, ?)");
+
+        facilityServiceIds = new int[facilityServiceCount];
+        facilityServiceCategories = new Category[facilityServiceCount];
+        facilityServicePrices = new BigDecimal[facilityServiceCount];
+        billableServiceIds = new int[facilityServiceCount][insuranceCount];
+        int rows = 0;
+        for (int f = 0; f < facilityServiceCount; f++) {
+            Category category = randomCategory();
+            // log-normal prices, a few hundred francs for most items and some costly acts
+            BigDecimal price = BigDecimal.valueOf(Math.exp(Math.log(800) + 1.3 * random.nextGaussian()))
+                    .setScale(2, BigDecimal.ROUND_HALF_UP).max(BigDecimal.ONE);
+            String name = category.getDescription() + " SERVICE " + (f + 1);
+
+            facilityServiceIds[f] = facilityServiceId++;
+            facilityServiceCategories[f] = category;
+            facilityServicePrices[f] = price;
+
+            facilityService.setInt(1, facilityServiceIds[f]);
+            facilityService.setString(2, uuid());
+            facilityService.setString(3, name);
+            facilityService.setString(4, name.replaceAll(" ", "_"));
+            facilityService.setString(5, category.getDescription());
+            facilityService.setBigDecimal(6, price);
+            facilityService.setTimestamp(7, daysAgo(2 * days));
+            facilityService.setTimestamp(8, daysAgo(2 * days));
+            facilityService.setInt(9, creatorId);
+            facilityService.addBatch();
+
+            for (int i = 0; i < insuranceCount; i++) {
+                billableServiceIds[f][i] = billableServiceId;
+                billableService.setInt(1, billableServiceId++);
+                billableService.setString(2, uuid());
+                billableService.setBigDecimal(3, price);
+                billableService.setTimestamp(4, daysAgo(2 * days));
+                billableService.setTimestamp(5, daysAgo(2 * days));
+                billableService.setInt(6, insuranceIds[i]);
+                billableService.setInt(7, facilityServiceIds[f]);
+                billableService.setInt(8, serviceCategoryIds[i][category.ordinal()]);
+                billableService.setInt(9, creatorId);
+                billableService.addBatch();
+            }
+
+            if (++rows % BATCH_SIZE == 0) {
+                execute(facilityService, billableService);
+            }
+        }
+
+        execute(facilityService, billableService);
+    }
+
+    private void loadPolicies(Connection connection) throws SQLException {
+        int policyId = nextId(connection, "moh_bill_insurance_policy", "insurance_policy_id");
+        int beneficiaryId = nextId(connection, "moh_bill_beneficiary", "beneficiary_id");
+
+        PreparedStatement policy = connection.prepareStatement("insert into moh_bill_insurance_policy"
+                + " (insurance_policy_id, uuid, insurance_card_no, coverage_start_date, expiration_date, created_date,"
+                + " retired, owner, insurance_id, creator) values (?, ?, ?, ?, ?, ?, 0, ?, ?, ?)");
+        PreparedStatement beneficiary = connection.prepareStatement("insert into moh_bill_beneficiary"
+                + " (beneficiary_id, uuid, policy_id_number, created_date, retired, patient_id, insurance_policy_id,"
+                + " creator) values (?, ?, ?, ?, 0, ?, ?, ?)");
+
+        List<Integer> beneficiaries = new ArrayList<Integer>();
+        List<Integer> insurances = new ArrayList<Integer>();
+        for (int p = 0; p < policyCount; p++) {
+            int insurance = random.nextInt(insuranceCount);
+            int ownerId = patientIds.get(p % patientIds.size());
+            String cardNo = "SYN-" + policyId;
+
+            policy.setInt(1, policyId);
+            policy.setString(2, uuid());
+            policy.setString(3, cardNo);
+            policy.setTimestamp(4, daysAgo(2 * days));
+            policy.setTimestamp(5, daysAgo(-days));
+            policy.setTimestamp(6, daysAgo(2 * days));
+            policy.setInt(7, ownerId);
+            policy.setInt(8, insuranceIds[insurance]);
+            policy.setInt(9, creatorId);
+            policy.addBatch();
+
+            // the owner and up to three dependents
+            int members = 1 + (random.nextInt(10) < 6 ? 0 : random.nextInt(4));
+            for (int m = 0; m < members; m++) {
+                beneficiary.setInt(1, beneficiaryId);
+                beneficiary.setString(2, uuid());
+                policyIdNumbers.add(cardNo + "-" + (m + 1));
+                beneficiary.setString(3, cardNo + "-" + (m + 1));
+                beneficiary.setTimestamp(4, daysAgo(2 * days));
+                beneficiary.setInt(5, (m == 0) ? ownerId : patientIds.get(random.nextInt(patientIds.size())));
+                beneficiary.setInt(6, policyId);
+                beneficiary.setInt(7, creatorId);
+                beneficiary.addBatch();
+
+                beneficiaries.add(beneficiaryId++);
+                insurances.add(insurance);
+            }
+            policyId++;
+
+            if (p % BATCH_SIZE == BATCH_SIZE - 1) {
+                execute(policy, beneficiary);
+            }
+        }
+
+        execute(policy, beneficiary);
+
+        beneficiaryIds = new int[beneficiaries.size()];
+        beneficiaryInsurances = new int[beneficiaries.size()];
+        for (int b = 0; b < beneficiaryIds.length; b++) {
+            beneficiaryIds[b] = beneficiaries.get(b);
+            beneficiaryInsurances[b] = insurances.get(b);
+        }
+    }
+
+    private void loadBills(Connection connection) throws SQLException {
+        int billId = nextId(connection, "moh_bill_patient_bill", "patient_bill_id");
+        int itemId = nextId(connection, "moh_bill_patient_service_bill", "patient_service_bill_id");
+        int paymentId = nextId(connection, "moh_bill_payment", "bill_payment_id");
+        int refundId = nextId(connection, "moh_bill_refund_event", "refund_event_id");
+
+        PreparedStatement bill = connection.prepareStatement("insert into moh_bill_patient_bill"
+                + " (patient_bill_id, uuid, amount, printed, is_paid, status, created_date, voided,"
+                + " total_due, insurer_due, third_party_due, patient_due, paid_amount, outstanding_amount,"
+                + " beneficiary_id, creator) values (?, ?, ?, 0, ?, ?, ?, 0, ?, ?, 0, ?, ?, ?, ?, ?)");
+        PreparedStatement item = connection.prepareStatement("insert into moh_bill_patient_service_bill"
+                + " (patient_service_bill_id, uuid, service_date, unit_price, quantity, created_date, voided,"
+                + " billable_service_id, patient_bill_id, creator) values (?, ?, ?, ?, ?, ?, 0, ?, ?, ?)");
+        PreparedStatement payment = connection.prepareStatement("insert into moh_bill_payment"
+                + " (bill_payment_id, uuid, amount_paid, date_received, created_date, voided, collector,"
+                + " patient_bill_id, creator) values (?, ?, ?, ?, ?, 0, ?, ?, ?)");
+        PreparedStatement refund = connection.prepareStatement("insert into moh_bill_refund_event"
+                + " (refund_event_id, uuid, patient_service_bill_id, unit_price, quantity, amount, refund_date,"
+                + " patient_bill_id, billable_service_id, collector) values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
+
+        insurerDue = new double[insuranceCount][days / RECOVERY_DAYS + 1];
+        for (int b = 0; b < billCount; b++) {
+            int beneficiary = random.nextInt(beneficiaryIds.length);
+            int insurance = beneficiaryInsurances[beneficiary];
+            Timestamp createdDate = new Timestamp(now - (long) (random.nextDouble() * days * DAY));
+
+            // most bills have a few items, the pharmacy ones many more
+            int items = Math.min(maxItemsPerBill, 1 + (int) (-Math.log(1 - random.nextDouble()) * 3));
+            // the refunded item is removed from the bill, only its refund is kept
+            boolean refunded = items > 1 && random.nextInt(100) < refundPercent;
+            BigDecimal total = BigDecimal.ZERO;
+            BigDecimal patientShare = BigDecimal.ZERO;
+            for (int i = 0; i < items; i++) {
+                int f = random.nextInt(facilityServiceCount);
+                BigDecimal quantity = BigDecimal.valueOf(facilityServiceCategories[f] == Category.MEDICAMENTS
+                        ? 1 + random.nextInt(30) : 1 + (random.nextInt(10) < 8 ? 0 : random.nextInt(3)));
+                BigDecimal cost = facilityServicePrices[f].multiply(quantity);
+                if (refunded && i == items - 1) {
+                    refund.setInt(1, refundId++);
+                    refund.setString(2, uuid());
+                    refund.setInt(3, itemId++);
+                    refund.setBigDecimal(4, facilityServicePrices[f]);
+                    refund.setBigDecimal(5, quantity);
+                    refund.setBigDecimal(6, cost);
+                    refund.setTimestamp(7, new Timestamp(createdDate.getTime() + (long) (random.nextDouble() * DAY)));
+                    refund.setInt(8, billId);
+                    refund.setInt(9, billableServiceIds[f][insurance]);
+                    refund.setInt(10, creatorId);
+                    refund.addBatch();
+                    continue;
+                }
+                total = total.add(cost);
+                patientShare = patientShare.add(facilityServiceCategories[f] == Category.AUTRES ? cost
+                        : cost.multiply(BigDecimal.valueOf(100d - rates[insurance])).divide(BigDecimal.valueOf(100)));
+
+                item.setInt(1, itemId++);
+                item.setString(2, uuid());
+                item.setTimestamp(3, createdDate);
+                item.setBigDecimal(4, facilityServicePrices[f]);
+                item.setBigDecimal(5, quantity);
+                item.setTimestamp(6, createdDate);
+                item.setInt(7, billableServiceIds[f][insurance]);
+                item.setInt(8, billId);
+                item.setInt(9, creatorId);
+                item.addBatch();
+            }
+            patientShare = round(patientShare);
+            insurerDue[insurance][(int) ((now - createdDate.getTime()) / (RECOVERY_DAYS * DAY))] += round(total)
+                    .subtract(patientShare).doubleValue();
+
+            // eight bills in ten are paid in full, the others partly or not yet
+            int outcome = random.nextInt(10);
+            BigDecimal paid = (outcome < 8) ? patientShare
+                    : (outcome == 8) ? round(patientShare.multiply(BigDecimal.valueOf(random.nextDouble())))
+                    : BigDecimal.ZERO;
+            BillStatus status = (outcome < 8 || patientShare.signum() == 0) ? BillStatus.FULLY_PAID
+                    : (outcome == 8) ? BillStatus.PARTLY_PAID : BillStatus.UNPAID;
+            if (paid.signum() > 0) {
+                // payments are received on a day, without time
+                Timestamp received = new Timestamp(startOfDay(createdDate.getTime()
+                        + (long) (random.nextDouble() * DAY)));
+                payment.setInt(1, paymentId++);
+                payment.setString(2, uuid());
+                payment.setBigDecimal(3, paid);
+                payment.setTimestamp(4, received);
+                payment.setTimestamp(5, received);
+                payment.setInt(6, creatorId);
+                payment.setInt(7, billId);
+                payment.setInt(8, creatorId);
+                payment.addBatch();
+            }
+
+            bill.setInt(1, billId);
+            bill.setString(2, uuid());
+            bill.setBigDecimal(3, total);
+            bill.setBoolean(4, status == BillStatus.FULLY_PAID);
+            bill.setString(5, status.getDescription());
+            bill.setTimestamp(6, createdDate);
+            bill.setBigDecimal(7, round(total));
+            bill.setBigDecimal(8, round(total).subtract(patientShare));
+            bill.setBigDecimal(9, patientShare);
+            bill.setBigDecimal(10, paid);
+            bill.setBigDecimal(11, patientShare.subtract(paid));
+            bill.setInt(12, beneficiaryIds[beneficiary]);
+            bill.setInt(13, creatorId);
+            bill.addBatch();
+            billIds.add(billId++);
+
+            if (b % BATCH_SIZE == BATCH_SIZE - 1) {
+                execute(bill, item, payment, refund);
+            }
+        }
+
+        execute(bill, item, payment, refund);
+
+        restartIdentity(connection, "moh_bill_patient_bill", "patient_bill_id", billId);
+        restartIdentity(connection, "moh_bill_patient_service_bill", "patient_service_bill_id", itemId);
+        restartIdentity(connection, "moh_bill_payment", "bill_payment_id", paymentId);
+        restartIdentity(connection, "moh_bill_refund_event", "refund_event_id", refundId);
+    }
+
+    /**
+     * Adds the recovery of each insurer for each period but the current one, the older ones being paid
+     */
+    private void loadRecoveries(Connection connection) throws SQLException {
+        int recoveryId = nextId(connection, "moh_bill_recovery", "recovery_id");
+
+        PreparedStatement recovery = connection.prepareStatement("insert into moh_bill_recovery"
+                + " (recovery_id, uuid, start_period, end_period, status, due_amount, submission_date,"
+                + " verification_date, paid_amount, payement_date, created_date, retired, insurance_id, creator)"
+                + " values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, 0, ?, ?)");
+
+        for (int i = 0; i < insuranceCount; i++) {
+            for (int period = 1; period < insurerDue[i].length; period++) {
+                if (insurerDue[i][period] == 0) {
+                    continue;
+                }
+                BigDecimal due = round(BigDecimal.valueOf(insurerDue[i][period]));
+                Timestamp endPeriod = daysAgo(period * RECOVERY_DAYS);
+                Timestamp submitted = daysAgo(period * RECOVERY_DAYS - 5);
+
+                RecoveryStatus status = (period == 1) ? RecoveryStatus.SUBMITTED
+                        : (period == 2) ? RecoveryStatus.VERIFIED : randomRecoveryStatus();
+                BigDecimal paid = (status == RecoveryStatus.FULLYPAID) ? due
+                        : (status == RecoveryStatus.PARTLYPAID) ? round(due.multiply(BigDecimal.valueOf(0.5 + random
+                        .nextDouble() / 2))) : null;
+
+                recovery.setInt(1, recoveryId++);
+                recovery.setString(2, uuid());
+                recovery.setTimestamp(3, daysAgo((period + 1) * RECOVERY_DAYS));
+                recovery.setTimestamp(4, endPeriod);
+                recovery.setString(5, status.getDescription());
+                recovery.setBigDecimal(6, due);
+                recovery.setTimestamp(7, submitted);
+                recovery.setTimestamp(8, (period > 1) ? daysAgo(period * RECOVERY_DAYS - 20) : null);
+                recovery.setBigDecimal(9, paid);
+                recovery.setTimestamp(10, (paid != null) ? daysAgo(period * RECOVERY_DAYS - 45) : null);
+                recovery.setTimestamp(11, submitted);
+                recovery.setInt(12, insuranceIds[i]);
+                recovery.setInt(13, creatorId);
+                recovery.addBatch();
+            }
+        }
+
+        execute(recovery);
+    }
+
+    private RecoveryStatus randomRecoveryStatus() {
+        int pick = random.nextInt(20);
+        return (pick < 16) ? RecoveryStatus.FULLYPAID : (pick < 19) ? RecoveryStatus.PARTLYPAID
+                : RecoveryStatus.REFUSED;
+    }
+
+    /**
+     * @return the ids of the generated bills, in the order of their ids
+     */
+    public List<Integer> getBillIds() {
+        return billIds;
+    }
+
+    /**
+     * @return the policy id numbers of the generated beneficiaries, as searched by the cashiers
+     */
+    public List<String> getPolicyIdNumbers() {
+        return policyIdNumbers;
+    }
+
+    /**
+     * @return the ids of the generated insurances
+     */
+    public int[] getInsuranceIds() {
+        return insuranceIds;
+    }
+
+    /**
+     * @return the number of days the bills were created over, up to today
+     */
+    public int getDays() {
+        return days;
+    }
+
+    public void setInsuranceCount(int insuranceCount) {
+        this.insuranceCount = insuranceCount;
+    }
+
+    public void setFacilityServiceCount(int facilityServiceCount) {
+        this.facilityServiceCount = facilityServiceCount;
+    }
+
+    public void setPolicyCount(int policyCount) {
+        this.policyCount = policyCount;
+    }
+
+    public void setBillCount(int billCount) {
+        this.billCount = billCount;
+    }
+
+    public void setMaxItemsPerBill(int maxItemsPerBill) {
+        this.maxItemsPerBill = maxItemsPerBill;
+    }
+
+    public void setDays(int days) {
+        this.days = days;
+    }
+
+    public void setRefundPercent(int refundPercent) {
+        this.refundPercent = refundPercent;
+    }
+
+    public void setCommitBatches(boolean commitBatches) {
+        this.commitBatches = commitBatches;
+    }
+
+    private Category randomCategory() {
+        int total = 0;
+        for (int i = 1; i < CATEGORY_WEIGHTS.length; i += 2) {
+            total += (Integer) CATEGORY_WEIGHTS[i];
+        }
+        int pick = random.nextInt(total);
+        for (int i = 0; i < CATEGORY_WEIGHTS.length; i += 2) {
+            pick -= (Integer) CATEGORY_WEIGHTS[i + 1];
+            if (pick < 0) {
+                return (Category) CATEGORY_WEIGHTS[i];
+            }
+        }
+        return Category.AUTRES;
+    }
+
+    /**
+     * @return a uuid drawn from the seeded random values
+     */
+    private String uuid() {
+        return new UUID(random.nextLong(), random.nextLong()).toString();
+    }
+
+    private Timestamp daysAgo(int daysAgo) {
+        return new Timestamp(now - daysAgo * DAY);
+    }
+
+    private static long startOfDay(long time) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(time);
+        calendar.set(Calendar.HOUR_OF_DAY, 0);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        return calendar.getTimeInMillis();
+    }
+
+    private static BigDecimal round(BigDecimal amount) {
+        return amount.setScale(2, BigDecimal.ROUND_HALF_UP);
+    }
+
+    private void execute(PreparedStatement... statements) throws SQLException {
+        for (PreparedStatement statement : statements) {
+            statement.executeBatch();
+        }
+        Connection connection = statements[0].getConnection();
+        if (commitBatches && !connection.getAutoCommit()) {
+            connection.commit();
+        }
+    }
+
+    private static int nextId(Connection connection, String table, String idColumn) throws SQLException {
+        List<Integer> max = queryIds(connection, "select coalesce(max(" + idColumn + "), 0) from " + table);
+        int id = max.get(0) + 1;
+        // the rows saved through Hibernate later on get the ids after the generated ones
+        restartIdentity(connection, table, idColumn, id);
+        return id;
+    }
+
+    /**
+     * Moves the H2 identity of the table to the given id
+     */
+    private static void restartIdentity(Connection connection, String table, String idColumn, int id)
+            throws SQLException {
+        Statement statement = connection.createStatement();
+        try {
+            statement.execute("alter table " + table + " alter column " + idColumn + " restart with " + id);
+        }
+        finally {
+            statement.close();
+        }
+    }
+
+    private static List<Integer> queryIds(Connection connection, String sql) throws SQLException {
+        List<Integer> ids = new ArrayList<Integer>();
+        Statement statement = connection.createStatement();
+        try {
+            ResultSet rs = statement.executeQuery(sql);
+            while (rs.next()) {
+                ids.add(rs.getInt(1));
+            }
+        }
+        finally {
+            statement.close();
+        }
+        return ids;
+    }
+}
@@ -93,6 +93,7 @@ public class TestEnvironmentSetup extends BaseModuleContextSensitiveTest {
      */
     protected List<String> getBillingTables() {
         List<String> l = new ArrayList<String>();
+        l.add("moh_bill_refund_event");
         l.add("moh_bill_patient_service_bill");
         l.add("moh_bill_billable_service");
         l.add("moh_bill_payment");
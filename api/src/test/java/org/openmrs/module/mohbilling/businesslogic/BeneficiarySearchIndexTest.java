@@ -0,0 +1,90 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.mohbilling.businesslogic;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.openmrs.Patient;
+import org.openmrs.PersonName;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.mohbilling.BillingTestData;
+import org.openmrs.module.mohbilling.model.Beneficiary;
+import org.openmrs.module.mohbilling.model.Insurance;
+import org.openmrs.test.BaseModuleContextSensitiveTest;
+
+import java.util.Arrays;
+
+public class BeneficiarySearchIndexTest extends BaseModuleContextSensitiveTest {
+
+    @After
+    public void clearIndex() {
+        BeneficiarySearchIndex.clear();
+    }
+
+    @Test
+    public void search_shouldFindTheBeneficiariesByTheBeginningOfTheirTerms() {
+        renamePatient("Jean", "Habimana");
+        Insurance insurance = BillingTestData.createInsurance("RAMA", 85f, "2015-01-01");
+        Beneficiary first = BillingTestData.createBeneficiary(insurance, null, "RAMA-002");
+        Beneficiary second = BillingTestData.createBeneficiary(insurance, null, "RAMA-001");
+        Beneficiary other = BillingTestData.createBeneficiary(insurance, null, "MMI-001");
+        Context.flushSession();
+        BeneficiarySearchIndex.rebuild();
+
+        Assert.assertEquals(Arrays.asList(second.getBeneficiaryId(), first.getBeneficiaryId()),
+                BeneficiarySearchIndex.search(" rama-00", 10));
+        Assert.assertEquals(Arrays.asList(second.getBeneficiaryId()), BeneficiarySearchIndex.search("RAMA", 1));
+        Assert.assertEquals(Arrays.asList(first.getBeneficiaryId(), second.getBeneficiaryId(), other.getBeneficiaryId()),
+                BeneficiarySearchIndex.search("habimana  j", 10));
+        Assert.assertEquals(3, BeneficiarySearchIndex.search("Jean Habi", 10).size());
+        Assert.assertTrue(BeneficiarySearchIndex.search("RAMA-003", 10).isEmpty());
+        Assert.assertTrue(BeneficiarySearchIndex.search("  ", 10).isEmpty());
+    }
+
+    @Test
+    public void update_shouldSearchTheChangedBeneficiariesByTheirNewTerms() {
+        renamePatient("Jean", "Habimana");
+        Insurance insurance = BillingTestData.createInsurance("RAMA", 85f, "2015-01-01");
+        Beneficiary retired = BillingTestData.createBeneficiary(insurance, null, "RAMA-002");
+        Beneficiary renamed = BillingTestData.createBeneficiary(insurance, null, "RAMA-001");
+        Context.flushSession();
+        BeneficiarySearchIndex.rebuild();
+
+        retired.setRetired(true);
+        BeneficiarySearchIndex.update(retired.getInsurancePolicy());
+        Assert.assertTrue(BeneficiarySearchIndex.search("RAMA-002", 10).isEmpty());
+        Assert.assertEquals(Arrays.asList(renamed.getBeneficiaryId()), BeneficiarySearchIndex.search("RAMA", 10));
+
+        // the names edited in the patient dashboard
+        Patient patient = renamePatient("Marie", "Uwase");
+        Context.flushSession();
+        BeneficiarySearchIndex.update(patient);
+        Assert.assertEquals(Arrays.asList(renamed.getBeneficiaryId()), BeneficiarySearchIndex.search("uwase m", 10));
+        Assert.assertTrue(BeneficiarySearchIndex.search("HABIMANA", 10).isEmpty());
+
+        // built again from the database, where the names were saved
+        BeneficiarySearchIndex.rebuild();
+        Assert.assertTrue(BeneficiarySearchIndex.search("MARIE", 10).contains(renamed.getBeneficiaryId()));
+        Assert.assertTrue(BeneficiarySearchIndex.search("HABIMANA", 10).isEmpty());
+    }
+
+    /**
+     * Sets the preferred name of the patient 2 of the standard test dataset, the owner of the test policies
+     */
+    private Patient renamePatient(String givenName, String familyName) {
+        Patient patient = Context.getPatientService().getPatient(2);
+        PersonName name = patient.getPersonName();
+        name.setGivenName(givenName);
+        name.setFamilyName(familyName);
+        name.setPreferred(true);
+        return patient;
+    }
+}
@@ -0,0 +1,105 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.mohbilling.businesslogic;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+public class BeneficiaryTermsTest {
+
+    @Test
+    public void getTerm_shouldReturnTheTermsSortedWithTheirBeneficiary() {
+        BeneficiaryTerms terms = createTerms("RAMA-002", "MMI-001", "RAMA-001", "RAMA", "RAMA-001");
+
+        Assert.assertEquals(5, terms.size());
+        List<String> sorted = new ArrayList<String>();
+        List<Integer> ids = new ArrayList<Integer>();
+        for (int i = 0; i < terms.size(); i++) {
+            sorted.add(terms.getTerm(i));
+            ids.add(terms.getBeneficiaryId(i));
+        }
+        Assert.assertEquals(Arrays.asList("MMI-001", "RAMA", "RAMA-001", "RAMA-001", "RAMA-002"), sorted);
+        // the equal terms keep the order of their beneficiaries
+        Assert.assertEquals(Arrays.asList(2, 4, 3, 5, 1), ids);
+    }
+
+    @Test
+    public void lowerBound_shouldFindTheFirstTermNotLowerThanThePrefix() {
+        BeneficiaryTerms terms = createTerms("RAMA-002", "MMI-001", "RAMA-001", "RAMA", "RAMA-001");
+
+        Assert.assertEquals(0, terms.lowerBound("A"));
+        Assert.assertEquals(0, terms.lowerBound("MMI-001"));
+        Assert.assertEquals(1, terms.lowerBound("MMI-0010"));
+        Assert.assertEquals(1, terms.lowerBound("RAMA"));
+        Assert.assertEquals(2, terms.lowerBound("RAMA-"));
+        Assert.assertEquals(2, terms.lowerBound("RAMA-001"));
+        Assert.assertEquals(4, terms.lowerBound("RAMA-002"));
+        Assert.assertEquals(5, terms.lowerBound("RAMA-0020"));
+        Assert.assertEquals(5, terms.lowerBound("Z"));
+
+        Assert.assertEquals(0, createTerms().lowerBound("A"));
+    }
+
+    @Test
+    public void startsWith_shouldNotMatchTheTermsShorterThanThePrefix() {
+        BeneficiaryTerms terms = createTerms("RAMA", "RAMA-001");
+
+        Assert.assertTrue(terms.startsWith(0, "RAM"));
+        Assert.assertTrue(terms.startsWith(0, "RAMA"));
+        Assert.assertFalse(terms.startsWith(0, "RAMA-"));
+        Assert.assertTrue(terms.startsWith(1, "RAMA-"));
+        Assert.assertFalse(terms.startsWith(1, "RAMA-002"));
+    }
+
+    @Test
+    public void addMatches_shouldAddTheBeneficiariesOfTheTermsStartingWithThePrefix() {
+        BeneficiaryTerms terms = createTerms("RAMA-002", "MMI-001", "RAMA-001", "RAMA", "RAMA-001");
+        List<Integer> none = Collections.emptyList();
+
+        Assert.assertEquals(Arrays.asList(4, 3, 5, 1), addMatches(terms, "RAMA", none, 10));
+        Assert.assertEquals(Arrays.asList(3, 5, 1), addMatches(terms, "RAMA-00", none, 10));
+        Assert.assertEquals(Arrays.asList(3, 1), addMatches(terms, "RAMA-00", Arrays.asList(5), 10));
+        Assert.assertEquals(Arrays.asList(3, 5), addMatches(terms, "RAMA-00", none, 2));
+        Assert.assertEquals(Arrays.asList(2), addMatches(terms, "M", none, 10));
+        Assert.assertTrue(addMatches(terms, "N", none, 10).isEmpty());
+        Assert.assertTrue(addMatches(terms, "RAMA-0020", none, 10).isEmpty());
+        Assert.assertTrue(addMatches(createTerms(), "RAMA", none, 10).isEmpty());
+    }
+
+    @Test
+    public void normalize_shouldUpperCaseTheTextWithSingleSpaces() {
+        Assert.assertEquals("HABIMANA JEAN", BeneficiaryTerms.normalize("  Habimana \t  jean "));
+        Assert.assertNull(BeneficiaryTerms.normalize("   "));
+        Assert.assertNull(BeneficiaryTerms.normalize(null));
+    }
+
+    /**
+     * @return the terms, the beneficiary of each being its position from 1
+     */
+    private BeneficiaryTerms createTerms(String... terms) {
+        List<Integer> ids = new ArrayList<Integer>();
+        for (int i = 0; i < terms.length; i++)
+            ids.add(i + 1);
+        return new BeneficiaryTerms(Arrays.asList(terms), ids);
+    }
+
+    private List<Integer> addMatches(BeneficiaryTerms terms, String prefix, List<Integer> excludedIds, int maxResults) {
+        Set<Integer> matches = new LinkedHashSet<Integer>();
+        terms.addMatches(prefix, excludedIds, matches, maxResults);
+        return new ArrayList<Integer>(matches);
+    }
+}
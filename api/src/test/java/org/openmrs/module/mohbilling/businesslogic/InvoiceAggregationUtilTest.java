@@ -0,0 +1,59 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.mohbilling.businesslogic;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.mohbilling.BillingTestData;
+import org.openmrs.module.mohbilling.model.Beneficiary;
+import org.openmrs.module.mohbilling.model.BillableService;
+import org.openmrs.module.mohbilling.model.Category;
+import org.openmrs.module.mohbilling.model.Insurance;
+import org.openmrs.module.mohbilling.model.InvoiceAggregation;
+import org.openmrs.module.mohbilling.model.PatientBill;
+import org.openmrs.module.mohbilling.model.PatientInvoice;
+import org.openmrs.module.mohbilling.service.BillingService;
+import org.openmrs.test.BaseModuleContextSensitiveTest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class InvoiceAggregationUtilTest extends BaseModuleContextSensitiveTest {
+
+    @Test
+    public void aggregate_shouldOrderTheInvoicesByBillId() {
+        Insurance insurance = BillingTestData.createInsurance("RAMA", 85f, "2015-01-01");
+        BillableService lab = BillingTestData.createBillableService(insurance, BillingTestData.CBC, 1000, Category.LABORATOIRE);
+        Beneficiary beneficiary = BillingTestData.createBeneficiary(insurance, null, "RAMA-001");
+
+        PatientBill first = createBill(beneficiary, lab, "2015-03-02");
+        PatientBill second = createBill(beneficiary, lab, "2015-03-02");
+        PatientBill earlier = createBill(beneficiary, lab, "2015-03-01");
+        Context.flushSession();
+
+        InvoiceAggregation aggregation = InvoiceAggregationUtil.aggregate(Arrays.asList(second, first, earlier));
+
+        List<PatientBill> invoiceBills = new ArrayList<PatientBill>();
+        for (PatientInvoice invoice : aggregation.getInvoices())
+            invoiceBills.add(invoice.getPatientBill());
+        // the order of the bill cohort query, whatever the created dates
+        Assert.assertEquals(Arrays.asList(first, second, earlier), invoiceBills);
+        Assert.assertEquals(3000.0, aggregation.getTotal(), 0.001);
+    }
+
+    private PatientBill createBill(Beneficiary beneficiary, BillableService service, String createdDate) {
+        PatientBill bill = BillingTestData.createPatientBill(beneficiary, createdDate);
+        BillingTestData.addBillItem(bill, service, 1000, 1, false);
+        Context.getService(BillingService.class).savePatientBill(bill);
+        return bill;
+    }
+}
@@ -0,0 +1,96 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.mohbilling.businesslogic;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openmrs.module.mohbilling.model.BillableService;
+import org.openmrs.module.mohbilling.model.Consommation;
+import org.openmrs.module.mohbilling.model.FacilityServicePrice;
+import org.openmrs.module.mohbilling.model.Invoice;
+import org.openmrs.module.mohbilling.model.PatientBill;
+import org.openmrs.module.mohbilling.model.PatientInvoice;
+import org.openmrs.module.mohbilling.model.PatientServiceBill;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+public class InvoiceCategoryClassifierTest {
+
+    @Test
+    public void classify_shouldGroupTheItemsInTheOrderOfTheGroupPrefixes() {
+        PatientBill bill = new PatientBill();
+        bill.setCreatedDate(new Date());
+        bill.setBillItems(new LinkedHashSet<PatientServiceBill>());
+        bill.getBillItems().add(createItem(1, "RADIOLOGIE", "Radio thorax", "2000", "1"));
+        bill.getBillItems().add(createItem(2, "ECHOGRAPHIE ABDOMINALE", "Echo", "1500", "2"));
+        bill.getBillItems().add(createItem(3, "FORMALITES ADMINISTRATIVES", "Ambulance Kigali", "10000", "1"));
+        bill.getBillItems().add(createItem(4, "FORMALITES ADMINISTRATIVES", "Fiche", "100.55", "1"));
+        bill.getBillItems().add(createItem(5, "AMBULANCE", "Ambulance", "500", "1"));
+        bill.getBillItems().add(createItem(6, "PHARMACIE", "Unknown", "999", "1"));
+
+        PatientInvoice invoice = new InvoiceCategoryClassifier(InvoiceCategoryClassifier.getDefaultGroups())
+                .classify(bill, 80);
+
+        Assert.assertEquals(new ArrayList<String>(InvoiceCategoryClassifier.getDefaultGroups().keySet()),
+                new ArrayList<String>(invoice.getInvoiceMap().keySet()));
+
+        Invoice imagery = invoice.getInvoiceMap().get("IMAGERIE");
+        Assert.assertEquals(Arrays.asList("Echo", "Radio thorax"), getLibelles(imagery));
+        Assert.assertEquals(5000.0, imagery.getSubTotal(), 0);
+
+        // the ambulance lines of the other services replace the ambulance group
+        Assert.assertEquals(Arrays.asList("Ambulance Kigali"), getLibelles(invoice.getInvoiceMap().get("AMBULANCE")));
+        Assert.assertEquals(Arrays.asList("Fiche"), getLibelles(invoice.getInvoiceMap().get("AUTRES")));
+        Assert.assertEquals(100.55, invoice.getInvoiceMap().get("AUTRES").getSubTotal(), 0);
+        Assert.assertTrue(getLibelles(invoice.getInvoiceMap().get("CONSULTATION")).isEmpty());
+
+        Assert.assertEquals(15600.55, invoice.getTotalAmount(), 0);
+        Assert.assertEquals(12480.44, invoice.getInsuranceCost(), 0);
+        Assert.assertEquals(3120.11, invoice.getPatientCost(), 0);
+    }
+
+    @Test
+    public void parseGroups_shouldUseTheDefaultGroupsWhenBlankOrMalformed() {
+        Assert.assertEquals(InvoiceCategoryClassifier.getDefaultGroups(), InvoiceCategoryClassifier.parseGroups(" "));
+        Assert.assertEquals(InvoiceCategoryClassifier.getDefaultGroups(),
+                InvoiceCategoryClassifier.parseGroups("LABO:LABORATOIRE;MEDICAMENTS"));
+        Assert.assertEquals(Arrays.asList("ECHOGRAPHIE", "RADIOLOGIE"),
+                InvoiceCategoryClassifier.parseGroups("LABO:LABORATOIRE; IMAGERIE: ECHOGRAPHIE ,RADIOLOGIE")
+                        .get("IMAGERIE"));
+    }
+
+    private PatientServiceBill createItem(int id, String category, String name, String unitPrice, String quantity) {
+        FacilityServicePrice fsp = new FacilityServicePrice();
+        fsp.setCategory(category);
+        fsp.setName(name);
+        BillableService service = new BillableService();
+        service.setFacilityServicePrice(fsp);
+
+        PatientServiceBill item = new PatientServiceBill();
+        item.setPatientServiceBillId(id);
+        item.setService(service);
+        item.setServiceDate(new Date());
+        item.setUnitPrice(new BigDecimal(unitPrice));
+        item.setQuantity(new BigDecimal(quantity));
+        return item;
+    }
+
+    private List<String> getLibelles(Invoice invoice) {
+        List<String> libelles = new ArrayList<String>();
+        for (Consommation c : invoice.getConsommationList())
+            libelles.add(c.getLibelle());
+        return libelles;
+    }
+}
@@ -0,0 +1,32 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.mohbilling.businesslogic;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.openmrs.test.BaseModuleContextSensitiveTest;
+
+public class MohBillingTagUtilTest extends BaseModuleContextSensitiveTest {
+
+    private static final Integer UNKNOWN_BILL_ID = 999999;
+
+    @After
+    public void clearBalances() {
+        MohBillingTagUtil.clearBalances();
+    }
+
+    @Test
+    public void getTotalAmountNotPaidByPatientBill_shouldBeBlankWithoutBalance() {
+        Assert.assertEquals("", MohBillingTagUtil.getTotalAmountNotPaidByPatientBill(UNKNOWN_BILL_ID));
+        Assert.assertEquals("", MohBillingTagUtil.getTotalAmountPaidByPatientBill(UNKNOWN_BILL_ID));
+        Assert.assertEquals("", MohBillingTagUtil.getAmountPaidByThirdPart(UNKNOWN_BILL_ID));
+    }
+}
@@ -0,0 +1,44 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.mohbilling.businesslogic;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+public class ReportJobTest {
+
+    private static final SimpleDateFormat DATE_TIME = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+
+    @Test
+    public void getKey_shouldBeTheSameForTheSameReportAndParameters() throws Exception {
+        Date start = DATE_TIME.parse("2015-03-01 00:00:00");
+        Date end = DATE_TIME.parse("2015-03-31 00:00:00");
+
+        Assert.assertEquals(new RecoveryInvoiceReportJob(3, start, end).getKey(),
+                new RecoveryInvoiceReportJob(3, new Date(start.getTime()), new Date(end.getTime())).getKey());
+        Assert.assertFalse(new RecoveryInvoiceReportJob(3, start, end).getKey().equals(
+                new RecoveryInvoiceReportJob(4, start, end).getKey()));
+        Assert.assertFalse(new RevenueReportJob(start, end, null).getKey().equals(
+                new RevenueReportJob(start, end, 1).getKey()));
+    }
+
+    @Test
+    public void isReusable_shouldBeTrueOnlyOnceTheLastDayOfThePeriodIsOver() throws Exception {
+        ReportJob job = new RecoveryInvoiceReportJob(3, DATE_TIME.parse("2015-03-01 00:00:00"),
+                DATE_TIME.parse("2015-03-31 00:00:00"));
+
+        Assert.assertFalse(job.isReusable(DATE_TIME.parse("2015-03-31 18:00:00")));
+        Assert.assertTrue(job.isReusable(DATE_TIME.parse("2015-04-01 00:00:00")));
+        Assert.assertTrue(job.isReusable(DATE_TIME.parse("2015-04-02 08:00:00")));
+    }
+}
@@ -0,0 +1,79 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.mohbilling.businesslogic;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openmrs.module.mohbilling.model.Insurance;
+import org.openmrs.module.mohbilling.model.InsuranceRate;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+public class TariffMatrixTest {
+
+    private static final long DAY = 24L * 60 * 60 * 1000;
+
+    @Test
+    public void getRate_shouldMatchTheRateOnDateOfTheInsurance() {
+        Insurance insurance = createInsurance();
+        TariffMatrix matrix = new TariffMatrix(1, asList(insurance), new ArrayList<Object[]>());
+
+        for (int day : new int[] { 5, 20 })
+            Assert.assertEquals(insurance.getRateOnDate(day(day)).getRate(), matrix.getRate(3, day(day)));
+        Assert.assertEquals(Float.valueOf(85f), matrix.getRate(3, day(5)));
+        Assert.assertNull(matrix.getRate(4, day(5)));
+    }
+
+    @Test
+    public void getMaximaToPay_shouldUseTheTariffValidOnTheDate() {
+        List<Object[]> tariffs = new ArrayList<Object[]>();
+        tariffs.add(new Object[] { 7, 3, 100, new BigDecimal("1000"), day(1), day(10), false, null });
+        tariffs.add(new Object[] { 7, 3, 101, new BigDecimal("1250.50"), day(10), null, false, null });
+        tariffs.add(new Object[] { 7, 3, 102, new BigDecimal("5"), day(11), null, true, day(12) });
+        TariffMatrix matrix = new TariffMatrix(1, asList(createInsurance()), tariffs);
+
+        Assert.assertEquals(new BigDecimal("1000.00"), matrix.getMaximaToPay(7, 3, day(5)));
+        Assert.assertEquals(Integer.valueOf(102), matrix.getBillableServiceId(7, 3, new Date(day(11).getTime() + 1)));
+        Assert.assertEquals(new BigDecimal("1250.50"), matrix.getMaximaToPay(7, 3, day(15)));
+        Assert.assertNull(matrix.getMaximaToPay(7, 3, day(0)));
+        Assert.assertNull(matrix.getMaximaToPay(8, 3, day(5)));
+    }
+
+    private Insurance createInsurance() {
+        Insurance insurance = new Insurance();
+        insurance.setInsuranceId(3);
+        insurance.addInsuranceRate(createRate(1, 85f, day(10)));
+        insurance.addInsuranceRate(createRate(2, 90f, null));
+        return insurance;
+    }
+
+    private InsuranceRate createRate(int id, float rate, Date retiredDate) {
+        InsuranceRate insuranceRate = new InsuranceRate();
+        insuranceRate.setInsuranceRateId(id);
+        insuranceRate.setRate(rate);
+        insuranceRate.setStartDate(day(0));
+        insuranceRate.setRetired(retiredDate != null);
+        insuranceRate.setRetiredDate(retiredDate);
+        return insuranceRate;
+    }
+
+    private List<Insurance> asList(Insurance insurance) {
+        List<Insurance> insurances = new ArrayList<Insurance>();
+        insurances.add(insurance);
+        return insurances;
+    }
+
+    private Date day(int day) {
+        return new Date(day * DAY);
+    }
+}
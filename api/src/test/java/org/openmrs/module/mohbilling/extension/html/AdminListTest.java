@@ -0,0 +1,36 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.mohbilling.extension.html;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openmrs.test.BaseModuleContextSensitiveTest;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+
+public class AdminListTest extends BaseModuleContextSensitiveTest {
+
+    @Test
+    public void getLinks_shouldRenderTheBillingAndTheMetricsLinksSideBySide() {
+        // the admin of the test dataset has every privilege
+        Map<String, String> billingLinks = new AdminList().getLinks();
+        Map<String, String> metricsLinks = new MetricsAdminList().getLinks();
+
+        Assert.assertEquals(new HashSet<String>(Arrays.asList("module/mohbilling/facilityService.list",
+                "module/mohbilling/insurance.list", "module/mohbilling/insurancePolicySearch.form",
+                "module/mohbilling/patientSearchBill.form", "module/mohbilling/cohort.form")), billingLinks.keySet());
+        Assert.assertEquals(Arrays.asList("module/mohbilling/serviceMetrics.list", "module/mohbilling/sqlDiagnostics.list"),
+                Arrays.asList(metricsLinks.keySet().toArray()));
+        Assert.assertEquals("View Billing", new AdminList().getRequiredPrivilege());
+        Assert.assertEquals("View Administration Functions", new MetricsAdminList().getRequiredPrivilege());
+    }
+}
@@ -13,11 +13,34 @@ import org.junit.Assert;
 import org.junit.Test;
 import org.openmrs.api.context.Context;
 import org.openmrs.module.mohbilling.BillingTestData;
+import org.openmrs.module.mohbilling.SyntheticBillingData;
+import org.openmrs.module.mohbilling.metrics.RequestSqlStats;
+import org.openmrs.module.mohbilling.metrics.SqlDiagnostics;
+import org.openmrs.module.mohbilling.model.Beneficiary;
+import org.openmrs.module.mohbilling.model.BillPayment;
+import org.openmrs.module.mohbilling.model.BillableService;
+import org.openmrs.module.mohbilling.model.Category;
+import org.openmrs.module.mohbilling.model.CohortQuery;
 import org.openmrs.module.mohbilling.model.FacilityServicePrice;
+import org.openmrs.module.mohbilling.model.Insurance;
+import org.openmrs.module.mohbilling.model.PatientBill;
+import org.openmrs.module.mohbilling.model.PatientBillBalance;
+import org.openmrs.module.mohbilling.model.PatientServiceBill;
+import org.openmrs.module.mohbilling.model.ThirdParty;
 import org.openmrs.module.mohbilling.service.BillingService;
 import org.openmrs.test.BaseModuleContextSensitiveTest;
 
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 public class BillingServiceImplTest extends BaseModuleContextSensitiveTest {
 
@@ -28,6 +51,552 @@ public class BillingServiceImplTest extends BaseModuleContextSensitiveTest {
         Assert.assertEquals(11, allItems.size());
     }
 
+    @Test
+    public void dailyRevenueTest() throws Exception {
+        // the rollup has no mapping, its table is created before any data as the DDL ends the transaction
+        SyntheticBillingData.createDailyRevenueTable(getConnection());
+
+        Insurance insurance = BillingTestData.createInsurance("RAMA", 85f, "2015-01-01");
+        BillableService lab = BillingTestData.createBillableService(insurance, BillingTestData.CBC, 1000, Category.LABORATOIRE);
+        BillableService drug = BillingTestData.createBillableService(insurance, BillingTestData.AMOXICILLIN, 200, Category.MEDICAMENTS);
+        BillableService other = BillingTestData.createBillableService(insurance, "AMBULANCE", 300, Category.AUTRES);
+        Beneficiary beneficiary = BillingTestData.createBeneficiary(insurance, null, "RAMA-001");
+
+        PatientBill bill = BillingTestData.createPatientBill(beneficiary, "2015-03-02");
+        BillingTestData.addBillItem(bill, lab, 1000, 1, false);
+        BillingTestData.addBillItem(bill, drug, 200, 2, false);
+        BillingTestData.addBillItem(bill, other, 300, 1, false);
+        BillingTestData.addBillItem(bill, lab, 5000, 1, true);
+        BillingTestData.addBillPayment(bill, 100, "2015-03-02", false);
+        BillingTestData.addBillPayment(bill, 50, "2015-03-03", false);
+        BillingTestData.addBillPayment(bill, 999, "2015-03-03", true);
+        getBillingService().savePatientBill(bill);
+
+        PatientBill secondBill = BillingTestData.createPatientBill(beneficiary, "2015-03-03");
+        BillingTestData.addBillItem(secondBill, lab, 1000, 2, false);
+        BillingTestData.addBillPayment(secondBill, 300, "2015-03-03", false);
+        getBillingService().savePatientBill(secondBill);
+
+        PatientBill voidedBill = BillingTestData.createPatientBill(beneficiary, "2015-03-02");
+        BillingTestData.addBillItem(voidedBill, drug, 200, 10, false);
+        BillingTestData.addBillPayment(voidedBill, 300, "2015-03-02", false);
+        voidedBill.setVoided(true);
+        getBillingService().savePatientBill(voidedBill);
+
+        List<PatientBill> bills = Arrays.asList(bill, secondBill, voidedBill);
+        Map<String, Double> expected = getExpectedDailyRevenue(bills);
+
+        // the rows of each bill added as it was saved
+        assertDailyRevenue(expected, getDailyRevenue());
+        Assert.assertEquals(100.0, sumOfDay(getDailyRevenue(), "2015-03-02"), 0.01);
+        Assert.assertEquals(350.0, sumOfDay(getDailyRevenue(), "2015-03-03"), 0.01);
+
+        // the whole rollup recomputed gives the same rows
+        getBillingService().rebuildDailyRevenue();
+        assertDailyRevenue(expected, getDailyRevenue());
+
+        // the patient pays 150 of 1000 of lab, 60 of 400 of drugs and all of the 300 of other services
+        Assert.assertEquals(100 * 150 / 510.0, expected.get("2015-03-02|LABORATOIRE"), 0.01);
+        Assert.assertEquals(100 * 300 / 510.0, expected.get("2015-03-02|AUTRES"), 0.01);
+
+        Map<String, Double> report = getBillingService().getRevenueByService(BillingTestData.parseDate("2015-03-03"),
+                new String[] { "LABORATOIRE", "MEDICAMENTS", "CHIRURGIE" }, null, insurance);
+        Assert.assertEquals(300 + 50 * 150 / 510.0, report.get("LABORATOIRE"), 0.01);
+        Assert.assertEquals(50 * 60 / 510.0, report.get("MEDICAMENTS"), 0.01);
+        Assert.assertEquals(0.0, report.get("CHIRURGIE"), 0.0);
+        Assert.assertEquals(300 + 50 * 210 / 510.0, report.get("Total"), 0.01);
+
+        // a payment voided later is taken out of its day
+        for (BillPayment payment : secondBill.getPayments())
+            payment.setVoided(true);
+        getBillingService().savePatientBill(secondBill);
+        Assert.assertEquals(50.0, sumOfDay(getDailyRevenue(), "2015-03-03"), 0.01);
+    }
+
+    @Test
+    public void getRevenueByService_shouldGiveTheFiguresOfTheFormerJoinQuery() throws Exception {
+        SyntheticBillingData.createDailyRevenueTable(getConnection());
+
+        // the former query summed the patient share of the items of the bills paid on the day, which is the cash
+        // received when each bill is paid in full by a single payment, with a single rate and no AUTRES service
+        Insurance insurance = BillingTestData.createInsurance("RAMA", 80f, "2015-01-01");
+        BillableService lab = BillingTestData.createBillableService(insurance, BillingTestData.CBC, 1000, Category.LABORATOIRE);
+        BillableService drug = BillingTestData.createBillableService(insurance, BillingTestData.AMOXICILLIN, 200, Category.MEDICAMENTS);
+        Beneficiary beneficiary = BillingTestData.createBeneficiary(insurance, null, "RAMA-001");
+
+        PatientBill bill = BillingTestData.createPatientBill(beneficiary, "2015-03-02");
+        BillingTestData.addBillItem(bill, lab, 1000, 1, false);
+        BillingTestData.addBillItem(bill, drug, 200, 2, false);
+        BillingTestData.addBillPayment(bill, 280, "2015-03-02", false);
+        getBillingService().savePatientBill(bill);
+
+        // paid after being saved, only the difference of its rows reaching the rollup
+        PatientBill laterPaidBill = BillingTestData.createPatientBill(beneficiary, "2015-03-02");
+        BillingTestData.addBillItem(laterPaidBill, lab, 500, 2, false);
+        getBillingService().savePatientBill(laterPaidBill);
+        BillingTestData.addBillPayment(laterPaidBill, 200, "2015-03-02", false);
+        getBillingService().savePatientBill(laterPaidBill);
+
+        PatientBill nextDayBill = BillingTestData.createPatientBill(beneficiary, "2015-03-03");
+        BillingTestData.addBillItem(nextDayBill, drug, 100, 5, false);
+        BillingTestData.addBillPayment(nextDayBill, 100, "2015-03-03", false);
+        getBillingService().savePatientBill(nextDayBill);
+        Context.flushSession();
+
+        String[] categories = { "LABORATOIRE", "MEDICAMENTS" };
+        for (String day : new String[] { "2015-03-02", "2015-03-03" }) {
+            Map<String, Double> report = getBillingService().getRevenueByService(BillingTestData.parseDate(day), categories,
+                    null, insurance);
+            double total = 0;
+            for (String category : categories) {
+                double former = getFormerRevenueByService(day, category, insurance);
+                Assert.assertEquals(day + " " + category, former, report.get(category), 0.01);
+                total += former;
+            }
+            Assert.assertEquals(day, total, report.get("Total"), 0.01);
+        }
+        Assert.assertEquals(400.0, getFormerRevenueByService("2015-03-02", "LABORATOIRE", insurance), 0.01);
+
+        // the names are matched whatever their case, as the MySQL collation did
+        Map<String, Double> report = getBillingService().getRevenueByService(BillingTestData.parseDate("2015-03-02"),
+                new String[] { "laboratoire", "Medic" }, null, insurance);
+        Assert.assertEquals(400.0, report.get("LABORATOIRE"), 0.01);
+        Assert.assertEquals(80.0, report.get("MEDICAMENTS"), 0.01);
+        Assert.assertEquals(480.0, report.get("Total"), 0.01);
+    }
+
+    @Test
+    public void savePatientBill_shouldStoreTheBalancesAtTheRateOfTheBillDate() throws Exception {
+        SyntheticBillingData.createDailyRevenueTable(getConnection());
+
+        // 80% until June, 90% since
+        Insurance insurance = BillingTestData.createInsurance("RAMA", 90f, "2015-06-01");
+        insurance.addInsuranceRate(BillingTestData.createInsuranceRate(80f, "2015-01-01", "2015-06-01"));
+        getBillingService().saveInsurance(insurance);
+        BillableService lab = BillingTestData.createBillableService(insurance, BillingTestData.CBC, 1000, Category.LABORATOIRE);
+        BillableService other = BillingTestData.createBillableService(insurance, "AMBULANCE", 300, Category.AUTRES);
+        ThirdParty thirdParty = BillingTestData.createThirdParty("EMPLOYER", 10f);
+        Beneficiary beneficiary = BillingTestData.createBeneficiary(insurance, thirdParty, "RAMA-001");
+
+        // the patient pays 20% of the lab and all of the other service, the third party 10% of the total
+        PatientBill bill = BillingTestData.createPatientBill(beneficiary, "2015-03-02");
+        BillingTestData.addBillItem(bill, lab, 1000, 1, false);
+        BillingTestData.addBillItem(bill, other, 300, 1, false);
+        BillingTestData.addBillItem(bill, lab, 5000, 1, true);
+        BillingTestData.addBillPayment(bill, 100, "2015-03-02", false);
+        getBillingService().savePatientBill(bill);
+        assertBalances(bill, 1300, 800, 130, 370, 100, 270);
+
+        PatientBill laterBill = BillingTestData.createPatientBill(beneficiary, "2015-07-01");
+        BillingTestData.addBillItem(laterBill, lab, 1000, 1, false);
+        getBillingService().savePatientBill(laterBill);
+        assertBalances(laterBill, 1000, 900, 100, 0, 0, 0);
+
+        // read back from the columns
+        Context.flushSession();
+        Context.clearSession();
+        assertBalances(getBillingService().getPatientBill(bill.getPatientBillId()), 1300, 800, 130, 370, 100, 270);
+        Assert.assertTrue(getBillingService().getPatientBill(bill.getPatientBillId()).isBalanceConsistent());
+    }
+
+    @Test
+    public void checkPatientBillBalancesTest() throws Exception {
+        SyntheticBillingData.createDailyRevenueTable(getConnection());
+
+        Insurance insurance = BillingTestData.createInsurance("RAMA", 85f, "2015-01-01");
+        BillableService lab = BillingTestData.createBillableService(insurance, BillingTestData.CBC, 1000, Category.LABORATOIRE);
+        Beneficiary beneficiary = BillingTestData.createBeneficiary(insurance, null, "RAMA-001");
+
+        PatientBill wrongBill = BillingTestData.createPatientBill(beneficiary, "2015-03-02");
+        BillingTestData.addBillItem(wrongBill, lab, 1000, 1, false);
+        BillingTestData.addBillPayment(wrongBill, 100, "2015-03-02", false);
+        getBillingService().savePatientBill(wrongBill);
+
+        PatientBill legacyBill = BillingTestData.createPatientBill(beneficiary, "2015-03-02");
+        BillingTestData.addBillItem(legacyBill, lab, 1000, 2, false);
+        getBillingService().savePatientBill(legacyBill);
+
+        PatientBill rightBill = BillingTestData.createPatientBill(beneficiary, "2015-03-02");
+        BillingTestData.addBillItem(rightBill, lab, 1000, 1, false);
+        getBillingService().savePatientBill(rightBill);
+        Context.flushSession();
+
+        // a balance changed behind the module, and a bill recorded before the balances were stored
+        executeUpdate("update moh_bill_patient_bill set outstanding_amount = 999 where patient_bill_id = "
+                + wrongBill.getPatientBillId());
+        executeUpdate("update moh_bill_patient_bill set total_due = null, insurer_due = null, third_party_due = null,"
+                + " patient_due = null, paid_amount = null, outstanding_amount = null where patient_bill_id = "
+                + legacyBill.getPatientBillId());
+        Context.clearSession();
+
+        List<Integer> inconsistent = Arrays.asList(wrongBill.getPatientBillId(), legacyBill.getPatientBillId());
+        Assert.assertEquals(inconsistent, getBillingService().checkPatientBillBalances(false));
+        Assert.assertNull(getBillingService().getPatientBill(legacyBill.getPatientBillId()).getOutstandingAmount());
+
+        Assert.assertEquals(inconsistent, getBillingService().checkPatientBillBalances(true));
+        Context.flushSession();
+        Context.clearSession();
+        Assert.assertTrue(getBillingService().checkPatientBillBalances(false).isEmpty());
+        assertBalances(getBillingService().getPatientBill(wrongBill.getPatientBillId()), 1000, 850, 0, 150, 100, 50);
+        assertBalances(getBillingService().getPatientBill(legacyBill.getPatientBillId()), 2000, 1700, 0, 300, 0, 300);
+
+        // the rollup rebuilt once the bills were repaired
+        Assert.assertEquals(100.0, sumOfDay(getDailyRevenue(), "2015-03-02"), 0.01);
+    }
+
+    @Test
+    public void refundPatientBillTest() throws Exception {
+        SyntheticBillingData.createDailyRevenueTable(getConnection());
+
+        Insurance insurance = BillingTestData.createInsurance("RAMA", 85f, "2015-01-01");
+        BillableService lab = BillingTestData.createBillableService(insurance, BillingTestData.CBC, 1000, Category.LABORATOIRE);
+        BillableService other = BillingTestData.createBillableService(insurance, "AMBULANCE", 300, Category.AUTRES);
+        Beneficiary beneficiary = BillingTestData.createBeneficiary(insurance, null, "RAMA-001");
+
+        // the patient pays 150 of the lab and all of the 300 of the other service
+        PatientBill bill = BillingTestData.createPatientBill(beneficiary, "2015-03-02");
+        PatientServiceBill labItem = BillingTestData.addBillItem(bill, lab, 1000, 1, false);
+        PatientServiceBill otherItem = BillingTestData.addBillItem(bill, other, 300, 1, false);
+        BillingTestData.addBillPayment(bill, 450, "2015-03-02", false);
+        getBillingService().savePatientBill(bill);
+
+        PatientBill unpaidBill = BillingTestData.createPatientBill(beneficiary, "2015-03-02");
+        PatientServiceBill unpaidItem = BillingTestData.addBillItem(unpaidBill, lab, 1000, 1, false);
+        getBillingService().savePatientBill(unpaidBill);
+
+        Date startDate = new Date(System.currentTimeMillis() - 24 * 3600 * 1000L);
+        Date endDate = new Date(System.currentTimeMillis() + 24 * 3600 * 1000L);
+
+        // the patient gets back their share of the lab, the bill being only partly refunded
+        getBillingService().refundPatientBill(bill, Arrays.asList(labItem));
+        Context.flushSession();
+        Assert.assertEquals(150.0, getRefundedAmounts(bill).get(0), 0.001);
+        Assert.assertTrue(getBillingService().getRefundedBills(startDate, endDate, null).isEmpty());
+        Assert.assertEquals(150.0, getBillingService().getTotalRefundedAmount(startDate, endDate, null).doubleValue(), 0.001);
+
+        // the cash given back is a negative payment, the bill being left paid in full
+        Assert.assertEquals(2, bill.getPayments().size());
+        assertBalances(bill, 300, 0, 0, 300, 300, 0);
+
+        // then all of the other service, nothing being left of the bill
+        getBillingService().refundPatientBill(bill, Arrays.asList(otherItem));
+        Context.flushSession();
+        Assert.assertEquals(Arrays.asList(150.0, 300.0), getRefundedAmounts(bill));
+        Assert.assertEquals(0.0, bill.getAmount().doubleValue(), 0.001);
+
+        // nothing is given back of a bill which was not paid
+        getBillingService().refundPatientBill(unpaidBill, Arrays.asList(unpaidItem));
+        Context.flushSession();
+        Assert.assertEquals(Arrays.asList(0.0), getRefundedAmounts(unpaidBill));
+
+        Set<PatientBill> refundedBills = getBillingService().getRefundedBills(startDate, endDate, null);
+        Assert.assertEquals(2, refundedBills.size());
+        Assert.assertTrue(refundedBills.contains(bill));
+        Assert.assertEquals(450.0, getBillingService().getTotalRefundedAmount(startDate, endDate, null).doubleValue(), 0.001);
+        Assert.assertEquals(450.0, getBillingService().getTotalRefundedAmount(startDate, endDate, Context.getAuthenticatedUser())
+                .doubleValue(), 0.001);
+    }
+
+    @Test
+    public void getPatientBillBalancesTest() throws Exception {
+        Insurance insurance = BillingTestData.createInsurance("RAMA", 85f, "2015-01-01");
+        BillableService lab = BillingTestData.createBillableService(insurance, BillingTestData.CBC, 1000, Category.LABORATOIRE);
+        ThirdParty thirdParty = BillingTestData.createThirdParty("EMPLOYER", 5f);
+
+        PatientBill bill = BillingTestData.createPatientBill(BillingTestData.createBeneficiary(insurance, thirdParty, "RAMA-001"), "2015-03-02");
+        BillingTestData.addBillItem(bill, lab, 1000, 1, false);
+        BillingTestData.addBillItem(bill, lab, 5000, 1, true);
+        getBillingService().savePatientBill(bill);
+
+        PatientBill otherBill = BillingTestData.createPatientBill(BillingTestData.createBeneficiary(insurance, null, "RAMA-002"), "2015-03-02");
+        BillingTestData.addBillItem(otherBill, lab, 1000, 1, false);
+        getBillingService().savePatientBill(otherBill);
+        Context.flushSession();
+
+        // the third party pays 5% of the 1000 of the items left, the voided item being out of both amounts
+        List<Integer> billIds = Arrays.asList(bill.getPatientBillId(), otherBill.getPatientBillId());
+        Map<Integer, PatientBillBalance> balances = getBillingService().getPatientBillBalances(billIds);
+        Assert.assertEquals(50.0, balances.get(bill.getPatientBillId()).getThirdPartyAmount().doubleValue(), 0.001);
+        Assert.assertEquals(100.0, balances.get(bill.getPatientBillId()).getAmountNotPaid().doubleValue(), 0.001);
+        Assert.assertNull(balances.get(otherBill.getPatientBillId()).getThirdPartyAmount());
+
+        // the bills whose balances are not stored give the same amounts
+        PreparedStatement statement = getConnection().prepareStatement(
+                "update moh_bill_patient_bill set third_party_due = null, paid_amount = null, outstanding_amount = null");
+        try {
+            statement.executeUpdate();
+        }
+        finally {
+            statement.close();
+        }
+        Context.clearSession();
+
+        balances = getBillingService().getPatientBillBalances(billIds);
+        Assert.assertEquals(50.0, balances.get(bill.getPatientBillId()).getThirdPartyAmount().doubleValue(), 0.001);
+        Assert.assertEquals(100.0, balances.get(bill.getPatientBillId()).getAmountNotPaid().doubleValue(), 0.001);
+        Assert.assertNull(balances.get(otherBill.getPatientBillId()).getThirdPartyAmount());
+    }
+
+    @Test
+    public void getBillCohortTotals_shouldComputeTheBillsWithoutBalances() throws Exception {
+        SyntheticBillingData.createDailyRevenueTable(getConnection());
+
+        Insurance insurance = BillingTestData.createInsurance("RAMA", 85f, "2015-01-01");
+        BillableService lab = BillingTestData.createBillableService(insurance, BillingTestData.CBC, 1000, Category.LABORATOIRE);
+        Beneficiary beneficiary = BillingTestData.createBeneficiary(insurance, null, "RAMA-001");
+
+        PatientBill bill = BillingTestData.createPatientBill(beneficiary, "2015-03-02");
+        BillingTestData.addBillItem(bill, lab, 1000, 1, false);
+        BillingTestData.addBillPayment(bill, 100, "2015-03-02", false);
+        getBillingService().savePatientBill(bill);
+
+        PatientBill legacyBill = BillingTestData.createPatientBill(beneficiary, "2015-03-02");
+        BillingTestData.addBillItem(legacyBill, lab, 1000, 2, false);
+        BillingTestData.addBillPayment(legacyBill, 50, "2015-03-02", false);
+        getBillingService().savePatientBill(legacyBill);
+        Context.flushSession();
+
+        // a bill recorded before the balances were stored
+        executeUpdate("update moh_bill_patient_bill set total_due = null, insurer_due = null, third_party_due = null,"
+                + " patient_due = null, paid_amount = null, outstanding_amount = null where patient_bill_id = "
+                + legacyBill.getPatientBillId());
+        Context.clearSession();
+
+        CohortQuery cohortQuery = new CohortQuery();
+        cohortQuery.setInsurance(getBillingService().getInsurance(insurance.getInsuranceId()));
+        Map<String, BigDecimal> totals = getBillingService().getBillCohortTotals(cohortQuery);
+        Assert.assertEquals(3000, totals.get("totalDue").doubleValue(), 0.001);
+        Assert.assertEquals(2550, totals.get("insurerDue").doubleValue(), 0.001);
+        Assert.assertEquals(450, totals.get("patientDue").doubleValue(), 0.001);
+        Assert.assertEquals(150, totals.get("paidAmount").doubleValue(), 0.001);
+
+        // the totals are computed without being stored
+        Context.clearSession();
+        Assert.assertNull(getBillingService().getPatientBill(legacyBill.getPatientBillId()).getTotalDue());
+    }
+
+    @Test
+    public void getBillCohortStatementsTest() throws Exception {
+        SyntheticBillingData.createDailyRevenueTable(getConnection());
+
+        Insurance insurance = BillingTestData.createInsurance("RAMA", 85f, "2015-01-01");
+        BillableService lab = BillingTestData.createBillableService(insurance, BillingTestData.CBC, 1000, Category.LABORATOIRE);
+        BillableService drug = BillingTestData.createBillableService(insurance, BillingTestData.AMOXICILLIN, 200, Category.MEDICAMENTS);
+        Beneficiary beneficiary = BillingTestData.createBeneficiary(insurance, null, "RAMA-001");
+
+        int billCount = 60;
+        for (int i = 0; i < billCount; i++) {
+            PatientBill bill = BillingTestData.createPatientBill(beneficiary, "2015-03-02");
+            BillingTestData.addBillItem(bill, lab, 1000, 1, false);
+            BillingTestData.addBillItem(bill, drug, 200, 2, false);
+            BillingTestData.addBillPayment(bill, 100, "2015-03-02", false);
+            getBillingService().savePatientBill(bill);
+        }
+        Context.flushSession();
+        Context.clearSession();
+
+        CohortQuery cohortQuery = new CohortQuery();
+        cohortQuery.setInsurance(getBillingService().getInsurance(insurance.getInsuranceId()));
+
+        // the statements of the cohort page: its bills, then their items and payments as the rows show them
+        List<Integer> billIds = new ArrayList<Integer>();
+        RequestSqlStats stats = SqlDiagnostics.begin("cohort");
+        try {
+            List<PatientBill> bills = getBillingService().getBillCohort(cohortQuery);
+            Assert.assertEquals(billCount, bills.size());
+            for (PatientBill bill : bills) {
+                billIds.add(bill.getPatientBillId());
+                Assert.assertEquals(2, bill.getBillItems().size());
+                for (PatientServiceBill item : bill.getBillItems())
+                    item.getService().getFacilityServicePrice().getName();
+                Assert.assertEquals(1, bill.getPayments().size());
+            }
+        }
+        finally {
+            SqlDiagnostics.end();
+        }
+
+        // the items and payments of 50 bills are selected at once, rather than twice by bill when they were eager
+        Assert.assertTrue("statements: " + stats.getStatements(), stats.getStatements() > 0 && stats.getStatements() <= 20);
+        Assert.assertTrue("repeated: " + stats.getRepeatedShapes(), stats.getRepeatedShapes().isEmpty());
+
+        // the eager mapping selected the items and the payments of each bill it loaded: each bill is read in a session of
+        // its own, so that its collections are selected alone as they were then
+        RequestSqlStats eagerStats = SqlDiagnostics.begin("cohort-by-bill");
+        try {
+            for (Integer billId : billIds) {
+                Context.clearSession();
+                PatientBill bill = getBillingService().getPatientBill(billId);
+                Assert.assertEquals(2, bill.getBillItems().size());
+                Assert.assertEquals(1, bill.getPayments().size());
+            }
+        }
+        finally {
+            SqlDiagnostics.end();
+        }
+        int itemSelects = countStatements(eagerStats, "moh_bill_patient_service_bill");
+        int paymentSelects = countStatements(eagerStats, "moh_bill_payment");
+        Assert.assertEquals(billCount, itemSelects);
+        Assert.assertEquals(billCount, paymentSelects);
+
+        // the cohort query and two selects by bill before, 121 statements for 60 bills
+        int eagerStatements = 1 + itemSelects + paymentSelects;
+        Assert.assertTrue("statements: " + stats.getStatements() + " rather than " + eagerStatements,
+                stats.getStatements() * 10 <= eagerStatements);
+    }
+
+    /**
+     * @return the statements of the request selecting from the table, if they were repeated
+     */
+    private int countStatements(RequestSqlStats stats, String table) {
+        int count = 0;
+        for (Map.Entry<String, Integer> shape : stats.getRepeatedShapes().entrySet())
+            if (shape.getKey().contains(" from " + table + " "))
+                count += shape.getValue();
+        return count;
+    }
+
+    /**
+     * Computes the rollup rows from the bills: the payments of each bill received on a day are spread over the categories
+     * of its items in proportion to what the patient pays of each
+     */
+    private Map<String, Double> getExpectedDailyRevenue(List<PatientBill> bills) {
+        SimpleDateFormat df = new SimpleDateFormat("yyyy-MM-dd");
+        Map<String, Double> expected = new HashMap<String, Double>();
+        for (PatientBill bill : bills) {
+            if (Boolean.TRUE.equals(bill.getVoided()))
+                continue;
+
+            Map<String, Double> costs = new HashMap<String, Double>();
+            double cost = 0;
+            double insuredCost = 0;
+            for (PatientServiceBill psb : bill.getBillItems()) {
+                if (Boolean.TRUE.equals(psb.isVoided()))
+                    continue;
+                String category = psb.getService().getFacilityServicePrice().getCategory();
+                double itemCost = psb.getAmount().doubleValue();
+                costs.put(category, (costs.containsKey(category) ? costs.get(category) : 0) + itemCost);
+                cost += itemCost;
+                if (!"AUTRES".equals(category))
+                    insuredCost += itemCost;
+            }
+            double insurerDue = bill.getInsurerDue().doubleValue();
+
+            for (BillPayment payment : bill.getPayments()) {
+                if (payment.isVoided())
+                    continue;
+                for (Map.Entry<String, Double> entry : costs.entrySet()) {
+                    double share = entry.getValue();
+                    if (!"AUTRES".equals(entry.getKey()) && insuredCost > 0)
+                        share -= entry.getValue() * insurerDue / insuredCost;
+                    String key = df.format(payment.getDateReceived()) + "|" + entry.getKey();
+                    double amount = payment.getAmountPaid().doubleValue() * share / (cost - insurerDue);
+                    expected.put(key, (expected.containsKey(key) ? expected.get(key) : 0) + amount);
+                }
+            }
+        }
+        return expected;
+    }
+
+    private void assertBalances(PatientBill bill, double totalDue, double insurerDue, double thirdPartyDue, double patientDue,
+                                double paidAmount, double outstandingAmount) {
+        Assert.assertEquals(totalDue, bill.getTotalDue().doubleValue(), 0.001);
+        Assert.assertEquals(insurerDue, bill.getInsurerDue().doubleValue(), 0.001);
+        Assert.assertEquals(thirdPartyDue, bill.getThirdPartyDue().doubleValue(), 0.001);
+        Assert.assertEquals(patientDue, bill.getPatientDue().doubleValue(), 0.001);
+        Assert.assertEquals(paidAmount, bill.getPaidAmount().doubleValue(), 0.001);
+        Assert.assertEquals(outstandingAmount, bill.getOutstandingAmount().doubleValue(), 0.001);
+    }
+
+    private void executeUpdate(String sql) throws Exception {
+        PreparedStatement statement = getConnection().prepareStatement(sql);
+        try {
+            statement.executeUpdate();
+        }
+        finally {
+            statement.close();
+        }
+    }
+
+    /**
+     * @return the amounts of the refund events of the bill, in the order they were recorded
+     */
+    private List<Double> getRefundedAmounts(PatientBill bill) throws Exception {
+        List<Double> amounts = new ArrayList<Double>();
+        PreparedStatement statement = getConnection().prepareStatement(
+                "select amount from moh_bill_refund_event where patient_bill_id = ? order by refund_event_id");
+        try {
+            statement.setInt(1, bill.getPatientBillId());
+            ResultSet rs = statement.executeQuery();
+            while (rs.next())
+                amounts.add(rs.getDouble(1));
+        }
+        finally {
+            statement.close();
+        }
+        return amounts;
+    }
+
+    /**
+     * @return the revenue of the category on the day as computed by the join query the report used before the
+     *         daily revenue rollup
+     */
+    private double getFormerRevenueByService(String day, String category, Insurance insurance) throws Exception {
+        PreparedStatement statement = getConnection().prepareStatement(
+                "SELECT SUM(((m.unit_price * m.quantity)*(100-ir.rate)/100))"
+                        + " FROM moh_bill_patient_service_bill m"
+                        + " inner join moh_bill_billable_service bs on bs.billable_service_id = m.billable_service_id"
+                        + " inner join moh_bill_facility_service_price fsp on fsp.facility_service_price_id = bs.facility_service_price_id"
+                        + " inner join moh_bill_patient_bill pb on pb.patient_bill_id = m.patient_bill_id"
+                        + " inner join moh_bill_beneficiary bn on pb.beneficiary_id = bn.beneficiary_id"
+                        + " inner join moh_bill_insurance_rate ir on ir.insurance_id = bs.insurance_id"
+                        + " inner join moh_bill_insurance_policy ip on ip.insurance_policy_id = bn.insurance_policy_id"
+                        + " inner join moh_bill_payment pay on pay.patient_bill_id = pb.patient_bill_id"
+                        + " where fsp.category like ? and pay.date_received = ? and ip.insurance_id = ?");
+        try {
+            statement.setString(1, "%" + category + "%");
+            statement.setDate(2, new java.sql.Date(BillingTestData.parseDate(day).getTime()));
+            statement.setInt(3, insurance.getInsuranceId());
+            ResultSet rs = statement.executeQuery();
+            rs.next();
+            return rs.getDouble(1);
+        }
+        finally {
+            statement.close();
+        }
+    }
+
+    private Map<String, Double> getDailyRevenue() throws Exception {
+        Context.flushSession();
+        SimpleDateFormat df = new SimpleDateFormat("yyyy-MM-dd");
+        Map<String, Double> rows = new HashMap<String, Double>();
+        PreparedStatement statement = getConnection().prepareStatement(
+                "select revenue_date, category, sum(amount) from moh_bill_daily_revenue group by revenue_date, category");
+        try {
+            ResultSet rs = statement.executeQuery();
+            while (rs.next())
+                rows.put(df.format(rs.getDate(1)) + "|" + rs.getString(2), rs.getDouble(3));
+        }
+        finally {
+            statement.close();
+        }
+        return rows;
+    }
+
+    private void assertDailyRevenue(Map<String, Double> expected, Map<String, Double> actual) {
+        Assert.assertEquals(expected.keySet(), actual.keySet());
+        for (String key : expected.keySet())
+            Assert.assertEquals(key, expected.get(key), actual.get(key), 0.01);
+    }
+
+    private double sumOfDay(Map<String, Double> rows, String day) {
+        double sum = 0;
+        for (Map.Entry<String, Double> row : rows.entrySet())
+            if (row.getKey().startsWith(day + "|"))
+                sum += row.getValue();
+        return sum;
+    }
+
     public BillingService getBillingService() {
         return Context.getService(BillingService.class);
     }
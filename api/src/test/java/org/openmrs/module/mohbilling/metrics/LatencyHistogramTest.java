@@ -0,0 +1,49 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.mohbilling.metrics;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void getPercentile_shouldBeWithinOneEighthOfTheRecordedLatency() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long micros = 1; micros <= 10000; micros++)
+            histogram.record(micros);
+
+        Assert.assertEquals(10000, histogram.getCount());
+        Assert.assertEquals(10000, histogram.getMax());
+        for (double percent : new double[] { 50, 90, 99 }) {
+            long expected = (long) (percent * 100);
+            long percentile = histogram.getPercentile(percent);
+            Assert.assertTrue(percentile >= expected);
+            Assert.assertTrue(percentile <= expected * 1.125);
+        }
+        Assert.assertEquals(10000, histogram.getPercentile(100));
+    }
+
+    @Test
+    public void record_shouldKeepSmallAndHugeLatencies() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(0);
+        histogram.record(3);
+        histogram.record(Long.MAX_VALUE);
+
+        Assert.assertEquals(0, histogram.getPercentile(10));
+        Assert.assertEquals(3, histogram.getPercentile(50));
+        Assert.assertEquals(histogram.getMax(), histogram.getPercentile(100));
+
+        histogram.reset();
+        Assert.assertEquals(0, histogram.getCount());
+        Assert.assertEquals(0, histogram.getPercentile(50));
+    }
+}
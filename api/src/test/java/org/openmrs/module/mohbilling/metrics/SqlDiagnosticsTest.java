@@ -0,0 +1,42 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.mohbilling.metrics;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SqlDiagnosticsTest {
+
+    @Test
+    public void normalize_shouldRemoveTheLiteralsAndInLists() {
+        Assert.assertEquals(
+                "select bill0_.patient_bill_id from moh_bill_patient_bill bill0_ where bill0_.status=? and bill0_.beneficiary_id in (...)",
+                SqlDiagnostics.normalize("select bill0_.patient_bill_id\n  from moh_bill_patient_bill bill0_"
+                        + " where bill0_.status='It''s PAID' and bill0_.beneficiary_id in (12, 13,14)"));
+        Assert.assertEquals(SqlDiagnostics.normalize("select * from t where id in (?)"),
+                SqlDiagnostics.normalize("select * from t where id in (?, ?, ?)"));
+    }
+
+    @Test
+    public void finish_shouldKeepTheShapesRunAtLeastTheThreshold() {
+        RequestSqlStats stats = new RequestSqlStats("/module/mohbilling/patientBillPayment.form");
+        stats.addStatement("select * from moh_bill_patient_bill where patient_bill_id=?");
+        for (int id = 0; id < SqlDiagnostics.REPEATED_SHAPE_THRESHOLD; id++)
+            stats.addStatement("select * from moh_bill_patient_service_bill where patient_bill_id=" + id);
+        stats.addEntityLoad();
+
+        Assert.assertEquals("statements=6; entityLoads=1; shapes=2; repeatedShapes=1", stats.toHeader());
+        stats.finish();
+        Assert.assertEquals(1, stats.getRepeatedShapes().size());
+        Assert.assertEquals(Integer.valueOf(SqlDiagnostics.REPEATED_SHAPE_THRESHOLD),
+                stats.getRepeatedShapes().get("select * from moh_bill_patient_service_bill where patient_bill_id=?"));
+        Assert.assertEquals(2, stats.getDistinctShapes());
+    }
+}
@@ -0,0 +1,74 @@
+package org.openmrs.module.mohbilling.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openmrs.module.mohbilling.businesslogic.MohBillingTagUtil;
+import org.openmrs.module.mohbilling.model.PatientBill;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * The balance columns of a page of the bill list, as rendered by the tag
+ * functions for each row.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BalanceBenchmark {
+
+	/** Number of bills of a page of the bill list */
+	private static final int PAGE_SIZE = 50;
+
+	/**
+	 * The balances of the page loaded at once, as done by the bill list
+	 */
+	@Benchmark
+	public void renderLoadedPage(BillingState state, Blackhole blackhole) {
+
+		List<PatientBill> page = state.getBills().subList(0, PAGE_SIZE);
+		try {
+			MohBillingTagUtil.loadBalances(page);
+			renderPage(page, blackhole);
+		} finally {
+			MohBillingTagUtil.clearBalances();
+		}
+	}
+
+	/**
+	 * The balances of the page loaded by the first tag function of each row
+	 */
+	@Benchmark
+	public void renderPage(BillingState state, Blackhole blackhole) {
+
+		List<PatientBill> page = state.getBills().subList(0, PAGE_SIZE);
+		try {
+			renderPage(page, blackhole);
+		} finally {
+			MohBillingTagUtil.clearBalances();
+		}
+	}
+
+	private static void renderPage(List<PatientBill> page, Blackhole blackhole) {
+
+		for (PatientBill bill : page) {
+			Integer billId = bill.getPatientBillId();
+			blackhole.consume(MohBillingTagUtil
+					.getTotalAmountPaidByPatientBill(billId));
+			blackhole.consume(MohBillingTagUtil
+					.getTotalAmountNotPaidByPatientBill(billId));
+			blackhole.consume(MohBillingTagUtil
+					.getAmountPaidByThirdPart(billId));
+			blackhole.consume(MohBillingTagUtil
+					.getDetailsPaymentsByPatientBill(billId));
+		}
+	}
+}
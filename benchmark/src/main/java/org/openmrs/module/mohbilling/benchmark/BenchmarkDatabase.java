@@ -0,0 +1,125 @@
+package org.openmrs.module.mohbilling.benchmark;
+
+import java.sql.Connection;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.mohbilling.SyntheticBillingData;
+import org.openmrs.module.mohbilling.businesslogic.InvoiceCategoryClassifier;
+import org.openmrs.module.mohbilling.businesslogic.RenderingResourceCache;
+import org.openmrs.module.mohbilling.businesslogic.TariffMatrixUtil;
+import org.openmrs.module.mohbilling.service.BillingService;
+import org.openmrs.test.BaseModuleContextSensitiveTest;
+import org.springframework.test.context.TestContextManager;
+
+/**
+ * The in-memory database of the module tests, its schema built from the
+ * mappings of OpenMRS and of the module, with the standard test dataset and
+ * the synthetic billing data. It is set up once for the JVM of a benchmark,
+ * the Spring context of the tests being loaded without running them.
+ * <p>
+ * The OpenMRS session and the authenticated user are those of the thread, so
+ * the benchmarks must run on the thread which opened the database.
+ */
+public class BenchmarkDatabase extends BaseModuleContextSensitiveTest {
+
+	private static Log log = LogFactory.getLog(BenchmarkDatabase.class);
+
+	private static BenchmarkDatabase database;
+
+	private SyntheticBillingData data;
+
+	/**
+	 * Opens the database, loading the synthetic data the first time
+	 *
+	 * @param seed
+	 *            the seed of the synthetic data
+	 * @param billCount
+	 *            the number of synthetic bills
+	 * @return the database
+	 * @throws Exception
+	 */
+	public static synchronized BenchmarkDatabase open(long seed, int billCount)
+			throws Exception {
+
+		if (database == null) {
+			BenchmarkDatabase db = new BenchmarkDatabase();
+			new TestContextManager(BenchmarkDatabase.class)
+					.prepareTestInstance(db);
+			db.baseSetupWithStandardDataAndAuthentication();
+			db.load(seed, billCount);
+			database = db;
+		}
+
+		database.attach();
+		return database;
+	}
+
+	/**
+	 * @return the generated bill ids
+	 */
+	public List<Integer> getBillIds() {
+		return data.getBillIds();
+	}
+
+	/**
+	 * @return the policy id numbers of the generated beneficiaries
+	 */
+	public List<String> getPolicyIdNumbers() {
+		return data.getPolicyIdNumbers();
+	}
+
+	/**
+	 * @return the generated insurance ids
+	 */
+	public int[] getInsuranceIds() {
+		return data.getInsuranceIds();
+	}
+
+	/**
+	 * @return the number of days the bills were created over, up to today
+	 */
+	public int getDays() {
+		return data.getDays();
+	}
+
+	/**
+	 * Opens the OpenMRS session of the thread and authenticates it, if needed
+	 */
+	public void attach() {
+
+		if (!Context.isSessionOpen())
+			Context.openSession();
+
+		if (!Context.isAuthenticated())
+			authenticate();
+	}
+
+	private void load(long seed, int billCount) throws Exception {
+
+		long start = System.currentTimeMillis();
+
+		data = SyntheticBillingData.forBillCount(seed, billCount);
+		// a million bills do not fit in one transaction of the in-memory
+		// database
+		data.setCommitBatches(true);
+
+		Connection connection = getConnection();
+		data.load(connection);
+		if (!connection.getAutoCommit())
+			connection.commit();
+
+		// the data was inserted behind Hibernate and the billing caches
+		Context.clearSession();
+		TariffMatrixUtil.invalidate();
+		InvoiceCategoryClassifier.invalidate();
+		RenderingResourceCache.invalidate();
+		Context.getService(BillingService.class).rebuildDailyRevenue();
+		Context.flushSession();
+
+		log.warn("Benchmark database ready in "
+				+ (System.currentTimeMillis() - start) + " ms");
+	}
+}
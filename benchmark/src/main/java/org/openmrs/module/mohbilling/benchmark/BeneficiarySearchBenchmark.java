@@ -0,0 +1,118 @@
+package org.openmrs.module.mohbilling.benchmark;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openmrs.module.mohbilling.businesslogic.BeneficiaryTerms;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The search as you type of the beneficiaries, on the terms of the
+ * beneficiary search index: a policy id number, a card number and the names
+ * of each beneficiary, as indexed by
+ * {@link org.openmrs.module.mohbilling.businesslogic.BeneficiarySearchIndex}.
+ * The terms are generated in memory, without the benchmark database, the
+ * index not reading it once built. Each search is a prefix of one to eight
+ * characters of the terms of a beneficiary, keeping the first 10 matches as
+ * the DWR search does.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+public class BeneficiarySearchBenchmark {
+
+	private static final int MAX_RESULTS = 10;
+
+	private static final String[] SYLLABLES = { "BA", "BI", "GA", "HA", "KA",
+			"KU", "MA", "MU", "NA", "NI", "NY", "RA", "RU", "SE", "TU", "WA",
+			"YA", "ZI" };
+
+	@State(Scope.Benchmark)
+	public static class Index {
+
+		@Param({ "20150101" })
+		public long seed;
+
+		@Param({ "500000" })
+		public int beneficiaryCount;
+
+		private BeneficiaryTerms terms;
+
+		/** Prefixes typed, cycled through by the searches */
+		private String[] prefixes;
+
+		private int next;
+
+		@Setup(Level.Trial)
+		public void buildTerms() {
+
+			Random random = new Random(seed);
+			List<String> termList = new ArrayList<String>();
+			List<Integer> ids = new ArrayList<Integer>();
+			List<String> searched = new ArrayList<String>();
+
+			for (int id = 1; id <= beneficiaryCount; id++) {
+				String givenName = name(random);
+				String familyName = name(random);
+				String[] beneficiaryTerms = {
+						String.format("RAMA-%07d", id),
+						String.format("%09d", random.nextInt(1000000000)),
+						givenName + " " + familyName,
+						familyName + " " + givenName };
+				for (String term : beneficiaryTerms) {
+					termList.add(BeneficiaryTerms.normalize(term));
+					ids.add(id);
+				}
+				if (id % 97 == 0) {
+					String term = beneficiaryTerms[random
+							.nextInt(beneficiaryTerms.length)];
+					searched.add(term.substring(0,
+							Math.min(term.length(), 1 + random.nextInt(8))));
+				}
+			}
+
+			terms = new BeneficiaryTerms(termList, ids);
+			prefixes = searched.toArray(new String[searched.size()]);
+		}
+
+		private static String name(Random random) {
+
+			StringBuilder name = new StringBuilder();
+			for (int i = 2 + random.nextInt(3); i > 0; i--)
+				name.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+			return name.toString();
+		}
+
+		public String nextPrefix() {
+			next = (next + 1) % prefixes.length;
+			return prefixes[next];
+		}
+	}
+
+	@Benchmark
+	public Set<Integer> search(Index index) {
+
+		Set<Integer> matches = new LinkedHashSet<Integer>();
+		index.terms.addMatches(index.nextPrefix(),
+				Collections.<Integer> emptySet(), matches, MAX_RESULTS);
+		return matches;
+	}
+}
@@ -0,0 +1,140 @@
+package org.openmrs.module.mohbilling.benchmark;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import org.hibernate.Hibernate;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.mohbilling.businesslogic.PatientBillUtil;
+import org.openmrs.module.mohbilling.model.CohortQuery;
+import org.openmrs.module.mohbilling.model.Insurance;
+import org.openmrs.module.mohbilling.model.PatientBill;
+import org.openmrs.module.mohbilling.model.PatientServiceBill;
+import org.openmrs.module.mohbilling.service.BillingService;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * The benchmark database with a sample of its bills, loaded again for each
+ * iteration so that the Hibernate session does not grow across iterations.
+ * The bills are loaded with their items, beneficiary and insurance, as they
+ * are by the pages printing or listing them.
+ */
+@State(Scope.Benchmark)
+public class BillingState {
+
+	/** Number of sample bills the benchmarks cycle through */
+	private static final int SAMPLE_SIZE = 200;
+
+	@Param({ "20150101" })
+	public long seed;
+
+	@Param({ "10000" })
+	public int billCount;
+
+	private BenchmarkDatabase database;
+
+	private List<PatientBill> bills;
+
+	private int next;
+
+	/** The insurance of the first sample bill */
+	public Insurance insurance;
+
+	/** A day with payments, the last of the generated period */
+	public Date day;
+
+	public Date startDate;
+
+	public Date endDate;
+
+	@Setup(Level.Trial)
+	public void openDatabase() throws Exception {
+
+		database = BenchmarkDatabase.open(seed, billCount);
+
+		Calendar calendar = Calendar.getInstance();
+		calendar.set(Calendar.HOUR_OF_DAY, 0);
+		calendar.set(Calendar.MINUTE, 0);
+		calendar.set(Calendar.SECOND, 0);
+		calendar.set(Calendar.MILLISECOND, 0);
+		calendar.add(Calendar.DAY_OF_MONTH, -1);
+		day = calendar.getTime();
+		endDate = new Date();
+		calendar.add(Calendar.DAY_OF_MONTH, -30);
+		startDate = calendar.getTime();
+	}
+
+	@Setup(Level.Iteration)
+	public void loadBills() {
+
+		database.attach();
+		Context.flushSession();
+		Context.clearSession();
+
+		List<Integer> billIds = database.getBillIds();
+		Random random = new Random(seed);
+		bills = new ArrayList<PatientBill>();
+		for (int i = 0; i < SAMPLE_SIZE && i < billIds.size(); i++) {
+			PatientBill bill = PatientBillUtil.getPatientBillById(billIds
+					.get(random.nextInt(billIds.size())));
+			initialize(bill);
+			bills.add(bill);
+		}
+		next = 0;
+
+		insurance = bills.get(0).getBeneficiary().getInsurancePolicy()
+				.getInsurance();
+	}
+
+	/**
+	 * @return the next sample bill, in turn
+	 */
+	public PatientBill nextBill() {
+
+		PatientBill bill = bills.get(next);
+		next = (next + 1) % bills.size();
+		return bill;
+	}
+
+	/**
+	 * @return the sample bills
+	 */
+	public List<PatientBill> getBills() {
+		return bills;
+	}
+
+	/**
+	 * @return the bills of the last 30 days of the insurance
+	 */
+	public CohortQuery newCohortQuery() {
+
+		CohortQuery cohortQuery = new CohortQuery();
+		cohortQuery.setInsurance(insurance);
+		cohortQuery.setStartDate(startDate);
+		cohortQuery.setEndDate(endDate);
+		return cohortQuery;
+	}
+
+	public BillingService getService() {
+		return Context.getService(BillingService.class);
+	}
+
+	private static void initialize(PatientBill bill) {
+
+		Hibernate.initialize(bill.getBeneficiary().getPatient()
+				.getPersonName());
+		Insurance insurance = bill.getBeneficiary().getInsurancePolicy()
+				.getInsurance();
+		Hibernate.initialize(insurance.getRates());
+		Hibernate.initialize(bill.getPayments());
+		for (PatientServiceBill psb : bill.getBillItems())
+			Hibernate.initialize(psb.getService().getFacilityServicePrice());
+	}
+}
@@ -0,0 +1,141 @@
+package org.openmrs.module.mohbilling.benchmark;
+
+import java.io.CharArrayWriter;
+import java.io.PrintWriter;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.ServletOutputStream;
+
+import org.openmrs.api.context.Context;
+import org.openmrs.module.mohbilling.businesslogic.FileExporter;
+import org.openmrs.module.mohbilling.businesslogic.PatientBillUtil;
+import org.openmrs.module.mohbilling.model.BillPayment;
+import org.openmrs.module.mohbilling.model.PatientBill;
+import org.openmrs.module.mohbilling.model.PatientInvoice;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+/**
+ * The printed invoice of a bill, the CSV export of the invoices of an
+ * insurance over 30 days and the PDF deposit report of 100 to 100000
+ * payments.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExportBenchmark {
+
+	/**
+	 * The payments of the deposit report, made in memory from the sample bills
+	 * so that the number of rows does not depend on the generated payments
+	 */
+	@State(Scope.Benchmark)
+	public static class PaymentsReport {
+
+		@Param({ "100", "1000", "10000", "100000" })
+		public int rowCount;
+
+		private List<BillPayment> payments;
+
+		@Setup(Level.Iteration)
+		public void createPayments(BillingState state) {
+
+			List<PatientBill> bills = state.getBills();
+			Date now = new Date();
+			payments = new ArrayList<BillPayment>(rowCount);
+			for (int i = 0; i < rowCount; i++) {
+				BillPayment payment = new BillPayment();
+				payment.setPatientBill(bills.get(i % bills.size()));
+				payment.setAmountPaid(BigDecimal.valueOf(500 + i % 20 * 250));
+				payment.setDateReceived(state.day);
+				payment.setCreatedDate(now);
+				payment.setCollector(Context.getAuthenticatedUser());
+				payments.add(payment);
+			}
+		}
+	}
+
+	/**
+	 * A response only counting the bytes written to it, so that the heap holds
+	 * the rows of the report not yet written and not the whole document
+	 */
+	private static class CountingResponse extends MockHttpServletResponse {
+
+		private long size;
+
+		private final ServletOutputStream outputStream = new ServletOutputStream() {
+
+			@Override
+			public void write(int b) {
+				size++;
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) {
+				size += len;
+			}
+		};
+
+		@Override
+		public ServletOutputStream getOutputStream() {
+			return outputStream;
+		}
+	}
+
+	@Benchmark
+	public int exportPatientBillToPDF(BillingState state) throws Exception {
+
+		PatientBill bill = state.nextBill();
+		PatientInvoice invoice = PatientBillUtil.getPatientInvoice(bill, null);
+
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		new FileExporter().exportPatientBillToPDF(new MockHttpServletRequest(),
+				response, invoice, "invoice.pdf", "Invoice");
+		return response.getContentAsByteArray().length;
+	}
+
+	/**
+	 * The deposit report of the payments, its table being written to the
+	 * document every 50 rows
+	 */
+	@Benchmark
+	public long pdfPrintPaymentsReport(PaymentsReport report) throws Exception {
+
+		CountingResponse response = new CountingResponse();
+		new FileExporter().pdfPrintPaymentsReport(new MockHttpServletRequest(),
+				response, report.payments, "deposits", "Deposit report",
+				"01/01/2015", "31/01/2015");
+		return response.size;
+	}
+
+	/**
+	 * Writes the invoices in memory, the export clears the session so the
+	 * sample bills are not used
+	 */
+	@Benchmark
+	public int writeInvoicesCSV(BillingState state) throws Exception {
+
+		CharArrayWriter out = new CharArrayWriter();
+		new FileExporter().writeInvoicesCSV(new PrintWriter(out),
+				state.newCohortQuery());
+		return out.size();
+	}
+}
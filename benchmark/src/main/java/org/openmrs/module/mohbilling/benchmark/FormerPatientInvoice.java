@@ -0,0 +1,166 @@
+package org.openmrs.module.mohbilling.benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+
+import org.openmrs.module.mohbilling.businesslogic.ReportsUtil;
+import org.openmrs.module.mohbilling.model.Consommation;
+import org.openmrs.module.mohbilling.model.Invoice;
+import org.openmrs.module.mohbilling.model.PatientBill;
+import org.openmrs.module.mohbilling.model.PatientInvoice;
+import org.openmrs.module.mohbilling.model.PatientServiceBill;
+
+/**
+ * The invoice of a bill as PatientBillUtil.getPatientInvoice built it before
+ * the {@link org.openmrs.module.mohbilling.businesslogic.InvoiceCategoryClassifier}:
+ * every bill item is read once by category prefix of every group, and the
+ * "AUTRES" group is read again to split out the ambulance lines. It is kept
+ * here as the baseline of {@link InvoiceClassifierBenchmark}, the benchmark
+ * module not existing at the commits before the classifier.
+ */
+public class FormerPatientInvoice {
+
+	/**
+	 * @param rate
+	 *            the rate of the insurance of the bill, in percent
+	 */
+	public static PatientInvoice getPatientInvoice(PatientBill pb, double rate) {
+
+		Set<PatientServiceBill> billItems = pb.getBillItems();
+
+		LinkedHashMap<String, Invoice> invoiceMap = new LinkedHashMap<String, Invoice>();
+		Double currentRate = rate;
+
+		LinkedHashMap<String, List<String>> map = getRecoveryCategiesMap();
+		Double gdTotal = 0.0;
+		for (String categGrouped : map.keySet()) {
+			List<String> serviceCategories = map.get(categGrouped);
+
+			Double total = 0.0;
+			List<Consommation> consommations = new ArrayList<Consommation>();
+			Invoice invoice = new Invoice();
+			for (String sviceCatgory : serviceCategories) {
+
+				Double subTotal = 0.0;
+
+				for (PatientServiceBill item : billItems) {
+					String category = item.getService()
+							.getFacilityServicePrice().getCategory();
+
+					if (category.startsWith(sviceCatgory)) {
+						Consommation consomm = new Consommation();
+
+						String libelle = item.getService()
+								.getFacilityServicePrice().getName();
+						consomm.setRecordDate(item.getServiceDate());
+						consomm.setLibelle(libelle);
+						consomm.setUnitCost(item.getUnitPrice().doubleValue());
+						consomm.setQuantity(item.getQuantity());
+						consomm.setCost(item.getQuantity().doubleValue()
+								* item.getUnitPrice().doubleValue());
+						consomm.setInsuranceCost(item.getQuantity()
+								.doubleValue()
+								* item.getUnitPrice().doubleValue()
+								* currentRate / 100);
+						consomm.setPatientCost(item.getQuantity()
+								.doubleValue()
+								* item.getUnitPrice().doubleValue()
+								* (100 - currentRate) / 100);
+						consommations.add(consomm);
+						Double cost = item.getQuantity().doubleValue()
+								* item.getUnitPrice().doubleValue();
+						subTotal += cost;
+					}
+				}
+
+				invoice.setCreatedDate(pb.getCreatedDate());
+				invoice.setConsommationList(consommations);
+				total += subTotal;
+			}
+			invoice.setSubTotal(ReportsUtil.roundTwoDecimals(total));
+
+			if (!categGrouped.equals("AUTRES"))
+				invoiceMap.put(categGrouped, invoice);
+
+			// filter ambulance amounts from formalite
+			else {
+				List<Consommation> autresConso = invoice.getConsommationList();
+				List<Consommation> ambulanceConsom = new ArrayList<Consommation>();
+				List<Consommation> formaliteConsom = new ArrayList<Consommation>();
+				Invoice ambulanceInvoice = new Invoice();
+				Invoice formaliteInvoice = new Invoice();
+				Double subTotAmbul = 0.0, subTotalFormalites = 0.0;
+				for (Consommation c : autresConso) {
+					if (c.getLibelle().startsWith("Ambul")) {
+						ambulanceConsom.add(c);
+						subTotAmbul += c.getCost();
+					} else {
+						formaliteConsom.add(c);
+						subTotalFormalites += c.getCost();
+					}
+				}
+				ambulanceInvoice.setConsommationList(ambulanceConsom);
+				ambulanceInvoice.setCreatedDate(pb.getCreatedDate());
+				ambulanceInvoice.setSubTotal(subTotAmbul);
+
+				formaliteInvoice.setConsommationList(formaliteConsom);
+				formaliteInvoice.setCreatedDate(pb.getCreatedDate());
+				formaliteInvoice.setSubTotal(subTotalFormalites);
+
+				invoiceMap.put("AMBULANCE", ambulanceInvoice);
+				invoiceMap.put("AUTRES", formaliteInvoice);
+			}
+
+			gdTotal += total;
+		}
+
+		PatientInvoice patientInvoice = new PatientInvoice();
+
+		patientInvoice.setPatientBill(pb);
+		patientInvoice.setInvoiceMap(invoiceMap);
+		patientInvoice.setTotalAmount(ReportsUtil.roundTwoDecimals(gdTotal));
+		patientInvoice.setPatientCost(ReportsUtil.roundTwoDecimals(gdTotal
+				* (100 - currentRate) / 100));
+		patientInvoice.setInsuranceCost(ReportsUtil.roundTwoDecimals(gdTotal
+				* currentRate / 100));
+
+		return patientInvoice;
+	}
+
+	/**
+	 * @return the groups that were hard coded, the default of the
+	 *         billing.invoiceCategories global property
+	 */
+	private static LinkedHashMap<String, List<String>> getRecoveryCategiesMap() {
+
+		LinkedHashMap<String, List<String>> map = new LinkedHashMap<String, List<String>>();
+		List<String> consult = Arrays.asList("CONSULTATION");
+		List<String> labo = Arrays.asList("LABORATOIRE");
+		List<String> imagery = Arrays.asList("ECHOGRAPHIE", "RADIOLOGIE");
+		List<String> medicActs = Arrays.asList("STOMATOLOGIE", "CHIRURGIE",
+				"SOINS INTENSIFS", "GYNECO - OBSTETRIQUE", "ORL",
+				"DERMATOLOGIE", "SOINS INFIRMIERS", "MATERNITE",
+				"OPHTALMOLOGIE", "KINESITHERAPIE", "MEDECINE INTERNE",
+				"NEUROLOGIE");
+		List<String> medic = Arrays.asList("MEDICAMENTS");
+		List<String> consommables = Arrays.asList("CONSOMMABLES");
+		List<String> ambul = Arrays.asList("AMBULANCE");
+		List<String> autres = Arrays.asList("FORMALITES ADMINISTRATIVES",
+				"OXYGENOTHERAPIE");
+		List<String> hosp = Arrays.asList("HOSPITALISATION");
+
+		map.put("CONSULTATION", consult);
+		map.put("LABORATOIRE", labo);
+		map.put("IMAGERIE", imagery);
+		map.put("ACTS", medicActs);
+		map.put("MEDICAMENTS", medic);
+		map.put("CONSOMMABLES", consommables);
+		map.put("AMBULANCE", ambul);
+		map.put("AUTRES", autres);
+		map.put("HOSPITALISATION", hosp);
+		return map;
+	}
+}
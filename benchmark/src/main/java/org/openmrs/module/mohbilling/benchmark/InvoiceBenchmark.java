@@ -0,0 +1,66 @@
+package org.openmrs.module.mohbilling.benchmark;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+import org.openmrs.module.mohbilling.businesslogic.PatientBillUtil;
+import org.openmrs.module.mohbilling.model.InsuranceRate;
+import org.openmrs.module.mohbilling.model.PatientBill;
+import org.openmrs.module.mohbilling.model.PatientInvoice;
+import org.openmrs.module.mohbilling.model.PatientServiceBill;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Computations done for a single bill: its invoice, its total and status, and
+ * the rate of its insurance.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InvoiceBenchmark {
+
+	@Benchmark
+	public PatientInvoice getPatientInvoice(BillingState state) {
+
+		PatientBill bill = state.nextBill();
+		return PatientBillUtil.getPatientInvoice(bill, null);
+	}
+
+	@Benchmark
+	public void calculateTotal(BillingState state, Blackhole blackhole) {
+
+		PatientBill bill = state.nextBill();
+		for (PatientServiceBill psb : bill.getBillItems())
+			blackhole.consume(PatientBillUtil.calculateTotal(bill
+					.getBeneficiary().getInsurancePolicy().getInsurance(),
+					bill.getCreatedDate(), psb.getUnitPrice(),
+					(psb.getQuantity() != null) ? psb.getQuantity()
+							: BigDecimal.ONE));
+	}
+
+	/**
+	 * Reads the bill and its payments again and saves its status, as done
+	 * after each payment
+	 */
+	@Benchmark
+	public void markBillAsPaid(BillingState state) {
+		PatientBillUtil.markBillAsPaid(state.nextBill());
+	}
+
+	@Benchmark
+	public InsuranceRate getRateOnDate(BillingState state) {
+
+		PatientBill bill = state.nextBill();
+		return bill.getBeneficiary().getInsurancePolicy().getInsurance()
+				.getRateOnDate(bill.getCreatedDate());
+	}
+}
@@ -0,0 +1,138 @@
+package org.openmrs.module.mohbilling.benchmark;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.hibernate.Hibernate;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.mohbilling.businesslogic.PatientBillUtil;
+import org.openmrs.module.mohbilling.businesslogic.TariffMatrixUtil;
+import org.openmrs.module.mohbilling.model.Invoice;
+import org.openmrs.module.mohbilling.model.PatientBill;
+import org.openmrs.module.mohbilling.model.PatientInvoice;
+import org.openmrs.module.mohbilling.model.PatientServiceBill;
+import org.openmrs.module.mohbilling.service.BillingService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * The invoices of the bills of a month, 5000 by default, as the recovery and
+ * insurance invoice screens build them: with
+ * {@link PatientBillUtil#getPatientInvoice} and with the loops it replaced,
+ * copied in {@link FormerPatientInvoice}, so that one run gives the figures
+ * before and after the classifier. The bills are loaded once with their
+ * items, the invoices not reading the database.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InvoiceClassifierBenchmark {
+
+	@State(Scope.Benchmark)
+	public static class Month {
+
+		@Param({ "20150101" })
+		public long seed;
+
+		@Param({ "5000" })
+		public int billCount;
+
+		private List<PatientBill> bills;
+
+		@Setup(Level.Trial)
+		public void loadBills() throws Exception {
+
+			BenchmarkDatabase database = BenchmarkDatabase.open(seed, billCount);
+			bills = Context.getService(BillingService.class)
+					.getPatientBillsWithItems(database.getBillIds());
+			for (PatientBill bill : bills) {
+				Hibernate.initialize(bill.getBeneficiary().getInsurancePolicy()
+						.getInsurance().getRates());
+				for (PatientServiceBill psb : bill.getBillItems())
+					Hibernate.initialize(psb.getService()
+							.getFacilityServicePrice());
+			}
+
+			for (PatientBill bill : bills)
+				checkSameInvoice(bill);
+		}
+
+		/**
+		 * Fails the trial if the two invoices of the bill differ, the
+		 * comparison being meaningless otherwise
+		 */
+		private static void checkSameInvoice(PatientBill bill) {
+
+			PatientInvoice invoice = PatientBillUtil.getPatientInvoice(bill,
+					null);
+			PatientInvoice former = FormerPatientInvoice.getPatientInvoice(
+					bill, rate(bill));
+
+			boolean same = invoice.getTotalAmount().equals(
+					former.getTotalAmount())
+					&& invoice.getInsuranceCost().equals(
+							former.getInsuranceCost())
+					&& invoice.getPatientCost().equals(former.getPatientCost())
+					&& new ArrayList<String>(invoice.getInvoiceMap().keySet())
+							.equals(new ArrayList<String>(former
+									.getInvoiceMap().keySet()));
+
+			Iterator<Invoice> formerInvoices = former.getInvoiceMap().values()
+					.iterator();
+			for (Map.Entry<String, Invoice> entry : invoice.getInvoiceMap()
+					.entrySet()) {
+				if (!same)
+					break;
+				Invoice formerInvoice = formerInvoices.next();
+				same = entry.getValue().getSubTotal()
+						.equals(formerInvoice.getSubTotal())
+						&& entry.getValue().getConsommationList().size() == formerInvoice
+								.getConsommationList().size();
+			}
+
+			if (!same)
+				throw new IllegalStateException("The invoices of the bill "
+						+ bill.getPatientBillId() + " differ");
+		}
+	}
+
+	@Benchmark
+	public void getPatientInvoice(Month month, Blackhole blackhole) {
+
+		for (PatientBill bill : month.bills)
+			blackhole.consume(PatientBillUtil.getPatientInvoice(bill, null));
+	}
+
+	/**
+	 * The baseline, the rate being read as getPatientInvoice reads it
+	 */
+	@Benchmark
+	public void formerPatientInvoice(Month month, Blackhole blackhole) {
+
+		for (PatientBill bill : month.bills)
+			blackhole.consume(FormerPatientInvoice.getPatientInvoice(bill,
+					rate(bill)));
+	}
+
+	private static double rate(PatientBill bill) {
+		return TariffMatrixUtil.getCurrentRate(
+				bill.getBeneficiary().getInsurancePolicy().getInsurance())
+				.doubleValue();
+	}
+}
@@ -0,0 +1,128 @@
+package org.openmrs.module.mohbilling.benchmark;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+import org.openmrs.GlobalProperty;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.mohbilling.businesslogic.BillingConstants;
+import org.openmrs.module.mohbilling.businesslogic.FileExporter;
+import org.openmrs.module.mohbilling.businesslogic.PatientBillUtil;
+import org.openmrs.module.mohbilling.businesslogic.RenderingResourceCache;
+import org.openmrs.module.mohbilling.model.PatientBill;
+import org.openmrs.module.mohbilling.model.PatientInvoice;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+/**
+ * The printed receipt of a bill, with the logo and letterhead of a health
+ * facility, its resources being either kept by the
+ * {@link RenderingResourceCache} or read again for each receipt as they were
+ * before it: the health facility global properties and the logo file.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReceiptBenchmark {
+
+	/** Side of the generated logo, in pixels */
+	private static final int LOGO_SIZE = 400;
+
+	/**
+	 * A health facility with a logo file, its global properties being saved
+	 * in the benchmark database
+	 */
+	@State(Scope.Benchmark)
+	public static class Facility {
+
+		private File logo;
+
+		@Setup(Level.Trial)
+		public void saveFacility(BillingState state) throws Exception {
+
+			BufferedImage image = new BufferedImage(LOGO_SIZE, LOGO_SIZE,
+					BufferedImage.TYPE_INT_RGB);
+			Graphics2D graphics = image.createGraphics();
+			graphics.setColor(Color.WHITE);
+			graphics.fillRect(0, 0, LOGO_SIZE, LOGO_SIZE);
+			graphics.setColor(Color.BLUE);
+			graphics.fillOval(LOGO_SIZE / 8, LOGO_SIZE / 8, LOGO_SIZE * 3 / 4,
+					LOGO_SIZE * 3 / 4);
+			graphics.dispose();
+			logo = File.createTempFile("logo", ".png");
+			ImageIO.write(image, "png", logo);
+
+			saveProperty(BillingConstants.GLOBAL_PROPERTY_HEALTH_FACILITY_LOGO,
+					logo.getAbsolutePath());
+			saveProperty(BillingConstants.GLOBAL_PROPERTY_HEALTH_FACILITY_NAME,
+					"CENTRE DE SANTE DE BENCHMARK");
+			saveProperty(
+					BillingConstants.GLOBAL_PROPERTY_HEALTH_FACILITY_PHYSICAL_ADDRESS,
+					"B.P. 84 KIGALI");
+			saveProperty(
+					BillingConstants.GLOBAL_PROPERTY_HEALTH_FACILITY_SHORT_CODE,
+					"CSB");
+			saveProperty(BillingConstants.GLOBAL_PROPERTY_HEALTH_FACILITY_EMAIL,
+					"benchmark@example.org");
+
+			// the module activator and its property listener do not run here
+			RenderingResourceCache.invalidate();
+		}
+
+		@TearDown(Level.Trial)
+		public void deleteLogo() {
+			logo.delete();
+		}
+
+		private static void saveProperty(String name, String value) {
+			Context.getAdministrationService().saveGlobalProperty(
+					new GlobalProperty(name, value));
+		}
+	}
+
+	@Benchmark
+	public int printReceipt(BillingState state, Facility facility)
+			throws Exception {
+		return print(state.nextBill());
+	}
+
+	/**
+	 * The baseline, the global properties and the logo being read again for
+	 * each receipt
+	 */
+	@Benchmark
+	public int printReceiptReadingResources(BillingState state,
+			Facility facility) throws Exception {
+
+		RenderingResourceCache.invalidate();
+		return print(state.nextBill());
+	}
+
+	private static int print(PatientBill bill) throws Exception {
+
+		PatientInvoice invoice = PatientBillUtil.getPatientInvoice(bill, null);
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		new FileExporter().exportPatientBillToPDF(new MockHttpServletRequest(),
+				response, invoice, "receipt.pdf", "Receipt");
+		return response.getContentAsByteArray().length;
+	}
+}
@@ -0,0 +1,59 @@
+package org.openmrs.module.mohbilling.benchmark;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openmrs.module.mohbilling.model.BillPayment;
+import org.openmrs.module.mohbilling.model.BillSummary;
+import org.openmrs.module.mohbilling.model.Category;
+import org.openmrs.module.mohbilling.model.PatientBill;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The queries of the reports, over the last 30 days or the last day of the
+ * generated bills.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReportQueryBenchmark {
+
+	private static final String[] CATEGORIES;
+
+	static {
+		CATEGORIES = new String[Category.values().length];
+		for (Category category : Category.values())
+			CATEGORIES[category.ordinal()] = category.getDescription();
+	}
+
+	@Benchmark
+	public List<PatientBill> getBillCohort(BillingState state) {
+		return state.getService().getBillCohort(state.newCohortQuery());
+	}
+
+	@Benchmark
+	public Map<String, Double> getRevenueByService(BillingState state) {
+		return state.getService().getRevenueByService(state.day, CATEGORIES,
+				null, state.insurance);
+	}
+
+	@Benchmark
+	public List<BillSummary> getBillSummaries(BillingState state) {
+		return state.getService().getBillSummaries(state.insurance,
+				state.startDate, state.endDate, null, null);
+	}
+
+	@Benchmark
+	public List<BillPayment> getPaymentsReceivedOn(BillingState state) {
+		return state.getService().getPaymentsReceivedOn(state.day);
+	}
+}
@@ -0,0 +1,258 @@
+package org.openmrs.module.mohbilling.benchmark;
+
+import java.io.FileWriter;
+import java.io.PrintWriter;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+import org.openmrs.api.context.Context;
+import org.openmrs.module.mohbilling.businesslogic.InsurancePolicyUtil;
+import org.openmrs.module.mohbilling.businesslogic.MohBillingTagUtil;
+import org.openmrs.module.mohbilling.businesslogic.PatientBillUtil;
+import org.openmrs.module.mohbilling.businesslogic.ReportsUtil;
+import org.openmrs.module.mohbilling.metrics.RequestSqlStats;
+import org.openmrs.module.mohbilling.metrics.SqlDiagnostics;
+import org.openmrs.module.mohbilling.model.Beneficiary;
+import org.openmrs.module.mohbilling.model.CohortQuery;
+import org.openmrs.module.mohbilling.model.PatientBill;
+import org.openmrs.module.mohbilling.model.PatientServiceBill;
+import org.openmrs.module.mohbilling.service.BillingService;
+
+/**
+ * Counts the SQL statements of the bill list, payment and cohort pages on the
+ * benchmark database. Each page reads what its controller and its JSP read,
+ * in a session of its own, its statements being counted by
+ * {@link SqlDiagnostics} as those of a request. The mean and maximum counts
+ * of each page are printed, and written as JSON if a file is given.
+ * <p>
+ * Arguments: the number of generated bills (10000), of pages of each kind
+ * (20), and the JSON file. The counts do not depend on the timings, so a run
+ * of the benchmark database is enough to compare two mappings of the bills:
+ *
+ * <pre>
+ * java -cp benchmarks.jar org.openmrs.module.mohbilling.benchmark.StatementCounts 10000 20 statements.json
+ * </pre>
+ */
+public class StatementCounts {
+
+	private static final long SEED = 20150101L;
+
+	private static final String[] PAGES = { "billList", "payment", "cohort" };
+
+	/** Bills of a page of the cohort builder, with the row telling there are more */
+	private static final int COHORT_PAGE = 50 + 1;
+
+	private final BenchmarkDatabase database;
+
+	public StatementCounts(BenchmarkDatabase database) {
+		this.database = database;
+	}
+
+	public static void main(String[] args) throws Exception {
+
+		int bills = (args.length > 0) ? Integer.parseInt(args[0]) : 10000;
+		int pages = (args.length > 1) ? Integer.parseInt(args[1]) : 20;
+		String resultFile = (args.length > 2) ? args[2] : null;
+
+		StatementCounts counts = new StatementCounts(BenchmarkDatabase.open(
+				SEED, bills));
+		String report = counts.report(bills, counts.run(pages));
+		System.out.println(report);
+
+		if (resultFile != null) {
+			PrintWriter out = new PrintWriter(new FileWriter(resultFile));
+			try {
+				out.println(report);
+			} finally {
+				out.close();
+			}
+		}
+
+		System.exit(0);
+	}
+
+	/**
+	 * Shows the pages of the first beneficiaries and bills
+	 *
+	 * @return the statements and the entity loads of each page, by kind of
+	 *         page
+	 */
+	public int[][][] run(int pages) {
+
+		List<String> policyIdNumbers = database.getPolicyIdNumbers();
+		List<Integer> billIds = database.getBillIds();
+
+		int[][][] counts = new int[PAGES.length][pages][];
+		for (int i = 0; i < pages; i++) {
+			String policyIdNumber = policyIdNumbers.get(i
+					% policyIdNumbers.size());
+			counts[0][i] = count(PAGES[0], new BillListPage(policyIdNumber));
+			counts[1][i] = count(PAGES[1], new PaymentPage(billIds.get(i
+					% billIds.size())));
+			counts[2][i] = count(PAGES[2], new CohortPage(i));
+		}
+		return counts;
+	}
+
+	/**
+	 * @return the statements and the entity loads of the page, shown in a new
+	 *         session
+	 */
+	private int[] count(String name, Runnable page) {
+
+		Context.clearSession();
+		RequestSqlStats stats = SqlDiagnostics.begin(name);
+		try {
+			page.run();
+		} finally {
+			SqlDiagnostics.end();
+		}
+		return new int[] { stats.getStatements(), stats.getEntityLoads() };
+	}
+
+	/**
+	 * @return the mean and maximum statements and entity loads of each page,
+	 *         as JSON
+	 */
+	public String report(int bills, int[][][] counts) {
+
+		StringBuilder json = new StringBuilder();
+		json.append("{\n  \"bills\": ").append(bills);
+		json.append(",\n  \"pages\": ").append(counts[0].length);
+		json.append(",\n  \"statements\": {");
+		for (int p = 0; p < PAGES.length; p++) {
+			json.append((p == 0) ? "\n" : ",\n");
+			json.append("    \"").append(PAGES[p]).append("\": {");
+			json.append("\"mean\": ").append(mean(counts[p], 0));
+			json.append(", \"max\": ").append(max(counts[p], 0));
+			json.append(", \"entityLoadsMean\": ").append(mean(counts[p], 1));
+			json.append("}");
+		}
+		json.append("\n  }\n}");
+		return json.toString();
+	}
+
+	private static String mean(int[][] counts, int column) {
+
+		double sum = 0;
+		for (int[] count : counts)
+			sum += count[column];
+		return String.format(Locale.US, "%.1f", sum / counts.length);
+	}
+
+	private static int max(int[][] counts, int column) {
+
+		int max = 0;
+		for (int[] count : counts)
+			max = Math.max(max, count[column]);
+		return max;
+	}
+
+	/**
+	 * The bills of a beneficiary with their balances, as listed by the
+	 * billing form
+	 */
+	private static class BillListPage implements Runnable {
+
+		private final String policyIdNumber;
+
+		public BillListPage(String policyIdNumber) {
+			this.policyIdNumber = policyIdNumber;
+		}
+
+		public void run() {
+
+			Beneficiary beneficiary = InsurancePolicyUtil
+					.getBeneficiaryByPolicyIdNo(policyIdNumber);
+			showBills(PatientBillUtil.getBillsByBeneficiary(beneficiary));
+		}
+	}
+
+	/**
+	 * A bill with its items, then the bills of its beneficiary, as shown by
+	 * the payment form
+	 */
+	private static class PaymentPage implements Runnable {
+
+		private final Integer billId;
+
+		public PaymentPage(Integer billId) {
+			this.billId = billId;
+		}
+
+		public void run() {
+
+			PatientBill pb = Context.getService(BillingService.class)
+					.getPatientBill(billId);
+			for (PatientServiceBill item : pb.getBillItems())
+				item.getService().getFacilityServicePrice().getName();
+			pb.getBeneficiary().getInsurancePolicy().getInsurance()
+					.getCurrentRate();
+
+			showBills(PatientBillUtil.getBillsByBeneficiary(pb
+					.getBeneficiary()));
+		}
+	}
+
+	/**
+	 * A page of the bills of an insurance, its rows and its service names, as
+	 * shown by the cohort builder
+	 */
+	private class CohortPage implements Runnable {
+
+		private final int index;
+
+		public CohortPage(int index) {
+			this.index = index;
+		}
+
+		public void run() {
+
+			BillingService service = Context.getService(BillingService.class);
+			int[] insuranceIds = database.getInsuranceIds();
+
+			Calendar start = Calendar.getInstance();
+			start.add(Calendar.DAY_OF_YEAR, -database.getDays());
+
+			CohortQuery cohortQuery = new CohortQuery();
+			cohortQuery.setInsurance(service.getInsurance(insuranceIds[index
+					% insuranceIds.length]));
+			cohortQuery.setStartDate(start.getTime());
+			cohortQuery.setEndDate(new Date());
+			cohortQuery.setMaxResults(COHORT_PAGE);
+
+			service.getBillCohortTotals(cohortQuery);
+			List<PatientBill> bills = service.getBillCohort(cohortQuery);
+			for (PatientBill bill : bills) {
+				for (PatientServiceBill item : bill.getBillItems())
+					item.getServiceDate();
+				bill.getBeneficiary().getPatient().getGivenName();
+				bill.getBeneficiary().getInsurancePolicy().getInsurance()
+						.getName();
+			}
+			ReportsUtil.getAllBillItems(bills);
+		}
+	}
+
+	/**
+	 * Reads the columns of the bill list of the billing and payment forms
+	 */
+	private static void showBills(List<PatientBill> bills) {
+
+		MohBillingTagUtil.loadBalances(bills);
+		try {
+			for (PatientBill pb : bills) {
+				pb.getCreator().getPersonName();
+				pb.getBeneficiary().getPolicyIdNumber();
+				MohBillingTagUtil.getTotalAmountPaidByPatientBill(pb
+						.getPatientBillId());
+				MohBillingTagUtil.getTotalAmountNotPaidByPatientBill(pb
+						.getPatientBillId());
+			}
+		} finally {
+			MohBillingTagUtil.clearBalances();
+		}
+	}
+}
@@ -0,0 +1,290 @@
+package org.openmrs.module.mohbilling.benchmark;
+
+import java.io.FileWriter;
+import java.io.PrintWriter;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.openmrs.api.context.Context;
+import org.openmrs.module.mohbilling.businesslogic.FileExporter;
+import org.openmrs.module.mohbilling.businesslogic.InsurancePolicyUtil;
+import org.openmrs.module.mohbilling.businesslogic.MohBillingTagUtil;
+import org.openmrs.module.mohbilling.businesslogic.PatientBillUtil;
+import org.openmrs.module.mohbilling.model.Beneficiary;
+import org.openmrs.module.mohbilling.model.BillCaptureLine;
+import org.openmrs.module.mohbilling.model.BillPayment;
+import org.openmrs.module.mohbilling.model.BillableService;
+import org.openmrs.module.mohbilling.model.Insurance;
+import org.openmrs.module.mohbilling.model.PatientBill;
+import org.openmrs.module.mohbilling.service.BillingService;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+/**
+ * Replays the cashier flow on the benchmark database with concurrent cashiers:
+ * the beneficiary is searched by policy id number with the balances of their
+ * bills, a bill of a few services is captured, paid in full and its invoice
+ * printed. The throughput of the flows and the latency percentiles of each
+ * step are printed, and written as JSON if a file is given.
+ * <p>
+ * Arguments: the number of generated bills (10000), of cashiers (4), of flows
+ * by cashier (500), and the JSON file. The number of bills is the size of the
+ * dataset the flows run on, so each size is replayed by its own run:
+ *
+ * <pre>
+ * java -Xmx8g -cp benchmarks.jar org.openmrs.module.mohbilling.benchmark.WorkloadReplay 1000000 8 500 replay-1m.json
+ * </pre>
+ */
+public class WorkloadReplay {
+
+	private static final long SEED = 20150101L;
+
+	private static final String[] STEPS = { "search", "bill", "pay", "print",
+			"flow" };
+
+	/** Flows by cashier run before the measured ones */
+	private static final int WARMUP_FLOWS = 50;
+
+	private final BenchmarkDatabase database;
+
+	/** Billable services of each insurance, as lines of quantity one */
+	private final Map<Integer, List<BillCaptureLine>> lines = new HashMap<Integer, List<BillCaptureLine>>();
+
+	public WorkloadReplay(BenchmarkDatabase database) {
+
+		this.database = database;
+
+		BillingService service = Context.getService(BillingService.class);
+		for (int insuranceId : database.getInsuranceIds()) {
+			Insurance insurance = service.getInsurance(insuranceId);
+			List<BillCaptureLine> insuranceLines = new ArrayList<BillCaptureLine>();
+			for (BillableService bs : service
+					.getBillableServicesByInsurance(insurance))
+				insuranceLines.add(new BillCaptureLine(bs.getServiceId(),
+						BigDecimal.ONE, bs.getMaximaToPay()));
+			lines.put(insuranceId, insuranceLines);
+		}
+		Context.clearSession();
+	}
+
+	public static void main(String[] args) throws Exception {
+
+		int bills = (args.length > 0) ? Integer.parseInt(args[0]) : 10000;
+		int cashiers = (args.length > 1) ? Integer.parseInt(args[1]) : 4;
+		int flows = (args.length > 2) ? Integer.parseInt(args[2]) : 500;
+		String resultFile = (args.length > 3) ? args[3] : null;
+
+		BenchmarkDatabase database = BenchmarkDatabase.open(SEED, bills);
+		WorkloadReplay replay = new WorkloadReplay(database);
+
+		long[][] latencies = replay.run(cashiers, WARMUP_FLOWS, flows);
+		String report = replay.report(bills, cashiers, latencies);
+		System.out.println(report);
+
+		if (resultFile != null) {
+			PrintWriter out = new PrintWriter(new FileWriter(resultFile));
+			try {
+				out.println(report);
+			} finally {
+				out.close();
+			}
+		}
+
+		System.exit(0);
+	}
+
+	/**
+	 * Runs the flows of the cashiers
+	 *
+	 * @return the latencies in nanoseconds by step, then the wall time of the
+	 *         measured flows in the only value of the last row
+	 */
+	public long[][] run(int cashiers, int warmupFlows, int flows)
+			throws Exception {
+
+		ExecutorService executor = Executors.newFixedThreadPool(cashiers);
+		try {
+			execute(executor, cashiers, warmupFlows);
+
+			long start = System.nanoTime();
+			List<long[][]> results = execute(executor, cashiers, flows);
+			long wallTime = System.nanoTime() - start;
+
+			long[][] latencies = new long[STEPS.length + 1][];
+			for (int step = 0; step < STEPS.length; step++) {
+				latencies[step] = new long[cashiers * flows];
+				for (int c = 0; c < cashiers; c++)
+					System.arraycopy(results.get(c)[step], 0, latencies[step],
+							c * flows, flows);
+				Arrays.sort(latencies[step]);
+			}
+			latencies[STEPS.length] = new long[] { wallTime };
+			return latencies;
+		} finally {
+			executor.shutdown();
+			executor.awaitTermination(1, TimeUnit.MINUTES);
+		}
+	}
+
+	private List<long[][]> execute(ExecutorService executor, int cashiers,
+			final int flows) throws Exception {
+
+		List<Future<long[][]>> futures = new ArrayList<Future<long[][]>>();
+		for (int c = 0; c < cashiers; c++) {
+			final Random random = new Random(SEED + c);
+			futures.add(executor.submit(new Callable<long[][]>() {
+
+				public long[][] call() throws Exception {
+					return runCashier(random, flows);
+				}
+			}));
+		}
+
+		List<long[][]> results = new ArrayList<long[][]>();
+		for (Future<long[][]> future : futures)
+			results.add(future.get());
+		return results;
+	}
+
+	/**
+	 * Runs the flows of a cashier in the OpenMRS session of its thread
+	 */
+	private long[][] runCashier(Random random, int flows) throws Exception {
+
+		long[][] latencies = new long[STEPS.length][flows];
+		List<String> policyIdNumbers = database.getPolicyIdNumbers();
+
+		Context.openSession();
+		try {
+			Context.authenticate("admin", "test");
+			for (int flow = 0; flow < flows; flow++) {
+				String policyIdNumber = policyIdNumbers.get(random
+						.nextInt(policyIdNumbers.size()));
+				runFlow(random, policyIdNumber, latencies, flow);
+				// the pages of a flow are separate requests
+				Context.clearSession();
+			}
+		} finally {
+			Context.closeSession();
+		}
+
+		return latencies;
+	}
+
+	private void runFlow(Random random, String policyIdNumber,
+			long[][] latencies, int flow) throws Exception {
+
+		long flowStart = System.nanoTime();
+
+		long start = System.nanoTime();
+		Beneficiary beneficiary = InsurancePolicyUtil
+				.getBeneficiaryByPolicyIdNo(policyIdNumber);
+		List<PatientBill> bills = PatientBillUtil
+				.getBillsByBeneficiary(beneficiary);
+		try {
+			MohBillingTagUtil.loadBalances(bills);
+			for (PatientBill pb : bills)
+				MohBillingTagUtil.getTotalAmountNotPaidByPatientBill(pb
+						.getPatientBillId());
+		} finally {
+			MohBillingTagUtil.clearBalances();
+		}
+		latencies[0][flow] = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		List<BillCaptureLine> insuranceLines = lines.get(beneficiary
+				.getInsurancePolicy().getInsurance().getInsuranceId());
+		List<BillCaptureLine> billLines = new ArrayList<BillCaptureLine>();
+		int count = 1 + random.nextInt(5);
+		for (int i = 0; i < count; i++)
+			billLines.add(insuranceLines.get(random.nextInt(insuranceLines
+					.size())));
+		PatientBill bill = PatientBillUtil.capturePatientBill(beneficiary,
+				billLines, UUID.randomUUID().toString());
+		latencies[1][flow] = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		BillPayment payment = new BillPayment();
+		payment.setAmountPaid(bill.getPatientDue());
+		payment.setCollector(Context.getAuthenticatedUser());
+		payment.setDateReceived(today());
+		payment.setPatientBill(bill);
+		PatientBillUtil.createBillPayment(payment);
+		PatientBillUtil.markBillAsPaid(bill);
+		latencies[2][flow] = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		new FileExporter().exportPatientBillToPDF(new MockHttpServletRequest(),
+				response, PatientBillUtil.getPatientInvoice(bill, null),
+				"invoice.pdf", "Invoice");
+		latencies[3][flow] = System.nanoTime() - start;
+
+		latencies[4][flow] = System.nanoTime() - flowStart;
+	}
+
+	/**
+	 * @return the throughput and the latency percentiles in milliseconds, as
+	 *         JSON
+	 */
+	public String report(int bills, int cashiers, long[][] latencies) {
+
+		int flows = latencies[0].length;
+		double seconds = latencies[STEPS.length][0] / 1e9;
+
+		StringBuilder json = new StringBuilder();
+		json.append("{\n  \"bills\": ").append(bills);
+		json.append(",\n  \"cashiers\": ").append(cashiers);
+		json.append(",\n  \"flows\": ").append(flows);
+		json.append(",\n  \"seconds\": ").append(format(seconds));
+		json.append(",\n  \"flowsPerSecond\": ").append(
+				format(flows / seconds));
+		json.append(",\n  \"latencyMs\": {");
+		for (int step = 0; step < STEPS.length; step++) {
+			long[] sorted = latencies[step];
+			json.append((step == 0) ? "\n" : ",\n");
+			json.append("    \"").append(STEPS[step]).append("\": {");
+			json.append("\"p50\": ").append(percentile(sorted, 50));
+			json.append(", \"p90\": ").append(percentile(sorted, 90));
+			json.append(", \"p99\": ").append(percentile(sorted, 99));
+			json.append(", \"max\": ").append(percentile(sorted, 100));
+			json.append("}");
+		}
+		json.append("\n  }\n}");
+		return json.toString();
+	}
+
+	private static String percentile(long[] sorted, int percent) {
+
+		int index = (int) Math.ceil(percent / 100d * sorted.length) - 1;
+		return format(sorted[Math.max(0, index)] / 1e6);
+	}
+
+	private static String format(double value) {
+		return String.format(Locale.US, "%.3f", value);
+	}
+
+	private static Date today() {
+
+		Calendar calendar = Calendar.getInstance();
+		calendar.set(Calendar.HOUR_OF_DAY, 0);
+		calendar.set(Calendar.MINUTE, 0);
+		calendar.set(Calendar.SECOND, 0);
+		calendar.set(Calendar.MILLISECOND, 0);
+		return calendar.getTime();
+	}
+}
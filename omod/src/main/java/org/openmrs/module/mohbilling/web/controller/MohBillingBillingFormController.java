@@ -4,8 +4,10 @@
 package org.openmrs.module.mohbilling.web.controller;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.UUID;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -14,13 +16,12 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.openmrs.api.context.Context;
 import org.openmrs.module.mohbilling.businesslogic.InsurancePolicyUtil;
-import org.openmrs.module.mohbilling.businesslogic.InsuranceUtil;
+import org.openmrs.module.mohbilling.businesslogic.MohBillingTagUtil;
 import org.openmrs.module.mohbilling.businesslogic.PatientBillUtil;
 import org.openmrs.module.mohbilling.model.Beneficiary;
-import org.openmrs.module.mohbilling.model.BillableService;
+import org.openmrs.module.mohbilling.model.BillCaptureLine;
 import org.openmrs.module.mohbilling.model.InsurancePolicy;
 import org.openmrs.module.mohbilling.model.PatientBill;
-import org.openmrs.module.mohbilling.model.PatientServiceBill;
 import org.openmrs.web.WebConstants;
 import org.springframework.web.servlet.ModelAndView;
 import org.springframework.web.servlet.mvc.ParameterizableViewController;
@@ -67,8 +68,12 @@ public class MohBillingBillingFormController extends
 							.getParameter("ipCardNumber"));
 			
 			mav.addObject("beneficiary", ben);
+
+			// identifies this form, so that submitting it twice saves one bill
+			mav.addObject("captureKey", UUID.randomUUID().toString());
 			
 			List<PatientBill> patientBills = PatientBillUtil.getBillsByBeneficiary(ben);
+			MohBillingTagUtil.loadBalances(patientBills);
 			mav.addObject("patientBills", patientBills);
 			
 
@@ -104,50 +109,34 @@ public class MohBillingBillingFormController extends
 
 		PatientBill savePatientBill = null;
 
+		String captureKey = request.getParameter("captureKey");
+		if (captureKey != null && captureKey.trim().equals(""))
+			captureKey = null;
+
 		try {
 			int numberOfServicesClicked = Integer.valueOf(request
 					.getParameter("numberOfServicesClicked"));
 
-			PatientBill pb = new PatientBill();
-
-
 			Beneficiary beneficiary = InsurancePolicyUtil.getBeneficiaryByPolicyIdNo(request
 							.getParameter("ipCardNumber"));
 
-			pb.setBeneficiary(beneficiary);
-			pb.setIsPaid(false);
-			pb.setPrinted(false);
-
-			pb.setCreatedDate(new Date());
-			pb.setCreator(Context.getAuthenticatedUser());
-			pb.setVoided(false);
-
+			List<BillCaptureLine> lines = new ArrayList<BillCaptureLine>();
 			for (int i = 0; i < numberOfServicesClicked; i++) {
 				if (request.getParameter("billableServiceId_" + i) != null) {
 
-					PatientServiceBill psb = new PatientServiceBill();
-
-					BillableService bs = InsuranceUtil
-							.getValidBillableService(Integer.valueOf(request
-									.getParameter("billableServiceId_" + i)));
-					psb.setService(bs);
+					BigDecimal quantity = null;
 					if(request.getParameter("quantity_" + i)!=null&&!request.getParameter("quantity_" + i).equals(""))
-					psb.setQuantity(BigDecimal.valueOf(Double.valueOf(request.getParameter("quantity_" + i))));
-
-					psb.setServiceDate(new Date());
-					psb.setUnitPrice(BigDecimal.valueOf(Double.valueOf(request
-							.getParameter("servicePrice_" + i))));
-
-					psb.setCreatedDate(new Date());
-					psb.setCreator(Context.getAuthenticatedUser());
-					psb.setVoided(false);
+					quantity = new BigDecimal(request.getParameter("quantity_" + i));
 
-					pb.addBillItem(psb);
+					lines.add(new BillCaptureLine(Integer.valueOf(request
+							.getParameter("billableServiceId_" + i)), quantity,
+							new BigDecimal(request.getParameter("servicePrice_" + i))));
 				}
 			}
 
-			// save the patientBill
-			savePatientBill = PatientBillUtil.savePatientBill(pb);
+			// save the patientBill, once even if the form is submitted twice
+			savePatientBill = PatientBillUtil.capturePatientBill(beneficiary,
+					lines, captureKey);
 
 			request.getSession().setAttribute(WebConstants.OPENMRS_MSG_ATTR,
 					"The Patient Bill has been saved successfully !");
@@ -155,6 +144,15 @@ public class MohBillingBillingFormController extends
 			return savePatientBill;
 
 		} catch (Exception e) {
+			// the same form submitted at the same time saved the bill first
+			if (captureKey != null) {
+				Context.clearSession();
+				savePatientBill = PatientBillUtil
+						.getPatientBillByCaptureKey(captureKey);
+				if (savePatientBill != null)
+					return savePatientBill;
+			}
+
 			request.getSession().setAttribute(WebConstants.OPENMRS_ERROR_ATTR,
 					"The Patient Bill has not been saved !");
 			log.error(">>>>MOH>>BILLING>> " + e.getMessage());
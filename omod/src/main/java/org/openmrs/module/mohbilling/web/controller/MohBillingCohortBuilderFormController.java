@@ -3,6 +3,7 @@
  */
 package org.openmrs.module.mohbilling.web.controller;
 
+import java.math.BigDecimal;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
@@ -23,10 +24,10 @@ import org.openmrs.User;
 import org.openmrs.api.context.Context;
 import org.openmrs.module.mohbilling.businesslogic.FileExporter;
 import org.openmrs.module.mohbilling.businesslogic.InsuranceUtil;
-import org.openmrs.module.mohbilling.businesslogic.MohBillingTagUtil;
 import org.openmrs.module.mohbilling.businesslogic.PatientBillUtil;
 import org.openmrs.module.mohbilling.businesslogic.ReportsUtil;
 import org.openmrs.module.mohbilling.model.BillPayment;
+import org.openmrs.module.mohbilling.model.CohortQuery;
 import org.openmrs.module.mohbilling.model.Insurance;
 import org.openmrs.module.mohbilling.model.PatientBill;
 import org.openmrs.module.mohbilling.model.PatientInvoice;
@@ -41,6 +42,9 @@ public class MohBillingCohortBuilderFormController extends
 	protected final Log log = LogFactory.getLog(getClass());
 	protected SessionFactory sessionFactory;
 
+	/** Number of bills shown per page of the search results */
+	private static final int PAGE_SIZE = 50;
+
 	@Override
 	protected ModelAndView handleRequestInternal(HttpServletRequest request,
 			HttpServletResponse response) throws Exception {
@@ -123,7 +127,56 @@ public class MohBillingCohortBuilderFormController extends
 				
 			}
 
-			reportedPatientBills = ReportsUtil.billCohortBuilder(insurance,	startDate, endDate, patientId, null, billStatus, billCreator);
+			CohortQuery cohortQuery = new CohortQuery();
+			cohortQuery.setInsurance(insurance);
+			cohortQuery.setStartDate(startDate);
+			cohortQuery.setEndDate(endDate);
+			cohortQuery.setPatientId(patientId);
+			cohortQuery.setBillStatus(billStatus);
+			if (billCreator != null)
+				cohortQuery.setCreatorId(Integer.valueOf(billCreator));
+
+			BillingService billingService = Context.getService(BillingService.class);
+			Integer cohortSize = billingService.getBillCohortSize(cohortQuery);
+			Map<String, BigDecimal> cohortTotals = billingService.getBillCohortTotals(cohortQuery);
+
+			boolean print = "true".equals(request.getParameter("print"))
+					&& request.getParameter("reportedPatientBills") != null;
+
+			// the results are shown page by page, starting after the last
+			// bill of the next page or ending before the first bill of the
+			// previous page, one more bill being read to know if there is a
+			// page further. The printed report has all the bills.
+			Integer afterBillId = null, beforeBillId = null;
+			if (request.getParameter("afterBillId") != null
+					&& !request.getParameter("afterBillId").equals(""))
+				afterBillId = Integer.parseInt(request.getParameter("afterBillId"));
+			else if (request.getParameter("beforeBillId") != null
+					&& !request.getParameter("beforeBillId").equals(""))
+				beforeBillId = Integer.parseInt(request.getParameter("beforeBillId"));
+
+			if (!print) {
+				cohortQuery.setAfterId(afterBillId);
+				cohortQuery.setBeforeId(beforeBillId);
+				cohortQuery.setMaxResults(PAGE_SIZE + 1);
+			}
+			reportedPatientBills = billingService.getBillCohort(cohortQuery);
+
+			if (!print) {
+				boolean further = reportedPatientBills.size() > PAGE_SIZE;
+				if (further && beforeBillId != null)
+					reportedPatientBills = new ArrayList<PatientBill>(reportedPatientBills.subList(1, PAGE_SIZE + 1));
+				else if (further)
+					reportedPatientBills = new ArrayList<PatientBill>(reportedPatientBills.subList(0, PAGE_SIZE));
+
+				if (!reportedPatientBills.isEmpty()) {
+					if (beforeBillId != null || further)
+						mav.addObject("nextBillId", reportedPatientBills.get(reportedPatientBills.size() - 1).getPatientBillId());
+					if (afterBillId != null || (beforeBillId != null && further))
+						mav.addObject("previousBillId", reportedPatientBills.get(0).getPatientBillId());
+				}
+			}
+			mav.addObject("cohortSize", cohortSize);
 			
 //			log.info("chubbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbb "+reportedPatientBills.size());
 
@@ -143,38 +196,22 @@ public class MohBillingCohortBuilderFormController extends
 			mav.addObject("patientNames", patientNames);
 			mav.addObject("cashierNames", cashierNames);
 
-			double totalAmount = 0, totalPatientDueAmount = 0, totalInsuranceDueAmount = 0, totalAmountReceived = 0;
+			// the rows and the totals both show the balance columns of the
+			// bills, the totals being those of the whole cohort. Nothing is
+			// written while the search is shown, the bills without a status
+			// get it on the payment page of their beneficiary.
 			List<Object[]> billObj = new ArrayList<Object[]>();
 
 			for (PatientBill bill : reportedPatientBills) {
 
-				/** Updating status for unmarked ones */
-				if(bill.getStatus() == null)
-					PatientBillUtil.markBillAsPaid(bill);
-				
 				Date serviceDate = null;
-				double patDueAmt = 0, insDueAmt = 0, totalDueAmt = 0, payments = 0;
-//				double cost = 0;
-				for (PatientServiceBill item : bill.getBillItems()) {
+				for (PatientServiceBill item : bill.getBillItems())
 					serviceDate = item.getServiceDate();
-					double qty = item.getQuantity().doubleValue();
-					double rate = bill.getBeneficiary().getInsurancePolicy().getInsurance().getCurrentRate().getRate();
-					
-					//act and pharmacy unit price
-					double unitPrice = item.getUnitPrice().doubleValue();
-				    
-					double cost= unitPrice*qty;
 
-					patDueAmt += ReportsUtil.roundTwoDecimals(cost*(100-rate)/100);
-
-					insDueAmt += ReportsUtil.roundTwoDecimals(cost*rate/100);
-					
-					totalDueAmt = patDueAmt + insDueAmt;
-
-				}
-				
-				//TODO: must check this method called right here from Tag...
-				payments = ReportsUtil.roundTwoDecimals(Long.parseLong(MohBillingTagUtil.getTotalAmountPaidByPatientBill(bill.getPatientBillId())));
+				double patDueAmt = toDouble(bill.getPatientDue());
+				double insDueAmt = toDouble(bill.getInsurerDue());
+				double totalDueAmt = toDouble(bill.getTotalDue());
+				double payments = toDouble(bill.getPaidAmount());
 				billObj.add(new Object[] {
 						Context.getDateFormat().format(serviceDate),
 						bill.getBeneficiary().getPolicyIdNumber(),
@@ -187,20 +224,14 @@ public class MohBillingCohortBuilderFormController extends
 						ReportsUtil.roundTwoDecimals(totalDueAmt),
 						bill.getStatus(),
 						bill.getPatientBillId()});
-
-				totalAmount += totalDueAmt;
-				totalPatientDueAmount += patDueAmt;
-				totalInsuranceDueAmount += insDueAmt;
-				totalAmountReceived += payments;
-
 			}
 			mav.addObject("totalAmountReceived",
-					ReportsUtil.roundTwoDecimals(totalAmountReceived));
+					ReportsUtil.roundTwoDecimals(toDouble(cohortTotals.get("paidAmount"))));
 			mav.addObject("insuranceDueAmount",
-					ReportsUtil.roundTwoDecimals(totalInsuranceDueAmount));
+					ReportsUtil.roundTwoDecimals(toDouble(cohortTotals.get("insurerDue"))));
 			mav.addObject("patientDueAmount",
-					ReportsUtil.roundTwoDecimals(totalPatientDueAmount));
-			mav.addObject("totalAmount", ReportsUtil.roundTwoDecimals(totalAmount));
+					ReportsUtil.roundTwoDecimals(toDouble(cohortTotals.get("patientDue"))));
+			mav.addObject("totalAmount", ReportsUtil.roundTwoDecimals(toDouble(cohortTotals.get("totalDue"))));
 			mav.addObject("billObj", billObj);
 			mav.addObject("reportedPatientBills", reportedPatientBills);
 			mav.addObject("startDate", request.getParameter("startDate"));
@@ -217,20 +248,10 @@ public class MohBillingCohortBuilderFormController extends
 			}
 
 			mav.addObject("serviceNames", serviceNames);
-			request.getSession().setAttribute("mariam" , reportedPatientBills);
-
-			if (request.getParameter("print") != null)
-				if (request.getParameter("print").equals("true")) {
-
-//					log.info("00000000000000000000 Reaching there!!");
-					if (request.getParameter("reportedPatientBills") != null) {
-						// reportedPatientBills =
-						// request.getParameter("reportedPatientBills");
-						ReportsUtil.printPatientBillToPDF(request, response,
-								reportedPatientBills);
-					}
 
-				}
+			if (print)
+				ReportsUtil.printPatientBillToPDF(request, response,
+						reportedPatientBills);
 		}
 		
 		String patientBillIdStr=null;
@@ -246,7 +267,7 @@ public class MohBillingCohortBuilderFormController extends
 				FileExporter fexp = new FileExporter();
 				log.info("myarrrrrrrrrrrrrrrrrrrrrrrrrrrrrrrrrrrrrrrray "+checked_bill[i]);
 				//print all these bills
-				PatientBill patientBill =  Context.getService(BillingService.class).getPatientBill(Integer.parseInt(checked_bill[i])); 
+				PatientBill patientBill =  Context.getService(BillingService.class).getPatientBillWithItems(Integer.parseInt(checked_bill[i])); 
 				PatientInvoice patientInvoice = PatientBillUtil.getPatientInvoice(patientBill, null);
 				String invoiceOwner = "facNo"+patientBill.getPatientBillId()+"_"+patientBill.getBeneficiary().getPatient().getFamilyName()+" "+patientBill.getBeneficiary().getPatient().getGivenName()+"On"+patientBill.getCreatedDate()+".pdf";
 				fexp.exportPatientBillToPDF(request, response,patientInvoice,invoiceOwner,"Details des soins recus");
@@ -291,7 +312,10 @@ public class MohBillingCohortBuilderFormController extends
 
 	}
 
-	
-
-
+	/**
+	 * @return the amount, 0 for a bill whose balances are not computed yet
+	 */
+	private static double toDouble(BigDecimal amount) {
+		return (amount != null) ? amount.doubleValue() : 0;
+	}
 }
@@ -18,22 +18,30 @@ import org.apache.commons.logging.LogFactory;
 import org.hibernate.SessionFactory;
 import org.openmrs.Patient;
 import org.openmrs.User;
+import org.openmrs.api.APIException;
 import org.openmrs.api.context.Context;
 import org.openmrs.module.mohbilling.businesslogic.FileExporter;
 import org.openmrs.module.mohbilling.businesslogic.InsuranceUtil;
+import org.openmrs.module.mohbilling.businesslogic.InvoiceAggregationUtil;
 import org.openmrs.module.mohbilling.businesslogic.PatientBillUtil;
+import org.openmrs.module.mohbilling.businesslogic.RecoveryInvoiceReportJob;
+import org.openmrs.module.mohbilling.businesslogic.ReportJob;
+import org.openmrs.module.mohbilling.businesslogic.ReportJobUtil;
 import org.openmrs.module.mohbilling.businesslogic.ReportsUtil;
 import org.openmrs.module.mohbilling.model.Consommation;
 import org.openmrs.module.mohbilling.model.FacilityServicePrice;
 import org.openmrs.module.mohbilling.model.Insurance;
 import org.openmrs.module.mohbilling.model.InsuranceRate;
+import org.openmrs.module.mohbilling.model.InvoiceAggregation;
 import org.openmrs.module.mohbilling.model.Invoice;
 import org.openmrs.module.mohbilling.model.PatientBill;
 import org.openmrs.module.mohbilling.model.PatientInvoice;
 import org.openmrs.module.mohbilling.model.PatientServiceBill;
 import org.openmrs.module.mohbilling.service.BillingService;
+import org.openmrs.web.WebConstants;
 import org.springframework.web.servlet.ModelAndView;
 import org.springframework.web.servlet.mvc.ParameterizableViewController;
+import org.springframework.web.servlet.view.RedirectView;
 
 public class MohBillingFactureRecovery extends ParameterizableViewController {
 	protected final Log log = LogFactory.getLog(getClass());
@@ -154,70 +162,29 @@ public class MohBillingFactureRecovery extends ParameterizableViewController {
 			//String[] serviceCategories = {"CHIRUR","CONSOMM", "CONSULT","DERMAT", "ECHOG", "FORMAL", "HOSPIT", "KINE","LABO","MAT","MEDECI", "MEDICAM","OPHTAL", "ORL", "OXGYNOT","PEDIAT","RADIO","SOINS INF","SOINS INT","STOMAT","GYNECO","POLYC"};
 			
 			String[] serviceCategories ={"CONSULT","LABO","IMAGERIE","ACTS","MEDICAMENTS","CONSOMM","AMBULANCE","AUTRE","HOSPITAL"};
-			Double totalConsult = 0.0;
-			Double totalLabo = 0.0;
-			Double totalImagery = 0.0;
-			Double totalActs = 0.0;
-			Double totalMedica = 0.0;
-			Double totalConsomm = 0.0;
-			Double totalAmbul = 0.0;
-			Double totalAutres = 0.0;
-			Double totalHosp = 0.0;
-			Double total100 = 0.0;
-			Double totalTickMod = 0.0;
-			Double totalRate = 0.0;
-	
+			List<PatientBill> insuranceBills = new ArrayList<PatientBill>();
 			for (PatientBill patientBill : patientBills) {
 				 Insurance pbinsurance =patientBill.getBeneficiary().getInsurancePolicy().getInsurance();
-				
-				 if (pbinsurance==insurance) {
-		
-					PatientInvoice patientInvoice = PatientBillUtil.getPatientInvoice(patientBill, insurance);
-	    
-				    billMap.put(patientBill, patientInvoice);	
-								
-								
-					for (String ip : patientInvoice.getInvoiceMap().keySet()) {
-//						log.info("ttttttttttttttttttttttttttttttttttttttttttttkey "+ip);
-//						log.info("ttttttttttttttttttttttttttttttttttttttttttttSubTotal "+patientInvoice.getInvoiceMap().get(ip).getSubTotal());
-						
-						total100+=patientInvoice.getInvoiceMap().get(ip).getSubTotal();;
-						
-						log.info("totaaaaaaaaaaaaAmbu "+totalAmbul);
-						if(ip.equals("CONSULTATION"))
-						totalConsult+=patientInvoice.getInvoiceMap().get(ip).getSubTotal();
-						if(ip.equals("LABORATOIRE"))
-						totalLabo+=patientInvoice.getInvoiceMap().get(ip).getSubTotal();
-						if(ip.equals("IMAGERIE"))
-						totalImagery+=patientInvoice.getInvoiceMap().get(ip).getSubTotal();
-						if(ip.equals("ACTS"))
-						totalActs+=patientInvoice.getInvoiceMap().get(ip).getSubTotal();
-						if(ip.equals("MEDICAMENTS"))
-						totalMedica+=patientInvoice.getInvoiceMap().get(ip).getSubTotal();
-						if(ip.equals("CONSOMMABLES"))
-						totalConsomm+=patientInvoice.getInvoiceMap().get(ip).getSubTotal();
-						if(ip.startsWith("AMBULANCE"))
-						totalAmbul+=patientInvoice.getInvoiceMap().get(ip).getSubTotal();
-						if(ip.equals("AUTRES"))
-						totalAutres+=patientInvoice.getInvoiceMap().get(ip).getSubTotal();
-						if(ip.equals("HOSPITALISATION"))
-						totalHosp+=patientInvoice.getInvoiceMap().get(ip).getSubTotal();
-					}
-					 totalTickMod=total100*(100-rate)/100;
-					 totalRate=total100*rate/100;
-					
-				}	
+				 if (pbinsurance==insurance)
+					 insuranceBills.add(patientBill);
 			}
-
 			
-			Double[] totals ={ReportsUtil.roundTwoDecimals(totalConsult),ReportsUtil.roundTwoDecimals(totalLabo),
-					ReportsUtil.roundTwoDecimals(totalImagery),ReportsUtil.roundTwoDecimals(totalActs),
-					ReportsUtil.roundTwoDecimals(totalMedica),ReportsUtil.roundTwoDecimals(totalConsomm),
-					ReportsUtil.roundTwoDecimals(totalAmbul),ReportsUtil.roundTwoDecimals(totalAutres),
-					ReportsUtil.roundTwoDecimals(totalHosp),ReportsUtil.roundTwoDecimals(total100),
+			// the invoices are built in parallel, ordered by bill id
+			InvoiceAggregation aggregation = InvoiceAggregationUtil.aggregate(insuranceBills);
+			for (PatientInvoice patientInvoice : aggregation.getInvoices())
+				billMap.put(patientInvoice.getPatientBill(), patientInvoice);
+			
+			Double total100 = aggregation.getTotal();
+			Double totalTickMod=total100*(100-rate)/100;
+			Double totalRate=total100*rate/100;
+			
+			Double[] totals ={ReportsUtil.roundTwoDecimals(aggregation.getTotal("CONSULTATION")),ReportsUtil.roundTwoDecimals(aggregation.getTotal("LABORATOIRE")),
+					ReportsUtil.roundTwoDecimals(aggregation.getTotal("IMAGERIE")),ReportsUtil.roundTwoDecimals(aggregation.getTotal("ACTS")),
+					ReportsUtil.roundTwoDecimals(aggregation.getTotal("MEDICAMENTS")),ReportsUtil.roundTwoDecimals(aggregation.getTotal("CONSOMMABLES")),
+					ReportsUtil.roundTwoDecimals(aggregation.getTotal("AMBULANCE")),ReportsUtil.roundTwoDecimals(aggregation.getTotal("AUTRES")),
+					ReportsUtil.roundTwoDecimals(aggregation.getTotal("HOSPITALISATION")),ReportsUtil.roundTwoDecimals(total100),
 					ReportsUtil.roundTwoDecimals(totalTickMod),ReportsUtil.roundTwoDecimals(totalRate)};
 			
-
 							
 //			mav.addObject("patientBillMap", billMap);
 			mav.addObject("patientBillMap", billMap);
@@ -233,7 +200,10 @@ public class MohBillingFactureRecovery extends ParameterizableViewController {
 
 //				Map<String, Double> mappedReport = getAllBillsByCollector(patientBills, serviceCategories,fullyreceivedAmount, partialypaids);
 //				basedDateReport.put(simpleDateFormat.format(date),	mappedReport);	
-				request.getSession().setAttribute("patientBillsInSession" , billMap);
+				// keep the search rather than the bills, the export reloads them
+				request.getSession().setAttribute("recoveryStartDate" , startDate);
+				request.getSession().setAttribute("recoveryEndDate" , endDate);
+				request.getSession().setAttribute("recoveryInsuranceId" , insuranceIdInt);
 				request.getSession().setAttribute("serviceCategories" , serviceCategories);
 			//	log.info("WWWWWWWWWWWWWWWWWWWWWWWWWWW "+patientBills);
 			}	
@@ -259,13 +229,18 @@ public class MohBillingFactureRecovery extends ParameterizableViewController {
 			//log.info("JJJJJJJJJJJJJJJJJJJJJJJJJJJJJJJJJJJ "+session.getAttribute("patientBillsInSession"));
 			
 			String[] serviceCategories = (String[]) session.getAttribute("serviceCategories");
-			LinkedHashMap<PatientBill, PatientInvoice> basedDateReport =  (LinkedHashMap<PatientBill, PatientInvoice>) session.getAttribute("patientBillsInSession");
-			
-			FileExporter fexp = new FileExporter();
-			String fileName = "daily_report.pdf";
-//		    fexp.printCashierReport(request, response,basedDateReport,fileName,"Daily Cashier report");	
 			
-			fexp.exportToCSVFile(request, response, basedDateReport, fileName, "Recovery");
+			// the csv is generated in the background, the job page offers it once ready
+			try {
+				ReportJob job = ReportJobUtil.submit(new RecoveryInvoiceReportJob(
+						(Integer) session.getAttribute("recoveryInsuranceId"),
+						(Date) session.getAttribute("recoveryStartDate"),
+						(Date) session.getAttribute("recoveryEndDate")));
+				
+				return new ModelAndView(new RedirectView("reportJob.form?id=" + job.getId()));
+			} catch (APIException e) {
+				session.setAttribute(WebConstants.OPENMRS_ERROR_ATTR, e.getMessage());
+			}
 			
 //			for (PatientBill pb : basedDateReport.keySet()) {
 //				log.info("Keyyyyyyy "+pb.getPatientBillId()+" Iddddddddddddd"+basedDateReport.get(pb).getInvoiceMap().keySet());
@@ -20,6 +20,7 @@ import org.openmrs.User;
 import org.openmrs.api.context.Context;
 import org.openmrs.module.mohbilling.businesslogic.FileExporter;
 import org.openmrs.module.mohbilling.businesslogic.InsuranceUtil;
+import org.openmrs.module.mohbilling.businesslogic.InvoiceAggregationUtil;
 import org.openmrs.module.mohbilling.businesslogic.PatientBillUtil;
 import org.openmrs.module.mohbilling.model.BillPayment;
 import org.openmrs.module.mohbilling.model.Insurance;
@@ -142,7 +143,7 @@ public class MohBillingInsuranceInvoiceController extends
 			String[] serviceCategories = {"FORMALITES ADMINISTRATIVES","CONSULTATION","LABORATOIRE","RADIOLOGIE","ECHOGRAPHIE","OPHTALMOLOGIE","CHIRURGIE","MEDEC","CONSOMMABLES","KINESITHERAPIE","STOMATOLOGIE","MATERNITE","AMBULANCE","SOINS INFIRMIERS","MEDICAMENTS","HOSPITALISATION"};  
 			
 			//Map<String,List<PatientServiceBill>> groupMap = new HashMap<String, List<PatientServiceBill>>();
-			List<PatientInvoice> patientInvoiceList = new ArrayList<PatientInvoice>();
+			List<PatientBill> selectedBills = new ArrayList<PatientBill>();
 			
 				Insurance pbInsurance = null;
 				User pbCreator =null;
@@ -150,9 +151,11 @@ public class MohBillingInsuranceInvoiceController extends
 					    pbCreator=pb.getCreator();
 						pbInsurance=pb.getBeneficiary().getInsurancePolicy().getInsurance();
 					if(patient==pb.getBeneficiary().getPatient()||insurance==pbInsurance||cashCollector==pbCreator.getUsername()){
-						patientInvoiceList.add(PatientBillUtil.getPatientInvoice(pb, insurance));
+						selectedBills.add(pb);
 					}
 				}
+			// the invoices are built in parallel, ordered by bill id
+			List<PatientInvoice> patientInvoiceList = InvoiceAggregationUtil.aggregate(selectedBills).getInvoices();
 			mav.addObject("patientInvoiceList", patientInvoiceList);
 			
 //
@@ -168,7 +171,7 @@ public class MohBillingInsuranceInvoiceController extends
 					if(request.getParameter("billId")!=null){
 						billIdStr=request.getParameter("billId");
 						Integer billId = Integer.parseInt(billIdStr);
-						PatientBill patientBill =  Context.getService(BillingService.class).getPatientBill(billId); 
+						PatientBill patientBill =  Context.getService(BillingService.class).getPatientBillWithItems(billId); 
 						PatientInvoice patientInvoice = PatientBillUtil.getPatientInvoice(patientBill, null);
 						mav.addObject("patientInvoice", patientInvoice);			
 					
@@ -179,7 +182,7 @@ public class MohBillingInsuranceInvoiceController extends
 					if (request.getParameter("patientBillId") != null) {
 						patientBillIdStr=request.getParameter("patientBillId");
 						Integer patientBillId=Integer.parseInt(patientBillIdStr);
-						PatientBill patientBill =  Context.getService(BillingService.class).getPatientBill(patientBillId); 
+						PatientBill patientBill =  Context.getService(BillingService.class).getPatientBillWithItems(patientBillId); 
 						PatientInvoice patientInvoice = PatientBillUtil.getPatientInvoice(patientBill, null);
 						String invoiceOwner = "facNo"+patientBill.getPatientBillId()+"On"+patientBill.getCreatedDate()+".pdf";
 						fexp.exportPatientBillToPDF(request, response,patientInvoice,invoiceOwner,"Details des soins recus");
@@ -5,6 +5,7 @@ import java.text.DateFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.List;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -45,9 +46,13 @@ public class MohBillingManageRecoveryController extends
 		ModelAndView mav = new ModelAndView();
 		mav.setViewName(getViewName());
 
-		mav.addObject("allInsurances", InsuranceUtil.getInsurances(true));
-		mav.addObject("allThirdParties",
-				InsurancePolicyUtil.getAllThirdParties());
+		List<Insurance> insurances = InsuranceUtil.getInsurances(true);
+		List<ThirdParty> thirdParties = InsurancePolicyUtil.getAllThirdParties();
+		mav.addObject("allInsurances", insurances);
+		mav.addObject("allThirdParties", thirdParties);
+
+		if (request.getParameter("showDueAmounts") != null)
+			handleShowDueAmounts(request, mav, insurances, thirdParties);
 
 		if (request.getParameter("recordInfo") != null) {
 
@@ -65,6 +70,48 @@ public class MohBillingManageRecoveryController extends
 		return mav;
 	}
 
+	/**
+	 * Shows the amounts due by every insurance and third party over the
+	 * selected period, each computed by a single grouped query
+	 * 
+	 * @param request
+	 *            the HttpServletRequest
+	 * @param mav
+	 *            the ModelAndView
+	 * @param insurances
+	 *            the insurances listed
+	 * @param thirdParties
+	 *            the third parties listed
+	 */
+	private void handleShowDueAmounts(HttpServletRequest request,
+			ModelAndView mav, List<Insurance> insurances,
+			List<ThirdParty> thirdParties) {
+
+		if (request.getParameter("startDate") == null
+				|| request.getParameter("startDate").equals("")
+				|| request.getParameter("endDate") == null
+				|| request.getParameter("endDate").equals(""))
+			return;
+
+		try {
+			Recovery period = new Recovery();
+			period.setStartPeriod(OpenmrsUtil.getDateFormat().parse(
+					request.getParameter("startDate")));
+			period.setEndPeriod(OpenmrsUtil.getDateFormat().parse(
+					request.getParameter("endDate")));
+
+			mav.addObject("recovery", period);
+			mav.addObject("insuranceDueAmounts", RecoveryUtil
+					.getInsuranceDueAmounts(period.getStartPeriod(),
+							period.getEndPeriod(), insurances));
+			mav.addObject("thirdPartyDueAmounts", RecoveryUtil
+					.getThirdPartyDueAmounts(period.getStartPeriod(),
+							period.getEndPeriod(), thirdParties));
+		} catch (ParseException e) {
+			log.info("ERROR WHILE PARSING DATE: \n\n" + e.getMessage());
+		}
+	}
+
 	/**
 	 * Handles Recovery Process record using HttpServletRequest and ModelAndView
 	 * 
@@ -15,6 +15,7 @@ import javax.servlet.http.HttpServletResponse;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.openmrs.api.context.Context;
+import org.openmrs.module.mohbilling.businesslogic.MohBillingTagUtil;
 import org.openmrs.module.mohbilling.businesslogic.PatientBillUtil;
 import org.openmrs.module.mohbilling.businesslogic.ReportsUtil;
 import org.openmrs.module.mohbilling.model.BillPayment;
@@ -66,6 +67,7 @@ public class MohBillingPatientBillPaymentFormController extends
 			for(PatientBill bill: patientBills)
 				if(bill.getStatus() == null)
 					PatientBillUtil.markBillAsPaid(bill);
+			MohBillingTagUtil.loadBalances(patientBills);
 
 			mav.addObject("patientBill", pb);
 			mav.addObject("patientBills", patientBills);
@@ -93,7 +93,7 @@ public class MohBillingPrintPatientBillController extends AbstractController {
 
 		PatientBill pb = null;
 
-		pb = Context.getService(BillingService.class).getPatientBill(
+		pb = Context.getService(BillingService.class).getPatientBillWithItems(
 				Integer.parseInt(request.getParameter("patientBillId")));
 		
 		PatientInvoice patientInvoice = PatientBillUtil.getPatientInvoice(pb, null);
@@ -142,8 +142,7 @@ public class MohBillingPrintPatientBillController extends AbstractController {
         document.add(fexp.displayPysicalAddress(catFont, pb));
 		
 		// title row
-		FontSelector fontTitleSelector = new FontSelector();
-		fontTitleSelector.addFont(new Font(FontFamily.COURIER, 9, Font.NORMAL));
+		FontSelector fontTitleSelector = fontTitle;
 		
 		 
 		PdfPTable tableHeader = new PdfPTable(1);
@@ -194,8 +193,7 @@ public class MohBillingPrintPatientBillController extends AbstractController {
 		 document.add(evenItemsTable);
 
 		
-		FontSelector boldFont = new FontSelector();
-		boldFont.addFont(new Font(FontFamily.COURIER, 9, Font.BOLD));
+		FontSelector boldFont = (FontSelector) fexp.getFonts().get("BOLD");
 			
 		// display total
 		Double totalPaid = 0.0;
@@ -367,7 +365,7 @@ public class MohBillingPrintPatientBillController extends AbstractController {
 	    FileExporter fexp = new FileExporter();
 		PatientBill pb = null;
 
-		pb = Context.getService(BillingService.class).getPatientBill(
+		pb = Context.getService(BillingService.class).getPatientBillWithItems(
 				Integer.parseInt(request.getParameter("patientBillId")));
 
 		String filename = pb.getBeneficiary().getPatient().getPersonName()
@@ -3,6 +3,8 @@
  */
 package org.openmrs.module.mohbilling.web.controller;
 
+import java.util.Collections;
+
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
@@ -74,11 +76,11 @@ public class MohBillingRefundBillFormController extends
 							}
 						}
 
-						// Removing the no-needed bill item...
-						bill.removeBillItem(temp);
-
-						// Saving the changes made...
-						PatientBillUtil.savePatientBill(bill);
+						// Removing the no-needed bill item and saving the
+						// changes made, the refund being logged...
+						if (temp != null)
+							PatientBillUtil.refundPatientBill(bill,
+									Collections.singletonList(temp));
 					}
 
 			mav.addObject("patientBill", bill);
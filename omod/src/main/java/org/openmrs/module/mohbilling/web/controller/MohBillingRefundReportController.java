@@ -1,8 +1,12 @@
 package org.openmrs.module.mohbilling.web.controller;
 
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import javax.servlet.http.HttpServletRequest;
@@ -16,6 +20,7 @@ import org.openmrs.module.mohbilling.businesslogic.PatientBillUtil;
 import org.openmrs.module.mohbilling.businesslogic.ReportsUtil;
 import org.openmrs.module.mohbilling.model.BillPayment;
 import org.openmrs.module.mohbilling.model.PatientBill;
+import org.openmrs.module.mohbilling.service.BillingService;
 import org.springframework.web.servlet.ModelAndView;
 import org.springframework.web.servlet.mvc.ParameterizableViewController;
 
@@ -71,13 +76,17 @@ public class MohBillingRefundReportController extends 	ParameterizableViewContro
 				if (startDate != null && endDate != null) {
 			     
 					Set<PatientBill> refundedBills = PatientBillUtil.getRefundedBill(startDate, endDate, collector);
-					request.getSession().setAttribute("refundedBills" , refundedBills);
+					// the ids only, the bills being loaded again in the session of the print request
+					List<Integer> refundedBillIds = new ArrayList<Integer>();
+					for (PatientBill pb : refundedBills)
+						refundedBillIds.add(pb.getPatientBillId());
+					request.getSession().setAttribute("refundedBillIds" , refundedBillIds);
 					
 					mav.addObject("collector", collector);
 					mav.addObject("refundedBills", refundedBills);	
 		 
-					//Math.abs(x)==>to get an absolute value
-					mav.addObject("totalRefundedAmount", Math.abs(ReportsUtil.roundTwoDecimals(ReportsUtil.getTotalRefundedAmount(refundedBills))));
+					// summed by the refund event log rather than over the bill payments
+					mav.addObject("totalRefundedAmount", ReportsUtil.roundTwoDecimals(PatientBillUtil.getTotalRefundedAmount(startDate, endDate, collector).doubleValue()));
 
 				}
 
@@ -87,7 +96,16 @@ public class MohBillingRefundReportController extends 	ParameterizableViewContro
 				if (request.getParameter("printed")!=null) {
 					HttpSession session = request.getSession(true);
 
-					Set<PatientBill> billsWithRefunds = (Set<PatientBill>) session.getAttribute("refundedBills");
+					Set<PatientBill> billsWithRefunds = new LinkedHashSet<PatientBill>();
+					List<Integer> refundedBillIds = (List<Integer>) session.getAttribute("refundedBillIds");
+					if (refundedBillIds != null) {
+						Map<Integer, PatientBill> billsById = new HashMap<Integer, PatientBill>();
+						for (PatientBill pb : Context.getService(BillingService.class).getPatientBillsWithItems(refundedBillIds))
+							billsById.put(pb.getPatientBillId(), pb);
+						for (Integer billId : refundedBillIds)
+							if (billsById.containsKey(billId))
+								billsWithRefunds.add(billsById.get(billId));
+					}
 					
 					FileExporter fexp = new FileExporter();
 					String fileName = "Refund Report.pdf";
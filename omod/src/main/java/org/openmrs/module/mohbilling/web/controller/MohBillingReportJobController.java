@@ -0,0 +1,88 @@
+package org.openmrs.module.mohbilling.web.controller;
+
+import java.io.FileInputStream;
+import java.io.InputStream;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.api.APIAuthenticationException;
+import org.openmrs.api.APIException;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.mohbilling.businesslogic.ReportJob;
+import org.openmrs.module.mohbilling.businesslogic.ReportJobUtil;
+import org.openmrs.module.mohbilling.model.ReportJobStatus;
+import org.openmrs.util.OpenmrsUtil;
+import org.openmrs.web.WebConstants;
+import org.springframework.web.servlet.ModelAndView;
+import org.springframework.web.servlet.mvc.ParameterizableViewController;
+
+/**
+ * Shows the status of a report generated in the background, and sends its
+ * result file once it is done. A job is only shown to the user who submitted
+ * it, who may also have a finished report generated again.
+ */
+public class MohBillingReportJobController extends
+		ParameterizableViewController {
+
+	protected final Log log = LogFactory.getLog(getClass());
+
+	@Override
+	protected ModelAndView handleRequestInternal(HttpServletRequest request,
+			HttpServletResponse response) throws Exception {
+
+		if (!Context.hasPrivilege("Manage Billing Reports"))
+			throw new APIAuthenticationException(
+					"Privilege required: Manage Billing Reports");
+
+		ModelAndView mav = new ModelAndView();
+		ReportJob job = null;
+		if (request.getParameter("id") != null)
+			job = ReportJobUtil.getJob(request.getParameter("id"));
+
+		// the job of another user is not told apart from an unknown one
+		if (job != null
+				&& !Context.getAuthenticatedUser().getUserId()
+						.equals(job.getOwnerId()))
+			job = null;
+
+		// a saved result deleted once expired
+		if (job != null && job.getStatus() == ReportJobStatus.DONE
+				&& !job.getResultFile().exists())
+			job = null;
+
+		if (job != null && request.getParameter("regenerate") != null) {
+			try {
+				ReportJobUtil.regenerate(job);
+			} catch (APIException e) {
+				request.getSession().setAttribute(
+						WebConstants.OPENMRS_ERROR_ATTR, e.getMessage());
+			}
+		}
+
+		if (job != null && job.getStatus() == ReportJobStatus.DONE
+				&& request.getParameter("download") != null) {
+
+			response.setContentType(job.getContentType());
+			response.setHeader("Content-Disposition", "attachment; filename=\""
+					+ job.getName() + "." + job.getFileExtension() + "\"");
+			response.setContentLength((int) job.getResultFile().length());
+
+			InputStream in = new FileInputStream(job.getResultFile());
+			try {
+				OpenmrsUtil.copyFile(in, response.getOutputStream());
+			} finally {
+				in.close();
+			}
+			return null;
+		}
+
+		mav.addObject("job", job);
+		mav.addObject("id", (job != null) ? job.getId() : null);
+		mav.setViewName(getViewName());
+
+		return mav;
+	}
+}
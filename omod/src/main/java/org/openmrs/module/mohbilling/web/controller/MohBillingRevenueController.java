@@ -1,7 +1,7 @@
 package org.openmrs.module.mohbilling.web.controller;
 
+import java.text.ParseException;
 import java.text.SimpleDateFormat;
-import java.util.Arrays;
 import java.util.Date;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -16,19 +16,22 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.hibernate.SessionFactory;
 import org.openmrs.User;
+import org.openmrs.api.APIException;
 import org.openmrs.api.context.Context;
 import org.openmrs.module.mohbilling.advice.MohBillingUsageStatsUtils;
 import org.openmrs.module.mohbilling.businesslogic.BillingGlobalProperties;
-import org.openmrs.module.mohbilling.businesslogic.FileExporter;
 import org.openmrs.module.mohbilling.businesslogic.InsuranceUtil;
+import org.openmrs.module.mohbilling.businesslogic.ReportJob;
+import org.openmrs.module.mohbilling.businesslogic.ReportJobUtil;
 import org.openmrs.module.mohbilling.businesslogic.ReportsUtil;
-import org.openmrs.module.mohbilling.model.FacilityServicePrice;
+import org.openmrs.module.mohbilling.businesslogic.RevenueReportJob;
 import org.openmrs.module.mohbilling.model.Insurance;
 import org.openmrs.module.mohbilling.model.PatientBill;
-import org.openmrs.module.mohbilling.model.PatientServiceBill;
 import org.openmrs.module.mohbilling.service.BillingService;
+import org.openmrs.web.WebConstants;
 import org.springframework.web.servlet.ModelAndView;
 import org.springframework.web.servlet.mvc.ParameterizableViewController;
+import org.springframework.web.servlet.view.RedirectView;
 
 public class MohBillingRevenueController extends ParameterizableViewController {
 	protected final Log log = LogFactory.getLog(getClass());
@@ -59,24 +62,10 @@ public class MohBillingRevenueController extends ParameterizableViewController {
 				String endTimePar = request.getParameter("endTime");
 
 
-				String startTimeStr = startTimePar + ":00";
-				String endTimeStr = endTimePar + ":59";
-				Date startDate = null, endDate = null;
-				if (request.getParameter("startDate") != null
-						&& !request.getParameter("startDate").equals("")) {
-					startDateStr = request.getParameter("startDate");
-					startDate = sdf.parse(startDateStr.split("/")[2] + "-"
-							+ startDateStr.split("/")[1] + "-"
-							+ startDateStr.split("/")[0] + " " + startTimeStr);
-				}
-
-				if (request.getParameter("endDate") != null
-						&& !request.getParameter("endDate").equals("")) {
-					endDateStr = request.getParameter("endDate");
-					endDate = sdf.parse(endDateStr.split("/")[2] + "-"
-							+ endDateStr.split("/")[1] + "-"
-							+ endDateStr.split("/")[0] + " " + endTimeStr);
-				}
+				Date startDate = parseDate(request.getParameter("startDate"),
+						startTimePar + ":00");
+				Date endDate = parseDate(request.getParameter("endDate"),
+						endTimePar + ":59");
 
 				User collector = null;
 
@@ -178,13 +167,12 @@ public class MohBillingRevenueController extends ParameterizableViewController {
 
 						if (patientBills.size() > 0) {
 
-							Map<String, Double> mappedReport = getAllBillsByCollector(
-									patientBills, serviceCategories,
-									fullyreceivedAmount, partialypaids);
+							Map<String, Double> mappedReport = ReportsUtil
+									.getAllBillsByCollector(patientBills,
+											serviceCategories,
+											fullyreceivedAmount, partialypaids);
 							basedDateReport.put(simpleDateFormat.format(startDate),
 									mappedReport);
-							request.getSession().setAttribute(
-									"basedDateReport", basedDateReport);
 
 						}
 
@@ -208,23 +196,49 @@ public class MohBillingRevenueController extends ParameterizableViewController {
 
 		if (request.getParameter("printed") != null) {
 			String userStr = request.getParameter("userId");
-
-			// User collector
-			// =Context.getUserService().getUser(Integer.parseInt(userStr));
-
-			LinkedHashMap<String, Map<String, Double>> basedDateReport = (LinkedHashMap<String, Map<String, Double>>) request
-					.getSession().getAttribute("basedDateReport");
-			FileExporter fexp = new FileExporter();
-			String fileName = "daily_report.pdf";
-			fexp.printCashierReport(request, response, basedDateReport,
-					fileName, "Daily Cashier report");
-
+			Date startDate = parseDate(request.getParameter("startDate"),
+					request.getParameter("startTime") + ":00");
+			Date endDate = parseDate(request.getParameter("endDate"),
+					request.getParameter("endTime") + ":59");
+
+			// the pdf is generated in the background, the job page offers it once ready
+			if (startDate != null && endDate != null) {
+				try {
+					ReportJob job = ReportJobUtil.submit(new RevenueReportJob(
+							startDate, endDate,
+							(userStr != null && !userStr.equals("")) ? Integer
+									.valueOf(userStr) : null));
+
+					return new ModelAndView(new RedirectView(
+							"reportJob.form?id=" + job.getId()));
+				} catch (APIException e) {
+					request.getSession().setAttribute(
+							WebConstants.OPENMRS_ERROR_ATTR, e.getMessage());
+				}
+			}
 		}
 		mav.setViewName(getViewName());
 
 		return mav;
 	}
 
+	/**
+	 * @param date the date as entered, dd/MM/yyyy
+	 * @param time the time of the day, HH:mm:ss
+	 * @return the date at the given time, null if no date was entered
+	 */
+	private static Date parseDate(String date, String time)
+			throws ParseException {
+
+		if (date == null || date.equals(""))
+			return null;
+
+		String[] dayMonthYear = date.split("/");
+		return new SimpleDateFormat("yyyy-MM-dd HH:mm:ss")
+				.parse(dayMonthYear[2] + "-" + dayMonthYear[1] + "-"
+						+ dayMonthYear[0] + " " + time);
+	}
+
 	/**
 	 * @param request
 	 * @param mav
@@ -244,123 +258,4 @@ public class MohBillingRevenueController extends ParameterizableViewController {
 				+ request.getParameter("insurance") : "";
 		mav.addObject("prmtrs", param);
 	}
-
-	public static LinkedHashMap<String, Double> getAllBillsByCollector(
-			Set<PatientBill> bills, List<String> serviceCategories,
-			Double receivedAmount, Double partiallyPaids) {
-		// int []docuLegIds ={300,81,5002};
-		List<Integer> docuLegIds = Arrays.asList(300, 81, 5002);
-
-		List<Integer> actMorgueIds = Arrays.asList(5011, 5046, 107, 106, 105,
-				101, 109);
-
-		List<Integer> notTonsiderIds = Arrays.asList(5011, 5046, 107, 106, 105,
-				101, 109, 300, 81, 5002, 96);
-
-		LinkedHashMap<String, Double> invoiceMap = new LinkedHashMap<String, Double>();
-		Double total = 0.0;
-		Double ambulanceCost = 0.0;
-		// run through all services category and group amount by service
-		// category
-
-		for (String svceCateg : serviceCategories) {
-
-			Double subTotal = 0.0;
-
-			// run through all patient bills and group amount by category
-
-			for (PatientBill pb : bills) {
-				Double currentRate = pb.getBeneficiary().getInsurancePolicy()
-						.getInsurance().getCurrentRate().getRate()
-						.doubleValue();
-				// scan each item amount
-				double patDueAmt = 0.0;
-				for (PatientServiceBill item : pb.getBillItems()) {
-					String category = item.getService()
-							.getFacilityServicePrice().getCategory();
-					FacilityServicePrice fsp = item.getService()
-							.getFacilityServicePrice();
-					Integer fspId = fsp.getFacilityServicePriceId();
-
-					if (category.startsWith(svceCateg)) {
-
-						if (notTonsiderIds.contains(fspId) == false) {
-
-							if (category.equals("AUTRES")) {
-
-								double patientCost = item.getQuantity().doubleValue()
-										* item.getUnitPrice().doubleValue();
-								patDueAmt = patDueAmt + patientCost;
-
-							} else {
-								double patientCost = item.getQuantity().doubleValue()
-										* item.getUnitPrice().doubleValue()
-										* (100 - currentRate) / 100;
-								patDueAmt = patDueAmt + patientCost;
-
-							}
-
-						}
-
-					}
-					// if facilicity service name equal ambulance ,take it away
-					if (svceCateg.startsWith("AMBULAN")) {
-						if (fspId == 96) {
-
-							double patientCost = item.getQuantity().doubleValue()
-									* item.getUnitPrice().doubleValue()
-									* (100 - currentRate) / 100;
-
-							patDueAmt = patDueAmt + patientCost;
-						}
-					}
-					// group amount for all considered medicaux documents
-					if (svceCateg.startsWith("DOC.LEGAUX")) {
-
-						if (docuLegIds.contains(fspId)) {
-
-							double patientCost = item.getQuantity().doubleValue()
-									* item.getUnitPrice().doubleValue()
-									* (100 - currentRate) / 100;
-
-							patDueAmt = patDueAmt + patientCost;
-
-						}
-
-					}
-					// morgue grouping
-
-					if (svceCateg.startsWith("MORGUE")) {
-
-						if (actMorgueIds.contains(fspId)) {
-
-							double patientCost = item.getQuantity().doubleValue()
-									* item.getUnitPrice().doubleValue()
-									* (100 - currentRate) / 100;
-
-							patDueAmt = patDueAmt + patientCost;
-						}
-
-					}
-
-				}
-				subTotal = subTotal + patDueAmt;
-			}
-
-			// end of all patient bills
-
-			invoiceMap.put(svceCateg, ReportsUtil.roundTwoDecimals(subTotal));
-			total = total + subTotal;
-		}
-
-		// add each invoice linked to catehory service to list of invoice
-
-		invoiceMap.put("Total", ReportsUtil.roundTwoDecimals(total));
-		invoiceMap.put("receivedAmount", ReportsUtil
-				.roundTwoDecimals(receivedAmount));
-		invoiceMap.put("partiallyPaid", ReportsUtil
-				.roundTwoDecimals(partiallyPaids));
-
-		return invoiceMap;
-	}
 }
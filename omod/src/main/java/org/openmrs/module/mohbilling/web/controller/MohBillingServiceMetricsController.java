@@ -0,0 +1,45 @@
+package org.openmrs.module.mohbilling.web.controller;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.openmrs.api.APIAuthenticationException;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.mohbilling.metrics.ServiceMetrics;
+import org.springframework.web.servlet.ModelAndView;
+import org.springframework.web.servlet.mvc.ParameterizableViewController;
+
+/**
+ * Shows the calls of the BillingService methods recorded since the module
+ * started or the metrics were reset, the slowest in total first
+ */
+public class MohBillingServiceMetricsController extends
+		ParameterizableViewController {
+
+	@Override
+	protected ModelAndView handleRequestInternal(HttpServletRequest request,
+			HttpServletResponse response) throws Exception {
+
+		// checked here as well as by the page, the reset being done before it
+		if (!Context.hasPrivilege("View Administration Functions"))
+			throw new APIAuthenticationException(
+					"Privilege required: View Administration Functions");
+
+		ServiceMetrics metrics = ServiceMetrics.getMetrics();
+
+		if ("POST".equals(request.getMethod())
+				&& request.getParameter("reset") != null) {
+			metrics.reset();
+			response.sendRedirect("serviceMetrics.list");
+			return null;
+		}
+
+		ModelAndView mav = new ModelAndView();
+		mav.addObject("methods", metrics.getMethods());
+		mav.addObject("slowCalls", metrics.getSlowCallSamples());
+		mav.addObject("slowCallMillis", metrics.getSlowCallMillis());
+		mav.setViewName(getViewName());
+
+		return mav;
+	}
+}
@@ -0,0 +1,44 @@
+package org.openmrs.module.mohbilling.web.controller;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.openmrs.api.APIAuthenticationException;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.mohbilling.metrics.SqlDiagnostics;
+import org.springframework.web.servlet.ModelAndView;
+import org.springframework.web.servlet.mvc.ParameterizableViewController;
+
+/**
+ * Shows the SQL statements counted for the latest billing requests while the
+ * SQL diagnostics are enabled, with the statements each ran repeatedly
+ */
+public class MohBillingSqlDiagnosticsController extends
+		ParameterizableViewController {
+
+	@Override
+	protected ModelAndView handleRequestInternal(HttpServletRequest request,
+			HttpServletResponse response) throws Exception {
+
+		// checked here as well as by the page, the log being cleared before it
+		if (!Context.hasPrivilege("View Administration Functions"))
+			throw new APIAuthenticationException(
+					"Privilege required: View Administration Functions");
+
+		if ("POST".equals(request.getMethod())
+				&& request.getParameter("clear") != null) {
+			SqlDiagnostics.clearLog();
+			response.sendRedirect("sqlDiagnostics.list");
+			return null;
+		}
+
+		ModelAndView mav = new ModelAndView();
+		mav.addObject("enabled", SqlDiagnostics.isEnabled());
+		mav.addObject("requests", SqlDiagnostics.getLog());
+		mav.addObject("repeatedThreshold",
+				SqlDiagnostics.REPEATED_SHAPE_THRESHOLD);
+		mav.setViewName(getViewName());
+
+		return mav;
+	}
+}
@@ -7,8 +7,10 @@ import java.math.BigDecimal;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -27,6 +29,7 @@ import org.openmrs.module.mohbilling.model.BillPayment;
 import org.openmrs.module.mohbilling.model.Insurance;
 import org.openmrs.module.mohbilling.model.PatientBill;
 import org.openmrs.module.mohbilling.model.PatientInvoice;
+import org.openmrs.module.mohbilling.service.BillingService;
 import org.springframework.web.servlet.ModelAndView;
 import org.springframework.web.servlet.mvc.ParameterizableViewController;
 
@@ -174,7 +177,11 @@ public class MohBillingrReceivedAmountController extends
 //						+ billPayment.getAmountPaid().doubleValue();
 				TotalReceivedAmount = TotalReceivedAmount.add(billPayment.getAmountPaid());
 			}
-			request.getSession().setAttribute("payments" , reportedPayments);
+			// the ids only, the payments being loaded again in the session of the print request
+			List<Integer> paymentIds = new ArrayList<Integer>();
+			for (BillPayment billPayment : reportedPayments)
+				paymentIds.add(billPayment.getBillPaymentId());
+			request.getSession().setAttribute("paymentIds" , paymentIds);
 			
 			request.getSession().setAttribute("depositStartDate" , startDateStr);
 			
@@ -187,7 +194,16 @@ public class MohBillingrReceivedAmountController extends
 		if (request.getParameter("printed")!=null) {
 			HttpSession session = request.getSession(true);
 
-			List<BillPayment> payments = (List<BillPayment>) session.getAttribute("payments");
+			List<BillPayment> payments = new ArrayList<BillPayment>();
+			List<Integer> paymentIds = (List<Integer>) session.getAttribute("paymentIds");
+			if (paymentIds != null) {
+				Map<Integer, BillPayment> paymentsById = new HashMap<Integer, BillPayment>();
+				for (BillPayment payment : Context.getService(BillingService.class).getBillPayments(paymentIds))
+					paymentsById.put(payment.getBillPaymentId(), payment);
+				for (Integer paymentId : paymentIds)
+					if (paymentsById.containsKey(paymentId))
+						payments.add(paymentsById.get(paymentId));
+			}
 			
 			String startDate=session.getAttribute("depositStartDate").toString();
 			String endDate=session.getAttribute("depositEndDate").toString();
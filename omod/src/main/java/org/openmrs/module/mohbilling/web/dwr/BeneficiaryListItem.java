@@ -15,6 +15,7 @@ public class BeneficiaryListItem extends PersonListItem {
 	private Integer insurancePolicyId;
 	private String insuranceCardNumber;
 	private String insurancePolicyNumber;
+	private String insuranceName;
 
 	public BeneficiaryListItem() {
 
@@ -28,6 +29,9 @@ public class BeneficiaryListItem extends PersonListItem {
 		this.insurancePolicyNumber = ben.getInsurancePolicy()
 				.getInsuranceCardNo();
 		this.insuranceCardNumber = ben.getPolicyIdNumber();
+		if (ben.getInsurancePolicy().getInsurance() != null)
+			this.insuranceName = ben.getInsurancePolicy().getInsurance()
+					.getName();
 
 	}
 
@@ -75,5 +79,19 @@ public class BeneficiaryListItem extends PersonListItem {
 	public void setInsuranceCardNumber(String insuranceCardNumber) {
 		this.insuranceCardNumber = insuranceCardNumber;
 	}
+	/**
+	 * @return the insuranceName
+	 */
+	public String getInsuranceName() {
+		return insuranceName;
+	}
+
+	/**
+	 * @param insuranceName
+	 *            the insuranceName to set
+	 */
+	public void setInsuranceName(String insuranceName) {
+		this.insuranceName = insuranceName;
+	}
 
 }
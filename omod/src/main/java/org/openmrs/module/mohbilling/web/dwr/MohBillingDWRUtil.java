@@ -4,9 +4,16 @@
 package org.openmrs.module.mohbilling.web.dwr;
 
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
+import org.openmrs.api.context.Context;
+import org.openmrs.module.mohbilling.businesslogic.BeneficiarySearchIndex;
 import org.openmrs.module.mohbilling.businesslogic.InsurancePolicyUtil;
 import org.openmrs.module.mohbilling.model.Beneficiary;
+import org.openmrs.module.mohbilling.service.BillingService;
 
 /**
  * @author 
@@ -14,6 +21,39 @@ import org.openmrs.module.mohbilling.model.Beneficiary;
  */
 public class MohBillingDWRUtil {
 
+	/** Number of beneficiaries returned by the search as you type */
+	private static final int MAX_SEARCH_RESULTS = 10;
+
+	/**
+	 * Finds the beneficiaries whose policy id number, insurance card number or
+	 * name starts with the given text, as the user types it
+	 * 
+	 * @param searchString
+	 *            the beginning of a policy id number, a card number or a name
+	 * @return the first matching beneficiaries
+	 */
+	public List<BeneficiaryListItem> searchBeneficiaries(String searchString) {
+
+		List<BeneficiaryListItem> items = new ArrayList<BeneficiaryListItem>();
+		List<Integer> beneficiaryIds = BeneficiarySearchIndex.search(
+				searchString, MAX_SEARCH_RESULTS);
+		if (beneficiaryIds.isEmpty())
+			return items;
+
+		Map<Integer, Beneficiary> beneficiaries = new HashMap<Integer, Beneficiary>();
+		for (Beneficiary ben : Context.getService(BillingService.class)
+				.getBeneficiaries(beneficiaryIds))
+			beneficiaries.put(ben.getBeneficiaryId(), ben);
+
+		/** keeping the order of the index */
+		for (Integer beneficiaryId : beneficiaryIds)
+			if (beneficiaries.containsKey(beneficiaryId))
+				items.add(new BeneficiaryListItem(beneficiaries
+						.get(beneficiaryId)));
+
+		return items;
+	}
+
 	public String getBeneficiaryListInTable(String searchString) {
 
 		BeneficiaryListItem bli = null;
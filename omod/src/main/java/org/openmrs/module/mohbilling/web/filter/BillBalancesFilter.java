@@ -0,0 +1,35 @@
+package org.openmrs.module.mohbilling.web.filter;
+
+import java.io.IOException;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+
+import org.openmrs.module.mohbilling.businesslogic.MohBillingTagUtil;
+
+/**
+ * Forgets the bill balances loaded for the tag functions once the request is
+ * processed, so that the next request served by the thread reads them again
+ */
+public class BillBalancesFilter implements Filter {
+
+	public void init(FilterConfig filterConfig) throws ServletException {
+	}
+
+	public void doFilter(ServletRequest request, ServletResponse response,
+			FilterChain chain) throws IOException, ServletException {
+
+		try {
+			chain.doFilter(request, response);
+		} finally {
+			MohBillingTagUtil.clearBalances();
+		}
+	}
+
+	public void destroy() {
+	}
+}
@@ -0,0 +1,242 @@
+package org.openmrs.module.mohbilling.web.filter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+import org.openmrs.module.mohbilling.metrics.RequestSqlStats;
+import org.openmrs.module.mohbilling.metrics.SqlDiagnostics;
+
+/**
+ * Counts the SQL statements of the billing requests while the SQL diagnostics
+ * are enabled, see {@link SqlDiagnostics}, and sends the counts in the
+ * {@link #HEADER} response header. The page being written before the counts
+ * are known, it is kept in memory until the request ends, up to
+ * {@link #MAX_BUFFER} bytes after which the header is sent with the counts so
+ * far. Does nothing while the diagnostics are disabled.
+ */
+public class SqlDiagnosticsFilter implements Filter {
+
+	public static final String HEADER = "X-MohBilling-SQL";
+
+	private static final int MAX_BUFFER = 4 * 1024 * 1024;
+
+	public void init(FilterConfig filterConfig) throws ServletException {
+	}
+
+	public void doFilter(ServletRequest request, ServletResponse response,
+			FilterChain chain) throws IOException, ServletException {
+
+		if (!(request instanceof HttpServletRequest)
+				|| SqlDiagnostics.getCurrent() != null
+				|| !SqlDiagnostics.isEnabled()) {
+			chain.doFilter(request, response);
+			return;
+		}
+
+		HttpServletRequest httpRequest = (HttpServletRequest) request;
+		String uri = httpRequest.getRequestURI();
+		if (httpRequest.getQueryString() != null)
+			uri += "?" + httpRequest.getQueryString();
+
+		RequestSqlStats stats = SqlDiagnostics.begin(uri);
+		BufferedResponse buffered = new BufferedResponse(
+				(HttpServletResponse) response);
+		try {
+			chain.doFilter(request, buffered);
+		} finally {
+			SqlDiagnostics.end();
+		}
+		buffered.finish(stats);
+	}
+
+	public void destroy() {
+	}
+
+	/**
+	 * Keeps the page in memory so that the header can be set once the request
+	 * ends. A redirect, an error or a page bigger than {@link #MAX_BUFFER}
+	 * sends the header with the counts so far.
+	 */
+	private static class BufferedResponse extends HttpServletResponseWrapper {
+
+		private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+		private OutputStream target = buffer;
+
+		private boolean passThrough;
+
+		private ServletOutputStream stream;
+
+		private boolean usingStream;
+
+		private PrintWriter writer;
+
+		public BufferedResponse(HttpServletResponse response) {
+			super(response);
+		}
+
+		@Override
+		public ServletOutputStream getOutputStream() throws IOException {
+
+			if (writer != null)
+				throw new IllegalStateException("getWriter() was already called");
+			usingStream = true;
+			return getStream();
+		}
+
+		@Override
+		public PrintWriter getWriter() throws IOException {
+
+			if (usingStream)
+				throw new IllegalStateException(
+						"getOutputStream() was already called");
+			if (writer == null)
+				writer = new PrintWriter(new OutputStreamWriter(getStream(),
+						getCharacterEncoding()));
+			return writer;
+		}
+
+		private ServletOutputStream getStream() {
+
+			if (stream == null)
+				stream = new ServletOutputStream() {
+
+					@Override
+					public void write(int b) throws IOException {
+						target.write(b);
+						overflow();
+					}
+
+					@Override
+					public void write(byte[] b, int off, int len)
+							throws IOException {
+						target.write(b, off, len);
+						overflow();
+					}
+				};
+			return stream;
+		}
+
+		@Override
+		public void flushBuffer() throws IOException {
+
+			if (writer != null)
+				writer.flush();
+			if (passThrough)
+				super.flushBuffer();
+		}
+
+		@Override
+		public boolean isCommitted() {
+			return passThrough || super.isCommitted();
+		}
+
+		@Override
+		public void reset() {
+
+			super.reset();
+			buffer.reset();
+		}
+
+		@Override
+		public void resetBuffer() {
+
+			super.resetBuffer();
+			buffer.reset();
+		}
+
+		@Override
+		public void sendRedirect(String location) throws IOException {
+
+			buffer.reset();
+			passThrough(SqlDiagnostics.getCurrent());
+			super.sendRedirect(location);
+		}
+
+		@Override
+		public void sendError(int sc) throws IOException {
+
+			buffer.reset();
+			passThrough(SqlDiagnostics.getCurrent());
+			super.sendError(sc);
+		}
+
+		@Override
+		public void sendError(int sc, String msg) throws IOException {
+
+			buffer.reset();
+			passThrough(SqlDiagnostics.getCurrent());
+			super.sendError(sc, msg);
+		}
+
+		/**
+		 * Sends the header and the buffered page once the request has ended
+		 */
+		public void finish(RequestSqlStats stats) throws IOException {
+
+			if (writer != null)
+				writer.flush();
+			passThrough(stats);
+			super.flushBuffer();
+		}
+
+		private void overflow() throws IOException {
+
+			if (!passThrough && buffer.size() > MAX_BUFFER)
+				passThrough(SqlDiagnostics.getCurrent());
+		}
+
+		/**
+		 * Sets the header and writes the page buffered so far to the
+		 * response, the rest of the page being written to it directly
+		 */
+		private void passThrough(RequestSqlStats stats) throws IOException {
+
+			if (passThrough)
+				return;
+
+			passThrough = true;
+			if (stats != null && !super.isCommitted())
+				setHeader(HEADER, stats.toHeader());
+			if (buffer.size() > 0) {
+				target = getResponse().getOutputStream();
+				buffer.writeTo(target);
+				buffer.reset();
+			} else
+				target = new LazyOutputStream();
+		}
+
+		/**
+		 * Opens the output stream of the response when the first byte is
+		 * written, so that nothing is opened for a redirect or an error
+		 */
+		private class LazyOutputStream extends OutputStream {
+
+			@Override
+			public void write(int b) throws IOException {
+				target = getResponse().getOutputStream();
+				target.write(b);
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) throws IOException {
+				target = getResponse().getOutputStream();
+				target.write(b, off, len);
+			}
+		}
+	}
+}
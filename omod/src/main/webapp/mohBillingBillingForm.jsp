@@ -228,6 +228,7 @@
 					<br/>
 					
 					<input type="hidden" name="numberOfServicesClicked" id="numberOfServicesClicked" value=""/>
+					<input type="hidden" name="captureKey" value="${captureKey}"/>
 				</div>
 				
 			</form>
@@ -119,7 +119,41 @@
 <br/>
 <c:if test="${fn:length(billObj)!=0}">
 <div class="box">
-<b class="boxHeader">Search results </b>
+<b class="boxHeader">Search results (${fn:length(billObj)} of ${cohortSize} bills)</b>
+
+<c:if test="${previousBillId != null}">
+<form action="cohort.form" method="post" style="display: inline;">
+	<input type="hidden" name="startDate" value="${startDate}"/>
+	<input type="hidden" name="endDate" value="${endDate}"/>
+	<input type="hidden" name="billCreator" value="${billCreator}"/>
+	<input type="hidden" name="insurance" value="${insurance.insuranceId}"/>
+	<input type="hidden" name="billStatus" value="${billStatus}"/>
+	<input type="hidden" name="patientId" value="${patientId}"/>
+	<input type="submit" value="First page"/>
+</form>
+<form action="cohort.form" method="post" style="display: inline;">
+	<input type="hidden" name="startDate" value="${startDate}"/>
+	<input type="hidden" name="endDate" value="${endDate}"/>
+	<input type="hidden" name="billCreator" value="${billCreator}"/>
+	<input type="hidden" name="insurance" value="${insurance.insuranceId}"/>
+	<input type="hidden" name="billStatus" value="${billStatus}"/>
+	<input type="hidden" name="patientId" value="${patientId}"/>
+	<input type="hidden" name="beforeBillId" value="${previousBillId}"/>
+	<input type="submit" value="Previous page"/>
+</form>
+</c:if>
+<c:if test="${nextBillId != null}">
+<form action="cohort.form" method="post" style="display: inline;">
+	<input type="hidden" name="startDate" value="${startDate}"/>
+	<input type="hidden" name="endDate" value="${endDate}"/>
+	<input type="hidden" name="billCreator" value="${billCreator}"/>
+	<input type="hidden" name="insurance" value="${insurance.insuranceId}"/>
+	<input type="hidden" name="billStatus" value="${billStatus}"/>
+	<input type="hidden" name="patientId" value="${patientId}"/>
+	<input type="hidden" name="afterBillId" value="${nextBillId}"/>
+	<input type="submit" value="Next page"/>
+</form>
+</c:if>
 
 <form action="cohort.form?print=true" method="post" style="display: inline;">
 <br />
@@ -188,7 +222,7 @@
 
 	</c:forEach>
 	<tr>
-		<td class="rowTotalValue" colspan="6"><b style="color: blue;font-size: 14px;">TOTAL</b></td>
+		<td class="rowTotalValue" colspan="6"><b style="color: blue;font-size: 14px;">TOTAL (${cohortSize} bills)</b></td>
 		<td class="rowTotalValue"><b style="color: blue;font-size: 14px;">${insuranceDueAmount}</b></td>
 		<td class="rowTotalValue"><b style="color: blue;font-size: 14px;">${patientDueAmount}</b></td>
 		<td class="rowTotalValue"><b style="color: blue;font-size: 14px;">${totalAmountReceived}</b></td>		
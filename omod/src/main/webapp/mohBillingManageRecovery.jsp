@@ -148,8 +148,38 @@
 		<br/>
 
 		<input type="submit" name="recordInfo" value="<spring:message code='mohbilling.general.recordInfo'/>" />
+		<input type="submit" name="showDueAmounts" value="<spring:message code='mohbilling.recovery.showDueAmounts'/>" />
 
 	</form>
 </div>
 
+<c:if test="${!empty insuranceDueAmounts}">
+	<br/>
+	<b class="boxHeader"><spring:message code="mohbilling.recovery.dueAmounts"/></b>
+	<div class="box">
+		<table>
+			<tr>
+				<th><spring:message code="mohbilling.insurance"/></th>
+				<th><spring:message code="mohbilling.recovery.dueAmount"/></th>
+			</tr>
+			<c:forEach items="${allInsurances}" var="ins">
+				<tr>
+					<td>${ins.name}</td>
+					<td>${insuranceDueAmounts[ins.insuranceId]}</td>
+				</tr>
+			</c:forEach>
+			<tr>
+				<th><spring:message code="mohbilling.billing.thirdParty.label"/></th>
+				<th><spring:message code="mohbilling.recovery.dueAmount"/></th>
+			</tr>
+			<c:forEach items="${allThirdParties}" var="third">
+				<tr>
+					<td>${third.name}</td>
+					<td>${thirdPartyDueAmounts[third.thirdPartyId]}</td>
+				</tr>
+			</c:forEach>
+		</table>
+	</div>
+</c:if>
+
 <%@ include file="/WEB-INF/template/footer.jsp"%>
@@ -0,0 +1,35 @@
+<%@ include file="/WEB-INF/template/include.jsp"%>
+<%@ include file="/WEB-INF/template/header.jsp"%>
+<openmrs:require privilege="Manage Billing Reports" otherwise="/login.htm" redirect="/mohbilling/reportJob.form" />
+
+<%@ include file="templates/mohBillingLocalHeader.jsp"%>
+
+<c:if test="${job.active}">
+	<meta http-equiv="refresh" content="5" />
+</c:if>
+
+<h2>Report</h2>
+
+<div class="box">
+	<c:choose>
+		<c:when test="${empty job}">
+			This report is unknown or has expired, please run it again.
+		</c:when>
+		<c:when test="${job.status.name == 'DONE'}">
+			The report generated on <openmrs:formatDate date="${job.finishedDate}" type="long" /> is ready:
+			<a href="reportJob.form?id=${id}&download=true">${job.name}.${job.fileExtension}</a>
+			<br/>
+			<a href="reportJob.form?id=${id}&regenerate=true">Generate it again</a> to include the latest changes.
+		</c:when>
+		<c:when test="${job.status.name == 'FAILED'}">
+			The report could not be generated: ${job.errorMessage}
+			<br/>
+			<a href="reportJob.form?id=${id}&regenerate=true">Try again</a>
+		</c:when>
+		<c:otherwise>
+			The report is ${job.status.description}, this page is refreshed until it is ready...
+		</c:otherwise>
+	</c:choose>
+</div>
+
+<%@ include file="/WEB-INF/template/footer.jsp"%>
@@ -331,6 +331,10 @@ ${hello}
 <form action="recettes.form?page=1&export=csv${prmtrs}" method="post" style="display: inline;">
     <input type="hidden" name="printed" value="${printed}" />
     <input type="hidden" name="userId" value="${collector.userId}" />
+    <input type="hidden" name="startDate" value="<c:out value='${param.startDate}'/>" />
+    <input type="hidden" name="startTime" value="<c:out value='${param.startTime}'/>" />
+    <input type="hidden" name="endDate" value="<c:out value='${param.endDate}'/>" />
+    <input type="hidden" name="endTime" value="<c:out value='${param.endTime}'/>" />
 	<input type="submit" class="list_exportBt" value="Print report" title="Pdf"/>
 </form>
 </b>
@@ -0,0 +1,73 @@
+<%@ include file="/WEB-INF/template/include.jsp"%>
+<%@ include file="/WEB-INF/template/header.jsp"%>
+<openmrs:require privilege="View Administration Functions" otherwise="/login.htm" redirect="/module/mohbilling/serviceMetrics.list" />
+
+<h2><spring:message code="mohbilling.metrics.title"/></h2>
+
+<form method="post" action="serviceMetrics.list">
+	<input type="submit" name="reset" value="<spring:message code="mohbilling.metrics.reset"/>" />
+</form>
+<br/>
+
+<b class="boxHeader"><spring:message code="mohbilling.metrics.methods"/></b>
+<div class="box">
+	<table width="100%" cellspacing="0">
+		<tr>
+			<th class="columnHeader">Method</th>
+			<th class="columnHeader">Calls</th>
+			<th class="columnHeader">Errors</th>
+			<th class="columnHeader">Total (ms)</th>
+			<th class="columnHeader">Mean (ms)</th>
+			<th class="columnHeader">p50 (ms)</th>
+			<th class="columnHeader">p90 (ms)</th>
+			<th class="columnHeader">p99 (ms)</th>
+			<th class="columnHeader">Max (ms)</th>
+			<th class="columnHeader">Rows</th>
+			<th class="columnHeader">Max rows</th>
+			<th class="columnHeader">Slow</th>
+		</tr>
+		<c:forEach items="${methods}" var="method" varStatus="status">
+			<tr class="${(status.count%2!=0)?'even':''}">
+				<td>${method.name}</td>
+				<td>${method.calls}</td>
+				<td>${method.errors}</td>
+				<td><fmt:formatNumber value="${method.totalMillis}" maxFractionDigits="1"/></td>
+				<td><fmt:formatNumber value="${method.meanMillis}" maxFractionDigits="2"/></td>
+				<td><fmt:formatNumber value="${method.p50Millis}" maxFractionDigits="2"/></td>
+				<td><fmt:formatNumber value="${method.p90Millis}" maxFractionDigits="2"/></td>
+				<td><fmt:formatNumber value="${method.p99Millis}" maxFractionDigits="2"/></td>
+				<td><fmt:formatNumber value="${method.maxMillis}" maxFractionDigits="2"/></td>
+				<td>${method.rows}</td>
+				<td>${method.maxRows}</td>
+				<td>${method.slowCalls}</td>
+			</tr>
+		</c:forEach>
+	</table>
+</div>
+<br/>
+
+<b class="boxHeader"><spring:message code="mohbilling.metrics.slowCalls"/> (&gt; ${slowCallMillis} ms)</b>
+<div class="box">
+	<table width="100%" cellspacing="0">
+		<tr>
+			<th class="columnHeader">Date</th>
+			<th class="columnHeader">Method</th>
+			<th class="columnHeader">Arguments</th>
+			<th class="columnHeader">Duration (ms)</th>
+			<th class="columnHeader">Rows</th>
+			<th class="columnHeader">User</th>
+		</tr>
+		<c:forEach items="${slowCalls}" var="call" varStatus="status">
+			<tr class="${(status.count%2!=0)?'even':''}">
+				<td><openmrs:formatDate date="${call.date}" type="long"/></td>
+				<td>${call.method}</td>
+				<td><c:out value="${call.arguments}"/></td>
+				<td><fmt:formatNumber value="${call.millis}" maxFractionDigits="1"/></td>
+				<td>${call.rows}</td>
+				<td><c:out value="${call.user}"/></td>
+			</tr>
+		</c:forEach>
+	</table>
+</div>
+
+<%@ include file="/WEB-INF/template/footer.jsp"%>
@@ -0,0 +1,46 @@
+<%@ include file="/WEB-INF/template/include.jsp"%>
+<%@ include file="/WEB-INF/template/header.jsp"%>
+<openmrs:require privilege="View Administration Functions" otherwise="/login.htm" redirect="/module/mohbilling/sqlDiagnostics.list" />
+
+<h2><spring:message code="mohbilling.sqlDiagnostics.title"/></h2>
+
+<c:if test="${!enabled}">
+	<p><spring:message code="mohbilling.sqlDiagnostics.disabled"/></p>
+</c:if>
+
+<form method="post" action="sqlDiagnostics.list">
+	<input type="submit" name="clear" value="<spring:message code="mohbilling.sqlDiagnostics.clear"/>" />
+</form>
+<br/>
+
+<b class="boxHeader"><spring:message code="mohbilling.sqlDiagnostics.requests"/></b>
+<div class="box">
+	<table width="100%" cellspacing="0">
+		<tr>
+			<th class="columnHeader">Date</th>
+			<th class="columnHeader">Request</th>
+			<th class="columnHeader">Duration (ms)</th>
+			<th class="columnHeader">Statements</th>
+			<th class="columnHeader">Entity loads</th>
+			<th class="columnHeader">Shapes</th>
+			<th class="columnHeader"><spring:message code="mohbilling.sqlDiagnostics.repeated" arguments="${repeatedThreshold}"/></th>
+		</tr>
+		<c:forEach items="${requests}" var="req" varStatus="status">
+			<tr class="${(status.count%2!=0)?'even':''}" valign="top">
+				<td><openmrs:formatDate date="${req.date}" type="long"/></td>
+				<td><c:out value="${req.uri}"/></td>
+				<td><fmt:formatNumber value="${req.millis}" maxFractionDigits="1"/></td>
+				<td>${req.statements}</td>
+				<td>${req.entityLoads}</td>
+				<td>${req.distinctShapes}</td>
+				<td>
+					<c:forEach items="${req.repeatedShapes}" var="shape">
+						<b>${shape.value} &times;</b> <c:out value="${shape.key}"/><br/>
+					</c:forEach>
+				</td>
+			</tr>
+		</c:forEach>
+	</table>
+</div>
+
+<%@ include file="/WEB-INF/template/footer.jsp"%>